@@ -0,0 +1,265 @@
+package org.rapla.benchmark;
+
+import org.rapla.RaplaResources;
+import org.rapla.components.i18n.internal.DefaultBundleManager;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.domain.Repeating;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.permission.PermissionExtension;
+import org.rapla.entities.domain.permission.impl.RaplaDefaultPermissionImpl;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.dynamictype.internal.StandardFunctions;
+import org.rapla.entities.extensionpoints.FunctionFactory;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.internal.FacadeImpl;
+import org.rapla.framework.RaplaException;
+import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.internal.DefaultScheduler;
+import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.logger.Logger;
+import org.rapla.logger.RaplaBootstrapLogger;
+import org.rapla.server.PromiseWait;
+import org.rapla.server.internal.PromiseWaitImpl;
+import org.rapla.storage.dbfile.FileOperator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/** Builds a synthetic data file with the configured number of permission groups, users, resources and events with weekly recurring appointments.
+ * Every resource is allocatable for one group, each user is member of one group. The content only depends on the sizes and the seed,
+ * so results of different runs are comparable.
+ */
+public class BenchmarkDataset
+{
+    /** monday of the first week of the generated appointments */
+    public static final Date START = new Date(DateTools.toDate(2026, 1, 5));
+    static final int WEEKS = 26;
+    static final long SEED = 4711;
+    /** timeout in milliseconds for waiting on the promises of the storage */
+    public static final int QUERY_TIMEOUT = 60000;
+
+    private final Logger logger;
+    private final File file;
+    private final RaplaResources i18n;
+    private final RaplaLocale raplaLocale;
+    private final DefaultScheduler scheduler;
+    private final PromiseWait promiseWait;
+    private final Map<String, FunctionFactory> functionFactoryMap;
+    private FileOperator operator;
+    private FacadeImpl facade;
+    private final List<Allocatable> resources = new ArrayList<>();
+    private final List<User> users = new ArrayList<>();
+    private final List<Reservation> reservations = new ArrayList<>();
+
+    public BenchmarkDataset(File file)
+    {
+        this.file = file;
+        logger = RaplaBootstrapLogger.createRaplaLogger();
+        DefaultBundleManager bundleManager = new DefaultBundleManager();
+        i18n = new RaplaResources(bundleManager);
+        raplaLocale = new RaplaLocaleImpl(bundleManager);
+        scheduler = new DefaultScheduler(logger);
+        promiseWait = new PromiseWaitImpl(logger);
+        functionFactoryMap = new HashMap<>();
+        functionFactoryMap.put(StandardFunctions.NAMESPACE, new StandardFunctions(raplaLocale));
+    }
+
+    /** creates a new data file with the passed sizes and connects to it */
+    public void generate(int groupCount, int userCount, int resourceCount, int reservationCount) throws RaplaException
+    {
+        if (file.exists())
+        {
+            file.delete();
+        }
+        // a missing data file creates the default system with the admin user and the resource, person and event types
+        connect();
+        final Random random = new Random(SEED);
+        final User admin = facade.getUser("admin");
+
+        final Category groupsCategory = facade.edit(facade.getUserGroupsCategory());
+        for (int i = 0; i < groupCount; i++)
+        {
+            final Category group = facade.newCategory();
+            group.setKey("benchmark-group-" + i);
+            group.getName().setName("en", "Group " + i);
+            groupsCategory.addCategory(group);
+        }
+        facade.store(groupsCategory);
+
+        final List<User> newUsers = new ArrayList<>();
+        for (int i = 0; i < userCount; i++)
+        {
+            final User user = facade.newUser();
+            user.setUsername("user" + i);
+            user.setName("User " + i);
+            user.addGroup(facade.getUserGroupsCategory().getCategory("benchmark-group-" + (i % groupCount)));
+            newUsers.add(user);
+        }
+        store(newUsers);
+
+        final DynamicType resourceType = facade.getDynamicType("resource");
+        final List<Allocatable> newResources = new ArrayList<>();
+        for (int i = 0; i < resourceCount; i++)
+        {
+            final Classification classification = resourceType.newClassification();
+            classification.setValue("name", "Resource " + i);
+            final Allocatable resource = facade.newAllocatable(classification, admin);
+            final Permission permission = resource.newPermission();
+            permission.setGroup(facade.getUserGroupsCategory().getCategory("benchmark-group-" + (i % groupCount)));
+            permission.setAccessLevel(Permission.ALLOCATE);
+            resource.addPermission(permission);
+            newResources.add(resource);
+        }
+        store(newResources);
+
+        final DynamicType eventType = facade.getDynamicType("event");
+        final List<Reservation> newReservations = new ArrayList<>();
+        for (int i = 0; i < reservationCount; i++)
+        {
+            final Classification classification = eventType.newClassification();
+            classification.setValue("name", "Event " + i);
+            final User owner = users.isEmpty() ? admin : users.get(i % users.size());
+            final Reservation reservation = facade.newReservation(classification, owner);
+            final long day = DateTools.MILLISECONDS_PER_DAY * random.nextInt(5);
+            final long time = DateTools.MILLISECONDS_PER_HOUR * (8 + random.nextInt(9));
+            final Date start = new Date(START.getTime() + day + time);
+            final Date end = new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR);
+            final Appointment appointment = facade.newAppointmentWithUser(start, end, owner);
+            appointment.setRepeatingEnabled(true);
+            appointment.getRepeating().setType(Repeating.WEEKLY);
+            appointment.getRepeating().setNumber(1 + random.nextInt(WEEKS));
+            reservation.addAppointment(appointment);
+            reservation.addAllocatable(resources.get(random.nextInt(resources.size())));
+            newReservations.add(reservation);
+        }
+        store(newReservations);
+        operator.saveData();
+    }
+
+    private <T extends Entity> void store(List<T> entities) throws RaplaException
+    {
+        facade.storeObjects(entities.toArray(new Entity[entities.size()]));
+        for (T entity : entities)
+        {
+            final Entity persistant = operator.resolve(entity.getReference());
+            if (persistant instanceof Allocatable)
+            {
+                resources.add((Allocatable) persistant);
+            }
+            else if (persistant instanceof User)
+            {
+                users.add((User) persistant);
+            }
+            else if (persistant instanceof Reservation)
+            {
+                reservations.add((Reservation) persistant);
+            }
+        }
+    }
+
+    /** connects to the data file. A new file operator is created, so the file is read again */
+    public void connect() throws RaplaException
+    {
+        operator = createFileOperator();
+        facade = new FacadeImpl(i18n, scheduler, logger);
+        facade.setOperator(operator);
+        operator.connect();
+    }
+
+    public FileOperator createFileOperator()
+    {
+        return new FileOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, file.getAbsolutePath(), getPermissionExtensions());
+    }
+
+    public void dispose() throws RaplaException
+    {
+        if (operator != null)
+        {
+            operator.disconnect();
+        }
+        scheduler.dispose();
+        file.delete();
+    }
+
+    public static Set<PermissionExtension> getPermissionExtensions()
+    {
+        final Set<PermissionExtension> permissionExtensions = new LinkedHashSet<>();
+        permissionExtensions.add(new RaplaDefaultPermissionImpl());
+        return permissionExtensions;
+    }
+
+    public Logger getLogger()
+    {
+        return logger;
+    }
+
+    public RaplaResources getI18n()
+    {
+        return i18n;
+    }
+
+    public RaplaLocale getRaplaLocale()
+    {
+        return raplaLocale;
+    }
+
+    public DefaultScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    public PromiseWait getPromiseWait()
+    {
+        return promiseWait;
+    }
+
+    public Map<String, FunctionFactory> getFunctionFactoryMap()
+    {
+        return functionFactoryMap;
+    }
+
+    public FileOperator getOperator()
+    {
+        return operator;
+    }
+
+    public RaplaFacade getFacade()
+    {
+        return facade;
+    }
+
+    public List<Allocatable> getResources()
+    {
+        return Collections.unmodifiableList(resources);
+    }
+
+    public List<User> getUsers()
+    {
+        return Collections.unmodifiableList(users);
+    }
+
+    public List<Reservation> getReservations()
+    {
+        return Collections.unmodifiableList(reservations);
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+}
@@ -0,0 +1,29 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks with the JMH command line options. If no result file is passed, the results are written as JSON to
+ * <code>rapla-benchmark.json</code>, so that they can be collected for trend tracking. */
+public class BenchmarkRunner
+{
+    public static final String DEFAULT_RESULT_FILE = "rapla-benchmark.json";
+
+    public static void main(String[] args) throws Exception
+    {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue())
+        {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue())
+        {
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(options.build()).run();
+    }
+}
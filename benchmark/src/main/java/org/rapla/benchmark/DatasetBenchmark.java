@@ -0,0 +1,64 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/** Base class of the benchmarks. The dataset sizes can be changed on the command line, e.g. <code>-p reservationCount=50000</code> */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public abstract class DatasetBenchmark
+{
+    @Param({ "10" })
+    public int groupCount;
+
+    @Param({ "100" })
+    public int userCount;
+
+    @Param({ "500" })
+    public int resourceCount;
+
+    @Param({ "1000", "15000" })
+    public int reservationCount;
+
+    protected BenchmarkDataset dataset;
+
+    @Setup(Level.Trial)
+    public void createDataset() throws Exception
+    {
+        final File file = File.createTempFile("rapla-benchmark", ".xml");
+        dataset = new BenchmarkDataset(file);
+        dataset.generate(groupCount, userCount, resourceCount, reservationCount);
+        setup();
+    }
+
+    /** called after the dataset is generated */
+    protected void setup() throws Exception
+    {
+    }
+
+    @TearDown(Level.Trial)
+    public void disposeDataset() throws Exception
+    {
+        if (dataset != null)
+        {
+            dataset.dispose();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.rapla.benchmark;
+
+import net.fortuna.ical4j.data.CalendarOutputter;
+import net.fortuna.ical4j.model.Calendar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.rapla.entities.User;
+import org.rapla.entities.configuration.Preferences;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.plugin.export2ical.server.Export2iCalConverter;
+import org.rapla.server.internal.TimeZoneConverterImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Measures the iCal export of all appointments, including the serialization of the calendar */
+public class ICalExportBenchmark extends DatasetBenchmark
+{
+    private Export2iCalConverter converter;
+    private List<Appointment> appointments;
+    private Preferences preferences;
+    private User user;
+
+    @Override protected void setup() throws Exception
+    {
+        converter = new Export2iCalConverter(new TimeZoneConverterImpl(), dataset.getRaplaLocale(), dataset.getLogger(), dataset.getFacade(),
+                dataset.getI18n());
+        appointments = new ArrayList<>();
+        for (Reservation reservation : dataset.getReservations())
+        {
+            Collections.addAll(appointments, reservation.getAppointments());
+        }
+        user = dataset.getUsers().isEmpty() ? dataset.getOperator().getUser("admin") : dataset.getUsers().get(0);
+        preferences = dataset.getFacade().getPreferences(user);
+    }
+
+    @Benchmark
+    public byte[] exportCalendar() throws Exception
+    {
+        final Calendar calendar = converter.createiCalender(appointments, preferences, user);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CalendarOutputter(false).output(calendar, out);
+        return out.toByteArray();
+    }
+}
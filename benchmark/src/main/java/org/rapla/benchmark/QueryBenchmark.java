@@ -0,0 +1,70 @@
+package org.rapla.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
+import org.rapla.entities.dynamictype.internal.EvalContext;
+import org.rapla.entities.dynamictype.internal.ParsedText;
+import org.rapla.storage.StorageOperator;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Measures the appointment query of a calendar week and the formatting of event names */
+public class QueryBenchmark extends DatasetBenchmark
+{
+    private StorageOperator operator;
+    private User user;
+    private List<Allocatable> resources;
+    private Date weekStart;
+    private Date weekEnd;
+    private ParsedText nameFormat;
+    private List<Reservation> reservations;
+
+    @Override protected void setup() throws Exception
+    {
+        operator = dataset.getOperator();
+        user = dataset.getUsers().isEmpty() ? operator.getUser("admin") : dataset.getUsers().get(0);
+        resources = dataset.getResources();
+        weekStart = DateTools.addWeeks(BenchmarkDataset.START, 4);
+        weekEnd = DateTools.addWeeks(weekStart, 1);
+        reservations = dataset.getReservations();
+        final DynamicTypeImpl eventType = (DynamicTypeImpl) dataset.getFacade().getDynamicType("event");
+        nameFormat = eventType.getParsedAnnotation(DynamicTypeAnnotations.KEY_NAME_FORMAT);
+    }
+
+    @Benchmark
+    public Map<Allocatable, Collection<Appointment>> queryAppointmentsWeek() throws Exception
+    {
+        return dataset.getPromiseWait().waitForWithRaplaException(operator.queryAppointments(user, resources, weekStart, weekEnd, null, (String) null), BenchmarkDataset.QUERY_TIMEOUT);
+    }
+
+    @Benchmark
+    public Map<Allocatable, Collection<Appointment>> queryAppointmentsAll() throws Exception
+    {
+        return dataset.getPromiseWait().waitForWithRaplaException(operator.queryAppointments(user, resources, null, null, null, (String) null), BenchmarkDataset.QUERY_TIMEOUT);
+    }
+
+    /** formats the names without the name cache of the storage */
+    @Benchmark
+    public void formatNames(Blackhole blackhole)
+    {
+        for (Reservation reservation : reservations)
+        {
+            final Classification classification = reservation.getClassification();
+            final DynamicTypeImpl type = (DynamicTypeImpl) classification.getType();
+            final EvalContext context = type.createEvalContext(user, Locale.ENGLISH, DynamicTypeAnnotations.KEY_NAME_FORMAT, classification);
+            blackhole.consume(nameFormat.formatName(context));
+        }
+    }
+}
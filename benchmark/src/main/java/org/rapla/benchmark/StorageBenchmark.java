@@ -0,0 +1,90 @@
+package org.rapla.benchmark;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.storage.ImportExportManager;
+import org.rapla.storage.UpdateResult;
+import org.rapla.storage.dbfile.FileOperator;
+import org.rapla.storage.dbsql.DBOperator;
+import org.rapla.storage.impl.server.ImportExportManagerImpl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/** Measures saving and loading of the data file, loading from an embedded HSQLDB and the update result that is sent to polling clients */
+public class StorageBenchmark extends DatasetBenchmark
+{
+    /** every n-th reservation is changed after the dataset is generated, so that the update result contains changes */
+    static final int CHANGED_RESERVATION_STEP = 20;
+
+    private DBOperator dbOperator;
+    private Date lastSynced;
+    private User user;
+
+    @Override protected void setup() throws Exception
+    {
+        final JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:rapla-benchmark-" + System.nanoTime());
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        final ImportExportManager[] importExportManager = new ImportExportManager[1];
+        dbOperator = new DBOperator(dataset.getLogger(), dataset.getPromiseWait(), dataset.getI18n(), dataset.getRaplaLocale(), dataset.getScheduler(),
+                dataset.getFunctionFactoryMap(), () -> importExportManager[0], dataSource, BenchmarkDataset.getPermissionExtensions());
+        final FileOperator source = dataset.createFileOperator();
+        importExportManager[0] = new ImportExportManagerImpl(dataset.getLogger(), source, dbOperator);
+        // the first load of the empty database imports the data file
+        dbOperator.loadData();
+        source.disconnect();
+
+        final FileOperator operator = dataset.getOperator();
+        user = dataset.getUsers().isEmpty() ? operator.getUser("admin") : dataset.getUsers().get(0);
+        lastSynced = operator.getCurrentTimestamp();
+        final RaplaFacade facade = dataset.getFacade();
+        final List<Reservation> toChange = new ArrayList<>();
+        final List<Reservation> reservations = dataset.getReservations();
+        for (int i = 0; i < reservations.size(); i += CHANGED_RESERVATION_STEP)
+        {
+            toChange.add(reservations.get(i));
+        }
+        final List<Reservation> changed = new ArrayList<>();
+        for (Reservation reservation : facade.editList(toChange))
+        {
+            reservation.getClassification().setValue("name", reservation.getClassification().getValue("name") + " changed");
+            changed.add(reservation);
+        }
+        facade.storeObjects(changed.toArray(new Entity[changed.size()]));
+    }
+
+    @Benchmark
+    public void saveFile() throws Exception
+    {
+        dataset.getOperator().saveData();
+    }
+
+    @Benchmark
+    public FileOperator loadFile() throws Exception
+    {
+        final FileOperator operator = dataset.createFileOperator();
+        operator.connect();
+        operator.disconnect();
+        return operator;
+    }
+
+    @Benchmark
+    public DBOperator loadDatabase() throws Exception
+    {
+        dbOperator.loadData();
+        return dbOperator;
+    }
+
+    @Benchmark
+    public UpdateResult getUpdateResult() throws Exception
+    {
+        return dataset.getOperator().getUpdateResult(lastSynced, user);
+    }
+}
@@ -0,0 +1,71 @@
+package org.rapla.storage.impl.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.rapla.benchmark.BenchmarkDataset;
+import org.rapla.benchmark.DatasetBenchmark;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentStartComparator;
+import org.rapla.facade.Conflict;
+import org.rapla.storage.dbfile.FileOperator;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/** Measures the recalculation of all conflicts, as done when the server connects. The benchmark is in the package of the {@link ConflictFinder},
+ * because the finder is not public */
+public class ConflictBenchmark extends DatasetBenchmark
+{
+    private AllocationMap allocationMap;
+    private FileOperator operator;
+    private User user;
+
+    @Override protected void setup() throws Exception
+    {
+        operator = dataset.getOperator();
+        user = dataset.getUsers().isEmpty() ? operator.getUser("admin") : dataset.getUsers().get(0);
+        final Map<Allocatable, Collection<Appointment>> appointments = dataset.getPromiseWait()
+                .waitForWithRaplaException(operator.queryAppointments(null, dataset.getResources(), null, null, null, (String) null), BenchmarkDataset.QUERY_TIMEOUT);
+        final Map<Allocatable, SortedSet<Appointment>> sortedAppointments = new HashMap<>();
+        for (Allocatable resource : dataset.getResources())
+        {
+            final SortedSet<Appointment> sorted = new TreeSet<>(new AppointmentStartComparator());
+            final Collection<Appointment> resourceAppointments = appointments.get(resource);
+            if (resourceAppointments != null)
+            {
+                sorted.addAll(resourceAppointments);
+            }
+            sortedAppointments.put(resource, sorted);
+        }
+        allocationMap = new AllocationMap()
+        {
+            @Override public SortedSet<Appointment> getAppointments(Allocatable allocatable)
+            {
+                return sortedAppointments.get(allocatable);
+            }
+
+            @Override public Collection<Allocatable> getAllocatables()
+            {
+                return sortedAppointments.keySet();
+            }
+        };
+    }
+
+    @Benchmark
+    public ConflictFinder recalculateConflicts()
+    {
+        return new ConflictFinder(allocationMap, BenchmarkDataset.START, dataset.getLogger(), operator, operator.getPermissionController());
+    }
+
+    @Benchmark
+    public Collection<Conflict> recalculateConflictsForUser()
+    {
+        final ConflictFinder conflictFinder = new ConflictFinder(allocationMap, BenchmarkDataset.START, dataset.getLogger(), operator,
+                operator.getPermissionController());
+        return conflictFinder.getConflicts(user);
+    }
+}
@@ -344,6 +344,7 @@ import java.util.Date;
         {
             logger.error(e1.getMessage(), e1);
         }
+        conflictsView.calendarRangeChanged();
     }
 
 
@@ -59,6 +59,8 @@ public class ConflictSelectionPresenter implements Presenter
     private final ClientFacade facade;
     private final RaplaFacade raplaFacade;
     private final ConflictSelectionView<?> view;
+    // the calendar range of the last query, if it reached beyond the conflict horizon
+    private TimeInterval queriedBeyondHorizon;
 
 
     @Inject
@@ -246,7 +248,33 @@ public class ConflictSelectionPresenter implements Presenter
     }
 
     protected void queryAllConflicts()  {
-        raplaFacade.getConflicts().thenAccept(conflicts->updateTree(conflicts)).exceptionally( ex -> logger.error(ex.getMessage(),ex) );
+        final Date start = model.getStartDate();
+        final Date end = model.getEndDate();
+        queriedBeyondHorizon = isBeyondHorizon(end) ? new TimeInterval(start, end) : null;
+        raplaFacade.getConflicts(start, end).thenAccept(conflicts->updateTree(conflicts)).exceptionally( ex -> logger.error(ex.getMessage(),ex) );
+    }
+
+    /** queries the conflicts again if the calendar range reaches beyond the conflict horizon of the server, or did so before,
+     * because the conflicts in this part of the range are not stored and are only calculated for the requested range*/
+    public void calendarRangeChanged()
+    {
+        final Date start = model.getStartDate();
+        final Date end = model.getEndDate();
+        if (!isBeyondHorizon(end) && queriedBeyondHorizon == null)
+        {
+            return;
+        }
+        if (queriedBeyondHorizon != null && queriedBeyondHorizon.equals(new TimeInterval(start, end)))
+        {
+            return;
+        }
+        queryAllConflicts();
+    }
+
+    private boolean isBeyondHorizon(Date end)
+    {
+        final Date horizon = raplaFacade.getOperator().getConflictHorizon();
+        return horizon != null && (end == null || end.after(horizon));
     }
 
     private void removeConflict(Collection<Conflict> conflicts, Set<ReferenceInfo> removedReferences)
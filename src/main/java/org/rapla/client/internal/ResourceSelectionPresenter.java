@@ -26,6 +26,7 @@ import org.rapla.entities.RaplaObject;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.facade.CalendarSelectionModel;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.facade.ModificationEvent;
@@ -199,7 +200,7 @@ public class ResourceSelectionPresenter implements Presenter
 
     public void dataChanged(ModificationEvent evt) throws RaplaException
     {
-        if (evt == null || evt.isModified())
+        if (evt == null || isTreeModified(evt))
         {
             ClassificationFilter[] filter = model.getAllocatableFilter();
             Collection<Object> selectedObjects = new ArrayList<>(model.getSelectedObjects());
@@ -209,6 +210,13 @@ public class ResourceSelectionPresenter implements Presenter
         // ((CalendarModelImpl) model).dataChanged( evt);
     }
 
+    /** the tree shows types, resources, users and categories. Changes to reservations or preferences, which are most of the updates, don't require a rebuild */
+    private boolean isTreeModified(ModificationEvent evt)
+    {
+        return evt.isSwitchTemplateMode() || evt.isModified(Allocatable.class) || evt.isModified(DynamicType.class) || evt.isModified(Category.class)
+                || evt.isModified(User.class);
+    }
+
     boolean treeListenersEnabled = true;
 
     @Override
@@ -32,6 +32,7 @@ import org.rapla.entities.storage.DynamicTypeDependant;
 import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.entities.storage.internal.SimpleEntity;
+import org.rapla.storage.NameFormatCache;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -120,10 +121,13 @@ public final class AllocatableImpl extends SimpleEntity implements Allocatable,D
     }
 
     public String getName(Locale locale) {
-        Classification c = getClassification();
+        final ClassificationImpl c = classification;
         if (c == null)
             return "";
-        return c.getName(locale);
+        final NameFormatCache nameFormatCache = c.getNameFormatCache();
+        if ( nameFormatCache == null)
+            return c.getName(locale);
+        return nameFormatCache.getName(this, c, DynamicTypeAnnotations.KEY_NAME_FORMAT, locale, () -> c.getName(locale));
     }
 
     public boolean isPerson() {
@@ -45,6 +45,7 @@ import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.entities.storage.UnresolvableReferenceExcpetion;
 import org.rapla.entities.storage.internal.SimpleEntity;
 import org.rapla.framework.RaplaException;
+import org.rapla.storage.NameFormatCache;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -190,10 +191,13 @@ public final class ReservationImpl extends SimpleEntity implements Reservation,
     }
 
     public String getName(Locale locale) {
-        Classification c = getClassification();
+        final ClassificationImpl c = classification;
         if (c == null)
             return "";
-        return format( locale, DynamicTypeAnnotations.KEY_NAME_FORMAT);
+        final NameFormatCache nameFormatCache = c.getNameFormatCache();
+        if ( nameFormatCache == null)
+            return format( locale, DynamicTypeAnnotations.KEY_NAME_FORMAT);
+        return nameFormatCache.getName(this, c, DynamicTypeAnnotations.KEY_NAME_FORMAT, locale, () -> format(locale, DynamicTypeAnnotations.KEY_NAME_FORMAT));
     }
     
     public String format(Locale locale, String annotationName)
@@ -1,10 +1,12 @@
 package org.rapla.entities.dynamictype;
 
+import org.rapla.entities.Named;
 import org.rapla.entities.NamedComparator;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -12,13 +14,13 @@ import java.util.Map;
 public class SortedClassifiableComparator implements Comparator<Classifiable>
 {
     Locale locale;
-    NamedComparator comp;
     Map<DynamicType,Collection<Attribute>> sortingCache = new LinkedHashMap<DynamicType,Collection<Attribute>>();
+    /** the names are formatted once per comparator, because sorting large collections compares each element many times */
+    Map<Classifiable,String> nameCache = new HashMap<Classifiable,String>();
 
     public SortedClassifiableComparator(Locale locale)
     {
         this.locale = locale;
-        comp = new NamedComparator(locale);
     }
 
     @Override public int compare(Classifiable o1, Classifiable o2)
@@ -90,7 +92,30 @@ public class SortedClassifiableComparator implements Comparator<Classifiable>
                 }
             }
         }
-        return comp.compare(o1, o2);
+        return compareNames(o1, o2);
+    }
+
+    /** same order as the {@link NamedComparator} */
+    private int compareNames(Classifiable o1, Classifiable o2)
+    {
+        if (o1.equals(o2))
+            return 0;
+        int result = getName(o1).compareTo(getName(o2));
+        if (result != 0)
+            return result;
+        else
+            return (o1.hashCode() < o2.hashCode()) ? -1 : 1;
+    }
+
+    private String getName(Classifiable classifiable)
+    {
+        String name = nameCache.get(classifiable);
+        if (name == null)
+        {
+            name = ((Named) classifiable).getName(locale);
+            nameCache.put(classifiable, name);
+        }
+        return name;
     }
 
 }
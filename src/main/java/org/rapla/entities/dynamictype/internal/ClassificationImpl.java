@@ -29,6 +29,8 @@ import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.entities.storage.UnresolvableReferenceExcpetion;
 import org.rapla.framework.RaplaException;
+import org.rapla.storage.NameFormatCache;
+import org.rapla.storage.StorageOperator;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -69,6 +71,7 @@ public class ClassificationImpl implements Classification,DynamicTypeDependant,
     {
         String nameString;
         ParsedText lastParsedAnnotation;
+        Locale lastLocale;
         public String getName(Locale locale, String keyNameFormat) {
     		DynamicTypeImpl type = getType();
     		ParsedText parsedAnnotation = type.getParsedAnnotation( keyNameFormat );
@@ -78,10 +81,11 @@ public class ClassificationImpl implements Classification,DynamicTypeDependant,
 
             if (nameString != null)
             {
-                if (parsedAnnotation.equals(lastParsedAnnotation))
+                if (parsedAnnotation.equals(lastParsedAnnotation) && locale != null && locale.equals( lastLocale))
                     return nameString;
             }
             lastParsedAnnotation =  parsedAnnotation;
+            lastLocale = locale;
             nameString = format(locale, keyNameFormat);
             return nameString;
     	}
@@ -189,6 +193,13 @@ public class ClassificationImpl implements Classification,DynamicTypeDependant,
         return name.getName(locale,  DynamicTypeAnnotations.KEY_NAME_FORMAT);
     }
     
+    /** returns the name cache of the operator the type belongs to or null if the type is not connected to an operator*/
+    public NameFormatCache getNameFormatCache()
+    {
+        final StorageOperator operator = getType().getOperator();
+        return operator != null ? operator.getNameFormatCache() : null;
+    }
+
     public String format( Locale locale, String annotationName)
     {
         DynamicTypeImpl type = getType();
@@ -416,10 +416,9 @@ final public class DynamicTypeImpl extends SimpleEntity implements DynamicType,
 	/** find an attribute in the dynamic-type that equals the specified attribute. */
 
     public Attribute findAttributeForId(Object id) {
-        Attribute[] typeAttributes = getAttributes();
-        for (int i=0; i<typeAttributes.length; i++) {
-            if (typeAttributes[i].getId().equals(id)) {
-                return typeAttributes[i];
+        for (AttributeImpl attribute:attributes) {
+            if (attribute.getId().equals(id)) {
+                return attribute;
             }
         }
         return null;
@@ -809,6 +808,7 @@ final public class DynamicTypeImpl extends SimpleEntity implements DynamicType,
 		{
 			Object id;
             private boolean shortForm;
+            private int slot;
 			AttributeFunction(Attribute attribute, boolean shortForm )
 			{
 				super("attribute:"+attribute.getKey());
@@ -834,11 +834,24 @@ final public class DynamicTypeImpl extends SimpleEntity implements DynamicType,
 				return result;
 			}
 
+            /** the attribute is looked up at the last found position first, so a linear search is only needed when the attributes of the type change */
             public Attribute findAttribute(DynamicTypeImpl type) {
-                Attribute attribute =  type.findAttributeForId( id );
-				if ( attribute!= null) {
-					return attribute;
-	            }
+                final List<AttributeImpl> typeAttributes = type.attributes;
+                final int size = typeAttributes.size();
+                final int hint = slot;
+                if ( hint < size) {
+                    final AttributeImpl attribute = typeAttributes.get( hint );
+                    if ( attribute.getId().equals( id )) {
+                        return attribute;
+                    }
+                }
+                for (int i=0; i<size; i++) {
+                    final AttributeImpl attribute = typeAttributes.get( i );
+                    if ( attribute.getId().equals( id )) {
+                        slot = i;
+                        return attribute;
+                    }
+                }
 				return null;
             }
 			
@@ -52,6 +52,13 @@ public class ParsedText implements Serializable
     transient List<Function> variablesList;
     // used for fast storage of text without variables
     transient private String first = "";
+    /** compiled form of the format elements. Contains Strings for terminals and folded constants and Functions for the variables */
+    transient private Object[] compiledSegments;
+    /** estimated length of the formatted text, used to presize the result buffer */
+    transient private int estimatedLength;
+
+    /** self references in name formats are cut after this depth */
+    static final int MAX_CALL_STACK_DEPTH = 6;
 
     String formatString;
 
@@ -104,7 +111,84 @@ public class ParsedText implements Serializable
             }
             variablesList = null;
             nonVariablesList = null;
+            compiledSegments = null;
+        }
+        else
+        {
+            compile();
+        }
+    }
+
+    /** merges terminals and constant functions into single string segments so that formatName only needs to evaluate the real variables*/
+    private void compile()
+    {
+        List<Object> segments = new ArrayList<Object>();
+        StringBuilder literal = new StringBuilder();
+        int literalLength = 0;
+        int variableCount = 0;
+        final int size = Math.max(nonVariablesList.size(), variablesList.size());
+        for (int i = 0; i < size; i++)
+        {
+            if (i < nonVariablesList.size())
+            {
+                literal.append(nonVariablesList.get(i));
+            }
+            if (i < variablesList.size())
+            {
+                final Function function = variablesList.get(i);
+                final String constant = foldConstant(function);
+                if (constant != null)
+                {
+                    literal.append(constant);
+                }
+                else
+                {
+                    if (literal.length() > 0)
+                    {
+                        segments.add(literal.toString());
+                        literalLength += literal.length();
+                        literal.setLength(0);
+                    }
+                    segments.add(function);
+                    variableCount++;
+                }
+            }
+        }
+        if (literal.length() > 0)
+        {
+            segments.add(literal.toString());
+            literalLength += literal.length();
+        }
+        compiledSegments = segments.toArray();
+        estimatedLength = literalLength + 16 * variableCount;
+    }
+
+    /** returns the string representation of the function if it evaluates to the same value in every context, null otherwise */
+    private static String foldConstant(Function function)
+    {
+        if (function instanceof StringVariable)
+        {
+            return ((StringVariable) function).s;
+        }
+        if (function instanceof IntVariable)
+        {
+            return ((IntVariable) function).l.toString();
+        }
+        if (function instanceof StandardFunctions.ConcatFunction)
+        {
+            StringBuilder buf = new StringBuilder();
+            for (Function arg : ((StandardFunctions.ConcatFunction) function).args)
+            {
+                final String constant = foldConstant(arg);
+                if (constant == null)
+                {
+                    return null;
+                }
+                buf.append(constant);
+            }
+            return buf.toString();
         }
+        return null;
     }
 
     public void updateFormatString(ParseContext context)
@@ -149,7 +233,37 @@ public class ParsedText implements Serializable
         {
             return first;
         }
-        StringBuffer buf = new StringBuffer();
+        if (compiledSegments == null || context.getCallStackDepth() > MAX_CALL_STACK_DEPTH)
+        {
+            // folded constants would hide the self reference error, so we use the uncompiled form
+            return interpret(context);
+        }
+        final StringBuilder buf = new StringBuilder(estimatedLength);
+        for (Object segment : compiledSegments)
+        {
+            if (segment instanceof String)
+            {
+                buf.append((String) segment);
+            }
+            else
+            {
+                Function function = (Function) segment;
+                Object result = function.eval(context);
+                String stringResult = evalToString(result, context);
+                buf.append(stringResult);
+            }
+        }
+        return replaceEscapedNewlines(buf);
+    }
+
+    /** evaluates the format elements without the compiled segments. */
+    String interpret(EvalContext context)
+    {
+        if (nonVariablesList == null && variablesList == null)
+        {
+            return first;
+        }
+        StringBuilder buf = new StringBuilder();
         if (variablesList != null && (nonVariablesList == null || nonVariablesList.size() == 0))
         {
             for (int i = 0; i < variablesList.size(); i++)
@@ -174,10 +288,28 @@ public class ParsedText implements Serializable
                 }
             }
         }
+        return replaceEscapedNewlines(buf);
+    }
 
-        String string = buf.toString();
-        string = string.replaceAll("\\\\n", "\n");
-        return string;
+    /** replaces the escaped sequence \\n with a newline. Same as replaceAll("\\\\n", "\n") but without compiling a regular expression */
+    static String replaceEscapedNewlines(StringBuilder buf)
+    {
+        int index = buf.indexOf("\\n");
+        if (index < 0)
+        {
+            return buf.toString();
+        }
+        StringBuilder result = new StringBuilder(buf.length());
+        int pos = 0;
+        while (index >= 0)
+        {
+            result.append(buf, pos, index);
+            result.append('\n');
+            pos = index + 2;
+            index = buf.indexOf("\\n", pos);
+        }
+        result.append(buf, pos, buf.length());
+        return result.toString();
     }
 
     Function parseFunctions(final ParseContext context, String content) throws IllegalAnnotationException
@@ -943,7 +1075,7 @@ public class ParsedText implements Serializable
     {
 
         final int callStackDepth = context.getCallStackDepth();
-        if (callStackDepth > 6)
+        if (callStackDepth > MAX_CALL_STACK_DEPTH)
         {
             return "ErrorSelfReferenceCausesNameOverflow";
         }
@@ -301,6 +301,10 @@ public interface RaplaFacade
      */
     Promise<Collection<Conflict>> getConflicts();
 
+    /** returns all existing conflicts that are visible for the user. If the range between start and end reaches beyond the conflict horizon of
+     * the server, the conflicts in this part of the range are calculated on request and added. end can be null for an open range */
+    Promise<Collection<Conflict>> getConflicts(Date start, Date end);
+
     /** returns all available periods */
     Period[] getPeriods() throws RaplaException;
 
@@ -0,0 +1,204 @@
+package org.rapla.facade.internal;
+
+import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.AppointmentStartComparator;
+import org.rapla.entities.domain.internal.AppointmentImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** Client side cache for the appointments queried by the {@link CalendarModelImpl}. For each selection (selected allocatables and filters) the fetched
+ * time windows are kept merged, so a query inside an already fetched window, e.g. when navigating back to the previous week, is answered without a server call.
+ * Windows that overlap the invalidate interval of a modification are removed. Results of queries started before an invalidation are not stored.
+ */
+class AppointmentWindowCache
+{
+    static final int MAX_SELECTIONS = 4;
+    static final int MAX_WINDOWS = 8;
+
+    private final Map<String, List<Window>> selections = new LinkedHashMap<String, List<Window>>();
+    private int generation;
+
+    static class Window
+    {
+        final long start;
+        final long end;
+        final Map<Allocatable, Collection<Appointment>> appointments;
+
+        Window(long start, long end, Map<Allocatable, Collection<Appointment>> appointments)
+        {
+            this.start = start;
+            this.end = end;
+            this.appointments = appointments;
+        }
+
+        boolean covers(long start, long end)
+        {
+            return this.start <= start && this.end >= end;
+        }
+
+        boolean touches(long start, long end)
+        {
+            return this.start <= end && this.end >= start;
+        }
+    }
+
+    /** returns the number of invalidations. Pass it to {@link #put} so results of queries that started before an invalidation are dropped */
+    synchronized public int getGeneration()
+    {
+        return generation;
+    }
+
+    synchronized public boolean isCovered(String selectionKey, Date start, Date end)
+    {
+        return findWindow(selectionKey, toStart(start), toEnd(end)) != null;
+    }
+
+    /** returns the appointments in the interval or null if the interval is not fetched for the selection */
+    synchronized public Map<Allocatable, Collection<Appointment>> get(String selectionKey, Date start, Date end)
+    {
+        final Window window = findWindow(selectionKey, toStart(start), toEnd(end));
+        if (window == null)
+        {
+            return null;
+        }
+        // move selection to the end, so it is removed last
+        selections.put(selectionKey, selections.remove(selectionKey));
+        final Map<Allocatable, Collection<Appointment>> result = new LinkedHashMap<Allocatable, Collection<Appointment>>();
+        for (Map.Entry<Allocatable, Collection<Appointment>> entry : window.appointments.entrySet())
+        {
+            Collection<Appointment> appointments = null;
+            for (Appointment appointment : entry.getValue())
+            {
+                // same check as the server query
+                if (!((AppointmentImpl) appointment).overlaps(start, end, false))
+                {
+                    continue;
+                }
+                if (appointments == null)
+                {
+                    appointments = new LinkedHashSet<Appointment>();
+                    result.put(entry.getKey(), appointments);
+                }
+                appointments.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    /** stores the result of a query. The result is dropped if the cache was invalidated since the query was started with the passed generation */
+    synchronized public void put(String selectionKey, Date start, Date end, Map<Allocatable, Collection<Appointment>> result, int generation)
+    {
+        if (generation != this.generation)
+        {
+            return;
+        }
+        List<Window> windows = selections.remove(selectionKey);
+        if (windows == null)
+        {
+            windows = new ArrayList<Window>();
+            if (selections.size() >= MAX_SELECTIONS)
+            {
+                final Iterator<String> it = selections.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        selections.put(selectionKey, windows);
+        long mergedStart = toStart(start);
+        long mergedEnd = toEnd(end);
+        final Map<Allocatable, Collection<Appointment>> merged = new LinkedHashMap<Allocatable, Collection<Appointment>>();
+        final List<Window> touching = new ArrayList<Window>();
+        for (Window window : windows)
+        {
+            if (window.touches(mergedStart, mergedEnd))
+            {
+                touching.add(window);
+            }
+        }
+        windows.removeAll(touching);
+        touching.add(new Window(mergedStart, mergedEnd, result));
+        for (Window window : touching)
+        {
+            mergedStart = Math.min(mergedStart, window.start);
+            mergedEnd = Math.max(mergedEnd, window.end);
+            for (Map.Entry<Allocatable, Collection<Appointment>> entry : window.appointments.entrySet())
+            {
+                Collection<Appointment> appointments = merged.get(entry.getKey());
+                if (appointments == null)
+                {
+                    appointments = new TreeSet<Appointment>(new AppointmentStartComparator());
+                    merged.put(entry.getKey(), appointments);
+                }
+                appointments.addAll(entry.getValue());
+            }
+        }
+        windows.add(new Window(mergedStart, mergedEnd, merged));
+        if (windows.size() > MAX_WINDOWS)
+        {
+            windows.remove(0);
+        }
+    }
+
+    /** removes all windows that overlap the interval. A null start or end is unbounded */
+    synchronized public void invalidate(TimeInterval interval)
+    {
+        generation++;
+        final long start = toStart(interval.getStart());
+        final long end = toEnd(interval.getEnd());
+        for (List<Window> windows : selections.values())
+        {
+            final Iterator<Window> it = windows.iterator();
+            while (it.hasNext())
+            {
+                final Window window = it.next();
+                if (window.start < end && window.end > start)
+                {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    synchronized public void clear()
+    {
+        generation++;
+        selections.clear();
+    }
+
+    private Window findWindow(String selectionKey, long start, long end)
+    {
+        final List<Window> windows = selections.get(selectionKey);
+        if (windows == null)
+        {
+            return null;
+        }
+        for (Window window : windows)
+        {
+            if (window.covers(start, end))
+            {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    private static long toStart(Date start)
+    {
+        return start != null ? start.getTime() : Long.MIN_VALUE;
+    }
+
+    private static long toEnd(Date end)
+    {
+        return end != null ? end.getTime() : Long.MAX_VALUE;
+    }
+}
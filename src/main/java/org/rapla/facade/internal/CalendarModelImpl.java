@@ -16,6 +16,7 @@ package org.rapla.facade.internal;
 import org.rapla.components.util.Assert;
 import org.rapla.components.util.DateTools;
 import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.Category;
 import org.rapla.entities.Entity;
 import org.rapla.entities.IllegalAnnotationException;
 import org.rapla.entities.Named;
@@ -47,6 +48,7 @@ import org.rapla.facade.CalendarNotFoundExeption;
 import org.rapla.facade.CalendarSelectionModel;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.facade.Conflict;
+import org.rapla.facade.ModificationEvent;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaInitializationException;
 import org.rapla.framework.RaplaLocale;
@@ -968,49 +970,96 @@ public class CalendarModelImpl implements CalendarSelectionModel
 
     String templateId = null;
 
-    private String cacheValidString;
-    private Map<Allocatable, Collection<Appointment>> cachedReservations;
+    private final AppointmentWindowCache appointmentCache = new AppointmentWindowCache();
     private boolean cachingEnabled = false;
 
     private Promise<Map<Allocatable, Collection<Appointment>>> queryAppointmentBindings(Collection<Allocatable> allocatables, Date start, Date end)
     {
-        final String cacheKey = createCacheKey(allocatables, start, end);
-        if (cachingEnabled)
-        {
-            if (cacheValidString != null && cacheValidString.equals(cacheKey) && cachedReservations != null)
-            {
-                return new ResolvedPromise<Map<Allocatable, Collection<Appointment>>>(cachedReservations);
-            }
-        }
-
         ClassificationFilter[] reservationFilters;
 		try {
 			reservationFilters = isDefaultEventTypes() ? null : getReservationFilter();
 		} catch (RaplaException ex) {
 			return new ResolvedPromise<>( ex);
 		}
-		// FIXME Evalute if its only the owner
-		User user = null;
-        final Promise<Map<Allocatable, Collection<Appointment>>> reservationsAsync = operator
-                .queryAppointments(user, allocatables, start, end, reservationFilters, templateId);
-        
+        final String selectionKey = createCacheKey(allocatables, reservationFilters);
+        if (cachingEnabled)
+        {
+            final Map<Allocatable, Collection<Appointment>> cached = appointmentCache.get(selectionKey, start, end);
+            if (cached != null)
+            {
+                prefetchAdjacentWindows(selectionKey, allocatables, start, end, reservationFilters);
+                return new ResolvedPromise<Map<Allocatable, Collection<Appointment>>>(cached);
+            }
+        }
+        final int generation = appointmentCache.getGeneration();
+        final Promise<Map<Allocatable, Collection<Appointment>>> reservationsAsync = queryAppointments(allocatables, start, end, reservationFilters);
         return reservationsAsync.thenApply((map) -> {
             if (cachingEnabled)
             {
-                cachedReservations = map;
-                cacheValidString = cacheKey;
+                appointmentCache.put(selectionKey, start, end, map, generation);
+                prefetchAdjacentWindows(selectionKey, allocatables, start, end, reservationFilters);
             }
             return map;
         });
     }
 
+    private Promise<Map<Allocatable, Collection<Appointment>>> queryAppointments(Collection<Allocatable> allocatables, Date start, Date end,
+            ClassificationFilter[] reservationFilters)
+    {
+        // FIXME Evalute if its only the owner
+        User user = null;
+        return operator.queryAppointments(user, allocatables, start, end, reservationFilters, templateId);
+    }
+
+    /** loads the previous and the next interval of the same length in the background, so that navigating in the calendar can be answered from the cache */
+    private void prefetchAdjacentWindows(String selectionKey, Collection<Allocatable> allocatables, Date start, Date end, ClassificationFilter[] reservationFilters)
+    {
+        if (start == null || end == null || !end.after(start))
+        {
+            return;
+        }
+        final long length = end.getTime() - start.getTime();
+        prefetch(selectionKey, allocatables, end, new Date(end.getTime() + length), reservationFilters);
+        prefetch(selectionKey, allocatables, new Date(start.getTime() - length), start, reservationFilters);
+    }
+
+    private void prefetch(String selectionKey, Collection<Allocatable> allocatables, Date start, Date end, ClassificationFilter[] reservationFilters)
+    {
+        if (appointmentCache.isCovered(selectionKey, start, end))
+        {
+            return;
+        }
+        final int generation = appointmentCache.getGeneration();
+        queryAppointments(allocatables, start, end, reservationFilters).thenAccept((map) -> appointmentCache.put(selectionKey, start, end, map, generation))
+                .exceptionally((ex) -> logger.debug("Prefetching appointments failed " + ex.getMessage()));
+    }
+
     public void invalidateCache()
     {
-        cacheValidString = null;
-        cachedReservations = null;
+        appointmentCache.clear();
+    }
+
+    /** removes only the cached appointments in the invalidate interval of the event if the change does not affect the selection or filters */
+    public void invalidateCache(ModificationEvent evt)
+    {
+        if (evt == null || evt.isModified(Allocatable.class) || evt.isModified(DynamicType.class) || evt.isModified(Category.class) || evt.isModified(
+                User.class))
+        {
+            appointmentCache.clear();
+            return;
+        }
+        final TimeInterval invalidateInterval = evt.getInvalidateInterval();
+        if (invalidateInterval != null)
+        {
+            appointmentCache.invalidate(invalidateInterval);
+        }
+        else if (evt.isModified(Reservation.class))
+        {
+            appointmentCache.clear();
+        }
     }
 
-    private String createCacheKey(Collection<Allocatable> allocatables, Date start, Date end)
+    private String createCacheKey(Collection<Allocatable> allocatables, ClassificationFilter[] reservationFilters)
     {
         StringBuilder buf = new StringBuilder();
         if (allocatables != null)
@@ -1025,13 +1074,14 @@ public class CalendarModelImpl implements CalendarSelectionModel
         {
             buf.append("all_reservations;");
         }
-        if (start != null)
+        buf.append("template=" + templateId + ";");
+        if (reservationFilters != null)
         {
-            buf.append(start.getTime() + ";");
-        }
-        if (end != null)
-        {
-            buf.append(end.getTime() + ";");
+            for (ClassificationFilter filter : reservationFilters)
+            {
+                buf.append(filter.toString());
+                buf.append(";");
+            }
         }
         return buf.toString();
     }
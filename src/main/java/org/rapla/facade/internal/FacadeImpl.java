@@ -397,6 +397,16 @@ public class FacadeImpl implements RaplaFacade {
         return operator.getConflicts(reservation);
     }
 
+	public Promise<Collection<Conflict>> getConflicts(Date start, Date end) {
+		final Date horizon = operator.getConflictHorizon();
+		if (horizon == null || (end != null && !end.after(horizon)))
+		{
+			return getConflicts();
+		}
+		final User user = null;
+		return operator.getConflicts(user, start, end);
+	}
+
 	public Promise<Collection<Conflict>> getConflicts() {
 
 		final User user = null;
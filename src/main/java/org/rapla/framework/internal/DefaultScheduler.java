@@ -8,23 +8,69 @@ import org.rapla.scheduler.CommandScheduler;
 import org.rapla.scheduler.sync.UtilConcurrentCommandScheduler;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 @DefaultImplementation(of=CommandScheduler.class,context = {InjectionContext.server})
 @Singleton
 public class DefaultScheduler extends UtilConcurrentCommandScheduler implements Disposable
 {
+	/** number of scheduler threads. If not set the pool size depends on the available processors.
+	 * The container provides the setting with this name */
+	public static final String POOL_SIZE = "rapla_scheduler_pool_size";
+	static final int MIN_POOL_SIZE = 6;
+	static final int MAX_POOL_SIZE = 64;
+
 	@Inject
+	public DefaultScheduler(Logger logger, @Named(POOL_SIZE) Provider<Integer> poolSize) {
+	    this(logger, getPoolSizeOrDefault(poolSize.get()));
+	}
+
 	public DefaultScheduler(Logger logger) {
-	    this(logger, 6);
+	    this(logger, getDefaultPoolSize());
 	}
 
 	public DefaultScheduler(Logger logger, int poolSize) {
 	    super(logger,poolSize);
 	}
 
+	/** the scheduler threads mostly wait for the read lock or the database, so we use more threads than processors */
+	static int getDefaultPoolSize()
+	{
+		final int processors = Runtime.getRuntime().availableProcessors();
+		return Math.max(MIN_POOL_SIZE, Math.min(MAX_POOL_SIZE, processors * 4));
+	}
+
+	private static int getPoolSizeOrDefault(Integer poolSize)
+	{
+		return poolSize != null ? poolSize : getDefaultPoolSize();
+	}
+
+	/** returns the pool size of the setting or null for the default pool size, if the setting is missing or invalid */
+	public static Integer getPoolSize(Logger logger, String setting)
+	{
+		if (setting == null || setting.trim().isEmpty())
+		{
+			return null;
+		}
+		try
+		{
+			final int poolSize = Integer.parseInt(setting.trim());
+			if (poolSize > 0)
+			{
+				return poolSize;
+			}
+		}
+		catch (NumberFormatException ex)
+		{
+		}
+		logger.warn("Invalid value " + setting + " for " + POOL_SIZE + ". Using " + getDefaultPoolSize());
+		return null;
+	}
+
 	@Override public void dispose()
 	{
 		cancel();
 	}
-}
\ No newline at end of file
+}
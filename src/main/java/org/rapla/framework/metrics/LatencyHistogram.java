@@ -0,0 +1,146 @@
+package org.rapla.framework.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with log-linear buckets in the style of a HdrHistogram. Every power of two of microseconds is
+ * split into {@link #SUB_BUCKETS} linear sub buckets, so a recorded value is kept with a relative error of at most 1/8 from
+ * one microsecond up to several days. Recording is two counter increments, so a histogram can be used on hot paths.
+ */
+public class LatencyHistogram implements RaplaMetrics.Metric
+{
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** values above 2^MAX_EXPONENT microseconds (about 50 days) are counted in the last bucket */
+    static final int MAX_EXPONENT = 42;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    /** upper bounds in seconds of the exported buckets */
+    static final double[] EXPORTED_BOUNDS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long duration, TimeUnit unit)
+    {
+        final long nanos = Math.max(0, unit.toNanos(duration));
+        counts.incrementAndGet(getBucket(nanos / 1000));
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /** records the time elapsed since startNanos, which must be a value of {@link System#nanoTime()} */
+    public void recordSince(long startNanos)
+    {
+        record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public double getSumSeconds()
+    {
+        return sumNanos.sum() / 1e9;
+    }
+
+    /** returns the upper bound in seconds of the bucket that contains the given percentile (0-100) or 0 if nothing was recorded */
+    public double getPercentile(double percentile)
+    {
+        final long total = getCount();
+        if (total == 0)
+        {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= rank)
+            {
+                return getUpperBoundMicros(i) / 1e6;
+            }
+        }
+        return getUpperBoundMicros(BUCKET_COUNT - 1) / 1e6;
+    }
+
+    /** returns the number of recorded values that are smaller than the bound in seconds. Values in the bucket that contains
+     * the bound are counted if the bucket starts below the bound, so the result is exact up to the bucket precision */
+    long getCountBelow(double boundSeconds)
+    {
+        final long boundMicros = (long) (boundSeconds * 1e6);
+        long result = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            if (getLowerBoundMicros(i) >= boundMicros)
+            {
+                break;
+            }
+            result += counts.get(i);
+        }
+        return result;
+    }
+
+    static int getBucket(long micros)
+    {
+        if (micros < SUB_BUCKETS)
+        {
+            return (int) micros;
+        }
+        final int exponent = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(micros));
+        if (exponent == MAX_EXPONENT && micros >= (1L << (MAX_EXPONENT + 1)))
+        {
+            return BUCKET_COUNT - 1;
+        }
+        final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getLowerBoundMicros(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final int subBucket = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long getUpperBoundMicros(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket + 1;
+        }
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return getLowerBoundMicros(bucket) + (1L << (exponent - SUB_BUCKET_BITS));
+    }
+
+    @Override
+    public String getType()
+    {
+        return "histogram";
+    }
+
+    @Override
+    public void write(String name, String labels, StringBuilder out)
+    {
+        final String separator = labels.isEmpty() ? "" : ",";
+        for (double bound : EXPORTED_BOUNDS)
+        {
+            out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"").append(RaplaMetrics.format(bound)).append("\"} ")
+                    .append(getCountBelow(bound)).append('\n');
+        }
+        final long total = getCount();
+        out.append(name).append("_bucket{").append(labels).append(separator).append("le=\"+Inf\"} ").append(total).append('\n');
+        final String labelBlock = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(labelBlock).append(' ').append(RaplaMetrics.format(getSumSeconds())).append('\n');
+        out.append(name).append("_count").append(labelBlock).append(' ').append(total).append('\n');
+    }
+}
@@ -0,0 +1,219 @@
+package org.rapla.framework.metrics;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Registry for the counters, gauges and latency histograms of the server. The metrics are written in the Prometheus text format
+ * by the {@link org.rapla.server.servletpages.RaplaMetricsPageGenerator}. Components that are created by injection get the registry injected,
+ * components that are created manually, like the storage operator and its locks, register their metrics when the registry is passed to them.
+ * Registering a metric with the same name and labels twice returns the existing metric, so a restarted component keeps its values.
+ */
+@Singleton
+public class RaplaMetrics
+{
+    /** service key for the scrape page and the scheduler probe. Disable with raplaservices=org.rapla.server.metrics=false */
+    public static final String ID = "org.rapla.server.metrics";
+
+    public interface Metric
+    {
+        String getType();
+
+        void write(String name, String labels, StringBuilder out);
+    }
+
+    public static class Counter implements Metric
+    {
+        private final LongAdder value = new LongAdder();
+
+        public void inc()
+        {
+            value.increment();
+        }
+
+        public void add(long amount)
+        {
+            value.add(amount);
+        }
+
+        public long get()
+        {
+            return value.sum();
+        }
+
+        @Override
+        public String getType()
+        {
+            return "counter";
+        }
+
+        @Override
+        public void write(String name, String labels, StringBuilder out)
+        {
+            out.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(get()).append('\n');
+        }
+    }
+
+    static class Gauge implements Metric
+    {
+        private final Supplier<? extends Number> supplier;
+
+        Gauge(Supplier<? extends Number> supplier)
+        {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public String getType()
+        {
+            return "gauge";
+        }
+
+        @Override
+        public void write(String name, String labels, StringBuilder out)
+        {
+            final Number value;
+            try
+            {
+                value = supplier.get();
+            }
+            catch (RuntimeException ex)
+            {
+                // a gauge that can't be read, e.g. of a disconnected component or of a collection that is modified concurrently, is skipped
+                return;
+            }
+            if (value != null)
+            {
+                out.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(format(value.doubleValue())).append('\n');
+            }
+        }
+    }
+
+    static class Family
+    {
+        final String help;
+        final String type;
+        final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+        Family(String help, String type)
+        {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    @Inject
+    public RaplaMetrics()
+    {
+    }
+
+    /** labels are passed as name value pairs, e.g. counter("rapla_requests_total", "Requests", "path", "storage/refresh") */
+    public Counter counter(String name, String help, String... labels)
+    {
+        return register(name, help, new Counter(), labels);
+    }
+
+    public LatencyHistogram histogram(String name, String help, String... labels)
+    {
+        return register(name, help, new LatencyHistogram(), labels);
+    }
+
+    /** registers a gauge that is read on each scrape. A registered gauge replaces the previous gauge with the same name and labels */
+    public void gauge(String name, String help, Supplier<? extends Number> supplier, String... labels)
+    {
+        final Family family = getFamily(name, help, "gauge");
+        family.metrics.put(toLabels(labels), new Gauge(supplier));
+    }
+
+    /** registers an existing metric. If a metric with the same name and labels is already registered, the registered metric is returned */
+    @SuppressWarnings("unchecked")
+    public <T extends Metric> T register(String name, String help, T metric, String... labels)
+    {
+        final Family family = getFamily(name, help, metric.getType());
+        final Metric existing = family.metrics.putIfAbsent(toLabels(labels), metric);
+        if (existing == null)
+        {
+            return metric;
+        }
+        if (!existing.getClass().equals(metric.getClass()))
+        {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + existing.getType());
+        }
+        return (T) existing;
+    }
+
+    private Family getFamily(String name, String help, String type)
+    {
+        if (!name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*"))
+        {
+            throw new IllegalArgumentException("Invalid metric name " + name);
+        }
+        final Family family = families.computeIfAbsent(name, (key) -> new Family(help, type));
+        if (!family.type.equals(type))
+        {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    /** writes all metrics in the Prometheus text exposition format */
+    public String write()
+    {
+        final StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Family> entry : families.entrySet())
+        {
+            final String name = entry.getKey();
+            final Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> metric : family.metrics.entrySet())
+            {
+                metric.getValue().write(name, metric.getKey(), out);
+            }
+        }
+        return out.toString();
+    }
+
+    static String toLabels(String... labels)
+    {
+        if (labels.length % 2 != 0)
+        {
+            throw new IllegalArgumentException("Labels must be passed as name value pairs");
+        }
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2)
+        {
+            if (i > 0)
+            {
+                result.append(',');
+            }
+            final String value = labels[i + 1] != null ? labels[i + 1] : "";
+            result.append(labels[i]).append("=\"").append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return result.toString();
+    }
+
+    static String format(double value)
+    {
+        if (Double.isInfinite(value))
+        {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (Double.isNaN(value))
+        {
+            return "NaN";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+        {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+}
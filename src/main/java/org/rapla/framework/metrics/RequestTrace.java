@@ -0,0 +1,194 @@
+package org.rapla.framework.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Span tree of one traced request. A trace is bound to the thread that serves the request, so only the work that is done in that thread
+ * is recorded. Code that wants to be traced opens a span with
+ * <pre>
+ * try (RequestTrace.Span span = RequestTrace.span("checkConsistency"))
+ * {
+ *     ...
+ * }
+ * </pre>
+ * If the current request is not traced, the shared {@link #NO_SPAN} is returned, so a span costs one thread local lookup.
+ */
+public final class RequestTrace
+{
+    /** maximum number of spans of one trace. Further spans are not recorded */
+    static final int MAX_SPANS = 1000;
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    public static class Span implements AutoCloseable
+    {
+        final String name;
+        final Span parent;
+        final long start;
+        long duration = -1;
+        List<Span> children;
+
+        Span(String name, Span parent, long start)
+        {
+            this.name = name;
+            this.parent = parent;
+            this.start = start;
+        }
+
+        public long getDurationNanos()
+        {
+            return duration;
+        }
+
+        @Override
+        public void close()
+        {
+            final RequestTrace trace = CURRENT.get();
+            if (trace != null && duration < 0)
+            {
+                trace.close(this);
+            }
+        }
+    }
+
+    /** returned if the current request is not traced */
+    public static final Span NO_SPAN = new Span("none", null, 0)
+    {
+        @Override
+        public void close()
+        {
+        }
+    };
+
+    private final String id;
+    private final Span root;
+    private Span current;
+    private int spanCount = 1;
+
+    private RequestTrace(String id, String name)
+    {
+        this.id = id;
+        this.root = new Span(name, null, System.nanoTime());
+        this.current = root;
+    }
+
+    /** starts a trace for the current thread. A trace that is still active in the thread is replaced */
+    public static RequestTrace begin(String id, String name)
+    {
+        final RequestTrace trace = new RequestTrace(id, name);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /** opens a span in the trace of the current thread. The span must be closed in the same thread */
+    public static Span span(String name)
+    {
+        final RequestTrace trace = CURRENT.get();
+        if (trace == null)
+        {
+            return NO_SPAN;
+        }
+        return trace.open(name);
+    }
+
+    /** returns true if the current thread serves a traced request */
+    public static boolean isActive()
+    {
+        return CURRENT.get() != null;
+    }
+
+    private Span open(String name)
+    {
+        if (spanCount >= MAX_SPANS)
+        {
+            return NO_SPAN;
+        }
+        spanCount++;
+        final Span span = new Span(name, current, System.nanoTime());
+        if (current.children == null)
+        {
+            current.children = new ArrayList<>();
+        }
+        current.children.add(span);
+        current = span;
+        return span;
+    }
+
+    private void close(Span span)
+    {
+        span.duration = System.nanoTime() - span.start;
+        // spans that were not closed because of an exception are closed with their parent
+        Span open = current;
+        while (open != null && open != span)
+        {
+            if (open.duration < 0)
+            {
+                open.duration = System.nanoTime() - open.start;
+            }
+            open = open.parent;
+        }
+        current = span.parent != null ? span.parent : root;
+    }
+
+    /** closes the root span and removes the trace from the current thread */
+    public void end()
+    {
+        if (root.duration < 0)
+        {
+            close(root);
+        }
+        if (CURRENT.get() == this)
+        {
+            CURRENT.remove();
+        }
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public long getDurationNanos()
+    {
+        return root.duration >= 0 ? root.duration : System.nanoTime() - root.start;
+    }
+
+    /** returns the span tree with the duration and the time not covered by child spans for each span */
+    public String dump()
+    {
+        final StringBuilder out = new StringBuilder();
+        out.append("Request ").append(id);
+        dump(root, 1, out);
+        return out.toString();
+    }
+
+    private static void dump(Span span, int depth, StringBuilder out)
+    {
+        final long duration = span.duration >= 0 ? span.duration : System.nanoTime() - span.start;
+        out.append('\n');
+        for (int i = 0; i < depth; i++)
+        {
+            out.append("  ");
+        }
+        out.append(toMillis(duration)).append(" ms ").append(span.name);
+        if (span.children != null)
+        {
+            long childDuration = 0;
+            for (Span child : span.children)
+            {
+                childDuration += Math.max(0, child.duration);
+            }
+            out.append(" (self ").append(toMillis(duration - childDuration)).append(" ms)");
+            for (Span child : span.children)
+            {
+                dump(child, depth + 1, out);
+            }
+        }
+    }
+
+    private static String toMillis(long nanos)
+    {
+        return String.valueOf(Math.round(nanos / 100000.0) / 10.0);
+    }
+}
@@ -29,6 +29,8 @@ import org.rapla.components.util.TimeInterval;
 import org.rapla.components.xmlbundle.I18nBundle;
 import org.rapla.entities.Category;
 import org.rapla.entities.CategoryAnnotations;
+import org.rapla.entities.Entity;
+import org.rapla.entities.LastChangedTimestamp;
 import org.rapla.entities.NamedComparator;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
@@ -98,6 +100,12 @@ public class RaplaBuilder
     private boolean nonFilteredEventsVisible;
     private BlockCreator blockCreator = (blockContext, start, end) -> new RaplaBlock(blockContext, start, end);
     Map<Allocatable,Collection<Appointment>> bindings;
+    /** result of the last prepareBuild call, which is reused if the view asks again for the same interval */
+    private PreperationResult preparedResult;
+    private Date preparedStart;
+    private Date preparedEnd;
+    private int preparedOffsetMinutes;
+    private boolean preparedExceptionsExcluded;
 
     /** default buildStrategy is {@link GroupAllocatablesStrategy}.*/
     BuildStrategy buildStrategy;
@@ -429,8 +437,32 @@ public class RaplaBuilder
     }
 
 
-    /** selects all blocks that should be visible and calculates the max start- and end-time  */
+    /** selects all blocks that should be visible and calculates the max start- and end-time.
+     * The result is kept, so a view can call this method on a background thread before the rebuild. */
     public PreperationResult prepareBuild(Date start,Date end) {
+        final int offsetMinutes = buildStrategy.getOffsetMinutes();
+        final boolean excludeExceptions = isExceptionsExcluded();
+        synchronized (this)
+        {
+            if (preparedResult != null && start.equals(preparedStart) && end.equals(preparedEnd) && offsetMinutes == preparedOffsetMinutes
+                    && excludeExceptions == preparedExceptionsExcluded)
+            {
+                return preparedResult;
+            }
+        }
+        final PreperationResult result = calculateBlocks(start, end);
+        synchronized (this)
+        {
+            preparedResult = result;
+            preparedStart = new Date(start.getTime());
+            preparedEnd = new Date(end.getTime());
+            preparedOffsetMinutes = offsetMinutes;
+            preparedExceptionsExcluded = excludeExceptions;
+        }
+        return result;
+    }
+
+    private PreperationResult calculateBlocks(Date start,Date end) {
         start = new Date( start.getTime() );
         end = new Date( end.getTime() );
         boolean excludeExceptions = isExceptionsExcluded();
@@ -486,6 +518,70 @@ public class RaplaBuilder
         return new PreperationResult( min, max,preparedBlocks);
     }
 
+    /** returns a key for everything that is displayed by the blocks of the prepared result: the blocks with the versions of their reservations, allocatables
+     * and types, the selected allocatables, the conflicts and the display options. If the key equals the key of the last build, the view does not need to be rebuild.*/
+    public List<Object> getBuildKey(PreperationResult prep)
+    {
+        final List<Object> key = new ArrayList<Object>();
+        key.add(bExceptionsExcluded);
+        key.add(bResourceVisible);
+        key.add(bPersonVisible);
+        key.add(bRepeatingVisible);
+        key.add(bTimeVisible);
+        key.add(splitByAllocatables);
+        key.add(isResourceColoring);
+        key.add(isEventColoring);
+        key.add(nonFilteredEventsVisible);
+        key.add(prep.getMinMinutes());
+        key.add(prep.getMaxMinutes());
+        addVersion(key, editingUser);
+        for (Allocatable allocatable : selectedAllocatables)
+        {
+            addVersion(key, allocatable);
+            key.add(colors.get(allocatable));
+        }
+        if (conflictingAppointments != null)
+        {
+            for (Appointment appointment : conflictingAppointments.keySet())
+            {
+                key.add(appointment.getId());
+            }
+        }
+        for (AppointmentBlock block : prep.getBlocks())
+        {
+            final Appointment appointment = block.getAppointment();
+            key.add(appointment.getId());
+            key.add(block.getStart());
+            key.add(block.getEnd());
+            final Reservation reservation = appointment.getReservation();
+            if (reservation == null)
+            {
+                continue;
+            }
+            addVersion(key, reservation);
+            addVersion(key, reservation.getClassification().getType());
+            for (Allocatable allocatable : reservation.getAllocatablesFor(appointment))
+            {
+                addVersion(key, allocatable);
+            }
+        }
+        return key;
+    }
+
+    private static void addVersion(List<Object> key, Entity entity)
+    {
+        if (entity == null)
+        {
+            key.add(null);
+            return;
+        }
+        key.add(entity.getId());
+        if (entity instanceof LastChangedTimestamp)
+        {
+            key.add(((LastChangedTimestamp) entity).getLastChanged());
+        }
+    }
+
     public void build(BlockContainer blockContainer, Date startDate, Collection<AppointmentBlock> preparedBlocks) {
 
         List<Block> blocks = createBlocks(preparedBlocks, blockCreator);
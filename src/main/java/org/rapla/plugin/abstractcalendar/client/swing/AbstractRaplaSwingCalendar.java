@@ -38,6 +38,7 @@ import org.rapla.components.calendarview.swing.ViewListener;
 import org.rapla.components.iolayer.IOInterface;
 import org.rapla.components.util.DateTools;
 import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.configuration.Preferences;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.AppointmentFormater;
 import org.rapla.facade.CalendarModel;
@@ -73,6 +74,7 @@ import java.awt.Graphics2D;
 import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -100,6 +102,8 @@ public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
     protected final AppointmentFormater appointmentFormater;
     protected final EditController editController;
     private final boolean printing;
+    /** key of the last rebuild triggered by {@link #triggerUpdate()} */
+    private List<Object> lastBuildKey;
 
     public AbstractRaplaSwingCalendar(ClientFacade facade, RaplaResources i18n, RaplaLocale raplaLocale, Logger logger, CalendarModel model, boolean editable,
             boolean printing, final Set<ObjectMenuFactory> objectMenuFactories, MenuFactory menuFactory, Provider<DateRenderer> dateRendererProvider,
@@ -189,10 +193,15 @@ public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
 
     public Observable triggerUpdate()
     {
-        Promise<Void> result = initializeBuilder().thenAccept((builder) -> SwingUtilities.invokeLater(() ->
+        final Promise<RaplaBuilder> preparedBuilder = initializeBuilder().thenApply((builder) -> {
+            // select and split the blocks before we switch to the event dispatch thread
+            builder.prepareBuild(getStartDate(), getEndDate());
+            return builder;
+        });
+        Promise<Void> result = preparedBuilder.thenAccept((builder) -> SwingUtilities.invokeLater(() ->
         {
             try {
-                update(builder);
+                updateIfChanged(builder);
             } catch (RaplaException e) {
                 PopupContext popupContext = new SwingPopupContext(view.getComponent(), null);
                 dialogUiFactory.showException(e, popupContext);
@@ -214,6 +223,7 @@ public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
             int minBlockWidth = getCalendarOptions().getMinBlockWidth();
             view.setMinBlockWidth(minBlockWidth);
         }
+        lastBuildKey = null;
         view.rebuild(builder);
         if (!view.isEditable())
         {
@@ -222,6 +232,40 @@ public abstract class AbstractRaplaSwingCalendar extends RaplaGUIComponent
         }
     }
 
+    /** rebuilds the view only if the displayed blocks or the view settings changed since the last update */
+    protected void updateIfChanged(RaplaBuilder builder) throws RaplaException
+    {
+        final List<Object> buildKey = createBuildKey(builder);
+        if (buildKey.equals(lastBuildKey))
+        {
+            getLogger().debug("Calendar view unchanged. Skipping rebuild.");
+            dateChooser.update();
+            return;
+        }
+        update(builder);
+        lastBuildKey = buildKey;
+    }
+
+    /** the displayed blocks and all view settings. Refreshes that change none of them don't rebuild the slot components of the view */
+    private List<Object> createBuildKey(RaplaBuilder builder) throws RaplaException
+    {
+        final List<Object> key = new ArrayList<Object>();
+        key.add(view.getStartDate());
+        key.add(view.getEndDate());
+        key.add(view.isEditable());
+        key.add(isPrintContext());
+        key.add(model.getNonEmptyTitle());
+        key.add(getPreferencesVersion(getFacade().getSystemPreferences()));
+        key.add(getPreferencesVersion(getFacade().getPreferences(getUser())));
+        key.addAll(builder.getBuildKey(builder.prepareBuild(getStartDate(), getEndDate())));
+        return key;
+    }
+
+    private static Date getPreferencesVersion(Preferences preferences)
+    {
+        return preferences != null ? preferences.getLastChanged() : null;
+    }
+
     private Promise<RaplaBuilder> initializeBuilder()
     {
         try {
@@ -1,6 +1,7 @@
 package org.rapla.plugin.archiver;
 
 import org.rapla.entities.configuration.RaplaConfiguration;
+import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.TypedComponentRole;
 import org.rapla.scheduler.Promise;
@@ -8,6 +9,9 @@ import org.rapla.scheduler.Promise;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import java.util.Date;
+import java.util.List;
 
 @Path("archiver")
 public interface ArchiverService
@@ -17,6 +21,8 @@ public interface ArchiverService
 
 	String REMOVE_OLDER_THAN_ENTRY = "remove-older-than";
 	String EXPORT = "export";
+	/** reservations that ended more than the configured days ago are moved to the archive */
+	String ARCHIVE_OLDER_THAN_ENTRY = "archive-older-than";
 	
 	@POST
 	Promise<Void> delete(Integer olderThanInDays);
@@ -28,4 +34,12 @@ public interface ArchiverService
 	@POST
 	@Path("restore")
 	Promise<Void> restore();
+	/** moves the reservations that ended before olderThanInDays into the archive and returns their number*/
+	@POST
+	@Path("archive")
+	Promise<Integer> archive(Integer olderThanInDays);
+	/** returns the archived reservations in the time range*/
+	@GET
+	@Path("archive")
+	Promise<List<ReservationImpl>> getArchivedReservations(@QueryParam("start") Date start, @QueryParam("end") Date end);
 }
@@ -4,6 +4,7 @@ import org.rapla.components.util.DateTools;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.facade.RaplaComponent;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.framework.RaplaException;
@@ -40,6 +41,8 @@ public class ArchiverServiceImpl  implements ArchiverService
     ImportExportManager importExportManager;
     @Inject
     Logger logger;
+    @Inject
+    ReservationArchive reservationArchive;
     private final HttpServletRequest request;
 
     @Inject
@@ -78,7 +81,7 @@ public class ArchiverServiceImpl  implements ArchiverService
             {
                 throw new RaplaException("Export not enabled");
             }
-            importExportManager.doExport();
+            importExportManager.doBackup();
         });
 	}
 
@@ -105,7 +108,7 @@ public class ArchiverServiceImpl  implements ArchiverService
 
     static public void delete(Integer removeOlderInDays, RaplaFacade raplaFacade, Logger logger) throws RaplaException
     {
-        Date endDate = new Date(raplaFacade.today().getTime() - removeOlderInDays * DateTools.MILLISECONDS_PER_DAY);
+        Date endDate = getEndDate(removeOlderInDays, raplaFacade);
         Promise<Collection<Reservation>> eventsPromise = raplaFacade.getReservations(null, null, endDate, null); 
         eventsPromise.thenAccept((events) ->
         {
@@ -133,7 +136,32 @@ public class ArchiverServiceImpl  implements ArchiverService
         });
     }
 
-    static private boolean isOlderThan( Reservation event, Date maxAllowedDate )
+    public Promise<Integer> archive(Integer archiveOlderInDays)
+    {
+        return scheduler.run(() -> checkAccess()).thenCompose((dummy) ->
+                reservationArchive.archive(getEndDate(archiveOlderInDays, raplaFacade)));
+    }
+
+    public Promise<List<ReservationImpl>> getArchivedReservations(Date start, Date end)
+    {
+        return scheduler.supply(() ->
+        {
+            checkAccess();
+            final List<ReservationImpl> result = new ArrayList<ReservationImpl>();
+            for (Reservation reservation : reservationArchive.getReservations(start, end))
+            {
+                result.add((ReservationImpl) reservation);
+            }
+            return result;
+        });
+    }
+
+    static Date getEndDate(Integer olderInDays, RaplaFacade raplaFacade)
+    {
+        return new Date(raplaFacade.today().getTime() - olderInDays * DateTools.MILLISECONDS_PER_DAY);
+    }
+
+    static boolean isOlderThan( Reservation event, Date maxAllowedDate )
 	{
         Appointment[] appointments = event.getAppointments();
         for ( int i=0;i<appointments.length;i++)
@@ -23,9 +23,11 @@ public class ArchiverServiceTask  implements ServerExtension
     final Logger logger;
     final RaplaFacade facade;
     final ImportExportManager importExportManager;
+    final ReservationArchive reservationArchive;
     Disposable schedule;
     @Inject
-	public ArchiverServiceTask(  CommandScheduler timer, final Logger logger, final RaplaFacade facade, final ImportExportManager importExportManager)
+	public ArchiverServiceTask(  CommandScheduler timer, final Logger logger, final RaplaFacade facade, final ImportExportManager importExportManager,
+            final ReservationArchive reservationArchive)
             throws RaplaInitializationException
     {
 
@@ -33,6 +35,7 @@ public class ArchiverServiceTask  implements ServerExtension
         this.logger = logger;
         this.facade = facade;
         this.importExportManager =importExportManager;
+        this.reservationArchive = reservationArchive;
     }
 
     @Override public void start()
@@ -49,10 +52,11 @@ public class ArchiverServiceTask  implements ServerExtension
         }
         final int days = config.getChild( ArchiverService.REMOVE_OLDER_THAN_ENTRY).getValueAsInteger(-20);
         final boolean export = config.getChild( ArchiverService.EXPORT).getValueAsBoolean(false);
-        if ( days != -20 || export)
+        final int archiveDays = config.getChild( ArchiverService.ARCHIVE_OLDER_THAN_ENTRY).getValueAsInteger(-20);
+        if ( days != -20 || export || archiveDays != -20)
         {
             // Call it each hour
-            schedule = timer.schedule(() -> doArchive(export, days), 0, DateTools.MILLISECONDS_PER_HOUR);
+            schedule = timer.schedule(() -> doArchive(export, days, archiveDays), 0, DateTools.MILLISECONDS_PER_HOUR);
         }
     }
     
@@ -64,15 +68,26 @@ public class ArchiverServiceTask  implements ServerExtension
         }
     }
 
-    private void doArchive(boolean export, int days)
+    private void doArchive(boolean export, int days, int archiveDays)
     {
         try
         {
             if ( export && ArchiverServiceImpl.isExportEnabled(facade))
             {
-                importExportManager.doExport();
+                importExportManager.doBackup();
             }
-            if ( days != -20 )
+            if ( archiveDays != -20 )
+            {
+                // delete after archiving, so both don't remove the same events
+                reservationArchive.archive(ArchiverServiceImpl.getEndDate(archiveDays, facade)).thenAccept((count) ->
+                {
+                    if ( days != -20 )
+                    {
+                        ArchiverServiceImpl.delete(days, facade, logger);
+                    }
+                }).exceptionally((ex) -> logger.error("Could not archive events ", ex));
+            }
+            else if ( days != -20 )
             {
                 ArchiverServiceImpl.delete(days,facade,logger);
             }
@@ -0,0 +1,287 @@
+package org.rapla.plugin.archiver.server;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.facade.RaplaComponent;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.rest.JsonParserWrapper;
+import org.rapla.scheduler.Promise;
+import org.rapla.server.internal.ServerContainerContext;
+import org.rapla.server.internal.ServerStorageSelector;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** Cold tier for old reservations. Reservations that ended before a cutoff are appended to gzip compressed partition files, one per year of their end,
+ * and then removed from the storage, so they are no longer held in the cache, checked for conflicts or sent to the clients.
+ * The index file keeps id, start and end of every archived reservation. It is held in memory, so a time range query only decompresses
+ * the partitions that contain matching reservations.
+ * A reservation that is archived twice, e.g. because the removal failed after the write, is stored twice. The last written version wins.
+ */
+@Singleton
+public class ReservationArchive
+{
+    static final String INDEX_FILE = "index.txt";
+    static final String PARTITION_PREFIX = "reservations-";
+    static final String PARTITION_SUFFIX = ".json.gz";
+    static final int STEP_SIZE = 100;
+
+    static class IndexEntry
+    {
+        final String id;
+        final long start;
+        final long end;
+        final String partition;
+
+        IndexEntry(String id, long start, long end, String partition)
+        {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.partition = partition;
+        }
+
+        boolean overlaps(Date start, Date end)
+        {
+            return (start == null || this.end > start.getTime()) && (end == null || this.start < end.getTime());
+        }
+    }
+
+    private final RaplaFacade facade;
+    private final Logger logger;
+    private final File directory;
+    private final JsonParserWrapper.JsonParser gson = JsonParserWrapper.defaultJson().get();
+    private Map<String, IndexEntry> index;
+
+    @Inject
+    public ReservationArchive(RaplaFacade facade, Logger logger, ServerContainerContext containerContext)
+    {
+        this(facade, logger, getDirectory(containerContext));
+    }
+
+    ReservationArchive(RaplaFacade facade, Logger logger, File directory)
+    {
+        this.facade = facade;
+        this.logger = logger.getChildLogger("archiver");
+        this.directory = directory;
+    }
+
+    private static File getDirectory(ServerContainerContext containerContext)
+    {
+        final String archiveDir = containerContext.getSetting(ServerStorageSelector.ARCHIVE_DIRECTORY);
+        if (archiveDir != null && !archiveDir.trim().isEmpty())
+        {
+            return new File(archiveDir.trim());
+        }
+        final String mainFilesource = containerContext.getMainFilesource();
+        final File dataFile = new File(mainFilesource != null ? mainFilesource : "data/data.xml");
+        return new File(dataFile.getAbsoluteFile().getParentFile(), "archive");
+    }
+
+    /** moves all reservations that ended before the cutoff into the archive and returns the number of archived reservations */
+    public Promise<Integer> archive(Date cutoff)
+    {
+        final Promise<Collection<Reservation>> eventsPromise = facade.getReservations(null, null, cutoff, null);
+        return eventsPromise.thenApply((events) ->
+        {
+            final List<Reservation> toArchive = new ArrayList<Reservation>();
+            for (Reservation event : events)
+            {
+                if (!RaplaComponent.isTemplate(event) && event.getMaxEnd() != null && ArchiverServiceImpl.isOlderThan(event, cutoff))
+                {
+                    toArchive.add(event);
+                }
+            }
+            return archive(toArchive);
+        });
+    }
+
+    /** writes the reservations in blocks to the archive and removes each block from the storage after it is written */
+    synchronized int archive(Collection<Reservation> reservations) throws RaplaException
+    {
+        if (reservations.isEmpty())
+        {
+            return 0;
+        }
+        loadIndex();
+        logger.info("Archiving " + reservations.size() + " old events.");
+        final Reservation[] eventsToArchive = reservations.toArray(Reservation.RESERVATION_ARRAY);
+        for (int i = 0; i < eventsToArchive.length; i += STEP_SIZE)
+        {
+            int blockSize = Math.min(eventsToArchive.length - i, STEP_SIZE);
+            Reservation[] eventBlock = new Reservation[blockSize];
+            System.arraycopy(eventsToArchive, i, eventBlock, 0, blockSize);
+            try
+            {
+                write(eventBlock);
+            }
+            catch (IOException e)
+            {
+                throw new RaplaException("Could not write archive " + directory + ": " + e.getMessage(), e);
+            }
+            facade.removeObjects(eventBlock);
+        }
+        return eventsToArchive.length;
+    }
+
+    /** returns the archived reservations that overlap the time range. The reservations are read only and not part of the storage,
+     * so references to removed resources or users can not be resolved. Pass null for an open start or end */
+    synchronized public Collection<Reservation> getReservations(Date start, Date end) throws RaplaException
+    {
+        loadIndex();
+        final Map<String, Set<String>> idsByPartition = new LinkedHashMap<String, Set<String>>();
+        for (IndexEntry entry : index.values())
+        {
+            if (entry.overlaps(start, end))
+            {
+                idsByPartition.computeIfAbsent(entry.partition, (key) -> new HashSet<String>()).add(entry.id);
+            }
+        }
+        final Map<String, String> jsonById = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Set<String>> partition : idsByPartition.entrySet())
+        {
+            final Set<String> ids = partition.getValue();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new GZIPInputStream(new FileInputStream(new File(directory, partition.getKey()))), StandardCharsets.UTF_8)))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    final int tab = line.indexOf('\t');
+                    if (tab > 0 && ids.contains(line.substring(0, tab)))
+                    {
+                        jsonById.put(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RaplaException("Could not read archive " + partition.getKey() + ": " + e.getMessage(), e);
+            }
+        }
+        final List<Reservation> result = new ArrayList<Reservation>(jsonById.size());
+        for (String json : jsonById.values())
+        {
+            final ReservationImpl reservation = gson.fromJson(json, ReservationImpl.class);
+            reservation.setResolver(facade.getOperator());
+            reservation.setReadOnly();
+            result.add(reservation);
+        }
+        return result;
+    }
+
+    /** returns the number of archived reservations */
+    synchronized public int size() throws RaplaException
+    {
+        loadIndex();
+        return index.size();
+    }
+
+    private void write(Reservation[] events) throws IOException
+    {
+        if (!directory.exists() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create directory " + directory);
+        }
+        final Map<String, List<Reservation>> byPartition = new LinkedHashMap<String, List<Reservation>>();
+        for (Reservation event : events)
+        {
+            byPartition.computeIfAbsent(getPartition(event), (key) -> new ArrayList<Reservation>()).add(event);
+        }
+        final List<IndexEntry> newEntries = new ArrayList<IndexEntry>();
+        for (Map.Entry<String, List<Reservation>> partition : byPartition.entrySet())
+        {
+            // every block is appended as a new gzip member, GZIPInputStream reads the concatenated members as one stream
+            final FileOutputStream out = new FileOutputStream(new File(directory, partition.getKey()), true);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8)))
+            {
+                for (Reservation event : partition.getValue())
+                {
+                    final String id = event.getId();
+                    writer.write(id);
+                    writer.write('\t');
+                    writer.write(gson.toJson(event));
+                    writer.write('\n');
+                    newEntries.add(new IndexEntry(id, event.getFirstDate().getTime(), event.getMaxEnd().getTime(), partition.getKey()));
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+        }
+        final FileOutputStream out = new FileOutputStream(new File(directory, INDEX_FILE), true);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))
+        {
+            for (IndexEntry entry : newEntries)
+            {
+                writer.write(entry.id + "\t" + entry.start + "\t" + entry.end + "\t" + entry.partition + "\n");
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        for (IndexEntry entry : newEntries)
+        {
+            index.put(entry.id, entry);
+        }
+    }
+
+    private static String getPartition(Reservation event)
+    {
+        return PARTITION_PREFIX + DateTools.getYear(event.getMaxEnd()) + PARTITION_SUFFIX;
+    }
+
+    private void loadIndex() throws RaplaException
+    {
+        if (index != null)
+        {
+            return;
+        }
+        final Map<String, IndexEntry> loaded = new HashMap<String, IndexEntry>();
+        final File indexFile = new File(directory, INDEX_FILE);
+        if (indexFile.exists())
+        {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8)))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    final String[] parts = line.split("\t");
+                    if (parts.length != 4)
+                    {
+                        logger.warn("Ignoring invalid archive index entry " + line);
+                        continue;
+                    }
+                    loaded.put(parts[0], new IndexEntry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+                }
+            }
+            catch (IOException | NumberFormatException e)
+            {
+                throw new RaplaException("Could not read archive index " + indexFile + ": " + e.getMessage(), e);
+            }
+        }
+        index = loaded;
+    }
+}
@@ -22,6 +22,10 @@ public interface ExchangeConnectorConfig
 	
 	TypedComponentRole<Integer> SYNCING_PERIOD_PAST = new TypedComponentRole<Integer>("exch-sync-past");
 	Integer DEFAULT_SYNCING_PERIOD_PAST = 30;
+
+	/** number of users that are synchronized with exchange at the same time */
+	TypedComponentRole<Integer> EXCHANGE_SYNC_PARALLELISM = new TypedComponentRole<Integer>("exchange.sync.parallelism");
+	Integer DEFAULT_EXCHANGE_SYNC_PARALLELISM = 4;
 	
 //	public static final TypedComponentRole<Integer> SYNCING_PERIOD_FUTURE = new TypedComponentRole<Integer>("exch-sync-future");
 //	public static final Integer DEFAULT_SYNCING_PERIOD_FUTURE = 300;
@@ -102,6 +106,7 @@ String ENABLED_BY_ADMIN_STRING = "exchange_connector_enabled_by_admin";
 		    {
 	            load(serverConfig,EXCHANGE_WS_FQDN,DEFAULT_EXCHANGE_WS_FQDN);
 		        loadInt(serverConfig,SYNCING_PERIOD_PAST,DEFAULT_SYNCING_PERIOD_PAST);
+		        loadInt(serverConfig,EXCHANGE_SYNC_PARALLELISM,DEFAULT_EXCHANGE_SYNC_PARALLELISM);
 		        //loadInt(config,SYNCING_PERIOD_FUTURE,DEFAULT_SYNCING_PERIOD_FUTURE);
 		        load(serverConfig,EXCHANGE_APPOINTMENT_CATEGORY,DEFAULT_EXCHANGE_APPOINTMENT_CATEGORY);
 		        load(serverConfig,EXCHANGE_TIMEZONE,DEFAULT_EXCHANGE_TIMEZONE);
@@ -167,6 +172,11 @@ String ENABLED_BY_ADMIN_STRING = "exchange_connector_enabled_by_admin";
                 return get(SYNCING_PERIOD_PAST).intValue();
             }
             
+            public int getSyncParallelism()
+            {
+                return get(EXCHANGE_SYNC_PARALLELISM).intValue();
+            }
+            
             public boolean isEnabled()
             {
                 return get(ENABLED_BY_ADMIN);
@@ -176,4 +186,5 @@ String ENABLED_BY_ADMIN_STRING = "exchange_connector_enabled_by_admin";
     String getExchangeTimezone();
     String getAppointmentCategory();
     int getSyncPeriodPast();
+    int getSyncParallelism();
 }
@@ -209,7 +209,7 @@ public class ExchangeAppointmentStorage
     //		}
     //	}
     //	
-    public void storeAndRemove(Collection<SynchronizationTask> toStore, Collection<SynchronizationTask> toRemove) throws RaplaException
+    synchronized public void storeAndRemove(Collection<SynchronizationTask> toStore, Collection<SynchronizationTask> toRemove) throws RaplaException
     {
         RaplaLock.WriteLock lock = lockManager.writeLock(60);
         try
@@ -72,6 +72,7 @@ public class SynchronisationManager implements ServerExtension
 {
     private static final long SCHEDULE_PERIOD = DateTools.MILLISECONDS_PER_HOUR * 2;
     private static final long VALID_LOCK_DURATION = DateTools.MILLISECONDS_PER_MINUTE * 10;
+    private static final long LOCK_SAFETY_MARGIN = DateTools.MILLISECONDS_PER_MINUTE * 2;
     private static final String EXCHANGE_LOCK_ID = "EXCHANGE";
     private static final TypedComponentRole<Boolean> RETRY_USER = new TypedComponentRole<Boolean>("org.rapla.plugin.exchangconnector.retryUser");
     private static final TypedComponentRole<Boolean> RESYNC_USER = new TypedComponentRole<Boolean>("org.rapla.plugin.exchangconnector.resyncUser");
@@ -94,6 +95,7 @@ public class SynchronisationManager implements ServerExtension
     CommandScheduler scheduler;
     private final Set<ExchangeConfigExtensionPoint> configExtensions;
     private final MailToUserImpl mailToUserInterface;
+    private final SynchronizationExecutor executor;
     Disposable schedule;
 
     @Inject
@@ -119,6 +121,7 @@ public class SynchronisationManager implements ServerExtension
         exchangeTimezoneId = config.getExchangeTimezone();
         exchangeAppointmentCategory = config.getAppointmentCategory();
         syncPeriodPast = config.getSyncPeriodPast();
+        executor = new SynchronizationExecutor(logger.getChildLogger("exchange"), config.getSyncParallelism());
 
         this.appointmentStorage = appointmentStorage;
 
@@ -278,7 +281,7 @@ public class SynchronisationManager implements ServerExtension
     {
         appointmentStorage.refresh();
         List<Preferences> preferencesToStore = new ArrayList<Preferences>();
-        Collection<SynchronizationTask> tasks = new ArrayList<SynchronizationTask>();
+        Collection<SynchronizationTask> tasks = new LinkedHashSet<SynchronizationTask>();
         Collection<User> resynchronizeUsers = new ArrayList<>();
         //lock
         for (UpdateOperation operation : evt.getOperations())
@@ -456,7 +459,14 @@ public class SynchronisationManager implements ServerExtension
         {
             Collection<SynchronizationTask> toRemove = Collections.emptyList();
             appointmentStorage.storeAndRemove(tasks, toRemove);
-            execute(tasks);
+        }
+        // continue with the tasks that were deferred by a previous run, e.g. because the exchange lock was about to expire
+        final Collection<SynchronizationTask> deferredTasks = getDeferredTasks(tasks);
+        if (tasks.size() > 0 || deferredTasks.size() > 0)
+        {
+            final Collection<SynchronizationTask> allTasks = new LinkedHashSet<SynchronizationTask>(tasks);
+            allTasks.addAll(deferredTasks);
+            execute(allTasks);
             if(!resynchronizeUsers.isEmpty())
             {
                 for (User user : resynchronizeUsers)
@@ -500,6 +510,20 @@ public class SynchronisationManager implements ServerExtension
         }
     }
 
+    private Collection<SynchronizationTask> getDeferredTasks(Collection<SynchronizationTask> tasks) throws RaplaException
+    {
+        final Collection<SynchronizationTask> result = new ArrayList<SynchronizationTask>();
+        for (SynchronizationTask task : appointmentStorage.getAllTasks())
+        {
+            // failed tasks have retries and are only processed again on retry
+            if (task.getStatus().isUnsynchronized() && task.getRetries() == 0 && !tasks.contains(task))
+            {
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
     // is called when the calendarModel is changed (e.g. store of preferences), not when the reservation changes
     private Collection<SynchronizationTask> updateTasksForUser(User user) throws RaplaException
     {
@@ -631,182 +655,259 @@ public class SynchronisationManager implements ServerExtension
     }
 
     private SynchronizeResult processTasks(Collection<SynchronizationTask> tasks, boolean skipNotification) throws RaplaException
+    {
+        // stop starting new users before the exchange lock expires, the remaining tasks are processed in the next run
+        final long deadline = System.currentTimeMillis() + VALID_LOCK_DURATION - LOCK_SAFETY_MARGIN;
+        return executor.execute(tasks, (userTasks) -> processUserTasks(userTasks, skipNotification), deadline);
+    }
+
+    /** processes the tasks of one user with one connection per exchange server and stores the result as checkpoint */
+    private SynchronizeResult processUserTasks(List<SynchronizationTask> userTasks, boolean skipNotification) throws RaplaException
     {
         final Collection<SynchronizationTask> toStore = new HashSet<SynchronizationTask>();
         final Collection<SynchronizationTask> toRemove = new HashSet<SynchronizationTask>();
-
+        final List<SynchronizationTask> toDelete = new ArrayList<SynchronizationTask>();
         final SynchronizeResult result = new SynchronizeResult();
-        for (SynchronizationTask task : tasks)
+        final ReferenceInfo<User> userId = userTasks.get(0).getUserRef();
+        final User user;
+        try
         {
-            final ReferenceInfo<User> userId = new ReferenceInfo<>(task.getUserId(), User.class);
-            final ReferenceInfo<Appointment> appointmentId = new ReferenceInfo<>(task.getAppointmentId(), Appointment.class);
-            final Appointment appointment;
-            final User user;
-            final SyncStatus beforeStatus = task.getStatus();
-            try
+            user = facade.resolve(userId);
+        }
+        catch (EntityNotFoundException e)
+        {
+            logger.info("Removing synchronize tasks of user " + userId + " due to " + e.getMessage());
+            appointmentStorage.storeAndRemove(Collections.emptyList(), userTasks);
+            return result;
+        }
+        Collection<EWSConnector> connectors = null;
+        boolean synchronizedTask = false;
+        try
+        {
+            for (SynchronizationTask task : userTasks)
             {
+                final ReferenceInfo<Appointment> appointmentId = new ReferenceInfo<>(task.getAppointmentId(), Appointment.class);
+                final SyncStatus beforeStatus = task.getStatus();
                 // we don't resolve the appointment if we delete
-                appointment = beforeStatus != SyncStatus.toDelete ? facade.tryResolve(appointmentId) : null;
-                user = facade.resolve(userId);
-            }
-            catch (EntityNotFoundException e)
-            {
-                logger.info("Removing synchronize " + task + " due to " + e.getMessage());
-                toRemove.add(task);
-                continue;
-            }
-            if ((beforeStatus == SyncStatus.deleted) || (appointment != null && !isInSyncInterval(appointment)))
-            {
-                toRemove.add(task);
-                continue;
-            }
-            if (beforeStatus == SyncStatus.synched)
-            {
-                continue;
-            }
-            final Collection<AppointmentSynchronizer> workers;
-            try
-            {
-                workers = createAppoinmentSynchronizer(skipNotification, task, appointment, user);
-                if (workers == null)
+                final Appointment appointment = beforeStatus != SyncStatus.toDelete ? facade.tryResolve(appointmentId) : null;
+                if ((beforeStatus == SyncStatus.deleted) || (appointment != null && !isInSyncInterval(appointment)))
+                {
+                    toRemove.add(task);
+                    continue;
+                }
+                if (beforeStatus == SyncStatus.synched)
+                {
+                    continue;
+                }
+                try
+                {
+                    if (connectors == null)
+                    {
+                        connectors = createConnectors(user);
+                    }
+                }
+                catch (RaplaException ex)
+                {
+                    String message = "Internal error while processing SynchronizationTask " + task + ". Ignoring task. ";
+                    task.increaseRetries(message);
+                    logger.error(message, ex);
+                    continue;
+                }
+                if (connectors == null)
                 {
                     logger.info("User no longer connected to Exchange ");
                     toRemove.add(task);
                     continue;
                 }
-            }
-            catch (RaplaException ex)
-            {
-                String message = "Internal error while processing SynchronizationTask " + task + ". Ignoring task. ";
-                task.increaseRetries(message);
-                logger.error(message, ex);
-                continue;
-            }
-            try
-            {
-                for (AppointmentSynchronizer worker : workers)
+                // deletes are sent in one request per exchange server after all updates
+                if (beforeStatus == SyncStatus.toDelete)
+                {
+                    toDelete.add(task);
+                    continue;
+                }
+                try
                 {
-                    worker.execute();
+                    for (AppointmentSynchronizer worker : createAppoinmentSynchronizer(skipNotification, task, appointment, user, connectors))
+                    {
+                        worker.execute();
+                    }
+                    synchronizedTask = true;
                 }
-                final Preferences userPreferences = facade.getPreferences(user);
-                if(userPreferences.getEntryAsBoolean(PASSWORD_MAIL_USER, false))
+                catch (Exception e)
                 {
-                    final Preferences userPreferencesEdit = facade.edit(userPreferences);
-                    userPreferencesEdit.putEntry(PASSWORD_MAIL_USER, false);
-                    facade.store(userPreferencesEdit);
+                    handleSyncError(task, user, e, result, toStore);
                 }
+                countStatusChange(task, beforeStatus, result, toStore, toRemove);
             }
-            catch (Exception e)
+            if (!toDelete.isEmpty())
             {
-                String message = e.getMessage();
-                Throwable cause = e.getCause();
-                if (cause != null && cause.getCause() != null)
+                try
                 {
-                    cause = cause.getCause();
+                    final Logger logger = this.logger.getChildLogger("exchange");
+                    for (EWSConnector connector : connectors)
+                    {
+                        AppointmentSynchronizer.delete(logger, connector, toDelete);
+                    }
+                    for (SynchronizationTask task : toDelete)
+                    {
+                        task.setStatus(SyncStatus.deleted);
+                    }
+                    synchronizedTask = true;
                 }
-                if (cause instanceof HttpErrorException)
+                catch (Exception e)
                 {
-                    int httpErrorCode = ((HttpErrorException) cause).getHttpErrorCode();
-                    if (httpErrorCode == 401)
+                    for (SynchronizationTask task : toDelete)
                     {
-                        message = "Exchangezugriff verweigert. Ist das eingetragenen Exchange Passwort noch aktuell?";
-                        final Preferences preferences = facade.getPreferences(user);
-                        final Boolean mailSent = preferences.getEntryAsBoolean(PASSWORD_MAIL_USER, false);
-                        if(!mailSent)
-                        {
-                            final Preferences editPreferences = facade.edit(preferences);
-                            editPreferences.putEntry(PASSWORD_MAIL_USER, true);
-                            facade.store(editPreferences);
-                            try
-                            {
-                                mailToUserInterface.sendMail(user.getUsername(), "Rapla Exchangezugriff", message);
-                            }
-                            catch(Throwable me)
-                            {
-                                logger.error("Error sending password mail to user " + user.getUsername() + ": " + me.getMessage(), me);
-                            }
-                        }
+                        handleSyncError(task, user, e, result, toStore);
                     }
                 }
-                if (cause instanceof IOException)
+                for (SynchronizationTask task : toDelete)
                 {
-                    message = "Keine Verbindung zum Exchange " + cause.getMessage();
+                    countStatusChange(task, SyncStatus.toDelete, result, toStore, toRemove);
                 }
-
-                //if ( message != null && message.indexOf("Connection not estab") >=0)
-
-                String toString = getAppointmentMessage(task);
-
-                if (message != null)
+            }
+            if (synchronizedTask)
+            {
+                final Preferences userPreferences = facade.getPreferences(user);
+                if (userPreferences.getEntryAsBoolean(PASSWORD_MAIL_USER, false))
                 {
-                    message = message.replaceAll("The request failed. ", "");
-                    message = message.replaceAll("The request failed.", "");
+                    final Preferences userPreferencesEdit = facade.edit(userPreferences);
+                    userPreferencesEdit.putEntry(PASSWORD_MAIL_USER, false);
+                    facade.store(userPreferencesEdit);
                 }
-                else
+            }
+        }
+        finally
+        {
+            if (connectors != null)
+            {
+                for (EWSConnector connector : connectors)
                 {
-                    message = "Synchronisierungsfehler mit exchange " + e.toString();
+                    connector.close();
                 }
-                task.increaseRetries(message);
-                result.errorMessages.add(new SyncError(toString, message));
-                logger.warn("Can't synchronize " + task + " " + toString + " " + message);
-                result.open++;
-                toStore.add(task);
-
             }
-            SyncStatus after = task.getStatus();
-            if (after == SyncStatus.deleted && beforeStatus != SyncStatus.deleted)
+            // checkpoint: the progress of the user is stored even if other users are not finished
+            if (!toStore.isEmpty() || !toRemove.isEmpty())
             {
-                toRemove.add(task);
-                result.removed++;
+                appointmentStorage.storeAndRemove(toStore, toRemove);
             }
-            if (after == SyncStatus.synched && beforeStatus != SyncStatus.synched)
+        }
+        return result;
+    }
+
+    private void countStatusChange(SynchronizationTask task, SyncStatus beforeStatus, SynchronizeResult result, Collection<SynchronizationTask> toStore,
+            Collection<SynchronizationTask> toRemove)
+    {
+        SyncStatus after = task.getStatus();
+        if (after == SyncStatus.deleted && beforeStatus != SyncStatus.deleted)
+        {
+            toRemove.add(task);
+            result.removed++;
+        }
+        if (after == SyncStatus.synched && beforeStatus != SyncStatus.synched)
+        {
+            toStore.add(task);
+            result.changed++;
+        }
+    }
+
+    private void handleSyncError(SynchronizationTask task, User user, Exception e, SynchronizeResult result, Collection<SynchronizationTask> toStore)
+            throws RaplaException
+    {
+        String message = e.getMessage();
+        Throwable cause = e.getCause();
+        if (cause != null && cause.getCause() != null)
+        {
+            cause = cause.getCause();
+        }
+        if (cause instanceof HttpErrorException)
+        {
+            int httpErrorCode = ((HttpErrorException) cause).getHttpErrorCode();
+            if (httpErrorCode == 401)
             {
-                toStore.add(task);
-                result.changed++;
+                message = "Exchangezugriff verweigert. Ist das eingetragenen Exchange Passwort noch aktuell?";
+                final Preferences preferences = facade.getPreferences(user);
+                final Boolean mailSent = preferences.getEntryAsBoolean(PASSWORD_MAIL_USER, false);
+                if(!mailSent)
+                {
+                    final Preferences editPreferences = facade.edit(preferences);
+                    editPreferences.putEntry(PASSWORD_MAIL_USER, true);
+                    facade.store(editPreferences);
+                    try
+                    {
+                        mailToUserInterface.sendMail(user.getUsername(), "Rapla Exchangezugriff", message);
+                    }
+                    catch(Throwable me)
+                    {
+                        logger.error("Error sending password mail to user " + user.getUsername() + ": " + me.getMessage(), me);
+                    }
+                }
             }
         }
-        if (!toStore.isEmpty() || !toRemove.isEmpty())
+        if (cause instanceof IOException)
         {
-            appointmentStorage.storeAndRemove(toStore, toRemove);
+            message = "Keine Verbindung zum Exchange " + cause.getMessage();
         }
-        return result;
+
+        //if ( message != null && message.indexOf("Connection not estab") >=0)
+
+        String toString = getAppointmentMessage(task);
+
+        if (message != null)
+        {
+            message = message.replaceAll("The request failed. ", "");
+            message = message.replaceAll("The request failed.", "");
+        }
+        else
+        {
+            message = "Synchronisierungsfehler mit exchange " + e.toString();
+        }
+        task.increaseRetries(message);
+        result.errorMessages.add(new SyncError(toString, message));
+        logger.warn("Can't synchronize " + task + " " + toString + " " + message);
+        result.open++;
+        toStore.add(task);
     }
 
-    private Collection<AppointmentSynchronizer> createAppoinmentSynchronizer(boolean skipNotification, SynchronizationTask task, final Appointment appointment,
-            final User user) throws RaplaException
+    /** returns a connector for each exchange server of the user or null if the user is not connected to exchange */
+    private Collection<EWSConnector> createConnectors(User user) throws RaplaException
     {
-        final Collection<AppointmentSynchronizer> workers;
         final LoginInfo secrets = keyStorage.getSecrets(user, ExchangeConnectorServerPlugin.EXCHANGE_USER_STORAGE);
-        if (secrets != null)
+        if (secrets == null)
         {
-            workers = new ArrayList<>();
-            final String username = secrets.login;
-            final String password = secrets.secret;
-            final boolean notificationMail;
-            if (skipNotification)
-            {
-                notificationMail = false;
-            }
-            else
-            {
-                Preferences preferences = facade.getPreferences(user);
-                notificationMail = preferences.getEntryAsBoolean(ExchangeConnectorConfig.EXCHANGE_SEND_INVITATION_AND_CANCELATION,
-                        ExchangeConnectorConfig.DEFAULT_EXCHANGE_SEND_INVITATION_AND_CANCELATION);
-            }
-            final Logger logger = this.logger.getChildLogger("exchange");
-            final Locale locale = i18n.getLocale();
-            final Collection<String> exchangeUrls = extractExchangeUrls(user);
-            for (String exchangeUrl : exchangeUrls)
-            {
-                final AppointmentSynchronizer worker = new AppointmentSynchronizer(logger, converter, exchangeUrl, exchangeTimezoneId, exchangeAppointmentCategory, user, username, password,
-                        notificationMail, task, appointment, locale);
-                workers.add(worker);
-                
-            }
+            return null;
+        }
+        final Logger logger = this.logger.getChildLogger("exchange");
+        final Collection<EWSConnector> connectors = new ArrayList<>();
+        for (String exchangeUrl : extractExchangeUrls(user))
+        {
+            connectors.add(AppointmentSynchronizer.createConnector(logger, exchangeUrl, secrets.login, secrets.secret));
+        }
+        return connectors;
+    }
+
+    private Collection<AppointmentSynchronizer> createAppoinmentSynchronizer(boolean skipNotification, SynchronizationTask task, final Appointment appointment,
+            final User user, Collection<EWSConnector> connectors) throws RaplaException
+    {
+        final Collection<AppointmentSynchronizer> workers = new ArrayList<>();
+        final boolean notificationMail;
+        if (skipNotification)
+        {
+            notificationMail = false;
         }
         else
         {
-            workers = null;
+            Preferences preferences = facade.getPreferences(user);
+            notificationMail = preferences.getEntryAsBoolean(ExchangeConnectorConfig.EXCHANGE_SEND_INVITATION_AND_CANCELATION,
+                    ExchangeConnectorConfig.DEFAULT_EXCHANGE_SEND_INVITATION_AND_CANCELATION);
+        }
+        final Logger logger = this.logger.getChildLogger("exchange");
+        final Locale locale = i18n.getLocale();
+        for (EWSConnector connector : connectors)
+        {
+            final AppointmentSynchronizer worker = new AppointmentSynchronizer(logger, converter, connector, exchangeTimezoneId, exchangeAppointmentCategory, user,
+                    notificationMail, task, appointment, locale);
+            workers.add(worker);
         }
         return workers;
     }
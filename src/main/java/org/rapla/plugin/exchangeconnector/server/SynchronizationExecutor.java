@@ -0,0 +1,176 @@
+package org.rapla.plugin.exchangeconnector.server;
+
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.exchangeconnector.SynchronizeResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes synchronization tasks partitioned by user. The partitions run concurrently on at most parallelism threads,
+ * the tasks of one user are processed by a single thread, so they can share the connection to the users mailbox.
+ * Each partition stores its own progress, so a run that is stopped at the deadline (e.g. before the exchange lock expires)
+ * leaves the remaining tasks unprocessed for the next run instead of restarting from zero.
+ */
+class SynchronizationExecutor
+{
+    /** processes the tasks of one user and stores the changed tasks */
+    interface PartitionProcessor
+    {
+        SynchronizeResult process(List<SynchronizationTask> userTasks) throws RaplaException;
+    }
+
+    /** throughput of a synchronization run */
+    static class Statistics
+    {
+        final int users;
+        final int processedTasks;
+        final int deferredTasks;
+        final int failedUsers;
+        final long duration;
+
+        Statistics(int users, int processedTasks, int deferredTasks, int failedUsers, long duration)
+        {
+            this.users = users;
+            this.processedTasks = processedTasks;
+            this.deferredTasks = deferredTasks;
+            this.failedUsers = failedUsers;
+            this.duration = duration;
+        }
+
+        double getTasksPerSecond()
+        {
+            return duration > 0 ? processedTasks * 1000.0 / duration : processedTasks;
+        }
+
+        public String toString()
+        {
+            return "Synchronized " + processedTasks + " tasks of " + users + " users in " + duration + " ms (" + Math.round(getTasksPerSecond())
+                    + " tasks/s). Deferred tasks: " + deferredTasks + ", failed users: " + failedUsers;
+        }
+    }
+
+    private final Logger logger;
+    private final int parallelism;
+    private volatile Statistics lastStatistics;
+
+    SynchronizationExecutor(Logger logger, int parallelism)
+    {
+        this.logger = logger;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** processes the partitions of the tasks. Partitions that have not started before the deadline are skipped */
+    SynchronizeResult execute(Collection<SynchronizationTask> tasks, PartitionProcessor processor, long deadline) throws RaplaException
+    {
+        final long start = System.currentTimeMillis();
+        final Map<String, List<SynchronizationTask>> partitions = partition(tasks);
+        final SynchronizeResult result = new SynchronizeResult();
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger deferred = new AtomicInteger();
+        int failedUsers = 0;
+        final int threadCount = Math.min(parallelism, partitions.size());
+        if (threadCount > 0)
+        {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            final ExecutorService executorService = Executors.newFixedThreadPool(threadCount, (runnable) ->
+            {
+                final Thread thread = new Thread(runnable, "rapla-exchange-sync-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try
+            {
+                final List<Future<SynchronizeResult>> futures = new ArrayList<>();
+                for (List<SynchronizationTask> userTasks : partitions.values())
+                {
+                    futures.add(executorService.submit(() ->
+                    {
+                        if (System.currentTimeMillis() > deadline)
+                        {
+                            deferred.addAndGet(userTasks.size());
+                            return null;
+                        }
+                        final SynchronizeResult userResult = processor.process(userTasks);
+                        processed.addAndGet(userTasks.size());
+                        return userResult;
+                    }));
+                }
+                for (Future<SynchronizeResult> future : futures)
+                {
+                    try
+                    {
+                        final SynchronizeResult userResult = future.get();
+                        if (userResult != null)
+                        {
+                            merge(result, userResult);
+                        }
+                    }
+                    catch (ExecutionException e)
+                    {
+                        failedUsers++;
+                        final Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        logger.error("Could not synchronize user tasks: " + cause.getMessage(), cause);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RaplaException("Exchange synchronization interrupted", e);
+            }
+            finally
+            {
+                executorService.shutdownNow();
+            }
+        }
+        final Statistics statistics = new Statistics(partitions.size(), processed.get(), deferred.get(), failedUsers, System.currentTimeMillis() - start);
+        lastStatistics = statistics;
+        if (deferred.get() > 0)
+        {
+            logger.warn(statistics.toString());
+        }
+        else
+        {
+            logger.info(statistics.toString());
+        }
+        return result;
+    }
+
+    Statistics getLastStatistics()
+    {
+        return lastStatistics;
+    }
+
+    int getParallelism()
+    {
+        return parallelism;
+    }
+
+    static Map<String, List<SynchronizationTask>> partition(Collection<SynchronizationTask> tasks)
+    {
+        final Map<String, List<SynchronizationTask>> result = new LinkedHashMap<>();
+        for (SynchronizationTask task : tasks)
+        {
+            result.computeIfAbsent(task.getUserId(), (userId) -> new ArrayList<>()).add(task);
+        }
+        return result;
+    }
+
+    private static void merge(SynchronizeResult result, SynchronizeResult userResult)
+    {
+        result.changed += userResult.changed;
+        result.removed += userResult.removed;
+        result.open += userResult.open;
+        result.errorMessages.addAll(userResult.errorMessages);
+    }
+}
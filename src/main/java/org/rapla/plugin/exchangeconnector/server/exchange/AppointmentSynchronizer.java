@@ -118,21 +118,35 @@ public class AppointmentSynchronizer
     public AppointmentSynchronizer(Logger logger, TimeZoneConverter converter, final String url, final String exchangeTimezoneId,
             final String exchangeAppointmentCategory, User user, String exchangeUsername, String exchangePassword, boolean sendNotificationMail,
             SynchronizationTask appointmentTask, Appointment appointment, Locale locale) throws RaplaException
+    {
+        this(logger, converter, createConnector(logger, url, exchangeUsername, exchangePassword), exchangeTimezoneId, exchangeAppointmentCategory, user,
+                sendNotificationMail, appointmentTask, appointment, locale);
+    }
+
+    /** creates a synchronizer that uses the passed connector, so the synchronizers of one mailbox can share the connection */
+    public AppointmentSynchronizer(Logger logger, TimeZoneConverter converter, EWSConnector ewsConnector, final String exchangeTimezoneId,
+            final String exchangeAppointmentCategory, User user, boolean sendNotificationMail, SynchronizationTask appointmentTask, Appointment appointment,
+            Locale locale)
     {
         this.sendNotificationMail = sendNotificationMail;
         this.logger = logger;
         this.raplaUser = user;
         this.locale = locale;
-        WebCredentials credentials = new WebCredentials(exchangeUsername, exchangePassword);
         timeZoneConverter = converter;
         this.raplaAppointment = appointment;
         this.appointmentTask = appointmentTask;
         this.exchangeTimezoneId = exchangeTimezoneId;
         this.exchangeAppointmentCategory = exchangeAppointmentCategory;
+        this.ewsConnector = ewsConnector;
+    }
+
+    public static EWSConnector createConnector(Logger logger, final String url, String exchangeUsername, String exchangePassword) throws RaplaException
+    {
+        WebCredentials credentials = new WebCredentials(exchangeUsername, exchangePassword);
         try
         {
             final Logger ewsLogger = logger.getChildLogger("webservice");
-            ewsConnector = new EWSConnector(url, credentials, ewsLogger);
+            return new EWSConnector(url, credentials, ewsLogger);
             //            final PropertySet propertySet = new PropertySet(RAPLA_ID_PROPERTY_DEFINITION);
             //            final ExchangeService service = ewsConnector.getService();
             //            final Folder folder = Folder.bind(service, WellKnownFolderName.Calendar, propertySet);
@@ -146,6 +160,55 @@ public class AppointmentSynchronizer
         }
     }
 
+    /** Deletes the exchange appointments of the delete tasks in one request. Errors of single appointments are logged and ignored like in {@link #execute()}.
+     * The status of the tasks is not changed, as the caller may delete them from more than one exchange server.
+     * @throws RaplaException if the exchange server could not be reached
+     */
+    static public void delete(Logger logger, EWSConnector ewsConnector, Collection<SynchronizationTask> deleteTasks) throws RaplaException
+    {
+        final Logger updateLogger = logger.getChildLogger("exchangeupdate");
+        final long time = System.currentTimeMillis();
+        final List<ItemId> itemIds = new ArrayList<ItemId>();
+        try
+        {
+            ewsConnector.test();
+            ExchangeService service = ewsConnector.getService();
+            for (SynchronizationTask task : deleteTasks)
+            {
+                try
+                {
+                    microsoft.exchange.webservices.data.core.service.item.Appointment exchangeAppointment = getExchangeAppointmentByRaplaId(service,
+                            task.getAppointmentId());
+                    if (exchangeAppointment != null)
+                    {
+                        itemIds.add(exchangeAppointment.getId());
+                    }
+                }
+                catch (ServiceResponseException e)
+                {
+                    //can be ignored
+                }
+            }
+            if (!itemIds.isEmpty())
+            {
+                ServiceResponseCollection<ServiceResponse> deleteItems = service.deleteItems(itemIds, DeleteMode.HardDelete, SendCancellationsMode.SendToNone,
+                        AffectedTaskOccurrence.AllOccurrences);
+                for (ServiceResponse resultItem : deleteItems)
+                {
+                    if (resultItem.getResult() == ServiceResult.Error)
+                    {
+                        logger.error("Could not delete exchange appointment: " + resultItem.getErrorMessage());
+                    }
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            throw new RaplaException(e.getMessage(), e);
+        }
+        updateLogger.info("Deleted " + itemIds.size() + " appointments in one request, took " + (System.currentTimeMillis() - time) + " ms ");
+    }
+
     static public Collection<String> remove(Logger logger, final String url, String exchangeUsername, String exchangePassword) throws RaplaException
     {
         WebCredentials credentials = new WebCredentials(exchangeUsername, exchangePassword);
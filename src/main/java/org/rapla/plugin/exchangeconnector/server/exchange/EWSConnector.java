@@ -25,6 +25,7 @@ public class EWSConnector {
     private final URI uri;
     private final WebCredentials credentials;
     private final Logger logger;
+    private ExchangeService service;
     
 //	private final Character DOMAIN_SEPERATION_SYMBOL = new Character('@');
 
@@ -60,9 +61,13 @@ public class EWSConnector {
     }
 
     /**
-     * @return {@link ExchangeService} the service
+     * @return {@link ExchangeService} the service. The service is created once per connector, so all requests share its http connections
      */
-    public ExchangeService getService() throws RaplaException {
+    public synchronized ExchangeService getService() throws RaplaException {
+        if ( service != null)
+        {
+            return service;
+        }
         ExchangeService tmpService = new ExchangeService(ExchangeVersion.Exchange2010_SP1); //, DateTools.getTimeZone());//, DateTools.getTimeZone());
         if ( logger!= null && logger.isDebugEnabled())
         {
@@ -84,9 +89,19 @@ public class EWSConnector {
         //define connection url to mail server, assume https
         tmpService.setUrl(uri);
 
+        service = tmpService;
         return tmpService;
     }
 
+    /** closes the http connections of the service */
+    public synchronized void close() {
+        if ( service != null)
+        {
+            service.close();
+            service = null;
+        }
+    }
+
 
     public void test( ) throws Exception {
         final String user = credentials.getUser();
@@ -39,6 +39,7 @@ import org.rapla.server.PromiseWait;
 import org.rapla.server.RemoteSession;
 import org.rapla.server.TimeZoneConverter;
 import org.rapla.storage.impl.AbstractCachableOperator;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
@@ -62,6 +63,15 @@ import java.util.TimeZone;
 
 @DefaultImplementation(context=InjectionContext.server, of=ICalImport.class)
 public class RaplaICalImport implements ICalImport {
+    /** maximum number of events stored in one transaction */
+    static final int IMPORT_CHUNK_SIZE = 500;
+
+    /** is informed after each stored chunk of an import */
+    public interface ImportProgress
+    {
+        void stored(int stored, int total);
+    }
+
 	@Inject
 	TimeZoneConverter timeZoneConverter;
 	@Inject
@@ -149,6 +159,19 @@ public class RaplaICalImport implements ICalImport {
 	 * @throws RaplaException
 	 */
 	public Promise<Integer[]> importCalendar(String content, boolean isURL, List<Allocatable> resources, User user, String eventTypeKey, String eventTypeNameAttributeKey) throws RaplaException {
+        final ImportProgress logProgress = (stored, total) ->
+        {
+            if (total > IMPORT_CHUNK_SIZE)
+            {
+                logger.info("Imported " + stored + " of " + total + " events");
+            }
+        };
+        return importCalendar(content, isURL, resources, user, eventTypeKey, eventTypeNameAttributeKey, logProgress);
+    }
+
+    /** same as {@link #importCalendar(String, boolean, List, User, String, String)}, the progress is informed after each stored chunk */
+    public Promise<Integer[]> importCalendar(String content, boolean isURL, List<Allocatable> resources, User user, String eventTypeKey, String eventTypeNameAttributeKey,
+            ImportProgress progress) throws RaplaException {
         final TimeZone timeZone = timeZoneConverter.getImportExportTimeZone();
 
 	    CompatibilityHints.setHintEnabled( CompatibilityHints.KEY_NOTES_COMPATIBILITY, true);
@@ -384,11 +407,71 @@ public class RaplaICalImport implements ICalImport {
                 }
             }
 
-            facade.storeObjects(toImport.toArray(Reservation.RESERVATION_ARRAY));
+            storeInChunks(toImport, progress);
             return new Integer[] { eventsInICalFinal, eventsImported, eventsPresent, eventsSkippedFinal };
         });
 	}
 
+    /** stores the events in transactions of {@link #IMPORT_CHUNK_SIZE} events, so that the write lock is released between the chunks and the progress is logged.
+     * The import stops at the first failed chunk. The stored chunks are kept and a new import of the same calendar skips them by their uid.
+     * Events without uid can't be skipped, so they are stored together in the last transaction and are only stored if all other chunks succeeded.
+     * The conflicts are calculated once after the last chunk and not for each chunk. */
+    private void storeInChunks(List<Reservation> toImport, ImportProgress progress) throws RaplaException
+    {
+        final List<Reservation> withUid = new ArrayList<Reservation>();
+        final List<Reservation> withoutUid = new ArrayList<Reservation>();
+        for (Reservation reservation : toImport)
+        {
+            if (reservation.getAnnotation(RaplaObjectAnnotations.KEY_EXTERNALID) != null)
+            {
+                withUid.add(reservation);
+            }
+            else
+            {
+                withoutUid.add(reservation);
+            }
+        }
+        final int total = toImport.size();
+        int stored = 0;
+        final LocalAbstractCachableOperator operator = facade.getOperator() instanceof LocalAbstractCachableOperator ?
+                (LocalAbstractCachableOperator) facade.getOperator() : null;
+        final boolean deferConflicts = operator != null && total > IMPORT_CHUNK_SIZE;
+        if (deferConflicts)
+        {
+            operator.deferConflictUpdates();
+        }
+        try
+        {
+            for (int start = 0; start < withUid.size(); start += IMPORT_CHUNK_SIZE)
+            {
+                final List<Reservation> chunk = withUid.subList(start, Math.min(withUid.size(), start + IMPORT_CHUNK_SIZE));
+                facade.storeObjects(chunk.toArray(Reservation.RESERVATION_ARRAY));
+                stored += chunk.size();
+                progress.stored(stored, total);
+            }
+            if (!withoutUid.isEmpty())
+            {
+                facade.storeObjects(withoutUid.toArray(Reservation.RESERVATION_ARRAY));
+                stored += withoutUid.size();
+                progress.stored(stored, total);
+            }
+        }
+        catch (RaplaException ex)
+        {
+            final String message = "iCal import stopped after " + stored + " of " + total + " events were stored. Importing the calendar again skips the stored events. "
+                    + ex.getMessage();
+            logger.error(message, ex);
+            throw new RaplaException(message, ex);
+        }
+        finally
+        {
+            if (deferConflicts)
+            {
+                operator.updateDeferredConflicts();
+            }
+        }
+    }
+
     protected Promise<Map<String, List<Entity<Reservation>>>> getImportedReservations(Date start)
     {
         Map<String, List<Entity<Reservation>>> keyMap;
@@ -2,6 +2,8 @@ package org.rapla.plugin.mail.server;
 
 import org.rapla.plugin.mail.MailException;
 
+import java.util.Collection;
+
 public interface MailInterface {
     /* Sends the mail.
        Callers should check if the parameters are all valid
@@ -11,5 +13,24 @@ public interface MailInterface {
     void sendMail(String senderMail, String recipient, String subject, String mailBody)
         throws MailException;
 
+    /** Sends all mails. Implementations can reuse the connection to the mail server.
+     * Each mail that the server accepted is marked as sent. If a single mail fails, the failure is stored in the mail and the remaining mails are still sent.
+     * @throws MailException if the connection to the mail server failed. Mails that were sent before are still marked as sent
+     */
+    default void sendMails(String senderMail, Collection<OutgoingMail> mails) throws MailException
+    {
+        for (OutgoingMail mail : mails)
+        {
+            try
+            {
+                sendMail(senderMail, mail.getRecipient(), mail.getSubject(), mail.getBody());
+                mail.setSent();
+            }
+            catch (MailException ex)
+            {
+                mail.setFailure(ex);
+            }
+        }
+    }
 
 }
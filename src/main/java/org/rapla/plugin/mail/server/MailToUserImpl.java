@@ -8,6 +8,7 @@ import org.rapla.logger.Logger;
 import org.rapla.plugin.mail.MailPlugin;
 
 import javax.inject.Inject;
+import java.util.Collection;
 
 public class MailToUserImpl
 {
@@ -40,4 +41,37 @@ public class MailToUserImpl
         mail.sendMail(defaultSender, recipientEmail, subject, body);
         logger.getChildLogger("mail").info("Email send to user " + userName);
     }
+
+    /** creates a mail to the user, that can be sent with {@link #sendMails(Collection)}. Returns null if the user has no email address */
+    public OutgoingMail createMail(String userName, String subject, String body) throws RaplaException
+    {
+        User recipientUser = facade.getUser(userName);
+        String recipientEmail = recipientUser.getEmail();
+        if (recipientEmail == null || recipientEmail.trim().length() == 0)
+        {
+            logger.warn("No email address specified for user " + recipientUser.getUsername() + " Can't send mail.");
+            return null;
+        }
+        return new OutgoingMail(recipientEmail, subject, body);
+    }
+
+    /** sends the mails with one connection to the mail server. Mails that could not be sent contain the failure */
+    public void sendMails(Collection<OutgoingMail> mails) throws RaplaException
+    {
+        if (mails.isEmpty())
+        {
+            return;
+        }
+        Preferences prefs = facade.getSystemPreferences();
+        final String defaultSender = prefs.getEntryAsString(MailPlugin.DEFAULT_SENDER_ENTRY, "");
+        mail.sendMails(defaultSender, mails);
+        final Logger mailLogger = logger.getChildLogger("mail");
+        for (OutgoingMail outgoingMail : mails)
+        {
+            if (outgoingMail.isSent())
+            {
+                mailLogger.info("Email send to " + outgoingMail.getRecipient());
+            }
+        }
+    }
 }
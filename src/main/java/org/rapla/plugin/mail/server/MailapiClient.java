@@ -23,6 +23,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
 import java.util.Properties;
 
 @DefaultImplementation(of=MailInterface.class,context= InjectionContext.server)
@@ -55,32 +56,138 @@ public class MailapiClient implements MailInterface
 
     public void sendMail( String senderMail, String recipient, String subject, String mailBody ) throws MailException
     {
-        Object externalMailSession;
-        if ( externalMailSessionProvider != null)
+        Object externalMailSession = getExternalMailSession();
+        if ( externalMailSession != null)
         {
-            try
-            {
-                externalMailSession = externalMailSessionProvider.get();
-            }
-            catch ( NullPointerException ex)
-            {
-                externalMailSession = null;
-            }
+            send(senderMail, recipient, subject, mailBody, externalMailSession);
+            return;
         }
         else
         {
-            externalMailSession = null;
+            sendMail(senderMail, recipient, subject, mailBody, null);
         }
-        if ( externalMailSession != null)
+
+    }
+
+    /** sends all mails over one smtp connection, so the session is created and the connection is opened only once */
+    @Override
+    public void sendMails(String senderMail, Collection<OutgoingMail> mails) throws MailException
+    {
+        if ( mails.isEmpty())
         {
-            send(senderMail, recipient, subject, mailBody, externalMailSession);
             return;
         }
-        else
+        Object session = getExternalMailSession();
+        if ( session == null)
         {
-            sendMail(senderMail, recipient, subject, mailBody, null);
+            session = createSession( null);
+        }
+        if ( session instanceof Properties)
+        {
+            // the http mail api has no connection to reuse
+            for (OutgoingMail mail : mails)
+            {
+                try
+                {
+                    send(senderMail, mail.getRecipient(), mail.getSubject(), mail.getBody(), session);
+                    mail.setSent();
+                }
+                catch (MailException ex)
+                {
+                    mail.setFailure(ex);
+                }
+            }
+            return;
+        }
+        ClassLoader classLoader = session.getClass().getClassLoader();
+        Thread currentThread = Thread.currentThread();
+        ClassLoader original = currentThread.getContextClassLoader();
+        boolean changedClass =false;
+        try {
+            try
+            {
+                currentThread.setContextClassLoader( classLoader);
+                changedClass = true;
+            }
+            catch (Throwable ex)
+            {
+
+            }
+            Class<?> SessionC = classLoader.loadClass("javax.mail.Session");
+            Class<?> MessageC = classLoader.loadClass("javax.mail.Message");
+            Class<?> AddressC = classLoader.loadClass("javax.mail.Address");
+            Class<?> TransportC = classLoader.loadClass("javax.mail.Transport");
+            Object[] addressArrayDummy = (Object[]) Array.newInstance(AddressC, 0);
+            //Transport transport = session.getTransport("smtp");
+            //transport.connect();
+            Object transport = SessionC.getMethod("getTransport", String.class).invoke( session, "smtp");
+            TransportC.getMethod("connect").invoke( transport);
+            try
+            {
+                Method sendMessage = TransportC.getMethod("sendMessage", MessageC, addressArrayDummy.getClass());
+                for (OutgoingMail mail : mails)
+                {
+                    try
+                    {
+                        Object message = createMessage(senderMail, mail.getRecipient(), mail.getSubject(), mail.getBody(), session, classLoader);
+                        //message.saveChanges();
+                        //transport.sendMessage(message, message.getAllRecipients());
+                        MessageC.getMethod("saveChanges").invoke( message);
+                        Object recipients = MessageC.getMethod("getAllRecipients").invoke( message);
+                        sendMessage.invoke( transport, message, recipients);
+                        mail.setSent();
+                    }
+                    catch (Exception ex)
+                    {
+                        Throwable e = ex;
+                        if ( ex instanceof InvocationTargetException){
+                            e = ex.getCause();
+                        }
+                        mail.setFailure( new MailException( e.getMessage(), e));
+                    }
+                }
+            }
+            finally
+            {
+                try
+                {
+                    TransportC.getMethod("close").invoke( transport);
+                }
+                catch (Exception ex)
+                {
+                    // the server already accepted the sent mails, so a failing close must not mark them as failed
+                }
+            }
+        } catch (Exception ex) {
+            Throwable e = ex;
+            if ( ex instanceof InvocationTargetException){
+                e = ex.getCause();
+            }
+            throw new MailException( e.getMessage(), e);
+        }
+        finally
+        {
+            if ( changedClass)
+            {
+                currentThread.setContextClassLoader( original);
+            }
         }
+    }
 
+    private Object getExternalMailSession()
+    {
+        if ( externalMailSessionProvider != null)
+        {
+            try
+            {
+                return externalMailSessionProvider.get();
+            }
+            catch ( NullPointerException ex)
+            {
+                return null;
+            }
+        }
+        return null;
     }
 
     public void setProtocol(SecurityProtocol protocol)
@@ -94,6 +201,12 @@ public class MailapiClient implements MailInterface
     }
 
     public void sendMail( String senderMail, String recipient, String subject, String mailBody, Configuration config ) throws MailException
+    {
+        Object session = createSession( config);
+        send(senderMail, recipient, subject, mailBody,  session);
+    }
+
+    private Object createSession( Configuration config ) throws MailException
     {
         Object session;
 
@@ -121,7 +234,7 @@ public class MailapiClient implements MailInterface
         {
             session = createSessionFromProperties(mailhost,port, this.protocol, username, password);
         }
-        send(senderMail, recipient, subject, mailBody,  session);
+        return session;
     }
 
     private Object createSessionFromProperties(String mailhost, int port, SecurityProtocol protocol, String username, String password) throws MailException {
@@ -258,6 +371,40 @@ public class MailapiClient implements MailInterface
 //		Transport.send(message);
 //	}
 
+	private Object createMessage(String senderMail, String recipient,
+			String subject, String mailBody, Object session,
+			ClassLoader classLoader) throws Exception {
+		Class<?> SessionC = classLoader.loadClass("javax.mail.Session");
+		Class<?> MimeMessageC = classLoader.loadClass("javax.mail.internet.MimeMessage");
+		Class<?> MessageC = classLoader.loadClass("javax.mail.Message");
+		Class<?> AddressC = classLoader.loadClass("javax.mail.Address");
+		Class<?> RecipientTypeC = classLoader.loadClass("javax.mail.Message$RecipientType");
+		Class<?> InternetAddressC = classLoader.loadClass("javax.mail.internet.InternetAddress");
+		//Message message = new MimeMessage(session);
+		Object message = MimeMessageC.getConstructor( SessionC).newInstance( session);
+		if ( senderMail != null && senderMail.trim().length() > 0)
+		{
+			//message.setFrom(new InternetAddress(senderMail));
+			Object senderMailAddress = InternetAddressC.getConstructor( String.class).newInstance( senderMail);
+			MimeMessageC.getMethod("setFrom", AddressC).invoke( message, senderMailAddress);
+		}
+		//RecipientType type = Message.RecipientType.TO;
+		//Address[] parse = InternetAddress.parse(recipient);
+		//message.setRecipients(type,	parse);
+		Object type = RecipientTypeC.getField("TO").get(null);
+		Object[] parsedRecipientDummy = (Object[]) Array.newInstance(AddressC, 0);
+		Object parsedRecipient = InternetAddressC.getMethod("parse", String.class).invoke(null, recipient);
+		Method method = MessageC.getMethod("setRecipients", RecipientTypeC, parsedRecipientDummy.getClass());
+		method.invoke( message, type, parsedRecipient);
+		
+		//message.setSubject(subject);
+		MimeMessageC.getMethod("setSubject", String.class).invoke( message, subject);
+		//message.setText(mailBody);
+		//MimeMessageC.getMethod("setText", String.class).invoke( message, mailBody);
+		MimeMessageC.getMethod("setContent", Object.class, String.class).invoke( message, mailBody, "text/plain; charset=UTF-8");
+		return message;
+	}
+
 	private void sendWithReflection(String senderMail, String recipient,
 			String subject, String mailBody, Object session,
 			ClassLoader classLoader) throws Exception {
@@ -274,37 +421,10 @@ public class MailapiClient implements MailInterface
 			{
 				
 			}
-			Class<?> SessionC = classLoader.loadClass("javax.mail.Session");
-			Class<?> MimeMessageC = classLoader.loadClass("javax.mail.internet.MimeMessage");
 			Class<?> MessageC = classLoader.loadClass("javax.mail.Message");
-			Class<?> AddressC = classLoader.loadClass("javax.mail.Address");
-			Class<?> RecipientTypeC = classLoader.loadClass("javax.mail.Message$RecipientType");
-			Class<?> InternetAddressC = classLoader.loadClass("javax.mail.internet.InternetAddress");
 			Class<?> TransportC = classLoader.loadClass("javax.mail.Transport");
-			//Message message = new MimeMessage(session);
-			Object message = MimeMessageC.getConstructor( SessionC).newInstance( session);
-			if ( senderMail != null && senderMail.trim().length() > 0)
-			{
-				//message.setFrom(new InternetAddress(senderMail));
-				Object senderMailAddress = InternetAddressC.getConstructor( String.class).newInstance( senderMail);
-				MimeMessageC.getMethod("setFrom", AddressC).invoke( message, senderMailAddress);
-			}
-			//RecipientType type = Message.RecipientType.TO;
-			//Address[] parse = InternetAddress.parse(recipient);
-			//message.setRecipients(type,	parse);
-			Object type = RecipientTypeC.getField("TO").get(null);
-			Object[] parsedRecipientDummy = (Object[]) Array.newInstance(AddressC, 0);
-			Object parsedRecipient = InternetAddressC.getMethod("parse", String.class).invoke(null, recipient);
-			Method method = MessageC.getMethod("setRecipients", RecipientTypeC, parsedRecipientDummy.getClass());
-			method.invoke( message, type, parsedRecipient);
-			
-			//message.setSubject(subject);
-			MimeMessageC.getMethod("setSubject", String.class).invoke( message, subject);
-			//message.setText(mailBody);
-			//MimeMessageC.getMethod("setText", String.class).invoke( message, mailBody);
-			MimeMessageC.getMethod("setContent", Object.class, String.class).invoke( message, mailBody, "text/plain; charset=UTF-8");
-
-			
+			Object message = createMessage(senderMail, recipient, subject, mailBody, session, classLoader);
+
 			//Transport.send(message);
 			TransportC.getMethod("send", MessageC).invoke( null, message);
 		
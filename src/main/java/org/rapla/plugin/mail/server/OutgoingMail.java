@@ -0,0 +1,63 @@
+package org.rapla.plugin.mail.server;
+
+import org.rapla.plugin.mail.MailException;
+
+/** A mail that is sent together with other mails with {@link MailInterface#sendMails(String, java.util.Collection)}.
+ * A mail is marked as sent as soon as the mail server accepted it. If the mail could not be sent, the failure is stored in the mail. */
+public class OutgoingMail
+{
+    private final String recipient;
+    private final String subject;
+    private final String body;
+    private MailException failure;
+    private boolean sent;
+
+    public OutgoingMail(String recipient, String subject, String body)
+    {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public String getRecipient()
+    {
+        return recipient;
+    }
+
+    public String getSubject()
+    {
+        return subject;
+    }
+
+    public String getBody()
+    {
+        return body;
+    }
+
+    public MailException getFailure()
+    {
+        return failure;
+    }
+
+    public void setFailure(MailException failure)
+    {
+        this.failure = failure;
+    }
+
+    public void setSent()
+    {
+        this.sent = true;
+        this.failure = null;
+    }
+
+    /** false if the mail failed or was not sent yet, e.g. because the connection to the mail server failed before */
+    public boolean isSent()
+    {
+        return sent;
+    }
+
+    public String toString()
+    {
+        return "TO: " + recipient + " Subject: " + subject;
+    }
+}
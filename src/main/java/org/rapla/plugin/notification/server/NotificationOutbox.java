@@ -0,0 +1,173 @@
+package org.rapla.plugin.notification.server;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.mail.server.MailToUserImpl;
+import org.rapla.plugin.mail.server.OutgoingMail;
+import org.rapla.plugin.notification.server.NotificationService.AllocationMail;
+import org.rapla.scheduler.CommandScheduler;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Sends the notification mails in the background, so the notification lock is not held while the mail server is contacted.
+ * The mails must be stored in the {@link NotificationStorage} before they are queued. Sent mails are removed from the storage,
+ * mails that could not be sent get an increased retry count and are queued again by the retry task of the {@link NotificationService}.
+ * A batch of at most {@link #MAX_BATCH_SIZE} mails is sent over one connection and the next batch is delayed by {@link #BATCH_INTERVAL},
+ * which limits the rate of mails sent to the mail server.
+ */
+@Singleton
+public class NotificationOutbox
+{
+    static final int MAX_BATCH_SIZE = 50;
+    static final long BATCH_INTERVAL = DateTools.MILLISECONDS_PER_MINUTE / 6;
+
+    private final NotificationStorage notificationStorage;
+    private final Provider<MailToUserImpl> mailToUserInterface;
+    private final CommandScheduler scheduler;
+    private final Logger logger;
+    private final Deque<AllocationMail> queue = new ArrayDeque<>();
+    private boolean deliveryScheduled;
+
+    @Inject
+    public NotificationOutbox(NotificationStorage notificationStorage, Provider<MailToUserImpl> mailToUserInterface, CommandScheduler scheduler, Logger logger)
+    {
+        this.notificationStorage = notificationStorage;
+        this.mailToUserInterface = mailToUserInterface;
+        this.scheduler = scheduler;
+        this.logger = logger.getChildLogger("notification");
+    }
+
+    /** queues the mails and starts the delivery if it is not already running */
+    public void enqueue(Collection<AllocationMail> mails)
+    {
+        if (mails.isEmpty())
+        {
+            return;
+        }
+        synchronized (queue)
+        {
+            queue.addAll(mails);
+            if (deliveryScheduled)
+            {
+                return;
+            }
+            deliveryScheduled = true;
+        }
+        scheduler.run(this::deliverAndReschedule);
+    }
+
+    /** returns true if no mails are queued and no delivery is running */
+    public boolean isIdle()
+    {
+        synchronized (queue)
+        {
+            return queue.isEmpty() && !deliveryScheduled;
+        }
+    }
+
+    private void deliverAndReschedule()
+    {
+        try
+        {
+            deliver();
+        }
+        catch (Throwable t)
+        {
+            logger.warn("Could not send mail: " + t.getMessage());
+        }
+        synchronized (queue)
+        {
+            if (queue.isEmpty())
+            {
+                deliveryScheduled = false;
+                return;
+            }
+        }
+        scheduler.delay(this::deliverAndReschedule, BATCH_INTERVAL);
+    }
+
+    /** sends the next batch of queued mails over one connection and returns the number of sent mails */
+    public synchronized int deliver() throws RaplaException
+    {
+        final List<AllocationMail> batch = new ArrayList<>();
+        synchronized (queue)
+        {
+            while (batch.size() < MAX_BATCH_SIZE && !queue.isEmpty())
+            {
+                batch.add(queue.poll());
+            }
+        }
+        if (batch.isEmpty())
+        {
+            return 0;
+        }
+        final MailToUserImpl mailToUser = mailToUserInterface.get();
+        final List<AllocationMail> sent = new ArrayList<>();
+        final List<AllocationMail> failed = new ArrayList<>();
+        final Map<OutgoingMail, AllocationMail> outgoingMails = new LinkedHashMap<>();
+        for (AllocationMail mail : batch)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Sending mail " + mail.toString());
+            logger.info("AllocationChange. Sending mail to " + mail.recipient);
+            try
+            {
+                final OutgoingMail outgoingMail = mailToUser.createMail(mail.recipient, mail.subject, mail.body);
+                if (outgoingMail != null)
+                {
+                    outgoingMails.put(outgoingMail, mail);
+                }
+                else
+                {
+                    // users without email address don't get the mail
+                    sent.add(mail);
+                }
+            }
+            catch (RaplaException ex)
+            {
+                logger.error("Could not send mail to " + mail.recipient + " Cause: " + ex.getMessage(), ex);
+                failed.add(mail);
+            }
+        }
+        try
+        {
+            mailToUser.sendMails(outgoingMails.keySet());
+        }
+        catch (RaplaException ex)
+        {
+            logger.error("Could not connect to mail server. Cause: " + ex.getMessage(), ex);
+        }
+        // success is tracked per mail, so mails that were sent before a failure are not sent again
+        for (Map.Entry<OutgoingMail, AllocationMail> entry : outgoingMails.entrySet())
+        {
+            final OutgoingMail outgoingMail = entry.getKey();
+            final AllocationMail mail = entry.getValue();
+            if (outgoingMail.isSent())
+            {
+                sent.add(mail);
+            }
+            else
+            {
+                if (outgoingMail.getFailure() != null)
+                {
+                    logger.error("Could not send mail to " + mail.recipient + " Cause: " + outgoingMail.getFailure().getMessage(), outgoingMail.getFailure());
+                }
+                failed.add(mail);
+            }
+        }
+        notificationStorage.markSent(sent);
+        notificationStorage.increaseAndStoreRetryCount(failed);
+        logger.info("AllocationChange. " + sent.size() + " mails sent.");
+        return sent.size();
+    }
+}
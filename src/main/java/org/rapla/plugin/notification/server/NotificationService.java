@@ -17,6 +17,7 @@ import io.reactivex.functions.Action;
 import org.rapla.RaplaResources;
 import org.rapla.client.swing.toolkit.FrameControllerList;
 import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.configuration.Preferences;
 import org.rapla.entities.domain.Allocatable;
@@ -37,23 +38,24 @@ import org.rapla.framework.RaplaException;
 import org.rapla.framework.internal.AbstractRaplaLocale;
 import org.rapla.inject.Extension;
 import org.rapla.logger.Logger;
-import org.rapla.plugin.mail.server.MailToUserImpl;
 import org.rapla.plugin.notification.NotificationPlugin;
 import org.rapla.plugin.notification.NotificationResources;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.server.extensionpoints.ServerExtension;
 import org.rapla.storage.CachableStorageOperator;
 import org.rapla.storage.StorageOperator;
+import org.rapla.storage.UpdateOperation;
 import org.rapla.storage.UpdateResult;
 
 import javax.inject.Inject;
-import javax.inject.Provider;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -67,7 +69,6 @@ public class NotificationService implements ServerExtension
     static final String NOTIFICATION_LOCK_ID = "NOTIFICATION";
     private static final long VALID_LOCK = DateTools.MILLISECONDS_PER_MINUTE * 5;
     private final RaplaFacade raplaFacade;
-    private final Provider<MailToUserImpl> mailToUserInterface;
     protected CommandScheduler scheduler;
     private final AppointmentFormater appointmentFormater;
     private final NotificationResources notificationI18n;
@@ -76,20 +77,24 @@ public class NotificationService implements ServerExtension
 
     private final Logger logger;
     private final NotificationStorage notificationStorage;
+    private final NotificationOutbox outbox;
     private List<Disposable> scheduleList = new ArrayList<>();
+    /** allocatable to listener index, built from the preferences of the users. Is rebuilt when preferences or users change */
+    private Map<ReferenceInfo<Allocatable>, List<AllocationListener>> listenerIndex;
 
     @Inject
     public NotificationService(RaplaFacade facade, RaplaResources i18nBundle, NotificationResources notificationI18n, AppointmentFormater appointmentFormater,
-                               Provider<MailToUserImpl> mailToUserInterface, CommandScheduler scheduler, Logger logger, NotificationStorage notificationStorage)
+                               CommandScheduler scheduler, Logger logger, NotificationStorage notificationStorage,
+                               NotificationOutbox outbox)
 
     {
         this.notificationI18n = notificationI18n;
         this.raplaFacade = facade;
         this.raplaI18n = i18nBundle;
         this.notificationStorage = notificationStorage;
+        this.outbox = outbox;
         this.logger = logger.getChildLogger("notification");
         //setChildBundleName( NotificationPlugin.RESOURCE_FILE );
-        this.mailToUserInterface = mailToUserInterface;
         this.scheduler = scheduler;
         //raplaFacade.addAllocationChangedListener(this);
         this.appointmentFormater = appointmentFormater;
@@ -133,8 +138,12 @@ public class NotificationService implements ServerExtension
             try
             {
                 lastUpdated = operator.requestLock(NOTIFICATION_LOCK_ID, VALID_LOCK);
-                final Collection<AllocationMail> mailsToSend = notificationStorage.getMailsToSend();
-                sendMails(mailsToSend);
+                // stored mails are only loaded if the outbox has finished the previous delivery, otherwise they would be sent twice
+                if (outbox.isIdle())
+                {
+                    final Collection<AllocationMail> mailsToSend = notificationStorage.getMailsToSend();
+                    outbox.enqueue(mailsToSend);
+                }
             }
             catch (Throwable t)
             {
@@ -171,43 +180,58 @@ public class NotificationService implements ServerExtension
         try
         {
             getLogger().debug("Mail check triggered");
-            User[] users = raplaFacade.getUsers();
-            List<AllocationMail> mailList = new ArrayList<AllocationMail>();
-            // we check for each user if a mail must be sent
-            for (int i = 0; i < users.length; i++)
+            if (updateResult == null || !updateResult.getOperations().iterator().hasNext())
             {
-                User user = users[i];
-                if (user.getEmail().trim().length() == 0)
-                    continue;
-
-                Preferences preferences = raplaFacade.getPreferences(user);
-                Map<String, Allocatable> allocatableMap = null;
-
-                if (preferences != null && preferences.getEntry(NotificationPlugin.ALLOCATIONLISTENERS_CONFIG) != null)
+                return;
+            }
+            for (UpdateOperation op : updateResult.getOperations())
+            {
+                final Class<? extends Entity> type = op.getType();
+                if (type == Preferences.class || type == User.class)
                 {
-                    allocatableMap = preferences.getEntry(NotificationPlugin.ALLOCATIONLISTENERS_CONFIG);
+                    listenerIndex = null;
+                    break;
                 }
-                else
+            }
+            // the change events don't depend on the listening user, so they are calculated only once for all users
+            final List<AllocationChangeEvent> changeEvents = getChangeEvents(updateResult);
+            if (changeEvents.isEmpty())
+            {
+                return;
+            }
+            if (listenerIndex == null)
+            {
+                listenerIndex = createListenerIndex();
+            }
+            final Map<AllocationListener, Map<Reservation, List<AllocationChangeEvent>>> eventsPerListener = new LinkedHashMap<>();
+            for (AllocationChangeEvent event : changeEvents)
+            {
+                // Did a user opt in for the resource?
+                final List<AllocationListener> listeners = listenerIndex.get(event.getAllocatable().getReference());
+                if (listeners == null)
                 {
                     continue;
                 }
-                if (allocatableMap != null && allocatableMap.size() > 0)
+                final Reservation reservation = event.getNewReservation();
+                final ReferenceInfo<User> lastChangedBy = reservation.getLastChangedBy();
+                for (AllocationListener listener : listeners)
                 {
-                    boolean notifyIfOwner = preferences.getEntryAsBoolean(NotificationPlugin.NOTIFY_IF_OWNER_CONFIG, false);
-                    final ReferenceInfo<User> ownerId = preferences.getOwnerRef();
-                    final User owner = ownerId != null ? raplaFacade.getOperator().resolve(ownerId) : null;
-                    AllocationMail mail = getAllocationMail(new HashSet<Allocatable>(allocatableMap.values()), updateResult, owner, notifyIfOwner);
-                    if (mail != null)
-                    {
-                        mailList.add(mail);
-                    }
-
+                    if (!listener.notifyIfOwner && (lastChangedBy != null && listener.owner.getReference().equals(lastChangedBy)))
+                        continue;
+                    final Map<Reservation, List<AllocationChangeEvent>> reservationMap = eventsPerListener.computeIfAbsent(listener, (key) -> new LinkedHashMap<>(4));
+                    reservationMap.computeIfAbsent(reservation, (key) -> new ArrayList<>(3)).add(event);
                 }
             }
+            List<AllocationMail> mailList = new ArrayList<AllocationMail>();
+            for (Map.Entry<AllocationListener, Map<Reservation, List<AllocationChangeEvent>>> entry : eventsPerListener.entrySet())
+            {
+                mailList.add(getAllocationMail(entry.getValue(), entry.getKey().owner));
+            }
             if (!mailList.isEmpty())
             {
+                // the mails are stored first, so they are retried if the outbox can't deliver them
                 notificationStorage.store(mailList);
-                sendMails(mailList);
+                outbox.enqueue(mailList);
             }
         }
         catch (RaplaException ex)
@@ -216,80 +240,64 @@ public class NotificationService implements ServerExtension
         }
     }
 
-    private void sendMails(Collection<AllocationMail> mails) throws RaplaException
+    /** returns the allocation changes of the update, without the changes of templates */
+    private List<AllocationChangeEvent> getChangeEvents(UpdateResult updateResult)
     {
-        Iterator<AllocationMail> it = mails.iterator();
-        while (it.hasNext())
+        final List<AllocationChangeEvent> result = new ArrayList<AllocationChangeEvent>();
+        for (AllocationChangeEvent event : AllocationChangeFinder.getTriggerEvents(updateResult, null, logger, operator))
         {
-            AllocationMail mail = it.next();
-            if (getLogger().isDebugEnabled())
-                getLogger().debug("Sending mail " + mail.toString());
-            getLogger().info("AllocationChange. Sending mail to " + mail.recipient);
-            try
+            final String templateId = event.getNewReservation().getAnnotation(RaplaObjectAnnotations.KEY_TEMPLATE);
+            if (templateId == null)
             {
-
-                mailToUserInterface.get().sendMail(mail.recipient, mail.subject, mail.body);
-                notificationStorage.markSent(mail);
-                getLogger().info("AllocationChange. Mail sent.");
-            }
-            catch (RaplaException ex)
-            {
-                getLogger().error("Could not send mail to " + mail.recipient + " Cause: " + ex.getMessage(), ex);
-                notificationStorage.increateAndStoreRetryCount(mail);
+                result.add(event);
             }
         }
+        return result;
     }
 
-    AllocationMail getAllocationMail(Collection<Allocatable> allocatablesTheUsersListensTo, UpdateResult updateResult, User owner, boolean notifyIfOwner)
-            throws RaplaException
+    /** maps each allocatable to the users that listen to its changes */
+    private Map<ReferenceInfo<Allocatable>, List<AllocationListener>> createListenerIndex() throws RaplaException
     {
-        if (updateResult == null || !updateResult.getOperations().iterator().hasNext())
+        final Map<ReferenceInfo<Allocatable>, List<AllocationListener>> result = new HashMap<>();
+        for (User user : raplaFacade.getUsers())
         {
-            return null;
-        }
-        final HashMap<Reservation, List<AllocationChangeEvent>> reservationMap = new HashMap<Reservation, List<AllocationChangeEvent>>(4);
-        final HashSet<Allocatable> changedAllocatables = new HashSet<Allocatable>();
-        final List<AllocationChangeEvent> changeEvents = AllocationChangeFinder.getTriggerEvents(updateResult, owner, logger, operator);
-        for (int i = 0; i < changeEvents.size(); i++)
-        {
-            AllocationChangeEvent event = changeEvents.get(i);
-            Reservation reservation = event.getNewReservation();
-            Allocatable allocatable = event.getAllocatable();
-            final String templateId = reservation.getAnnotation(RaplaObjectAnnotations.KEY_TEMPLATE);
-            if (templateId != null)
-            {
+            if (user.getEmail().trim().length() == 0)
                 continue;
-            }
-            // Did the user opt in for the resource?
-            if (!allocatablesTheUsersListensTo.contains(allocatable))
+
+            Preferences preferences = raplaFacade.getPreferences(user);
+            if (preferences == null)
+                continue;
+            Map<String, Allocatable> allocatableMap = preferences.getEntry(NotificationPlugin.ALLOCATIONLISTENERS_CONFIG);
+            if (allocatableMap == null || allocatableMap.isEmpty())
                 continue;
-            if (!notifyIfOwner && (reservation.getLastChangedBy() != null && owner.getReference().equals(reservation.getLastChangedBy())))
+            final ReferenceInfo<User> ownerId = preferences.getOwnerRef();
+            final User owner = ownerId != null ? raplaFacade.getOperator().resolve(ownerId) : null;
+            if (owner == null)
                 continue;
-            List<AllocationChangeEvent> eventList = reservationMap.get(reservation);
-            if (eventList == null)
+            boolean notifyIfOwner = preferences.getEntryAsBoolean(NotificationPlugin.NOTIFY_IF_OWNER_CONFIG, false);
+            final AllocationListener listener = new AllocationListener(owner, notifyIfOwner);
+            for (Allocatable allocatable : new HashSet<Allocatable>(allocatableMap.values()))
             {
-                eventList = new ArrayList<AllocationChangeEvent>(3);
-                reservationMap.put(reservation, eventList);
+                result.computeIfAbsent(allocatable.getReference(), (key) -> new ArrayList<>()).add(listener);
             }
-            changedAllocatables.add(allocatable);
-            eventList.add(event);
-        }
-        if (reservationMap == null || changedAllocatables == null)
-        {
-            return null;
         }
-        Set<Reservation> keySet = reservationMap.keySet();
-        // Check if we have any notifications.
-        if (keySet.size() == 0)
-            return null;
+        return result;
+    }
 
+    AllocationMail getAllocationMail(Map<Reservation, List<AllocationChangeEvent>> reservationMap, User owner) throws RaplaException
+    {
+        final Set<Allocatable> changedAllocatables = new LinkedHashSet<Allocatable>();
         AllocationMail mail = new AllocationMail();
         StringBuffer buf = new StringBuffer();
         //buf.append(getString("mail_body") + "\n");
-        for (Reservation reservation : keySet)
+        for (Map.Entry<Reservation, List<AllocationChangeEvent>> entry : reservationMap.entrySet())
         {
-            List<AllocationChangeEvent> eventList = reservationMap.get(reservation);
-            String eventBlock = printEvents(reservation, eventList);
+            List<AllocationChangeEvent> eventList = entry.getValue();
+            for (AllocationChangeEvent event : eventList)
+            {
+                changedAllocatables.add(event.getAllocatable());
+            }
+            String eventBlock = printEvents(entry.getKey(), eventList, owner);
             buf.append(eventBlock);
             buf.append("\n\n");
         }
@@ -312,7 +320,7 @@ public class NotificationService implements ServerExtension
         return mail;
     }
 
-    private String printEvents(Reservation reservation, List<AllocationChangeEvent> eventList)
+    private String printEvents(Reservation reservation, List<AllocationChangeEvent> eventList, User recipient)
     {
         StringBuilder buf = new StringBuilder();
         buf.append("\n");
@@ -381,7 +389,8 @@ public class NotificationService implements ServerExtension
             Reservation newReservation = event.getNewReservation();
             if (newReservation != null && changed == false)
             {
-                User eventUser = event.getUser();
+                // the events are calculated without user, so the recipient is used as before
+                User eventUser = event.getUser() != null ? event.getUser() : recipient;
                 ReferenceInfo<User> lastChangedBy = newReservation.getLastChangedBy();
                 String name;
                 if (lastChangedBy != null)
@@ -524,7 +533,19 @@ public class NotificationService implements ServerExtension
         buf.append(")");
     }
 
-    class AllocationMail
+    static class AllocationListener
+    {
+        final User owner;
+        final boolean notifyIfOwner;
+
+        AllocationListener(User owner, boolean notifyIfOwner)
+        {
+            this.owner = owner;
+            this.notifyIfOwner = notifyIfOwner;
+        }
+    }
+
+    static class AllocationMail
     {
         String recipient;
         String subject;
@@ -15,6 +15,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -65,7 +66,7 @@ public class NotificationStorage
         return result;
     }
 
-    public void store(List<AllocationMail> mailList) throws RaplaException
+    public synchronized void store(List<AllocationMail> mailList) throws RaplaException
     {
         final ArrayList<Entity> toStore = new ArrayList<Entity>();
         for (AllocationMail allocationMail : mailList)
@@ -91,45 +92,78 @@ public class NotificationStorage
 
     public void increateAndStoreRetryCount(AllocationMail mail) throws RaplaException
     {
-        for (AllocationMail knownMail : mailToRaplaId.keySet())
+        increaseAndStoreRetryCount(Collections.singleton(mail));
+    }
+
+    /** increases the retry count of the mails that could not be sent, so the next retry is delayed. The changes are stored at once */
+    public synchronized void increaseAndStoreRetryCount(Collection<AllocationMail> mails) throws RaplaException
+    {
+        final List<ImportExportEntity> toEdit = new ArrayList<>();
+        for (AllocationMail mail : mails)
         {
-            if (knownMail.subject.equals(mail.subject) && knownMail.recipient.equals(mail.recipient) && knownMail.body.equals(mail.body))
+            for (AllocationMail knownMail : getKnownMails(mail))
             {
-                final String exportId = mailToRaplaId.get(knownMail);
-                final ImportExportEntity importExportEntity = exportMails.get(exportId);
+                final ImportExportEntity importExportEntity = exportMails.get(mailToRaplaId.get(knownMail));
                 if (importExportEntity != null)
                 {
-                    final NotificationContext context = gson.fromJson(importExportEntity.getContext(), NotificationContext.class);
-                    context.retryCount++;
-                    final ImportExportEntityImpl edit = (ImportExportEntityImpl) facade.edit(importExportEntity);
-                    edit.setContext(gson.toJson(context));
-                    facade.store(importExportEntity);
+                    toEdit.add(importExportEntity);
                 }
             }
         }
+        if (toEdit.isEmpty())
+        {
+            return;
+        }
+        final ArrayList<Entity> toStore = new ArrayList<Entity>();
+        for (ImportExportEntity edit : facade.editList(toEdit))
+        {
+            final NotificationContext context = gson.fromJson(edit.getContext(), NotificationContext.class);
+            context.retryCount++;
+            ((ImportExportEntityImpl) edit).setContext(gson.toJson(context));
+            exportMails.put(edit.getId(), edit);
+            toStore.add(edit);
+        }
+        facade.storeObjects(toStore.toArray(Entity.ENTITY_ARRAY));
     }
 
-    public synchronized void markSent(AllocationMail mail) throws RaplaException
+    public void markSent(AllocationMail mail) throws RaplaException
     {
-        AllocationMail allocMailToRemove = null;
-        for (AllocationMail knownMail : mailToRaplaId.keySet())
+        markSent(Collections.singleton(mail));
+    }
+
+    /** removes the sent mails from the storage at once */
+    public synchronized void markSent(Collection<AllocationMail> mails) throws RaplaException
+    {
+        final ArrayList<Entity> toRemove = new ArrayList<Entity>();
+        for (AllocationMail mail : mails)
         {
-            if (knownMail.subject.equals(mail.subject) && knownMail.recipient.equals(mail.recipient) && knownMail.body.equals(mail.body))
+            for (AllocationMail knownMail : getKnownMails(mail))
             {
-                final String exportId = mailToRaplaId.get(knownMail);
-                final ImportExportEntity importExportEntity = exportMails.get(exportId);
+                final String exportId = mailToRaplaId.remove(knownMail);
+                final ImportExportEntity importExportEntity = exportMails.remove(exportId);
                 if (importExportEntity != null)
                 {
-                    facade.remove(importExportEntity);
-                    allocMailToRemove = knownMail;
-                    exportMails.remove(exportId);
+                    toRemove.add(importExportEntity);
                 }
             }
         }
-        if (allocMailToRemove != null)
+        if (!toRemove.isEmpty())
         {
-            mailToRaplaId.remove(allocMailToRemove);
+            facade.removeObjects(toRemove.toArray(Entity.ENTITY_ARRAY));
         }
     }
 
+    private List<AllocationMail> getKnownMails(AllocationMail mail)
+    {
+        final List<AllocationMail> result = new ArrayList<>();
+        for (AllocationMail knownMail : mailToRaplaId.keySet())
+        {
+            if (knownMail.subject.equals(mail.subject) && knownMail.recipient.equals(mail.recipient) && knownMail.body.equals(mail.body))
+            {
+                result.add(knownMail);
+            }
+        }
+        return result;
+    }
+
 }
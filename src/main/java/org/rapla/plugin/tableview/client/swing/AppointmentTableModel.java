@@ -1,13 +1,26 @@
 package org.rapla.plugin.tableview.client.swing;
 
 import org.rapla.components.xmlbundle.I18nBundle;
+import org.rapla.entities.Category;
+import org.rapla.entities.LastChangedTimestamp;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.AppointmentBlock;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classifiable;
+import org.rapla.entities.dynamictype.Classification;
 import org.rapla.plugin.tableview.RaplaTableColumn;
 
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableColumn;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -18,6 +31,8 @@ public class AppointmentTableModel extends DefaultTableModel
     private static final long serialVersionUID = 1L;
     
     List<AppointmentBlock> appointments= new ArrayList<AppointmentBlock>();
+    /** formatted cell values for each row. Values are computed on first access and reused for unchanged blocks when new appointments are set */
+    List<Row> rows = new ArrayList<Row>();
     Locale locale;
     I18nBundle i18n;
     Map<Integer,RaplaTableColumn<AppointmentBlock,TableColumn>> columns = new LinkedHashMap<Integer, RaplaTableColumn<AppointmentBlock,TableColumn>>();
@@ -37,9 +52,58 @@ public class AppointmentTableModel extends DefaultTableModel
         this.setColumnIdentifiers( columnNames.toArray());
     }
 
+    /** replaces the rows with the passed blocks. Cell values of blocks that are contained in the current rows and have not changed are reused.
+     * If only the content of rows changed, only update events for these rows are fired, otherwise the whole table is updated */
     public void setAppointments(List<AppointmentBlock> appointments2) {
+        final List<Row> oldRows = rows;
+        final Map<String, Row> oldRowMap = new HashMap<String, Row>();
+        for (Row row : oldRows)
+        {
+            oldRowMap.put(row.key, row);
+        }
+        final List<Row> newRows = new ArrayList<Row>(appointments2.size());
+        final Map<Reservation, List<Long>> versions = new IdentityHashMap<Reservation, List<Long>>();
+        for (AppointmentBlock block : appointments2)
+        {
+            final Row row = new Row(block, versions);
+            final Row oldRow = oldRowMap.get(row.key);
+            if (oldRow != null && oldRow.isSameVersion(row))
+            {
+                row.values = oldRow.values;
+                row.unchanged = true;
+            }
+            newRows.add(row);
+        }
         this.appointments = appointments2;
-        super.fireTableDataChanged();
+        this.rows = newRows;
+        if (oldRows.size() != newRows.size())
+        {
+            super.fireTableDataChanged();
+            return;
+        }
+        for (int i = 0; i < newRows.size(); i++)
+        {
+            if (!oldRows.get(i).key.equals(newRows.get(i).key))
+            {
+                super.fireTableDataChanged();
+                return;
+            }
+        }
+        // same blocks in the same order, so we only notify the changed rows
+        int firstChanged = -1;
+        for (int i = 0; i <= newRows.size(); i++)
+        {
+            final boolean changed = i < newRows.size() && !newRows.get(i).unchanged;
+            if (changed && firstChanged < 0)
+            {
+                firstChanged = i;
+            }
+            else if (!changed && firstChanged >= 0)
+            {
+                super.fireTableRowsUpdated(firstChanged, i - 1);
+                firstChanged = -1;
+            }
+        }
     }
 
     public AppointmentBlock getAppointmentAt(int row) {
@@ -59,9 +123,20 @@ public class AppointmentTableModel extends DefaultTableModel
 
     public Object getValueAt( int rowIndex, int columnIndex )
     {
-        AppointmentBlock event = getAppointmentAt(rowIndex);
-        RaplaTableColumn<AppointmentBlock,TableColumn> tableColumn = columns.get( columnIndex);
-        return tableColumn.getValue(event);
+        final Row row = rows.get(rowIndex);
+        if (row.values == null)
+        {
+            row.values = new Object[columns.size()];
+            Arrays.fill(row.values, NOT_COMPUTED);
+        }
+        Object value = row.values[columnIndex];
+        if (value == NOT_COMPUTED)
+        {
+            RaplaTableColumn<AppointmentBlock,TableColumn> tableColumn = columns.get( columnIndex);
+            value = tableColumn.getValue(row.block);
+            row.values[columnIndex] = value;
+        }
+        return value;
     }
 
     public Class<?> getColumnClass(int columnIndex) {
@@ -69,6 +144,91 @@ public class AppointmentTableModel extends DefaultTableModel
         return tableColumn.getColumnClass();
     }
 
+    private static final Object NOT_COMPUTED = new Object();
+
+    static class Row
+    {
+        final AppointmentBlock block;
+        final String key;
+        final List<Long> versions;
+        Object[] values;
+        boolean unchanged;
+
+        Row(AppointmentBlock block, Map<Reservation, List<Long>> versionCache)
+        {
+            this.block = block;
+            final Appointment appointment = block.getAppointment();
+            this.key = appointment.getId() + ";" + block.getStart() + ";" + block.getEnd();
+            final Reservation reservation = appointment.getReservation();
+            if (reservation == null)
+            {
+                this.versions = null;
+            }
+            else
+            {
+                List<Long> versions = versionCache.get(reservation);
+                if (versions == null)
+                {
+                    versions = getVersions(reservation);
+                    versionCache.put(reservation, versions);
+                }
+                this.versions = versions;
+            }
+        }
+
+        /** the values can be reused if the appointment object is the same and neither the reservation nor the entities shown with it were changed */
+        boolean isSameVersion(Row other)
+        {
+            if (block.getAppointment() != other.block.getAppointment())
+            {
+                return false;
+            }
+            return versions == null ? other.versions == null : versions.equals(other.versions);
+        }
+
+        /** the last changed timestamps of the reservation and of the resources, types and categories that the columns can display with it */
+        private static List<Long> getVersions(Reservation reservation)
+        {
+            final List<Long> versions = new ArrayList<Long>();
+            addVersions(reservation, versions);
+            for (Allocatable allocatable : reservation.getAllocatables())
+            {
+                addVersions(allocatable, versions);
+            }
+            return versions;
+        }
+
+        private static void addVersions(Classifiable classifiable, List<Long> versions)
+        {
+            addVersion((LastChangedTimestamp) classifiable, versions);
+            final Classification classification = classifiable.getClassification();
+            if (classification == null)
+            {
+                return;
+            }
+            addVersion(classification.getType(), versions);
+            for (Attribute attribute : classification.getAttributes())
+            {
+                if (attribute.getType() != AttributeType.CATEGORY)
+                {
+                    continue;
+                }
+                for (Object value : classification.getValues(attribute))
+                {
+                    // the parents are part of the displayed category path
+                    for (Category category = (Category) value; category != null; category = category.getParent())
+                    {
+                        addVersion(category, versions);
+                    }
+                }
+            }
+        }
 
+        private static void addVersion(LastChangedTimestamp entity, List<Long> versions)
+        {
+            final Date lastChanged = entity != null ? entity.getLastChanged() : null;
+            versions.add(lastChanged != null ? lastChanged.getTime() : null);
+        }
+    }
 
 }
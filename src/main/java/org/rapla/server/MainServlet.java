@@ -15,11 +15,16 @@ package org.rapla.server;
 import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
 import org.rapla.components.util.IOUtil;
 import org.rapla.framework.RaplaException;
+import org.rapla.framework.metrics.RaplaMetrics;
+import org.rapla.framework.metrics.RequestTrace;
+import org.rapla.framework.internal.DefaultScheduler;
 import org.rapla.inject.Injector;
 import org.rapla.logger.Logger;
 import org.rapla.logger.RaplaBootstrapLogger;
 import org.rapla.server.extensionpoints.ServletRequestPreprocessor;
+import org.rapla.server.internal.RequestTracer;
 import org.rapla.server.internal.ServerContainerContext;
+import org.rapla.server.internal.ServerStorageSelector;
 import org.rapla.server.internal.ServerStarter;
 import org.rapla.server.internal.console.ClientStarter;
 import org.rapla.server.internal.console.ImportExportManagerContainer;
@@ -52,6 +57,7 @@ public class MainServlet extends HttpServlet
     ServerStarter serverStarter;
     private final HttpServletDispatcher dispatcher;
     private StandaloneStarter standaloneStarter = null;
+    private RequestTracer requestTracer = null;
 
     public MainServlet()
     {
@@ -134,6 +140,17 @@ public class MainServlet extends HttpServlet
                 }
             }
         }
+        for (String key : new String[] { ServerStorageSelector.HISTORY_MAX_BYTES, ServerStorageSelector.HISTORY_MAX_HEAP_BYTES, ServerStorageSelector.HISTORY_SPILL_FILE,
+                ServerStorageSelector.CONFLICT_HORIZON_MONTHS, ServerStorageSelector.IMPORT_WRITERS, ServerStorageSelector.IMPORT_BATCH_SIZE,
+                ServerStorageSelector.IMPORT_CHECKPOINT_FILE, ServerStorageSelector.JDBC_BATCH_SIZE, ServerStorageSelector.BACKUP_DIRECTORY, DefaultScheduler.POOL_SIZE, ServerStorageSelector.ARCHIVE_DIRECTORY,
+                RequestTracer.SAMPLE_RATE, RequestTracer.SLOW_MILLIS })
+        {
+            String value = jndi.lookupEnvString(key, false);
+            if (value != null)
+            {
+                backendContext.putSetting(key, value);
+            }
+        }
         env_raplamail = jndi.lookupResource("mail/Session", false);
         if (env_raplamail != null)
         {
@@ -155,6 +172,7 @@ public class MainServlet extends HttpServlet
         RaplaJNDIContext jndi = new RaplaJNDIContext(logger, getInitParameters(context));
         String startupUser = jndi.lookupEnvString("rapla_startup_user", false);
         ServerContainerContext backendContext = createBackendContext(logger, jndi);
+        requestTracer = new RequestTracer(logger, backendContext);
         if (jndi.hasContext())
         {
             startupMode = jndi.lookupEnvString("rapla_startup_mode", false);
@@ -325,17 +343,28 @@ public class MainServlet extends HttpServlet
 
     public void service(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
     {
+        final long start = System.nanoTime();
+        final String pathInfo = request.getPathInfo();
+        RequestTrace trace = null;
+        if (requestTracer != null)
+        {
+            final String requestId = requestTracer.createRequestId();
+            response.setHeader(RequestTracer.REQUEST_ID_HEADER, requestId);
+            trace = requestTracer.begin(requestId, request.getMethod() + " " + pathInfo);
+        }
         RaplaLock.ReadLock restartLock = null;
         try
         {
             try
             {
                 // we need to get the restart look to avoid serving pages in a restart
-                final String pathInfo = request.getPathInfo();
                 final boolean restartRequest = pathInfo != null && pathInfo.contains("storage/restart");
                 if (!restartRequest)
                 {
-                    restartLock = serverStarter.lockRestart();
+                    try (RequestTrace.Span span = RequestTrace.span("restartLock.wait"))
+                    {
+                        restartLock = serverStarter.lockRestart();
+                    }
                 }
                 for (ServletRequestPreprocessor preprocessor : serverStarter.getServletRequestPreprocessors())
                 {
@@ -407,7 +436,11 @@ public class MainServlet extends HttpServlet
                     }
                 }
             });
-            dispatcher.service(request, response);
+            // the self time of the dispatcher span is mostly spent in the json (de)serialization of the parameters and results
+            try (RequestTrace.Span span = RequestTrace.span("dispatcher"))
+            {
+                dispatcher.service(request, response);
+            }
         }
         finally
         {
@@ -442,8 +475,50 @@ public class MainServlet extends HttpServlet
             {
 
             }
+            recordRequest(pathInfo, response.getStatus(), start);
+            if (trace != null)
+            {
+                requestTracer.finish(trace);
+            }
+        }
+
+    }
+
+    private void recordRequest(String pathInfo, int status, long start)
+    {
+        final ServerServiceContainer server = serverStarter != null ? serverStarter.getServer() : null;
+        if (server == null)
+        {
+            return;
         }
+        final RaplaMetrics metrics = server.getMetrics();
+        final String path = status == HttpServletResponse.SC_NOT_FOUND ? "unknown" : getMetricsPath(pathInfo);
+        metrics.histogram("rapla_http_request_seconds", "Time to serve a request", "path", path).recordSince(start);
+        if (status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR)
+        {
+            metrics.counter("rapla_http_errors_total", "Requests that failed with a server error", "path", path).inc();
+        }
+    }
 
+    /** returns the label for the request path. The methods of the remote storage have no path parameters, so their full path is used,
+     * for the other pages only the first segment is used to avoid a label for each id or file name */
+    static String getMetricsPath(String pathInfo)
+    {
+        if (pathInfo == null || pathInfo.isEmpty() || pathInfo.equals("/"))
+        {
+            return "/";
+        }
+        String path = pathInfo.startsWith("/") ? pathInfo.substring(1) : pathInfo;
+        if (path.startsWith("rapla/"))
+        {
+            path = path.substring("rapla/".length());
+        }
+        if (path.startsWith("storage/"))
+        {
+            return path;
+        }
+        final int slash = path.indexOf('/');
+        return slash > 0 ? path.substring(0, slash) : path;
     }
 
     /**
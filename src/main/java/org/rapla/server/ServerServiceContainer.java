@@ -2,6 +2,7 @@ package org.rapla.server;
 
 import org.rapla.framework.Disposable;
 import org.rapla.framework.RaplaException;
+import org.rapla.framework.metrics.RaplaMetrics;
 import org.rapla.server.extensionpoints.ServletRequestPreprocessor;
 import org.rapla.storage.StorageOperator;
 
@@ -15,4 +16,6 @@ public interface ServerServiceContainer extends Disposable
 
     String getFirstAdmin() throws RaplaException;
 
+    RaplaMetrics getMetrics();
+
 }
@@ -2,6 +2,7 @@ package org.rapla.server.dagger;
 
 import dagger.Module;
 import dagger.Provides;
+import org.rapla.framework.internal.DefaultScheduler;
 import org.rapla.logger.Logger;
 import org.rapla.server.ServerService;
 import org.rapla.server.internal.ServerContainerContext;
@@ -38,6 +39,11 @@ import javax.inject.Named;
         return context.getMailSession();
     }
 
+    @Named(DefaultScheduler.POOL_SIZE) @Provides Integer schedulerPoolSize()
+    {
+        return DefaultScheduler.getPoolSize(logger, context.getSetting(DefaultScheduler.POOL_SIZE));
+    }
+
     @Provides ShutdownService st()
     {
         return context.getShutdownService();
@@ -1,5 +1,6 @@
 package org.rapla.server.dagger;
 
+import org.rapla.framework.internal.DefaultScheduler;
 import org.rapla.inject.InjectionContext;
 import org.rapla.inject.Injector;
 import org.rapla.inject.ReflectionMembersInjector;
@@ -47,6 +48,8 @@ public class DaggerServerCreator
             injector.addComponentInstance(ServerContainerContext.class, containerContext);
             injector.addComponentProvider(CachableStorageOperator.class, ServerStorageSelector.class);
             injector.addNamedComponentInstanceProvider(ServerService.ENV_RAPLAMAIL_ID, () -> containerContext.getMailSession());
+            injector.addNamedComponentInstanceProvider(DefaultScheduler.POOL_SIZE,
+                    () -> DefaultScheduler.getPoolSize(logger, containerContext.getSetting(DefaultScheduler.POOL_SIZE)));
             injector.addComponentInstanceProvider(ShutdownService.class, () -> containerContext.getShutdownService());
             injector.addComponentProvider(StorageOperator.class, ServerStorageSelector.class);
             ScanningClassLoader.LoadingFilter filter = null;
@@ -22,9 +22,11 @@ import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
 import org.rapla.entities.storage.EntityReferencer;
 import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.Conflict;
 import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.internal.AbstractRaplaLocale;
+import org.rapla.framework.metrics.RequestTrace;
 import org.rapla.inject.DefaultImplementation;
 import org.rapla.inject.InjectionContext;
 import org.rapla.logger.Logger;
@@ -219,9 +221,9 @@ import java.util.stream.Collectors;
             }
         }
         ClassificationFilter[] classificationFilters = null;
-        final Promise<Map<Allocatable, Collection<Appointment>>> mapFutureResult = operator
-                .queryAppointments(user, allocatables, start, end, classificationFilters, annotationQuery);
-        Map<Allocatable, Collection<Appointment>> reservations = operator.waitForWithRaplaException(mapFutureResult, 50000);
+        // the request thread would wait for the result anyway, so we query on this thread instead of blocking a scheduler thread, too
+        Map<Allocatable, Collection<Appointment>> reservations = operator
+                .queryAppointmentsSync(user, allocatables, start, end, classificationFilters, annotationQuery);
         AppointmentMap list = new AppointmentMap(reservations);
         getLogger().debug("Get reservations " + start + " " + end + ": " + reservations.size() + "," + list.toString());
         return new ResolvedPromise<AppointmentMap>(list);
@@ -285,13 +287,23 @@ import java.util.stream.Collectors;
         {
             event.setUserId(sessionUser.getId());
         }
-        dispatch_(event);
+        try (RequestTrace.Span span = RequestTrace.span("dispatch"))
+        {
+            dispatch_(event);
+        }
         getLogger().info("Change for user " + sessionUser + " dispatched.");
 
-        UpdateEvent result = updateDataManager.createUpdateEvent(sessionUser, lastSynced);
-        for ( PrePostDispatchProcessor processor:prePostDispatchProcessors)
+        final UpdateEvent result;
+        try (RequestTrace.Span span = RequestTrace.span("createUpdateEvent"))
         {
-            processor.postProcess(sessionUser, result);
+            result = updateDataManager.createUpdateEvent(sessionUser, lastSynced);
+        }
+        try (RequestTrace.Span span = RequestTrace.span("postProcess"))
+        {
+            for ( PrePostDispatchProcessor processor:prePostDispatchProcessors)
+            {
+                processor.postProcess(sessionUser, result);
+            }
         }
         return result;
     }
@@ -428,8 +440,10 @@ import java.util.stream.Collectors;
         try
         {
             Date clientRepoVersion = SerializableDateTimeFormat.INSTANCE.parseTimestamp(lastSyncedTime);
-            UpdateEvent event = updateDataManager.createUpdateEvent(user, clientRepoVersion);
-            return event;
+            try (RequestTrace.Span span = RequestTrace.span("createUpdateEvent"))
+            {
+                return updateDataManager.createUpdateEvent(user, clientRepoVersion);
+            }
         }
         catch (ParseDateException e)
         {
@@ -550,7 +564,38 @@ import java.util.stream.Collectors;
         } catch (RaplaException e) {
             return new ResolvedPromise<>(e);
         }
-        return operator.getConflicts(sessionUser).thenApply((conflicts) -> conflicts.stream().map(conflict -> (ConflictImpl) conflict).collect(Collectors.toList()));
+        // like queryAppointments, the request thread would wait for the result anyway
+        try
+        {
+            return new ResolvedPromise<>(toConflictImpls(operator.getConflictsSync(sessionUser)));
+        }
+        catch (RaplaException e)
+        {
+            return new ResolvedPromise<>(e);
+        }
+    }
+
+    private List<ConflictImpl> toConflictImpls(Collection<Conflict> conflicts)
+    {
+        return conflicts.stream().map(conflict -> (ConflictImpl) conflict).collect(Collectors.toList());
+    }
+
+    @Override public Promise<List<ConflictImpl>> getConflictsInRange(ConflictRangeRequest job)
+    {
+        User sessionUser;
+        try {
+            sessionUser = checkSessionUser();
+        } catch (RaplaException e) {
+            return new ResolvedPromise<>(e);
+        }
+        try
+        {
+            return new ResolvedPromise<>(toConflictImpls(operator.getConflictsSync(sessionUser, job.getStart(), job.getEnd())));
+        }
+        catch (RaplaException e)
+        {
+            return new ResolvedPromise<>(e);
+        }
     }
 
     @Override public Promise<Date> getNextAllocatableDate(NextAllocatableDateRequest job)
@@ -573,9 +618,16 @@ import java.util.stream.Collectors;
             return  new ResolvedPromise<Date>(ex);
         }
         Collection<Reservation> ignoreList = resolveReservations(reservationIds);
-        final Promise<Date> nextAllocatableDate = operator
-                .getNextAllocatableDate(allocatables, appointment, ignoreList, worktimestartMinutes, worktimeendMinutes, excludedDays, rowsPerHour);
-        return nextAllocatableDate;
+        try
+        {
+            final Date nextAllocatableDate = operator
+                    .getNextAllocatableDateSync(allocatables, appointment, ignoreList, worktimestartMinutes, worktimeendMinutes, excludedDays, rowsPerHour);
+            return new ResolvedPromise<Date>(nextAllocatableDate);
+        }
+        catch (RaplaException ex)
+        {
+            return new ResolvedPromise<Date>(ex);
+        }
 
     }
 
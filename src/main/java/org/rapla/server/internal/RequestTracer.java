@@ -0,0 +1,114 @@
+package org.rapla.server.internal;
+
+import org.rapla.framework.metrics.RequestTrace;
+import org.rapla.logger.Logger;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns the request ids and decides which requests are traced. Traced requests that take longer than the slow threshold are logged
+ * with their span tree.
+ */
+public class RequestTracer
+{
+    /** fraction of the requests that are traced, between 0 and 1. Tracing is off if not set */
+    public static final String SAMPLE_RATE = "rapla_trace_sample_rate";
+    /** traced requests that take at least this number of milliseconds are logged */
+    public static final String SLOW_MILLIS = "rapla_trace_slow_ms";
+    public static final String REQUEST_ID_HEADER = "X-Rapla-Request-Id";
+    static final long DEFAULT_SLOW_MILLIS = 2000;
+
+    private final Logger logger;
+    private final double sampleRate;
+    private final long slowNanos;
+    private final String idPrefix = Long.toString(System.currentTimeMillis(), 36) + "-";
+    private final AtomicLong requestCounter = new AtomicLong();
+
+    public RequestTracer(Logger logger, ServerContainerContext containerContext)
+    {
+        this(logger, getSampleRate(logger, containerContext.getSetting(SAMPLE_RATE)), getSlowMillis(logger, containerContext.getSetting(SLOW_MILLIS)));
+    }
+
+    public RequestTracer(Logger logger, double sampleRate, long slowMillis)
+    {
+        this.logger = logger;
+        this.sampleRate = sampleRate;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        if (sampleRate > 0)
+        {
+            logger.info("Tracing " + sampleRate * 100 + "% of the requests. Requests that take more than " + slowMillis + " ms are logged.");
+        }
+    }
+
+    public String createRequestId()
+    {
+        return idPrefix + Long.toString(requestCounter.incrementAndGet(), 36);
+    }
+
+    /** starts a trace for the current thread if the request is sampled, returns null otherwise */
+    public RequestTrace begin(String requestId, String name)
+    {
+        if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate))
+        {
+            return null;
+        }
+        return RequestTrace.begin(requestId, name);
+    }
+
+    public void finish(RequestTrace trace)
+    {
+        if (trace == null)
+        {
+            return;
+        }
+        trace.end();
+        if (trace.getDurationNanos() >= slowNanos)
+        {
+            logger.warn("Slow " + trace.dump());
+        }
+    }
+
+    static double getSampleRate(Logger logger, String setting)
+    {
+        if (setting == null || setting.trim().isEmpty())
+        {
+            return 0;
+        }
+        try
+        {
+            final double sampleRate = Double.parseDouble(setting.trim());
+            if (sampleRate >= 0 && sampleRate <= 1)
+            {
+                return sampleRate;
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+        }
+        logger.warn("Invalid value " + setting + " for " + SAMPLE_RATE + ". Tracing is disabled.");
+        return 0;
+    }
+
+    static long getSlowMillis(Logger logger, String setting)
+    {
+        if (setting == null || setting.trim().isEmpty())
+        {
+            return DEFAULT_SLOW_MILLIS;
+        }
+        try
+        {
+            final long slowMillis = Long.parseLong(setting.trim());
+            if (slowMillis >= 0)
+            {
+                return slowMillis;
+            }
+        }
+        catch (NumberFormatException ex)
+        {
+        }
+        logger.warn("Invalid value " + setting + " for " + SLOW_MILLIS + ". Using " + DEFAULT_SLOW_MILLIS);
+        return DEFAULT_SLOW_MILLIS;
+    }
+}
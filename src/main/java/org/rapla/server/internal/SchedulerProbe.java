@@ -0,0 +1,59 @@
+package org.rapla.server.internal;
+
+import io.reactivex.disposables.Disposable;
+import org.rapla.framework.metrics.LatencyHistogram;
+import org.rapla.framework.metrics.RaplaMetrics;
+import org.rapla.inject.Extension;
+import org.rapla.scheduler.CommandScheduler;
+import org.rapla.server.extensionpoints.ServerExtension;
+
+import javax.inject.Inject;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** The queue of the command scheduler is not accessible, so its depth is measured indirectly. A probe task is queued periodically
+ * and the time until it starts is recorded. The number of probes that are queued but not started yet is exported as gauge. */
+@Extension(provides = ServerExtension.class, id = RaplaMetrics.ID)
+public class SchedulerProbe implements ServerExtension
+{
+    static final long PROBE_PERIOD = 10000;
+
+    private final CommandScheduler scheduler;
+    private final LatencyHistogram queueDelay;
+    private final AtomicInteger pendingProbes = new AtomicInteger();
+    private Disposable schedule;
+
+    @Inject
+    public SchedulerProbe(CommandScheduler scheduler, RaplaMetrics metrics)
+    {
+        this.scheduler = scheduler;
+        this.queueDelay = metrics.histogram("rapla_scheduler_queue_delay_seconds", "Time a task waits in the scheduler queue before it starts");
+        metrics.gauge("rapla_scheduler_pending_probes", "Probe tasks that are queued in the scheduler but not started", pendingProbes::get);
+    }
+
+    @Override
+    public void start()
+    {
+        schedule = scheduler.schedule(this::probe, PROBE_PERIOD, PROBE_PERIOD);
+    }
+
+    void probe()
+    {
+        final long queued = System.nanoTime();
+        pendingProbes.incrementAndGet();
+        scheduler.run(() ->
+        {
+            pendingProbes.decrementAndGet();
+            queueDelay.recordSince(queued);
+        });
+    }
+
+    @Override
+    public void stop()
+    {
+        if (schedule != null)
+        {
+            schedule.dispose();
+            schedule = null;
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class ServerContainerContext
     private Map<String,DataSource> dbDatasources = new LinkedHashMap<String,DataSource>();
     private Map<String,String> fileDatasources = new LinkedHashMap<String,String>();
     private Map<String,Boolean> services = new LinkedHashMap<>(); 
+    private Map<String,String> settings = new LinkedHashMap<>();
     private Object mailSession;
     Runnable shutdownCommand;
 
@@ -86,6 +87,17 @@ public class ServerContainerContext
         return true;
     }
 
+    public void putSetting(String key, String value)
+    {
+        settings.put(key, value);
+    }
+
+    /** returns the configured value of a server setting or null if not set*/
+    public String getSetting(String key)
+    {
+        return settings.get(key);
+    }
+
     public void addFileDatasource(String key,String fileDatasource)
     {
         fileDatasources.put(key, fileDatasource);
@@ -30,6 +30,7 @@ import org.rapla.framework.RaplaLocale;
 import org.rapla.framework.internal.AbstractRaplaLocale;
 import org.rapla.framework.internal.DefaultScheduler;
 import org.rapla.framework.internal.RaplaLocaleImpl;
+import org.rapla.framework.metrics.RaplaMetrics;
 import org.rapla.inject.DefaultImplementation;
 import org.rapla.inject.InjectionContext;
 import org.rapla.logger.Logger;
@@ -63,6 +64,7 @@ public class ServerServiceImpl implements ServerServiceContainer
 
     final Set<ServletRequestPreprocessor> requestPreProcessors;
     final Map<String, ServerExtension> stringServerExtensionMap;
+    final RaplaMetrics metrics;
     public Collection<ServletRequestPreprocessor> getServletRequestPreprocessors()
     {
         return requestPreProcessors;
@@ -70,8 +72,9 @@ public class ServerServiceImpl implements ServerServiceContainer
 
     @Inject public ServerServiceImpl(CachableStorageOperator operator, RaplaFacade facade, RaplaLocale raplaLocale, TimeZoneConverter importExportLocale,
             Logger logger, final Provider<Map<String, ServerExtension>> serverExtensions, final Provider<Set<ServletRequestPreprocessor>> requestPreProcessors,
-            CommandScheduler scheduler, ServerContainerContext serverContainerContext,RaplaResources i18n, RaplaSystemInfo systemInfo) throws RaplaInitializationException
+            CommandScheduler scheduler, ServerContainerContext serverContainerContext,RaplaResources i18n, RaplaSystemInfo systemInfo, RaplaMetrics metrics) throws RaplaInitializationException
     {
+        this.metrics = metrics;
         String version = systemInfo.getString("rapla.version");
         logger.info("Rapla.Version=" + version);
         version = systemInfo.getString("rapla.build");
@@ -172,6 +175,12 @@ public class ServerServiceImpl implements ServerServiceContainer
         }
     }
 
+    @Override
+    public RaplaMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     public RaplaLocale getRaplaLocale()
     {
         return raplaLocale;
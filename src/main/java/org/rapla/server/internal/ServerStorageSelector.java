@@ -4,20 +4,25 @@ import org.jetbrains.annotations.NotNull;
 import org.rapla.RaplaResources;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.extensionpoints.FunctionFactory;
+import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.metrics.RaplaMetrics;
 import org.rapla.logger.Logger;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.server.PromiseWait;
 import org.rapla.storage.CachableStorageOperator;
 import org.rapla.storage.ImportExportManager;
 import org.rapla.storage.dbfile.FileOperator;
+import org.rapla.storage.dbsql.AbstractTableStorage;
 import org.rapla.storage.dbsql.DBOperator;
 import org.rapla.storage.impl.server.ImportExportManagerImpl;
+import org.rapla.storage.impl.server.LocalAbstractCachableOperator;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.sql.DataSource;
+import java.io.File;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,9 +30,32 @@ import java.util.Set;
 @Singleton
 public class ServerStorageSelector implements Provider<CachableStorageOperator>
 {
+    /** maximum number of bytes the entity history may use in heap and spill file. Older versions are evicted when exceeded */
+    public static final String HISTORY_MAX_BYTES = "rapla_history_max_bytes";
+    /** maximum number of bytes the entity history may use in heap before versions are spilled to the spill file */
+    public static final String HISTORY_MAX_HEAP_BYTES = "rapla_history_max_heap_bytes";
+    public static final String HISTORY_SPILL_FILE = "rapla_history_spill_file";
+    static final long DEFAULT_HISTORY_MAX_HEAP_BYTES = 64 * 1024 * 1024;
+    /** number of months from today in which conflicts are calculated and stored. Conflicts beyond are only calculated on request */
+    public static final String CONFLICT_HORIZON_MONTHS = "rapla_conflict_horizon_months";
+    /** number of connections that write the events while the data file is imported into the database. If not set, the file is loaded completely before it is written */
+    public static final String IMPORT_WRITERS = "rapla_import_writers";
+    /** number of events that are written in one transaction by the streaming import */
+    public static final String IMPORT_BATCH_SIZE = "rapla_import_batch_size";
+    /** file that stores the progress of the streaming import. Defaults to the data file with the suffix .import */
+    public static final String IMPORT_CHECKPOINT_FILE = "rapla_import_checkpoint_file";
+    static final long DEFAULT_IMPORT_BATCH_SIZE = 500;
+    /** maximum number of rows that are sent to the database in one batch */
+    public static final String JDBC_BATCH_SIZE = "rapla_jdbc_batch_size";
+    /** directory for the compressed full and incremental backups. If not set, a backup exports the database into the data file */
+    public static final String BACKUP_DIRECTORY = "rapla_backup_directory";
+    /** directory of the reservation archive. Defaults to archive next to the data file */
+    public static final String ARCHIVE_DIRECTORY = "rapla_archive_dir";
+
     final ServerContainerContext containerContext;
     FileOperator file;
     DBOperator db;
+    boolean metricsConfigured;
 
     final Logger logger;
     final RaplaResources i18n;
@@ -37,9 +65,10 @@ public class ServerStorageSelector implements Provider<CachableStorageOperator>
     final Set<PermissionExtension> permissionExtensions;
     ImportExportManager manager;
     final PromiseWait promiseWait;
+    final RaplaMetrics metrics;
 
     @Inject public ServerStorageSelector(ServerContainerContext containerContext, Logger logger, RaplaResources i18n, RaplaLocale raplaLocale, CommandScheduler scheduler, Map<String, FunctionFactory> functionFactoryMap,
-            Set<PermissionExtension> permissionExtensions, PromiseWait promiseWait)
+            Set<PermissionExtension> permissionExtensions, PromiseWait promiseWait, RaplaMetrics metrics)
     {
 
         this.containerContext = containerContext;
@@ -50,20 +79,30 @@ public class ServerStorageSelector implements Provider<CachableStorageOperator>
         this.functionFactoryMap = functionFactoryMap;
         this.permissionExtensions = permissionExtensions;
         this.promiseWait = promiseWait;
+        this.metrics = metrics;
     }
 
     @NotNull private FileOperator createFileOperator()
     {
-        final String raplafile = containerContext.getMainFilesource();
-        final String fileDatasource = raplafile != null ? raplafile : "data/data.xml";
-        return new FileOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, fileDatasource, permissionExtensions);
+        final String fileDatasource = getFileDatasource();
+        final FileOperator operator = new FileOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, fileDatasource, permissionExtensions);
+        configureHistory(operator);
+        operator.configureConflictHorizon((int) getLongSetting(CONFLICT_HORIZON_MONTHS, LocalAbstractCachableOperator.DEFAULT_CONFLICT_HORIZON_MONTHS));
+        return operator;
     }
 
     synchronized private ImportExportManager getImportExport()
     {
         if (manager == null)
         {
-            manager = new ImportExportManagerImpl(logger, getFile(), getDb());
+            final ImportExportManagerImpl manager = new ImportExportManagerImpl(logger, getFile(), getDb());
+            final int writers = (int) getLongSetting(IMPORT_WRITERS, 0);
+            final int batchSize = (int) Math.max(1, getLongSetting(IMPORT_BATCH_SIZE, DEFAULT_IMPORT_BATCH_SIZE));
+            final String checkpointFile = containerContext.getSetting(IMPORT_CHECKPOINT_FILE);
+            manager.configureStreamingImport(writers, batchSize, new File(checkpointFile != null ? checkpointFile : getFileDatasource() + ".import"));
+            final String backupDirectory = containerContext.getSetting(BACKUP_DIRECTORY);
+            manager.configureBackup(backupDirectory != null ? new File(backupDirectory) : null);
+            this.manager = manager;
         }
         return manager;
     }
@@ -83,21 +122,65 @@ public class ServerStorageSelector implements Provider<CachableStorageOperator>
     {
         Provider<ImportExportManager> importExportMananger = getImportExportManager();
         final DataSource dbDatasource = containerContext.getMainDbDatasource();
-        return new DBOperator(logger, promiseWait,i18n, raplaLocale, scheduler, functionFactoryMap, importExportMananger, dbDatasource, permissionExtensions);
+        final DBOperator operator = new DBOperator(logger, promiseWait, i18n, raplaLocale, scheduler, functionFactoryMap, importExportMananger, dbDatasource,
+                permissionExtensions);
+        configureHistory(operator);
+        operator.configureConflictHorizon((int) getLongSetting(CONFLICT_HORIZON_MONTHS, LocalAbstractCachableOperator.DEFAULT_CONFLICT_HORIZON_MONTHS));
+        operator.configureBatchSize((int) getLongSetting(JDBC_BATCH_SIZE, AbstractTableStorage.DEFAULT_BATCH_SIZE));
+        return operator;
     }
 
+    private String getFileDatasource()
+    {
+        final String raplafile = containerContext.getMainFilesource();
+        return raplafile != null ? raplafile : "data/data.xml";
+    }
 
+    private void configureHistory(LocalAbstractCachableOperator operator)
+    {
+        final long maxBytes = getLongSetting(HISTORY_MAX_BYTES, Long.MAX_VALUE);
+        final long maxHeapBytes = getLongSetting(HISTORY_MAX_HEAP_BYTES, DEFAULT_HISTORY_MAX_HEAP_BYTES);
+        final String spillFile = containerContext.getSetting(HISTORY_SPILL_FILE);
+        try
+        {
+            operator.configureHistory(spillFile != null ? new File(spillFile) : null, maxHeapBytes, maxBytes);
+        }
+        catch (RaplaException ex)
+        {
+            logger.error("Could not configure history spill file " + spillFile + ". Keeping history in memory. " + ex.getMessage(), ex);
+        }
+    }
 
-    synchronized public CachableStorageOperator get()
+    private long getLongSetting(String key, long defaultValue)
     {
-        if (containerContext.isDbDatasource())
+        final String value = containerContext.getSetting(key);
+        if (value == null || value.trim().isEmpty())
+        {
+            return defaultValue;
+        }
+        try
         {
-            return getDb();
+            return Long.parseLong(value.trim());
         }
-        else
+        catch (NumberFormatException ex)
+        {
+            logger.warn("Invalid value " + value + " for " + key + ". Using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+
+
+    synchronized public CachableStorageOperator get()
+    {
+        final LocalAbstractCachableOperator operator = containerContext.isDbDatasource() ? getDb() : getFile();
+        // the other operator is only used for import and export and must not replace the metrics of the active one
+        if (!metricsConfigured)
         {
-            return getFile();
+            operator.configureMetrics(metrics);
+            metricsConfigured = true;
         }
+        return operator;
     }
 
     @NotNull private FileOperator getFile()
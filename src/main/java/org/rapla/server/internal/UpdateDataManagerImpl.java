@@ -25,10 +25,8 @@ import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.Permission;
 import org.rapla.entities.domain.PermissionContainer;
-import org.rapla.entities.domain.PermissionContainer.Util;
 import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.domain.internal.PermissionImpl;
-import org.rapla.entities.domain.internal.ReservationImpl;
 import org.rapla.entities.dynamictype.Classifiable;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.internal.DynamicTypeImpl;
@@ -50,11 +48,15 @@ import org.rapla.storage.UpdateResult.Remove;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.stream.Collectors;
 
 /** Provides an adapter for each client-session to their shared storage operator
  * Handles security and synchronizing aspects.
@@ -71,6 +73,10 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
 
     private final PermissionController permissionController;
 
+    private final UpdateEventCache updateEventCache = new UpdateEventCache();
+
+    /** from this number of changed entities on, the entities are filtered for the user in parallel */
+    static final int PARALLEL_FILTER_THRESHOLD = 500;
 
     @Inject public UpdateDataManagerImpl(Logger logger, CachableStorageOperator operator, SecurityManager securityManager)
     {
@@ -100,19 +106,48 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
         return clone;
     }
 
-    private TimeInterval expandInterval(RaplaObject obj,
-            TimeInterval currentInterval)
+    /** collects the invalidate interval of the changed reservations as milliseconds, so that no interval is created per appointment */
+    static class InvalidateInterval
     {
-        if ( obj.getTypeClass() == Reservation.class)
+        private long start = Long.MAX_VALUE;
+        private long end = Long.MIN_VALUE;
+        private boolean empty = true;
+
+        void add(long[] extent)
+        {
+            if (extent.length == 0)
+            {
+                return;
+            }
+            empty = false;
+            start = Math.min(start, extent[0]);
+            end = Math.max(end, extent[1]);
+        }
+
+        void addUnbounded()
+        {
+            empty = false;
+            start = Long.MIN_VALUE;
+            end = Long.MAX_VALUE;
+        }
+
+        /** returns null if no reservation was added */
+        TimeInterval toTimeInterval()
         {
-            for ( Appointment app:((ReservationImpl)obj).getAppointmentList())
+            if (empty)
             {
-                Date start = app.getStart();
-                Date end = app.getMaxEnd();
-                currentInterval = new TimeInterval(start, end).union( currentInterval);
+                return null;
             }
+            return new TimeInterval(start != Long.MIN_VALUE ? new Date(start) : null, end != Long.MAX_VALUE ? new Date(end) : null);
+        }
+    }
+
+    private void expandInterval(Entity obj, InvalidateInterval interval)
+    {
+        if (obj.getTypeClass() == Reservation.class)
+        {
+            interval.add(updateEventCache.getExtent((Reservation) obj));
         }
-        return currentInterval;
     }
 
     public UpdateEvent createUpdateEvent(User user, Date lastSynced) throws RaplaException
@@ -130,7 +165,8 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
         TimeZone systemTimeZone = operator.getTimeZone();
         int timezoneOffset = TimeZoneConverterImpl.getOffset(IOUtil.getTimeZone(), systemTimeZone, currentTimestamp.getTime());
         safeResultEvent.setTimezoneOffset(timezoneOffset);
-        TimeInterval timeInterval= null;
+        safeResultEvent.setConflictHorizon(operator.getConflictHorizon());
+        InvalidateInterval invalidateInterval = new InvalidateInterval();
         final UpdateResult updateResult = operator.getUpdateResult(lastSynced, user);
         safeResultEvent.setLastValidated(updateResult.getUntil());
         if(updateResult.getSince() == null)
@@ -141,29 +177,15 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
         }
         boolean resourceRefresh = lastSynced.before( historyValidStart);
         boolean conflictRefresh = lastSynced.before( conflictValidStart);
-        for (Remove op : updateResult.getOperations(Remove.class))
+        for (UpdateOperation op : updateResult.getOperations())
         {
-            if ( op.getType() == DynamicType.class)
+            if (op.getType() == DynamicType.class)
             {
-                resourceRefresh = true;
-                conflictRefresh = true;
-            }
-        }
-        if ( !conflictRefresh)
-        {
-            for (UpdateOperation op : updateResult.getOperations(Change.class))
-            {
-                if (op.getType() == DynamicType.class)
+                if (op instanceof Remove)
                 {
-                    conflictRefresh = true;
-                }
-            }
-            for (UpdateOperation op : updateResult.getOperations(UpdateResult.Add.class))
-            {
-                if (op.getType() == DynamicType.class)
-                {
-                    conflictRefresh = true;
+                    resourceRefresh = true;
                 }
+                conflictRefresh = true;
             }
         }
 
@@ -178,6 +200,7 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
             if ( newObject == null)
             {
                 getLogger().error("Object with id " + currentId + " not found in history. Ignoring. ");
+                continue;
             }
             // we get all the permissions that have changed on an allocatable
             if (typeClass == Allocatable.class && isTransferedToClient(newObject))
@@ -190,7 +213,7 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
                 else
                 {
                     PermissionContainer newObj = (PermissionContainer) newObject;
-                    Util.addDifferences(invalidatePermissions, current, newObj);
+                    invalidatePermissions.addAll(updateEventCache.getPermissionDifferences(current, newObj));
                 }
             }
             // We trigger a resource refresh if the groups of the user have changed
@@ -249,7 +272,7 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
                 else
                 {
                     PermissionContainer newObj = (PermissionContainer) newObject;
-                    Util.addDifferences(invalidateEventPermissions, current, newObj);
+                    invalidateEventPermissions.addAll(updateEventCache.getPermissionDifferences(current, newObj));
                 }
             }
         }
@@ -326,25 +349,33 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
         {
             //Collection<Entity> updatedEntities = operator.getUpdatedEntities(user, lastSynced);
 
+            final List<Entity> addedAndChanged = new ArrayList<Entity>();
             for (ReferenceInfo id : updateResult.getAddedAndChangedIds())
             {
                 final Entity obj = updateResult.getLastKnown(id);
                 final Class<? extends  Entity> raplaType = obj.getTypeClass();
                 if ( raplaType == Reservation.class)
                 {
-                    timeInterval = expandInterval(obj, timeInterval);
+                    expandInterval(obj, invalidateInterval);
                     final Entity entity  = updateResult.getLastEntryBeforeUpdate(id);
                     if ( entity != null)
                     {
-                        timeInterval = expandInterval(entity, timeInterval);
+                        expandInterval(entity, invalidateInterval);
                     }
                     else
                     {
-                        timeInterval = new TimeInterval( null, null);
+                        invalidateInterval.addUnbounded();
                     }
                 }
-                    // Add entity to result
-                processClientReadable(user, safeResultEvent, obj, false);
+                else if (isTransferedToClient(obj))
+                {
+                    addedAndChanged.add(obj);
+                }
+            }
+            // Add entities to result
+            for (Entity obj : getClientReadable(user, addedAndChanged))
+            {
+                safeResultEvent.addStore(obj);
             }
             Collection<Remove> removedEntities = updateResult.getOperations(UpdateResult.Remove.class);
             for (Remove remove : removedEntities)
@@ -360,11 +391,11 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
                     final Entity entity = updateResult.getLastEntryBeforeUpdate(ref);
                     if ( entity != null)
                     {
-                        timeInterval = expandInterval(entity, timeInterval);
+                        expandInterval(entity, invalidateInterval);
                     }
                     else
                     {
-                        timeInterval = new TimeInterval( null, null);
+                        invalidateInterval.addUnbounded();
                     }
                 }
             }
@@ -372,20 +403,36 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
         {
             if (conflictRefresh || resourceRefresh)
             {
-                timeInterval = new TimeInterval(null, null);
+                invalidateInterval.addUnbounded();
             }
-            safeResultEvent.setInvalidateInterval(timeInterval);
+            safeResultEvent.setInvalidateInterval(invalidateInterval.toTimeInterval());
         }
         return safeResultEvent;
     }
 
-    // adds an object to the update event if the client can see it
-    protected void processClientReadable(User user, UpdateEvent safeResultEvent, Entity obj, boolean remove)
+    /** returns the entities the client can see in the order of the passed list. Large lists are partitioned and filtered in parallel, because the
+     * permission checks are independent of each other */
+    private List<Entity> getClientReadable(User user, List<Entity> entities)
     {
-        if (!UpdateDataManagerImpl.isTransferedToClient(obj))
+        if (entities.size() < PARALLEL_FILTER_THRESHOLD)
         {
-            return;
+            final List<Entity> result = new ArrayList<Entity>();
+            for (Entity obj : entities)
+            {
+                final Entity readable = getClientReadable(user, obj);
+                if (readable != null)
+                {
+                    result.add(readable);
+                }
+            }
+            return result;
         }
+        return entities.parallelStream().map((obj) -> getClientReadable(user, obj)).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /** returns the object or the copy that is transferred to the client or null if the client can't see it */
+    private Entity getClientReadable(User user, Entity obj)
+    {
         boolean clientStore = true;
         if (user != null)
         {
@@ -428,17 +475,7 @@ public class UpdateDataManagerImpl implements  UpdateDataManager
                 }
             }
         }
-        if (clientStore)
-        {
-            if (remove)
-            {
-                safeResultEvent.putRemove(obj);
-            }
-            else
-            {
-                safeResultEvent.addStore(obj);
-            }
-        }
+        return clientStore ? obj : null;
     }
 
     static boolean isTransferedToClient(RaplaObject obj)
@@ -0,0 +1,159 @@
+package org.rapla.server.internal;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.LastChangedTimestamp;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Permission;
+import org.rapla.entities.domain.PermissionContainer;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.storage.ReferenceInfo;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Caches the user independent parts of an update event, so that they are computed once per entity version and not for every polling client.
+ * The time extent of a reservation is stored per reservation version and the permission differences per (old version, new version) pair.
+ * Because entries are keyed by version no invalidation is needed, the maps are cleared when they are full.
+ */
+class UpdateEventCache
+{
+    static final int MAX_ENTRIES = 50000;
+    /** marks the extent of a reservation without appointments */
+    static final long[] NO_EXTENT = new long[0];
+
+    private final Map<Key, long[]> extents = new HashMap<Key, long[]>();
+    private final Map<Key, Set<Permission>> permissionDifferences = new HashMap<Key, Set<Permission>>();
+
+    static final class Key
+    {
+        private final ReferenceInfo reference;
+        private final long oldVersion;
+        private final long newVersion;
+        private final int hashCode;
+
+        Key(ReferenceInfo reference, long oldVersion, long newVersion)
+        {
+            this.reference = reference;
+            this.oldVersion = oldVersion;
+            this.newVersion = newVersion;
+            int hash = reference.hashCode();
+            hash = 31 * hash + (int) (oldVersion ^ (oldVersion >>> 32));
+            hash = 31 * hash + (int) (newVersion ^ (newVersion >>> 32));
+            this.hashCode = hash;
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return oldVersion == other.oldVersion && newVersion == other.newVersion && reference.equals(other.reference);
+        }
+
+        @Override public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    /** returns the start and the end of all appointments of the reservation in milliseconds or {@link #NO_EXTENT} if the reservation has no appointments.
+     * An open start is {@link Long#MIN_VALUE}, an open end {@link Long#MAX_VALUE}*/
+    public long[] getExtent(Reservation reservation)
+    {
+        final Date lastChanged = reservation.getLastChanged();
+        if (lastChanged == null)
+        {
+            return calculateExtent(reservation);
+        }
+        final Key key = new Key(reservation.getReference(), 0, lastChanged.getTime());
+        synchronized (this)
+        {
+            final long[] extent = extents.get(key);
+            if (extent != null)
+            {
+                return extent;
+            }
+        }
+        final long[] extent = calculateExtent(reservation);
+        synchronized (this)
+        {
+            if (extents.size() >= MAX_ENTRIES)
+            {
+                extents.clear();
+            }
+            extents.put(key, extent);
+        }
+        return extent;
+    }
+
+    /** returns the permissions that were added, removed or changed between the two versions of the container. The returned set must not be modified */
+    public Set<Permission> getPermissionDifferences(PermissionContainer oldContainer, PermissionContainer newContainer)
+    {
+        final Date oldChanged = getLastChanged(oldContainer);
+        final Date newChanged = getLastChanged(newContainer);
+        if (oldChanged == null || newChanged == null)
+        {
+            return calculateDifferences(oldContainer, newContainer);
+        }
+        final Key key = new Key(((Entity) newContainer).getReference(), oldChanged.getTime(), newChanged.getTime());
+        synchronized (this)
+        {
+            final Set<Permission> differences = permissionDifferences.get(key);
+            if (differences != null)
+            {
+                return differences;
+            }
+        }
+        final Set<Permission> differences = calculateDifferences(oldContainer, newContainer);
+        synchronized (this)
+        {
+            if (permissionDifferences.size() >= MAX_ENTRIES)
+            {
+                permissionDifferences.clear();
+            }
+            permissionDifferences.put(key, differences);
+        }
+        return differences;
+    }
+
+    private static long[] calculateExtent(Reservation reservation)
+    {
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        final Appointment[] appointments = reservation.getAppointments();
+        if (appointments.length == 0)
+        {
+            return NO_EXTENT;
+        }
+        for (Appointment appointment : appointments)
+        {
+            final Date appointmentStart = appointment.getStart();
+            final Date maxEnd = appointment.getMaxEnd();
+            start = Math.min(start, appointmentStart != null ? appointmentStart.getTime() : Long.MIN_VALUE);
+            end = Math.max(end, maxEnd != null ? maxEnd.getTime() : Long.MAX_VALUE);
+        }
+        return new long[] { start, end };
+    }
+
+    private static Set<Permission> calculateDifferences(PermissionContainer oldContainer, PermissionContainer newContainer)
+    {
+        final Set<Permission> differences = new HashSet<Permission>();
+        PermissionContainer.Util.addDifferences(differences, oldContainer, newContainer);
+        return Collections.unmodifiableSet(differences);
+    }
+
+    private static Date getLastChanged(PermissionContainer container)
+    {
+        if (container instanceof Entity && container instanceof LastChangedTimestamp)
+        {
+            return ((LastChangedTimestamp) container).getLastChanged();
+        }
+        return null;
+    }
+}
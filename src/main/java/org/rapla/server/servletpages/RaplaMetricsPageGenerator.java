@@ -0,0 +1,45 @@
+package org.rapla.server.servletpages;
+
+import org.rapla.framework.metrics.RaplaMetrics;
+import org.rapla.server.internal.ServerContainerContext;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+
+/** serves the server metrics in the Prometheus text format under rapla/metrics */
+@Singleton
+@Path("metrics")
+public class RaplaMetricsPageGenerator
+{
+    @Inject RaplaMetrics metrics;
+    @Inject ServerContainerContext serverContainerContext;
+    @Inject
+    public RaplaMetricsPageGenerator()
+    {
+    }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public void generatePage( @Context HttpServletRequest request, @Context HttpServletResponse response ) throws IOException {
+        java.io.PrintWriter out = response.getWriter();
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        if ( !serverContainerContext.isServiceEnabled( RaplaMetrics.ID))
+        {
+            out.println("Metrics disabled");
+            response.setStatus( 404);
+            out.close();
+            return;
+        }
+        out.print( metrics.write());
+        out.close();
+    }
+
+}
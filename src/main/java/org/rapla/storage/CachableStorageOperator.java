@@ -19,8 +19,11 @@ import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.ClassificationFilter;
 import org.rapla.entities.storage.ImportExportEntity;
 import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.Conflict;
 import org.rapla.framework.RaplaException;
 import org.rapla.scheduler.Promise;
 
@@ -50,6 +53,20 @@ public interface CachableStorageOperator extends StorageOperator {
     UpdateResult getUpdateResult(Date since) throws RaplaException;
     UpdateResult getUpdateResult(Date since,User user) throws RaplaException;
 
+    /** same as queryAppointments but runs on the calling thread. Use it if the caller would block on the promise anyway */
+    Map<Allocatable, Collection<Appointment>> queryAppointmentsSync(User user, Collection<Allocatable> allocatables, Date start, Date end,
+            ClassificationFilter[] filters, Map<String, String> annotationQuery) throws RaplaException;
+
+    /** same as getConflicts but runs on the calling thread */
+    Collection<Conflict> getConflictsSync(User user) throws RaplaException;
+
+    /** same as getConflicts with range but runs on the calling thread */
+    Collection<Conflict> getConflictsSync(User user, Date start, Date end) throws RaplaException;
+
+    /** same as getNextAllocatableDate but runs on the calling thread */
+    Date getNextAllocatableDateSync(Collection<Allocatable> allocatables, Appointment appointment, Collection<Reservation> ignoreList,
+            Integer worktimeStartMinutes, Integer worktimeEndMinutes, Integer[] excludedDays, Integer rowsPerHour) throws RaplaException;
+
     Date getHistoryValidStart();
     Date getConnectStart();
 
@@ -18,6 +18,8 @@ import org.rapla.framework.RaplaException;
 public interface ImportExportManager {
     void doImport() throws RaplaException;
     void doExport() throws RaplaException;
+    /** writes a backup of the destination without blocking writers. Does an export if no backup directory is configured */
+    void doBackup() throws RaplaException;
 	CachableStorageOperator getSource() throws RaplaException;
 	CachableStorageOperator getDestination() throws RaplaException;
 }
@@ -68,6 +68,7 @@ public class LocalCache implements EntityResolver
 
     private String clientUserId;
     private final PermissionController permissionController;
+    private final NameFormatCache nameFormatCache = new NameFormatCache();
 
     public LocalCache(PermissionController permissionController)
     {
@@ -291,6 +292,64 @@ public class LocalCache implements EntityResolver
         disabledConflictApp2.clear();
         conflictLastChanged.clear();
         graph.clear();
+        nameFormatCache.clear();
+        permissionController.clearCache();
+    }
+
+    /**
+     * Returns a copy of the cache, e.g. for writing a backup without holding the lock. The cached entities are read only and replaced on
+     * change, so the copy keeps the versions of the time it was created. If resourceAndEventIds is not null, only the resources and events
+     * with these ids are copied. The dependency graph is not copied.
+     */
+    public LocalCache createSnapshot(Set<String> resourceAndEventIds)
+    {
+        final LocalCache snapshot = new LocalCache(permissionController);
+        snapshot.passwords.putAll(passwords);
+        snapshot.disabledConflictApp1.putAll(disabledConflictApp1);
+        snapshot.disabledConflictApp2.putAll(disabledConflictApp2);
+        snapshot.conflictLastChanged.putAll(conflictLastChanged);
+        snapshot.dynamicTypes.putAll(dynamicTypes);
+        snapshot.users.putAll(users);
+        if (resourceAndEventIds == null)
+        {
+            snapshot.entities.putAll(entities);
+            snapshot.resources.putAll(resources);
+            snapshot.reservations.putAll(reservations);
+            return snapshot;
+        }
+        for (Map.Entry<String, Entity> entry : entities.entrySet())
+        {
+            final Class<? extends Entity> typeClass = entry.getValue().getTypeClass();
+            if (typeClass != Reservation.class && typeClass != Appointment.class && typeClass != Allocatable.class)
+            {
+                snapshot.entities.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String id : resourceAndEventIds)
+        {
+            final AllocatableImpl resource = resources.get(id);
+            if (resource != null)
+            {
+                snapshot.resources.put(id, resource);
+                snapshot.entities.put(id, resource);
+            }
+            final ReservationImpl reservation = reservations.get(id);
+            if (reservation != null)
+            {
+                snapshot.reservations.put(id, reservation);
+                snapshot.entities.put(id, reservation);
+                for (Entity appointment : reservation.getSubEntities())
+                {
+                    snapshot.entities.put(appointment.getId(), appointment);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    public NameFormatCache getNameFormatCache()
+    {
+        return nameFormatCache;
     }
 
     public CategoryImpl getSuperCategory()
@@ -447,6 +506,12 @@ public class LocalCache implements EntityResolver
         };
     }
 
+    /** returns the number of entities in the cache including dependent entities like appointments */
+    public int getEntityCount()
+    {
+        return entities.size();
+    }
+
     @SuppressWarnings("unchecked") public Collection<User> getUsers()
     {
         return (Collection) users.values();
@@ -0,0 +1,297 @@
+/*--------------------------------------------------------------------------*
+ | Copyright (C) 2014 Christopher Kohlhaas                                  |
+ |                                                                          |
+ | This program is free software; you can redistribute it and/or modify     |
+ | it under the terms of the GNU General Public License as published by the |
+ | Free Software Foundation. A copy of the license has been included with   |
+ | these distribution in the COPYING file, if not go to www.fsf.org         |
+ |                                                                          |
+ | As a special exception, you are granted the permissions to link this     |
+ | program with every library, which license fulfills the Open Source       |
+ | Definition as published by the Open Source Initiative (OSI).             |
+ *--------------------------------------------------------------------------*/
+package org.rapla.storage;
+
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
+import org.rapla.entities.LastChangedTimestamp;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Attribute;
+import org.rapla.entities.dynamictype.AttributeType;
+import org.rapla.entities.dynamictype.Classifiable;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.storage.EntityReferencer;
+import org.rapla.entities.storage.ReferenceInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/** Caches the formatted names of persistant entities. An entry is stored for each (entity, version, annotation, locale) combination
+ * together with the entities the name depends on. These are the referenced entities and, transitively, the entities referenced by linked
+ * resources and by the resources of an event, because their names can be part of the formatted name.
+ * Entries are removed when the entity itself or one of the dependencies is changed or removed in an {@link UpdateResult}.
+ * A changed type or category clears the whole cache, because types and categories are also read without resolving them.
+ * Editable entities are never cached because their values can change without a new version.
+ */
+public class NameFormatCache
+{
+    static final int MAX_ENTRIES = 200000;
+
+    private final Map<Key, CachedName> names = new HashMap<Key, CachedName>();
+    private final Map<ReferenceInfo, Set<Key>> dependentKeys = new HashMap<ReferenceInfo, Set<Key>>();
+    /** incremented on each invalidation, so that names formatted during an update are not stored */
+    private long invalidationCount;
+    /** how deep links between resources are followed to collect the dependencies */
+    static final int MAX_LINK_DEPTH = 4;
+
+    static final class CachedName
+    {
+        private final String name;
+        private final Set<ReferenceInfo> dependencies;
+
+        CachedName(String name, Set<ReferenceInfo> dependencies)
+        {
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+    }
+
+    static final class Key
+    {
+        private final ReferenceInfo reference;
+        private final long version;
+        private final String annotationName;
+        private final Locale locale;
+        private final int hashCode;
+
+        Key(ReferenceInfo reference, long version, String annotationName, Locale locale)
+        {
+            this.reference = reference;
+            this.version = version;
+            this.annotationName = annotationName;
+            this.locale = locale;
+            int hash = reference.hashCode();
+            hash = 31 * hash + (int) (version ^ (version >>> 32));
+            hash = 31 * hash + annotationName.hashCode();
+            hash = 31 * hash + (locale != null ? locale.hashCode() : 0);
+            this.hashCode = hash;
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return version == other.version && reference.equals(other.reference) && annotationName.equals(other.annotationName) && (locale == null ?
+                    other.locale == null :
+                    locale.equals(other.locale));
+        }
+
+        @Override public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    /** returns the cached name of the entity or formats it with the passed formatter and stores the result.
+     * The formatter is called directly if the entity is editable.*/
+    public String getName(Entity entity, Classification classification, String annotationName, Locale locale, Supplier<String> formatter)
+    {
+        if (!entity.isReadOnly() || entity.getId() == null)
+        {
+            return formatter.get();
+        }
+        final Key key = new Key(entity.getReference(), getVersion(entity), annotationName, locale);
+        final long count;
+        synchronized (this)
+        {
+            final CachedName cachedName = names.get(key);
+            if (cachedName != null)
+            {
+                return cachedName.name;
+            }
+            count = invalidationCount;
+        }
+        final Set<ReferenceInfo> dependencies = new HashSet<ReferenceInfo>();
+        addDependencies(entity, classification, dependencies, 0);
+        final String name = formatter.get();
+        if (name != null)
+        {
+            put(key, new CachedName(name, dependencies), count);
+        }
+        return name;
+    }
+
+    synchronized private void put(Key key, CachedName cachedName, long count)
+    {
+        if (count != invalidationCount)
+        {
+            return;
+        }
+        if (names.size() >= MAX_ENTRIES)
+        {
+            clear();
+        }
+        names.put(key, cachedName);
+        for (ReferenceInfo dependency : cachedName.dependencies)
+        {
+            Set<Key> keys = dependentKeys.get(dependency);
+            if (keys == null)
+            {
+                keys = new HashSet<Key>();
+                dependentKeys.put(dependency, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /** removes all names that depend on one of the passed entities*/
+    synchronized public void invalidate(Collection<ReferenceInfo> changedIds)
+    {
+        invalidationCount++;
+        if (names.isEmpty())
+        {
+            return;
+        }
+        for (ReferenceInfo changedId : changedIds)
+        {
+            final Set<Key> keys = dependentKeys.remove(changedId);
+            if (keys == null)
+            {
+                continue;
+            }
+            for (Key key : keys)
+            {
+                final CachedName removed = names.remove(key);
+                if (removed == null)
+                {
+                    continue;
+                }
+                // remove the key from the other dependencies, too
+                for (ReferenceInfo dependency : removed.dependencies)
+                {
+                    final Set<Key> otherKeys = dependentKeys.get(dependency);
+                    if (otherKeys != null)
+                    {
+                        otherKeys.remove(key);
+                        if (otherKeys.isEmpty())
+                        {
+                            dependentKeys.remove(dependency);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** removes all names that depend on an entity added, changed or removed in the update result. Clears the cache if a type or category changed */
+    public void invalidate(UpdateResult updateResult)
+    {
+        final Collection<ReferenceInfo> changedIds = new LinkedHashSet<ReferenceInfo>();
+        for (UpdateOperation operation : updateResult.getOperations())
+        {
+            final Class type = operation.getType();
+            if (type == DynamicType.class || type == Category.class)
+            {
+                clear();
+                return;
+            }
+            changedIds.add(operation.getReference());
+        }
+        invalidate(changedIds);
+    }
+
+    synchronized public void clear()
+    {
+        invalidationCount++;
+        names.clear();
+        dependentKeys.clear();
+    }
+
+    synchronized public int size()
+    {
+        return names.size();
+    }
+
+    private static long getVersion(Entity entity)
+    {
+        if (entity instanceof LastChangedTimestamp)
+        {
+            final Date lastChanged = ((LastChangedTimestamp) entity).getLastChanged();
+            if (lastChanged != null)
+            {
+                return lastChanged.getTime();
+            }
+        }
+        return 0;
+    }
+
+    /** adds the entity itself, all referenced entities (this includes the type) and the parents of referenced categories,
+     * because the category path is part of the formatted value. Linked resources and the resources of an event are followed up to
+     * {@link #MAX_LINK_DEPTH}, because their names can be used in the format */
+    private static void addDependencies(Entity entity, Classification classification, Set<ReferenceInfo> dependencies, int depth)
+    {
+        dependencies.add(entity.getReference());
+        if (entity instanceof EntityReferencer)
+        {
+            for (ReferenceInfo reference : ((EntityReferencer) entity).getReferenceInfo())
+            {
+                dependencies.add(reference);
+            }
+        }
+        final Collection<Entity> linked = new ArrayList<Entity>();
+        if (entity instanceof Reservation)
+        {
+            linked.addAll(Arrays.asList(((Reservation) entity).getAllocatables()));
+        }
+        if (classification != null)
+        {
+            for (Attribute attribute : classification.getAttributes())
+            {
+                final AttributeType type = attribute.getType();
+                if (type != AttributeType.CATEGORY && type != AttributeType.ALLOCATABLE)
+                {
+                    continue;
+                }
+                for (Object value : classification.getValues(attribute))
+                {
+                    if (value instanceof Category)
+                    {
+                        Category parent = ((Category) value).getParent();
+                        while (parent != null)
+                        {
+                            dependencies.add(parent.getReference());
+                            parent = parent.getParent();
+                        }
+                    }
+                    else if (value instanceof Allocatable)
+                    {
+                        linked.add((Allocatable) value);
+                    }
+                }
+            }
+        }
+        if (depth >= MAX_LINK_DEPTH)
+        {
+            return;
+        }
+        for (Entity linkedEntity : linked)
+        {
+            // the depth limit also stops cycles between linked resources
+            addDependencies(linkedEntity, ((Classifiable) linkedEntity).getClassification(), dependencies, depth + 1);
+        }
+    }
+}
@@ -22,7 +22,6 @@ import org.rapla.entities.dynamictype.Classifiable;
 import org.rapla.entities.dynamictype.Classification;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
-import org.rapla.entities.internal.UserImpl;
 import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.Conflict;
@@ -36,6 +35,7 @@ import java.util.Set;
 public class PermissionController
 {
     private final Set<PermissionExtension> permissionExtensions;
+    private final PermissionDecisionCache decisionCache = new PermissionDecisionCache();
     StorageOperator operator;
 
     public PermissionController(Set<PermissionExtension> permissionExtensions, StorageOperator operator)
@@ -142,6 +142,15 @@ public class PermissionController
     }
 
     public boolean canModify(Entity<?> object, User user)
+    {
+        if (object == null || user == null || object.getTypeClass() == Conflict.class)
+        {
+            return evaluateCanModify(object, user);
+        }
+        return decisionCache.getDecision(user, object, "modify", () -> evaluateCanModify(object, user));
+    }
+
+    private boolean evaluateCanModify(Entity<?> object, User user)
     {
         if (object == null )
         {
@@ -298,7 +307,12 @@ public class PermissionController
 
     public boolean hasPermissionToAllocate(User user, Allocatable a)
     {
-        Collection<String> groups = UserImpl.getGroupsIncludingParents(user);
+        return decisionCache.getDecision(user, a, "allocate", () -> evaluateHasPermissionToAllocate(user, a));
+    }
+
+    private boolean evaluateHasPermissionToAllocate(User user, Allocatable a)
+    {
+        Collection<String> groups = decisionCache.getGroupsIncludingParents(user);
         final ReferenceInfo<User> ownerRef = a.getOwnerRef();
         if ( user != null && ownerRef != null && user.getReference().equals(ownerRef))
         {
@@ -319,6 +333,11 @@ public class PermissionController
     }
 
     public boolean canReadOnlyInformation(Allocatable classifiable, User user)
+    {
+        return decisionCache.getDecision(user, classifiable, "readOnlyInformation", () -> evaluateCanReadOnlyInformation(classifiable, user));
+    }
+
+    private boolean evaluateCanReadOnlyInformation(Allocatable classifiable, User user)
     {
         if (!canReadType(classifiable, user))
         {
@@ -364,7 +383,7 @@ public class PermissionController
         {
             return true;
         }
-        Collection<String> groups = UserImpl.getGroupsIncludingParents(user);
+        Collection<String> groups = decisionCache.getGroupsIncludingParents(user);
 
         Date start = appointment.getStart();
         Date end = appointment.getMaxEnd();
@@ -464,7 +483,7 @@ public class PermissionController
         if (user == null || user.isAdmin())
             return true;
 
-        Collection<String> groups = UserImpl.getGroupsIncludingParents(user);
+        Collection<String> groups = decisionCache.getGroupsIncludingParents(user);
         for (Permission p : permissions)
         {
             for (AccessLevel accessLevel : accessLevels)
@@ -649,6 +668,11 @@ public class PermissionController
         {
             return true;
         }
+        return decisionCache.getDecision(user, reservation, "read", () -> evaluateCanRead(reservation, user));
+    }
+
+    private boolean evaluateCanRead(Reservation reservation, User user)
+    {
         // canRead includes canModify
 //        if (canModify(reservation, user))
 //        {
@@ -662,6 +686,11 @@ public class PermissionController
     }
 
     public boolean canRead(Allocatable allocatable, User user)
+    {
+        return decisionCache.getDecision(user, allocatable, "read", () -> evaluateCanRead(allocatable, user));
+    }
+
+    private boolean evaluateCanRead(Allocatable allocatable, User user)
     {
         // canRead includes canModify
 //        if (canModify(allocatable, user))
@@ -689,6 +718,18 @@ public class PermissionController
         return hasAccess(object, attribute, user, Permission.AccessLevel.READ);
     }
 
+    /** removes the cached permission decisions that can be affected by the update result */
+    public void invalidate(UpdateResult updateResult)
+    {
+        decisionCache.invalidate(updateResult);
+    }
+
+    /** removes all cached permission decisions and groups */
+    public void clearCache()
+    {
+        decisionCache.clear();
+    }
+
     public static boolean canAdminUsers(User workingUser)
     {
         final boolean isAdmin = workingUser.isAdmin();
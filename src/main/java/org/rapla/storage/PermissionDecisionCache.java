@@ -0,0 +1,192 @@
+package org.rapla.storage;
+
+import org.rapla.entities.Category;
+import org.rapla.entities.Entity;
+import org.rapla.entities.LastChangedTimestamp;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.internal.UserImpl;
+import org.rapla.entities.storage.ReferenceInfo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/** Caches the effective groups of the users and the permission decisions of the {@link PermissionController}.
+ * A decision is stored for each (user version, entity version, check) combination, so a new version of the user or the entity is evaluated again.
+ * Changes of users, categories, types and allocatables (templates) can affect decisions of other entities, so they clear the whole cache.
+ * Editable entities are never cached because their permissions can change without a new version.
+ */
+class PermissionDecisionCache
+{
+    static final int MAX_DECISIONS = 200000;
+    static final int MAX_USERS = 1000;
+
+    private final Map<Key, Boolean> decisions = new HashMap<Key, Boolean>();
+    private final Map<ReferenceInfo<User>, CachedGroups> groups = new HashMap<ReferenceInfo<User>, CachedGroups>();
+    /** incremented on each invalidation, so that decisions evaluated during an update are not stored */
+    private long invalidationCount;
+
+    static final class CachedGroups
+    {
+        private final long version;
+        private final Collection<String> groups;
+
+        CachedGroups(long version, Collection<String> groups)
+        {
+            this.version = version;
+            this.groups = groups;
+        }
+    }
+
+    static final class Key
+    {
+        private final ReferenceInfo user;
+        private final long userVersion;
+        private final ReferenceInfo entity;
+        private final long entityVersion;
+        private final String check;
+        private final int hashCode;
+
+        Key(ReferenceInfo user, long userVersion, ReferenceInfo entity, long entityVersion, String check)
+        {
+            this.user = user;
+            this.userVersion = userVersion;
+            this.entity = entity;
+            this.entityVersion = entityVersion;
+            this.check = check;
+            int hash = user.hashCode();
+            hash = 31 * hash + (int) (userVersion ^ (userVersion >>> 32));
+            hash = 31 * hash + entity.hashCode();
+            hash = 31 * hash + (int) (entityVersion ^ (entityVersion >>> 32));
+            hash = 31 * hash + check.hashCode();
+            this.hashCode = hash;
+        }
+
+        @Override public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return userVersion == other.userVersion && entityVersion == other.entityVersion && check.equals(other.check) && user.equals(other.user)
+                    && entity.equals(other.entity);
+        }
+
+        @Override public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    /** returns the groups of the user including the parent groups. The returned collection must not be modified */
+    public Collection<String> getGroupsIncludingParents(User user)
+    {
+        final Date lastChanged = getLastChanged(user);
+        if (lastChanged == null)
+        {
+            return UserImpl.getGroupsIncludingParents(user);
+        }
+        final ReferenceInfo<User> reference = user.getReference();
+        final long count;
+        synchronized (this)
+        {
+            final CachedGroups cachedGroups = groups.get(reference);
+            if (cachedGroups != null && cachedGroups.version == lastChanged.getTime())
+            {
+                return cachedGroups.groups;
+            }
+            count = invalidationCount;
+        }
+        final Collection<String> result = Collections.unmodifiableCollection(UserImpl.getGroupsIncludingParents(user));
+        synchronized (this)
+        {
+            if (count == invalidationCount)
+            {
+                if (groups.size() >= MAX_USERS)
+                {
+                    groups.clear();
+                }
+                groups.put(reference, new CachedGroups(lastChanged.getTime(), result));
+            }
+        }
+        return result;
+    }
+
+    /** returns the cached decision of the check or evaluates it with the passed supplier and stores the result.
+     * The supplier is called directly if the user or the entity is editable.*/
+    public boolean getDecision(User user, Entity entity, String check, Supplier<Boolean> decision)
+    {
+        final Date userChanged = getLastChanged(user);
+        final Date entityChanged = getLastChanged(entity);
+        if (userChanged == null || entityChanged == null)
+        {
+            return decision.get();
+        }
+        final Key key = new Key(user.getReference(), userChanged.getTime(), entity.getReference(), entityChanged.getTime(), check);
+        final long count;
+        synchronized (this)
+        {
+            final Boolean cachedDecision = decisions.get(key);
+            if (cachedDecision != null)
+            {
+                return cachedDecision;
+            }
+            count = invalidationCount;
+        }
+        final Boolean result = decision.get();
+        synchronized (this)
+        {
+            if (count == invalidationCount)
+            {
+                if (decisions.size() >= MAX_DECISIONS)
+                {
+                    decisions.clear();
+                }
+                decisions.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /** clears the cache if a user, category, type or allocatable was added, changed or removed in the update result */
+    public void invalidate(UpdateResult updateResult)
+    {
+        for (UpdateOperation operation : updateResult.getOperations())
+        {
+            final Class type = operation.getType();
+            if (type == User.class || type == Category.class || type == DynamicType.class || type == Allocatable.class)
+            {
+                clear();
+                return;
+            }
+        }
+    }
+
+    synchronized public void clear()
+    {
+        invalidationCount++;
+        decisions.clear();
+        groups.clear();
+    }
+
+    synchronized public int size()
+    {
+        return decisions.size();
+    }
+
+    /** returns null if the entity can't be cached */
+    private static Date getLastChanged(Entity entity)
+    {
+        if (entity == null || !entity.isReadOnly() || entity.getId() == null || !(entity instanceof LastChangedTimestamp))
+        {
+            return null;
+        }
+        return ((LastChangedTimestamp) entity).getLastChanged();
+    }
+}
@@ -144,9 +144,19 @@ public interface StorageOperator extends EntityResolver {
     
     Promise<Collection<Conflict>> getConflicts(User user);
 
+    /** returns the conflicts of {@link #getConflicts(User)} and the conflicts between start and end that lie beyond the conflict horizon of the server.
+     * Conflicts beyond the horizon are not stored but calculated on each request */
+    Promise<Collection<Conflict>> getConflicts(User user, Date start, Date end);
+
+    /** returns the date until which the server stores the conflicts or null if it is not known yet */
+    Date getConflictHorizon();
+
     Promise<Collection<Conflict>> getConflicts(Reservation reservation);
 
     PermissionController getPermissionController();
+
+    /** returns the cache for the formatted names of the stored entities*/
+    NameFormatCache getNameFormatCache();
 	//Collection<String> getTemplateNames() throws RaplaException;
 
     FunctionFactory getFunctionFactory(String functionName);
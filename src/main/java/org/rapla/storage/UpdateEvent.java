@@ -77,6 +77,7 @@ public class UpdateEvent
     private TimeInterval invalidateInterval;
     private String lastValidated;
     private int timezoneOffset;
+    private String conflictHorizon;
 
     @XmlRootElement
     @XmlAccessorType(XmlAccessType.FIELD)
@@ -379,6 +380,28 @@ public class UpdateEvent
         this.lastValidated = SerializableDateTimeFormat.INSTANCE.formatTimestamp(serverTime);
     }
 
+    public void setConflictHorizon(Date conflictHorizon)
+    {
+        this.conflictHorizon = conflictHorizon != null ? SerializableDateTimeFormat.INSTANCE.formatTimestamp(conflictHorizon) : null;
+    }
+
+    /** the date until which the server stores the conflicts */
+    public Date getConflictHorizon()
+    {
+        if (conflictHorizon == null)
+        {
+            return null;
+        }
+        try
+        {
+            return SerializableDateTimeFormat.INSTANCE.parseTimestamp(conflictHorizon);
+        }
+        catch (ParseDateException e)
+        {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
     public void setInvalidateInterval(TimeInterval invalidateInterval)
     {
         this.invalidateInterval = invalidateInterval;
@@ -24,8 +24,12 @@ import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.configuration.Preferences;
 import org.rapla.entities.configuration.RaplaConfiguration;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.Permission;
 import org.rapla.entities.domain.PermissionContainer;
+import org.rapla.entities.domain.RaplaObjectAnnotations;
+import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.domain.permission.PermissionExtension;
 import org.rapla.entities.dynamictype.Attribute;
 import org.rapla.entities.dynamictype.AttributeType;
@@ -34,15 +38,18 @@ import org.rapla.entities.dynamictype.Classification;
 import org.rapla.entities.extensionpoints.FunctionFactory;
 import org.rapla.entities.internal.CategoryImpl;
 import org.rapla.entities.internal.ModifiableTimestamp;
+import org.rapla.entities.storage.EntityReferencer;
 import org.rapla.entities.storage.ImportExportEntity;
 import org.rapla.entities.storage.RefEntity;
 import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.Conflict;
 import org.rapla.facade.RaplaComponent;
 import org.rapla.framework.DefaultConfiguration;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaInitializationException;
 import org.rapla.framework.RaplaLocale;
 import org.rapla.framework.TypedComponentRole;
+import org.rapla.framework.metrics.RequestTrace;
 import org.rapla.logger.Logger;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.server.PromiseWait;
@@ -74,6 +81,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -86,6 +94,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /** Use this Operator to keep the data stored in an XML-File.
  @see AbstractCachableOperator
@@ -154,6 +163,8 @@ final public class FileOperator extends LocalAbstractCachableOperator
     }
 
     private final Map<ImportExportMapKey, Map<String,ImportExportEntity>> importExportEntities = new LinkedHashMap<>();
+    private Consumer<Entity> entitySink;
+    private Runnable streamEnd;
 
     public FileOperator(Logger logger, PromiseWait promiseWait,RaplaResources i18n, RaplaLocale raplaLocale, CommandScheduler scheduler,
             Map<String, FunctionFactory> functionFactoryMap, @Named(ServerService.ENV_RAPLAFILE_ID) String resolvedPath,
@@ -190,7 +201,8 @@ final public class FileOperator extends LocalAbstractCachableOperator
     @Override public Date getHistoryValidStart()
     {
         Date connectStart = getConnectStart();
-        final Date date = new Date(Math.max(getLastRefreshed().getTime() - HISTORY_DURATION, connectStart.getTime()));
+        final long validStart = Math.max(connectStart.getTime(), history.getValidStart().getTime());
+        final Date date = new Date(Math.max(getLastRefreshed().getTime() - HISTORY_DURATION, validStart));
         return date;
     }
 
@@ -227,6 +239,40 @@ final public class FileOperator extends LocalAbstractCachableOperator
         }*/
     }
 
+    /** Connects without keeping the reservations and the disabled conflicts in the cache. They are passed to the entitySink while the file
+     * is read, so the memory does not grow with the number of reservations. Used by the streaming import. The operator must be disconnected
+     * afterwards, because the cache does not contain the reservations.
+     * streamEnd is called once after the last reservation and before the other entities are changed, resolved and set read only. The sink
+     * must not access the passed reservations after streamEnd returns, because they resolve their references through these entities.*/
+    final public void connect(Consumer<Entity> entitySink, Runnable streamEnd) throws RaplaException
+    {
+        if (isConnected())
+        {
+            throw new RaplaException("Streaming is only possible if the data is not loaded yet.");
+        }
+        this.entitySink = entitySink;
+        this.streamEnd = streamEnd;
+        try
+        {
+            connect();
+        }
+        catch (IllegalStateException ex)
+        {
+            // thrown by the entity sink while parsing
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RaplaException)
+            {
+                throw (RaplaException) cause;
+            }
+            throw new RaplaException(ex.getMessage(), ex);
+        }
+        finally
+        {
+            this.entitySink = null;
+            this.streamEnd = null;
+        }
+    }
+
     @Override
     final public void disconnect() throws RaplaException
     {
@@ -254,7 +300,7 @@ final public class FileOperator extends LocalAbstractCachableOperator
         setLastRefreshed(lastUpdated);
         setConnectStart(lastUpdated);
 
-        EntityStore entityStore = new EntityStore(cache);
+        final EntityStore entityStore = entitySink != null ? new StreamingEntityStore(cache, entitySink, streamEnd) : new EntityStore(cache);
         CategoryImpl superCategory = new CategoryImpl();
         superCategory.setId(Category.SUPER_CATEGORY_REF);
         superCategory.setResolver(this);
@@ -264,11 +310,19 @@ final public class FileOperator extends LocalAbstractCachableOperator
 
         RaplaDefaultXMLContext inputContext = new IOContext().createInputContext(logger, raplaLocale, i18n, entityStore, this, superCategory);
         RaplaMainReader contentHandler = new RaplaMainReader(inputContext);
+        if (entityStore instanceof StreamingEntityStore)
+        {
+            ((StreamingEntityStore) entityStore).inputContext = inputContext;
+        }
         boolean isLowerThen1_2 = false;
         try
         {
             parseData(contentHandler);
             isLowerThen1_2 = inputContext.lookup(RaplaMainReader.VERSION) < 1.2;
+            if (entityStore instanceof StreamingEntityStore)
+            {
+                ((StreamingEntityStore) entityStore).endStream();
+            }
         }
         catch (FileNotFoundException ex)
         {
@@ -355,6 +409,126 @@ final public class FileOperator extends LocalAbstractCachableOperator
         }
     }
 
+    /** passes the consistent reservations and disabled conflicts to the entity sink instead of storing them */
+    private class StreamingEntityStore extends EntityStore
+    {
+        private final Consumer<Entity> entitySink;
+        private final Runnable streamEnd;
+        // only the ids are kept to check the disabled conflicts, which follow the reservations in the file
+        private final Set<String> appointmentIds = new HashSet<>();
+        private boolean streaming;
+        private boolean streamEnded;
+        RaplaDefaultXMLContext inputContext;
+
+        StreamingEntityStore(LocalCache cache, Consumer<Entity> entitySink, Runnable streamEnd)
+        {
+            super(cache);
+            this.entitySink = entitySink;
+            this.streamEnd = streamEnd;
+        }
+
+        @Override
+        public void put(Entity entity)
+        {
+            if (entity instanceof Appointment)
+            {
+                // appointments are passed with their reservation
+                return;
+            }
+            if (entity instanceof Reservation)
+            {
+                final Reservation reservation = (Reservation) entity;
+                if (streamEnded)
+                {
+                    throw new IllegalStateException(new RaplaException(
+                            "Event " + reservation.getId() + " follows other entities in the file. Use the import without streaming."));
+                }
+                checkStreamingSupported(reservation);
+                ((EntityReferencer) reservation).setResolver(this);
+                if (isConsistent(reservation))
+                {
+                    for (Appointment appointment : reservation.getAppointments())
+                    {
+                        appointmentIds.add(appointment.getId());
+                    }
+                    streaming = true;
+                    entitySink.accept(reservation);
+                }
+                return;
+            }
+            if (entity instanceof Conflict)
+            {
+                final Conflict conflict = (Conflict) entity;
+                if (appointmentIds.contains(conflict.getAppointment1().getId()) && appointmentIds.contains(conflict.getAppointment2().getId()))
+                {
+                    entitySink.accept(conflict);
+                }
+                else
+                {
+                    getLogger().info("Not loading disabled conflict with id: " + conflict.getId() + " appointment not found, so conflict is probably removed.");
+                }
+                return;
+            }
+            // the reservations passed to the sink resolve through the store, so it must not change while they are written
+            endStream();
+            super.put(entity);
+        }
+
+        /** the same checks as removeInconsistentReservations and removeInconsistentEntities of the import without streaming */
+        private boolean isConsistent(Reservation reservation)
+        {
+            if (reservation.getSortedAppointments().size() == 0 || (reservation.getAllocatables().length == 0 && !RaplaComponent.isTemplate(reservation)))
+            {
+                getLogger().error("Not loading event with id: " + reservation.getId() + " because it has no resources or appointments");
+                return false;
+            }
+            try
+            {
+                checkConsitency(reservation, this);
+                return true;
+            }
+            catch (RaplaException | IllegalStateException e)
+            {
+                getLogger().error("Not loading entity with id: " + reservation.getId(), e);
+                return false;
+            }
+        }
+
+        void endStream()
+        {
+            if (streaming && !streamEnded)
+            {
+                streamEnded = true;
+                streamEnd.run();
+            }
+        }
+
+        /** the migrations of older files need all reservations in memory */
+        private void checkStreamingSupported(Reservation reservation)
+        {
+            final double version;
+            try
+            {
+                version = inputContext.lookup(RaplaMainReader.VERSION);
+            }
+            catch (RaplaException ex)
+            {
+                throw new IllegalStateException(ex);
+            }
+            if (version < 1.2)
+            {
+                throw new IllegalStateException(
+                        new RaplaException("Files of version " + version + " can't be imported with streaming. Use the import without streaming."));
+            }
+            final String templateId = reservation.getAnnotation(RaplaObjectAnnotations.KEY_TEMPLATE, null);
+            if (templateId != null && tryResolve(templateId, Allocatable.class) == null)
+            {
+                throw new IllegalStateException(new RaplaException(
+                        "Event " + reservation.getId() + " uses a template of an older version that must be migrated. Use the import without streaming."));
+            }
+        }
+    }
+
     private void migrateSpecialAttributes(Collection<Entity> list)
     {
         for (Entity entity : list)
@@ -439,12 +613,19 @@ final public class FileOperator extends LocalAbstractCachableOperator
 
     public void dispatch(final UpdateEvent evt) throws RaplaException
     {
+        final long start = System.nanoTime();
         final RaplaLock.WriteLock writeLock = writeLockIfLoaded();
         try
         {
-            preprocessEventStorage(evt);
+            try (RequestTrace.Span span = RequestTrace.span("preprocessEventStorage"))
+            {
+                preprocessEventStorage(evt);
+            }
             Date since = getCurrentTimestamp();//evt.getLastValidated();
-            updateHistory(evt);
+            try (RequestTrace.Span span = RequestTrace.span("updateHistory"))
+            {
+                updateHistory(evt);
+            }
             Date until = getCurrentTimestamp();
             // this since is for the server and used to check if an entity is new created in this write transaction so set it to the current timestamp
             // the since for the client will be used later when requesting the update event
@@ -474,12 +655,19 @@ final public class FileOperator extends LocalAbstractCachableOperator
                 }
             }
             removeFromImportExportCache(removedImports);
-            refresh(since, until, storeObjects, preferencePatches, removeIds);
-            saveData(cache, null, includeIds);
+            try (RequestTrace.Span span = RequestTrace.span("refresh"))
+            {
+                refresh(since, until, storeObjects, preferencePatches, removeIds);
+            }
+            try (RequestTrace.Span span = RequestTrace.span("saveData"))
+            {
+                saveData(cache, null, includeIds);
+            }
         }
         finally
         {
             lockManager.unlock(writeLock);
+            dispatchLatency.recordSince(start);
         }
     }
 
@@ -644,6 +832,14 @@ final public class FileOperator extends LocalAbstractCachableOperator
         }
     }
 
+    /** writes the cache as rapla xml into the writer, e.g. for a compressed backup */
+    public void writeData(LocalCache cache, Writer writer) throws RaplaException, IOException
+    {
+        final RaplaMainWriter raplaMainWriter = getMainWriter(cache, null, true);
+        raplaMainWriter.setWriter(writer);
+        raplaMainWriter.printContent();
+    }
+
     /**
      * Override for custom read
      */
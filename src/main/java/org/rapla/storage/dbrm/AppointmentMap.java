@@ -60,6 +60,37 @@ public class AppointmentMap
         }
     }
 
+    /** adds the reservations and bindings of another result chunk. Must be called before {@link #init(EntityResolver)}.
+     * Reservations contained in both chunks are kept only once, so all appointments of a reservation share the same reservation object. */
+    public void addAll(AppointmentMap other)
+    {
+        if (reservations == null)
+        {
+            reservations = new LinkedHashSet<>();
+        }
+        if (allocatableIdToAppointmentIds == null)
+        {
+            allocatableIdToAppointmentIds = new LinkedHashMap<>();
+        }
+        if (other.reservations != null)
+        {
+            reservations.addAll(other.reservations);
+        }
+        if (other.allocatableIdToAppointmentIds != null)
+        {
+            for (Map.Entry<String, Set<String>> entry : other.allocatableIdToAppointmentIds.entrySet())
+            {
+                Set<String> ids = allocatableIdToAppointmentIds.get(entry.getKey());
+                if (ids == null)
+                {
+                    ids = new LinkedHashSet<>();
+                    allocatableIdToAppointmentIds.put(entry.getKey(), ids);
+                }
+                ids.addAll(entry.getValue());
+            }
+        }
+    }
+
     public Map<Allocatable, Collection<Appointment>> getResult(ClassificationFilter[] filters)
     {
         Map<String, Appointment> appointmentIdToAppointment = new LinkedHashMap<>();
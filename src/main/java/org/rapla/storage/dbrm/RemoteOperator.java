@@ -40,6 +40,7 @@ import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.facade.Conflict;
+import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.facade.internal.ModificationEventImpl;
 import org.rapla.framework.Disposable;
 import org.rapla.framework.RaplaException;
@@ -108,6 +109,7 @@ public class RemoteOperator
     Date lastSyncedTimeLocal;
     Date lastSyncedTime;
     int timezoneOffset;
+    Date conflictHorizon;
     RemoteConnectionInfo connectionInfo;
 
     @Inject
@@ -476,6 +478,11 @@ public class RemoteOperator
         lastSyncedTimeLocal = new Date(System.currentTimeMillis());
         lastSyncedTime = evt.getLastValidated();
         timezoneOffset = evt.getTimezoneOffset();
+        final Date horizon = evt.getConflictHorizon();
+        if (horizon != null)
+        {
+            conflictHorizon = horizon;
+        }
         //long offset = TimeZoneConverterImpl.getOffset( DateTools.getTimeZone(), systemTimeZone, time);
 
     }
@@ -730,17 +737,19 @@ public class RemoteOperator
         return result;
     }
 
+    /** maximum number of resources per appointment request. Larger selections are requested in chunks, so that each response stays small enough to be
+     * transfered and parsed within the request timeout */
+    static final int APPOINTMENT_QUERY_CHUNK_SIZE = 50;
+
     public Promise<Map<Allocatable, Collection<Appointment>>> queryAppointments(User user, Collection<Allocatable> allocatables, Date start, Date end,
                                                                                 final ClassificationFilter[] filters, Map<String, String> annotationQuery) {
         final RemoteStorage serv = getRemoteStorage();
         Promise<Map<Allocatable, Collection<Appointment>>> result = refreshIfIdle().thenCompose((refreshed) -> {
-            String[] allocatableId = getIdList(allocatables);
-            return serv.queryAppointments(new QueryAppointments(allocatableId, start, end, annotationQuery)).thenApply(list -> {
+            final List<String[]> chunks = getAppointmentQueryChunks(allocatables);
+            final long serverTime = System.currentTimeMillis();
+            return queryAppointmentChunks(serv, chunks, 0, new AppointmentMap(), start, end, annotationQuery).thenApply(list -> {
                 Map<Allocatable, Collection<Appointment>> filtered;
-                {
-                    long time = System.currentTimeMillis();
-                    logger.debug("event server call took  " + (System.currentTimeMillis() - time) + " ms");
-                }
+                logger.debug("event server call with " + chunks.size() + " chunks took  " + (System.currentTimeMillis() - serverTime) + " ms");
                 {
                     long time = System.currentTimeMillis();
                     filtered = processReservationResult(list, filters);
@@ -753,6 +762,47 @@ public class RemoteOperator
         return result;
     }
 
+    /** requests the chunks one after another and adds each response to the merged result */
+    static Promise<AppointmentMap> queryAppointmentChunks(RemoteStorage serv, List<String[]> chunks, int index, AppointmentMap merged, Date start, Date end,
+            Map<String, String> annotationQuery) {
+        final Promise<AppointmentMap> chunkResult;
+        try {
+            chunkResult = serv.queryAppointments(new QueryAppointments(chunks.get(index), start, end, annotationQuery));
+        } catch (RaplaException ex) {
+            return new ResolvedPromise<>(ex);
+        }
+        return chunkResult.thenCompose(chunk -> {
+            merged.addAll(chunk);
+            if (index + 1 < chunks.size()) {
+                return queryAppointmentChunks(serv, chunks, index + 1, merged, start, end, annotationQuery);
+            }
+            return new ResolvedPromise<>(merged);
+        });
+    }
+
+    /** splits the resource ids into chunks of {@link #APPOINTMENT_QUERY_CHUNK_SIZE}. An empty selection (all resources) and selections with a template resource are requested at once,
+     * because the server evaluates them for the whole selection */
+    private List<String[]> getAppointmentQueryChunks(Collection<Allocatable> allocatables) {
+        final String[] ids = getIdList(allocatables);
+        if (ids.length <= APPOINTMENT_QUERY_CHUNK_SIZE || containsTemplate(allocatables)) {
+            return Collections.singletonList(ids);
+        }
+        final List<String[]> chunks = new ArrayList<String[]>();
+        for (int i = 0; i < ids.length; i += APPOINTMENT_QUERY_CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(ids, i, Math.min(ids.length, i + APPOINTMENT_QUERY_CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    private boolean containsTemplate(Collection<Allocatable> allocatables) {
+        for (Allocatable allocatable : allocatables) {
+            if (allocatable.getClassification().getType().getKey().equals(RAPLA_TEMPLATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected Promise<Promise<Boolean>> refreshIfIdle() {
         return getScheduler().supply(() -> {
             // if a refresh is due, we assume the system went to sleep so we refresh before we continue
@@ -1044,21 +1094,35 @@ public class RemoteOperator
     @Override
     public Promise<Collection<Conflict>> getConflicts(User user) {
         RemoteStorage serv = getRemoteStorage();
-        return serv.getConflicts().thenApply( list->
-        {
-            testResolve(list);
-            setResolver(list);
-            List<Conflict> result = new ArrayList<Conflict>();
-            Iterator it = list.iterator();
-            while (it.hasNext()) {
-                Object object = it.next();
-                if (object instanceof Conflict) {
-                    Conflict next = (Conflict) object;
-                    result.add(next);
-                }
+        return serv.getConflicts().thenApply( list-> toConflicts(list));
+    }
+
+    @Override
+    public Promise<Collection<Conflict>> getConflicts(User user, Date start, Date end) {
+        RemoteStorage serv = getRemoteStorage();
+        return serv.getConflictsInRange(new RemoteStorage.ConflictRangeRequest(start, end)).thenApply( list-> toConflicts(list));
+    }
+
+    @Override
+    public Date getConflictHorizon()
+    {
+        return conflictHorizon;
+    }
+
+    private Collection<Conflict> toConflicts(List<ConflictImpl> list) throws RaplaException
+    {
+        testResolve(list);
+        setResolver(list);
+        List<Conflict> result = new ArrayList<Conflict>();
+        Iterator it = list.iterator();
+        while (it.hasNext()) {
+            Object object = it.next();
+            if (object instanceof Conflict) {
+                Conflict next = (Conflict) object;
+                result.add(next);
             }
-            return result;
-        });
+        }
+        return result;
     }
 
     @Override
@@ -207,6 +207,41 @@ public interface RemoteStorage
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
     Promise<List<ConflictImpl>> getConflicts() ;
 
+    /** returns the stored conflicts and the conflicts in the requested range beyond the conflict horizon */
+    @POST
+    @Path("conflicts/range")
+    @Consumes({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    Promise<List<ConflictImpl>> getConflictsInRange(ConflictRangeRequest job);
+
+    @XmlRootElement
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class ConflictRangeRequest
+    {
+        private Date start;
+        private Date end;
+
+        public ConflictRangeRequest(Date start, Date end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+
+        public ConflictRangeRequest()
+        {
+        }
+
+        public Date getStart()
+        {
+            return start;
+        }
+
+        public Date getEnd()
+        {
+            return end;
+        }
+    }
+
     @POST
     @Path("allocatable/bindings/first")
     @Consumes({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
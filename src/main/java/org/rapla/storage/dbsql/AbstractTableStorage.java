@@ -27,6 +27,12 @@ import java.util.regex.Pattern;
 
 public class AbstractTableStorage implements TableStorage
 {
+	/** default maximum number of rows that are sent with one batch */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	// maximum number of parameters in one statement (postgres)
+	private static final int MAX_PARAMETERS = 32767;
+	// maximum estimated size of the values in one multi row insert, below the default max_allowed_packet of 4 MB in mysql 5.7
+	static final long MAX_INSERT_BYTES = 1024 * 1024;
 	/** first paramter is 1 */
     protected final String tableName;
 	protected final boolean checkLastChanged;
@@ -43,6 +49,9 @@ public class AbstractTableStorage implements TableStorage
 	protected String idName;
 	private Calendar datetimeCal;
 	private Date connectionTimestamp;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	/** set by storages whose rows can be written with one insert statement for multiple rows */
+	protected boolean multiRowInsert;
 
 
 	public AbstractTableStorage(String table, Logger logger, String[] entries,boolean checkLastChanged)
@@ -547,6 +556,49 @@ public class AbstractTableStorage implements TableStorage
 		//searchForIdSql = "select id from " + table + " where id = ?";
 	}
 
+	protected void setBatchSize(int batchSize)
+	{
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	protected int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/** returns true if the database accepts multiple rows in one insert statement and the storage supports it */
+	protected boolean isMultiRowInsert()
+	{
+		return multiRowInsert && (isPostgres() || isMysql());
+	}
+
+	protected int getColumnCount()
+	{
+		return columns.size();
+	}
+
+	/** the number of rows in one multi row insert, limited by the batch size and the maximum number of parameters */
+	protected int getRowsPerInsert()
+	{
+		return Math.max(1, Math.min(batchSize, MAX_PARAMETERS / columns.size()));
+	}
+
+	protected String getMultiRowInsertSql(int rows)
+	{
+		final String values = "(" + getMarkerList(columns.size()) + ")";
+		final StringBuilder buf = new StringBuilder();
+		buf.append("insert into ").append(tableName).append(" (").append(getEntryList(columns.values())).append(") values ");
+		for (int i = 0; i < rows; i++)
+		{
+			if (i > 0)
+			{
+				buf.append(',');
+			}
+			buf.append(values);
+		}
+		return buf.toString();
+	}
+
 	protected String getEntryList(Collection<ColumnDef> entries) {
         StringBuffer buf = new StringBuffer();
         for (ColumnDef col: entries) {
@@ -19,10 +19,13 @@ import org.rapla.entities.Category;
 import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.domain.permission.PermissionExtension;
+import org.rapla.entities.dynamictype.Classifiable;
+import org.rapla.entities.dynamictype.Classification;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.extensionpoints.FunctionFactory;
 import org.rapla.entities.internal.CategoryImpl;
 import org.rapla.entities.internal.ModifiableTimestamp;
+import org.rapla.entities.storage.EntityReferencer;
 import org.rapla.entities.storage.ImportExportEntity;
 import org.rapla.entities.storage.RefEntity;
 import org.rapla.entities.storage.ReferenceInfo;
@@ -30,6 +33,9 @@ import org.rapla.facade.Conflict;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
 import org.rapla.framework.internal.ConfigTools;
+import org.rapla.framework.metrics.LatencyHistogram;
+import org.rapla.framework.metrics.RaplaMetrics;
+import org.rapla.framework.metrics.RequestTrace;
 import org.rapla.logger.Logger;
 import org.rapla.scheduler.CommandScheduler;
 import org.rapla.server.PromiseWait;
@@ -51,6 +57,7 @@ import org.rapla.storage.xml.RaplaDefaultXMLContext;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.sql.DataSource;
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -84,6 +91,10 @@ import java.util.Set;
     DataSource lookup;
 
     private String connectionName;
+    private LatencyHistogram jdbcLoadLatency = new LatencyHistogram();
+    private LatencyHistogram jdbcStoreLatency = new LatencyHistogram();
+    private LatencyHistogram jdbcReadChangesLatency = new LatencyHistogram();
+    private int batchSize = AbstractTableStorage.DEFAULT_BATCH_SIZE;
     Provider<ImportExportManager> importExportManager;
 
     public DBOperator(Logger logger, PromiseWait promiseWait,RaplaResources i18n, RaplaLocale locale, final CommandScheduler scheduler, Map<String, FunctionFactory> functionFactoryMap,
@@ -156,6 +167,22 @@ import java.util.Set;
         }
     }
 
+    @Override
+    public void configureMetrics(RaplaMetrics metrics)
+    {
+        super.configureMetrics(metrics);
+        final String help = "Time spent in database calls";
+        jdbcLoadLatency = metrics.register("rapla_jdbc_seconds", help, jdbcLoadLatency, "operation", "load");
+        jdbcStoreLatency = metrics.register("rapla_jdbc_seconds", help, jdbcStoreLatency, "operation", "store");
+        jdbcReadChangesLatency = metrics.register("rapla_jdbc_seconds", help, jdbcReadChangesLatency, "operation", "read_changes");
+    }
+
+    /** sets the maximum number of rows that are sent to the database in one batch or multi row insert */
+    public void configureBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
     public boolean supportsActiveMonitoring()
     {
         return true;
@@ -324,38 +351,140 @@ import java.util.Set;
         }
     }
 
+    /** reads and decodes the changes of other servers before the write lock is requested. Only applying the changes needs the lock.*/
+    @Override protected void refreshScheduled()
+    {
+        if (!isConnected())
+        {
+            return;
+        }
+        try (Connection c = createConnection())
+        {
+            final Date lastUpdated = getLastRefreshed();
+            final PreparedRefresh prepared = prepareRefresh(c, lastUpdated);
+            if (prepared == null)
+            {
+                return;
+            }
+            final RaplaLock.WriteLock writeLock = lockManager.writeLockIfAvaliable();
+            if (writeLock == null)
+            {
+                return;
+            }
+            try
+            {
+                if (getLastRefreshed().equals(lastUpdated))
+                {
+                    applyRefresh(c, prepared);
+                }
+                else
+                {
+                    // the cache was refreshed while we read the changes, so they must be read again
+                    refreshWithoutLock(c);
+                }
+            }
+            finally
+            {
+                lockManager.unlock(writeLock);
+            }
+        }
+        catch (Throwable e)
+        {
+            Date lastUpdated = getLastRefreshed();
+            logger.error("Error updating model from DB. Last success was at " + lastUpdated, e);
+        }
+    }
+
     private void refreshWithoutLock(Connection c) throws SQLException, RaplaException
     {
-        final EntityStore entityStore = new EntityStore(cache);
-        final Category superCategory = cache.getSuperCategory();
-        final RaplaSQL raplaSQLInput = new RaplaSQL(createInputContext(entityStore, DBOperator.this, superCategory));
-        Date lastUpdated = getLastRefreshed();
-        Date connectionTime = raplaSQLInput.getLastUpdated(c);
+        final PreparedRefresh prepared = prepareRefresh(c, getLastRefreshed());
+        if (prepared != null)
+        {
+            applyRefresh(c, prepared);
+        }
+    }
 
-        if (connectionTime.before(lastUpdated))
+    static private class PreparedRefresh
+    {
+        final Date since;
+        final Date until;
+        final List<HistoryChange> changes;
+        final Collection<HistoryChange> latestChanges;
+
+        PreparedRefresh(Date since, Date until, List<HistoryChange> changes, Collection<HistoryChange> latestChanges)
         {
-            return;
+            this.since = since;
+            this.until = until;
+            this.changes = changes;
+            this.latestChanges = latestChanges;
+        }
+    }
+
+    /** reads the changes since lastUpdated from the CHANGES table and decodes the latest version of each changed entity.
+     * Does not modify the cache or the history, so no lock is required. Returns null if there are no changes */
+    private PreparedRefresh prepareRefresh(Connection c, Date lastUpdated) throws SQLException, RaplaException
+    {
+        final RaplaSQL raplaSQLInput = new RaplaSQL(createInputContext(new EntityStore(cache), DBOperator.this, cache.getSuperCategory()));
+        final long jdbcStart = System.nanoTime();
+        final Date connectionTime;
+        final List<HistoryChange> changes;
+        try (RequestTrace.Span span = RequestTrace.span("jdbc.readChanges"))
+        {
+            connectionTime = raplaSQLInput.getLastUpdated(c);
+            if (connectionTime.before(lastUpdated))
+            {
+                return null;
+            }
+            changes = raplaSQLInput.readChanges(c, lastUpdated, connectionTime);
         }
-        final Collection<ReferenceInfo> allIds = raplaSQLInput.update(c, lastUpdated, connectionTime);
-        List<PreferencePatch> patches = raplaSQLInput.getPatches(c, lastUpdated);
+        jdbcReadChangesLatency.recordSince(jdbcStart);
+        final Map<ReferenceInfo, HistoryChange> latestChanges = new LinkedHashMap<ReferenceInfo, HistoryChange>();
+        for (HistoryChange change : changes)
+        {
+            final HistoryChange latest = latestChanges.get(change.getId());
+            if (latest == null || !change.getTimestamp().before(latest.getTimestamp()))
+            {
+                latestChanges.put(change.getId(), change);
+            }
+        }
+        for (HistoryChange change : latestChanges.values())
+        {
+            if (!change.isDelete())
+            {
+                change.setEntity(history.decode(change.getId(), change.getJson()));
+            }
+        }
+        return new PreparedRefresh(lastUpdated, connectionTime, changes, latestChanges.values());
+    }
+
+    /** adds the prepared changes to the history and refreshes the cache. Must be called with the write lock*/
+    private void applyRefresh(Connection c, PreparedRefresh prepared) throws SQLException, RaplaException
+    {
+        for (HistoryChange change : prepared.changes)
+        {
+            history.addHistoryEntry(change.getId(), change.getJson(), change.getTimestamp(), change.isDelete());
+        }
+        final RaplaSQL raplaSQLInput = new RaplaSQL(createInputContext(new EntityStore(cache), DBOperator.this, cache.getSuperCategory()));
+        List<PreferencePatch> patches = raplaSQLInput.getPatches(c, prepared.since);
         Collection<Entity> toStore = new LinkedHashSet<Entity>();
         Set<ReferenceInfo> toRemove = new HashSet<>();
-        for (ReferenceInfo id : allIds)
+        for (HistoryChange change : prepared.latestChanges)
         {
-            final HistoryEntry before = history.getLatest(id);//LastChangedUntil(id, connectionTime);
+            final HistoryEntry before = history.getLatest(change.getId());
             if (before.isDelete())
             {
                 toRemove.add(before.getId());
             }
             else
             {
-                final Entity entity = history.getEntity(before);
+                // the history can contain a newer version than the one we decoded
+                final Entity decoded = change.getEntity();
+                final Entity entity = decoded != null && before.getTimestamp() == change.getTimestamp().getTime() ? decoded : history.getEntity(before);
                 setResolver(Collections.singleton(entity));
                 toStore.add(entity);
             }
         }
-        refresh(lastUpdated, connectionTime, toStore, patches, toRemove);
-        return;
+        refresh(prepared.since, prepared.until, toStore, patches, toRemove);
     }
 
     @Override
@@ -400,7 +529,9 @@ import java.util.Set;
             }
             cache.clearAll();
             addInternalTypes(cache);
+            final long jdbcStart = System.nanoTime();
             loadData(c, cache);
+            jdbcLoadLatency.recordSince(jdbcStart);
 
             if (getLogger().isDebugEnabled())
                 getLogger().debug("Entities contextualized");
@@ -655,11 +786,15 @@ import java.util.Set;
 
     public void dispatch(UpdateEvent evt) throws RaplaException
     {
+        final long start = System.nanoTime();
         RaplaLock.WriteLock writeLock = writeLockIfLoaded();
         try
         {
             //Date since = lastUpdated;
-            preprocessEventStorage(evt);
+            try (RequestTrace.Span span = RequestTrace.span("preprocessEventStorage"))
+            {
+                preprocessEventStorage(evt);
+            }
             Collection<Entity> storeObjects = evt.getStoreObjects();
             List<PreferencePatch> preferencePatches = evt.getPreferencePatches();
             Collection<ReferenceInfo> removeObjects = evt.getRemoveIds();
@@ -671,7 +806,7 @@ import java.util.Set;
             try
             {
                 dbStore(storeObjects, preferencePatches, removeObjects, connection, evt.getUserId());
-                try
+                try (RequestTrace.Span span = RequestTrace.span("refresh"))
                 {
                     refreshWithoutLock(connection);
                 }
@@ -688,6 +823,7 @@ import java.util.Set;
         finally
         {
             lockManager.unlock(writeLock);
+            dispatchLatency.recordSince(start);
         }
         // TODO check if still needed
         //fireStorageUpdated(result);
@@ -715,10 +851,15 @@ import java.util.Set;
             ids.add(patch.getReference());
         }
 
-        final boolean needsGlobalLock = containsDynamicType(ids);
+        // dynamic type changes lock the type and wait for the running transactions. Writers of classifiables check the lock of their type,
+        // so only transactions that write entities of a changed type are blocked
+        final boolean containsDynamicType = containsDynamicType(ids);
+        final Collection<String> checkedTypeIds = getClassificationTypeIds(storeObjects);
         Date connectionTimestamp = null;
-        final Collection<String> lockIds = needsGlobalLock ? Collections.singletonList(LockStorage.GLOBAL_LOCK) : getLockIds(ids);
+        final Collection<String> lockIds = getLockIds(ids);
+        checkedTypeIds.removeAll(lockIds);
         RaplaSQL raplaSQLOutput = new RaplaSQL(createOutputContext(cache));
+        final long jdbcStart = System.nanoTime();
         try
         {
             connectionTimestamp = raplaSQLOutput.getDatabaseTimestamp(connection);
@@ -740,18 +881,30 @@ import java.util.Set;
                 }
             }
 
-            raplaSQLOutput.requestLocks(connection, connectionTimestamp, lockIds, null, !needsGlobalLock);
-            for (ReferenceInfo id : removeObjects)
+            try (RequestTrace.Span span = RequestTrace.span("jdbc.requestLocks"))
             {
-                raplaSQLOutput.remove(connection, id, connectionTimestamp);
+                raplaSQLOutput.requestLocks(connection, connectionTimestamp, lockIds, checkedTypeIds, containsDynamicType);
+            }
+            try (RequestTrace.Span span = RequestTrace.span("jdbc.remove"))
+            {
+                for (ReferenceInfo id : removeObjects)
+                {
+                    raplaSQLOutput.remove(connection, id, connectionTimestamp);
+                }
             }
             getLogger().debug("Locks requested storing");
-            raplaSQLOutput.store(connection, storeObjects, connectionTimestamp);
-            raplaSQLOutput.storePatches(connection, preferencePatches, connectionTimestamp);
+            try (RequestTrace.Span span = RequestTrace.span("jdbc.store"))
+            {
+                raplaSQLOutput.store(connection, storeObjects, connectionTimestamp);
+                raplaSQLOutput.storePatches(connection, preferencePatches, connectionTimestamp);
+            }
             if (bSupportsTransactions)
             {
                 getLogger().debug("Commiting");
-                connection.commit();
+                try (RequestTrace.Span span = RequestTrace.span("jdbc.commit"))
+                {
+                    connection.commit();
+                }
             }
             //            refreshWithoutLock(connection);
         }
@@ -785,7 +938,7 @@ import java.util.Set;
         {
             try
             {
-                raplaSQLOutput.removeLocks(connection, lockIds, connectionTimestamp, !needsGlobalLock);
+                raplaSQLOutput.removeLocks(connection, lockIds, connectionTimestamp, true);
                 if (bSupportsTransactions)
                 {
                     connection.commit();
@@ -795,6 +948,7 @@ import java.util.Set;
             {
                 getLogger().error("Could not remove locks. They will be removed during next cleanup. ", ex);
             }
+            jdbcStoreLatency.recordSince(jdbcStart);
         }
     }
 
@@ -808,6 +962,31 @@ import java.util.Set;
         return result;
     }
 
+    /** returns the ids of the dynamic types of the stored classifiables */
+    private Collection<String> getClassificationTypeIds(Collection<Entity> storeObjects)
+    {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Entity entity : storeObjects)
+        {
+            if (!(entity instanceof Classifiable))
+            {
+                continue;
+            }
+            final Classification classification = ((Classifiable) entity).getClassification();
+            if (classification instanceof EntityReferencer)
+            {
+                for (ReferenceInfo info : ((EntityReferencer) classification).getReferenceInfo())
+                {
+                    if (info.getType() == DynamicType.class)
+                    {
+                        result.add(info.getId());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     private boolean containsDynamicType(Set<ReferenceInfo> ids)
     {
         for (ReferenceInfo id : ids)
@@ -897,6 +1076,29 @@ import java.util.Set;
         }
     }
 
+    /** Imports the reservations while the source is read. See {@link StreamingImport} */
+    public StreamingImport createStreamingImport(String source, File checkpointFile, int writerCount, int batchSize)
+    {
+        return new StreamingImport(this, getLogger().getChildLogger("import"), source, checkpointFile, writerCount, batchSize);
+    }
+
+    /** creates or updates the tables and removes all data before an import */
+    void prepareImport(Connection connection) throws SQLException, RaplaException
+    {
+        Map<String, TableDef> schema = loadDBSchema(connection);
+        RaplaSQL raplaSQLOutput = new RaplaSQL(createOutputContext(cache));
+        raplaSQLOutput.createOrUpdateIfNecessary(connection, schema);
+        getLogger().info("Deleting all old Data from " + getConnectionName());
+        raplaSQLOutput.removeAll(connection);
+        connection.commit();
+    }
+
+    /** returns a RaplaSQL that writes the entities of the cache. Each import writer needs its own, because the storages keep the connection */
+    RaplaSQL createRaplaSQL(LocalCache cache) throws RaplaException
+    {
+        return new RaplaSQL(createOutputContext(cache != null ? cache : this.cache));
+    }
+
     protected void saveData(Connection connection, LocalCache cache) throws RaplaException, SQLException
     {
         String connectionName = getConnectionName();
@@ -946,7 +1148,7 @@ import java.util.Set;
 
     @Override public Date getHistoryValidStart()
     {
-        final Date date = new Date(getLastRefreshed().getTime() - HISTORY_DURATION);
+        final Date date = new Date(Math.max(getLastRefreshed().getTime() - HISTORY_DURATION, history.getValidStart().getTime()));
         return date;
     }
 
@@ -1027,6 +1229,7 @@ import java.util.Set;
     {
         RaplaDefaultXMLContext outputContext = new IOContext().createOutputContext(logger, raplaLocale, i18n, cache.getSuperCategoryProvider(), true);
         outputContext.put(LocalCache.class, cache);
+        outputContext.put(EntityStorage.BATCH_SIZE, batchSize);
         return outputContext;
 
     }
@@ -22,6 +22,7 @@ import org.rapla.entities.storage.EntityResolver;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.TypedComponentRole;
 import org.rapla.logger.Logger;
 import org.rapla.storage.LocalCache;
 import org.rapla.storage.impl.EntityStore;
@@ -38,11 +39,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
 abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage implements Storage<T> {
 	//String searchForIdSql;
+    /** maximum number of rows in one batch, see {@link AbstractTableStorage#DEFAULT_BATCH_SIZE} */
+    static final TypedComponentRole<Integer> BATCH_SIZE = new TypedComponentRole<Integer>(EntityStorage.class.getName() + ".batchsize");
 
     protected LocalCache cache;
     protected EntityStore entityStore;
@@ -87,6 +91,10 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
             this.history = null;
         }
         this.raplaLocale = context.lookup( RaplaLocale.class);
+        if (context.has(BATCH_SIZE))
+        {
+            setBatchSize(context.lookup(BATCH_SIZE));
+        }
 		lastParameterIndex = entries.length;
 
 
@@ -238,11 +246,27 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
         {
             storage.insert(entities);
         }
+        insertRows(entities);
+    }
+
+    /** inserts the rows of the entities but not the rows in the sub stores */
+    protected void insertRows(Iterable<T> entities) throws SQLException,RaplaException {
+        if (isMultiRowInsert())
+        {
+            insertMultiRow(entities);
+            return;
+        }
         try (PreparedStatement stmt = con.prepareStatement(insertSql)){
+            final int batchSize = getBatchSize();
             int count = 0;
             for ( T entity: entities)
             {
                 count+= write(stmt, entity);
+                if (count >= batchSize)
+                {
+                    stmt.executeBatch();
+                    count = 0;
+                }
             }
             if ( count > 0)
             {
@@ -253,6 +277,62 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
         }
     }
 
+    /**
+     * writes the rows with one insert statement for multiple rows instead of a batch of single row inserts. An insert contains fewer rows if
+     * the estimated size of the values exceeds the maximum statement size, e.g. with long attribute values
+     */
+    private void insertMultiRow(Iterable<T> entities) throws SQLException, RaplaException
+    {
+        final int rowsPerInsert = getRowsPerInsert();
+        final RowRecorder recorder = new RowRecorder();
+        try (PreparedStatement stmt = con.prepareStatement(getMultiRowInsertSql(rowsPerInsert)))
+        {
+            for (T entity : entities)
+            {
+                write(recorder.getStatement(), entity);
+                while (recorder.size() >= rowsPerInsert || recorder.getEstimatedBytes() > MAX_INSERT_BYTES)
+                {
+                    insertRecorded(stmt, recorder, rowsPerInsert);
+                }
+            }
+            while (recorder.size() > 0)
+            {
+                insertRecorded(stmt, recorder, rowsPerInsert);
+            }
+        }
+    }
+
+    /** inserts the first recorded rows that fit into one statement. The statement for rowsPerInsert rows is reused */
+    private void insertRecorded(PreparedStatement stmt, RowRecorder recorder, int rowsPerInsert) throws SQLException
+    {
+        final int columnCount = getColumnCount();
+        final int rows = Math.min(Math.min(rowsPerInsert, recorder.size()), recorder.getRowCountWithin(MAX_INSERT_BYTES));
+        if (rows == rowsPerInsert)
+        {
+            recorder.replay(stmt, rows, columnCount);
+            stmt.executeUpdate();
+            return;
+        }
+        try (PreparedStatement smaller = con.prepareStatement(getMultiRowInsertSql(rows)))
+        {
+            recorder.replay(smaller, rows, columnCount);
+            smaller.executeUpdate();
+        }
+    }
+
+    /** returns true if both versions of the entity are written with the same rows, so the rows don't need to be rewritten */
+    public boolean hasSameRows(T entity, T previous) throws SQLException, RaplaException
+    {
+        return getRows(entity).equals(getRows(previous));
+    }
+
+    private List<RowRecorder.Row> getRows(T entity) throws SQLException, RaplaException
+    {
+        final RowRecorder recorder = new RowRecorder();
+        write(recorder.getStatement(), entity);
+        return recorder.getRows();
+    }
+
 //    public void update(Collection<Entity>> entities ) throws SQLException,RaplaException {
 //        for (Storage<T> storage: subStores) {
 //            storage.delete( entities );
@@ -335,8 +415,18 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
             return;
         }
         deleteFromSubStores(ids);
+        deleteRows(entities, ids);
+    }
+
+    /**
+     * deletes the rows of the entities but not the rows in the sub stores. If the table has a last changed column, a row is only deleted
+     * if it was not changed since the version in the cache. Returns the ids of the rows that were found.
+     */
+    protected Set<String> deleteRows(Iterable<ReferenceInfo<T>> entities, Set<String> ids) throws SQLException, RaplaException
+    {
         if(checkLastChanged)
         {
+            final Set<String> found = new HashSet<String>();
             PreparedStatement stmt = null;
             try
             {
@@ -350,6 +440,7 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
                         stmt.setString(1, referenceInfo.getId());
                         setTimestamp(stmt, 2, castedEntity.getLastChanged());
                         stmt.addBatch();
+                        found.add(referenceInfo.getId());
                         commitNeeded = true;
                     }
                 }
@@ -372,11 +463,12 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
                     stmt.close();
                 }
             }
-
+            return found;
         }
         else
         {
             deleteIds(ids);
+            return ids;
         }
     }
 
@@ -392,12 +484,20 @@ abstract class EntityStorage<T extends Entity<T>> extends AbstractTableStorage i
     	PreparedStatement stmt = null;
         try {
             stmt = con.prepareStatement(deleteSql);
+            final int batchSize = getBatchSize();
+            int count = 0;
             for ( String id: ids)
             {
                 stmt.setString(1,id);
                 stmt.addBatch();
+                count++;
+                if (count >= batchSize)
+                {
+                    stmt.executeBatch();
+                    count = 0;
+                }
             }
-            if ( ids.size() > 0)
+            if ( count > 0)
             {
                 stmt.executeBatch();
             }
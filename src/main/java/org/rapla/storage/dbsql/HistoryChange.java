@@ -0,0 +1,61 @@
+package org.rapla.storage.dbsql;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.storage.ReferenceInfo;
+
+import java.util.Date;
+
+/** A row of the CHANGES table read during a refresh. The entity of the latest change of an id is decoded before the
+ * write lock is requested, so that only adding the changes to the history and the cache is done under the lock.*/
+class HistoryChange
+{
+    private final ReferenceInfo id;
+    private final String json;
+    private final Date timestamp;
+    private final boolean isDelete;
+    private Entity entity;
+
+    HistoryChange(ReferenceInfo id, String json, Date timestamp, boolean isDelete)
+    {
+        this.id = id;
+        this.json = json;
+        this.timestamp = timestamp;
+        this.isDelete = isDelete;
+    }
+
+    public ReferenceInfo getId()
+    {
+        return id;
+    }
+
+    public String getJson()
+    {
+        return json;
+    }
+
+    public Date getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public boolean isDelete()
+    {
+        return isDelete;
+    }
+
+    /** returns the decoded entity or null if the change was not decoded*/
+    public Entity getEntity()
+    {
+        return entity;
+    }
+
+    public void setEntity(Entity entity)
+    {
+        this.entity = entity;
+    }
+
+    @Override public String toString()
+    {
+        return "HistoryChange [id=" + id + ", timestamp=" + timestamp + ", isDelete=" + isDelete + "]";
+    }
+}
@@ -0,0 +1,54 @@
+package org.rapla.storage.dbsql;
+
+/** Row count and an order independent checksum of the ids of a table. Used to verify that an import wrote all rows. */
+class ImportChecksum
+{
+    private long count;
+    private long sum;
+
+    void add(String id)
+    {
+        count++;
+        sum += hash(id);
+    }
+
+    long getCount()
+    {
+        return count;
+    }
+
+    /** 64 bit FNV-1a hash of the id. */
+    static long hash(String id)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++)
+        {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof ImportChecksum))
+        {
+            return false;
+        }
+        final ImportChecksum other = (ImportChecksum) obj;
+        return count == other.count && sum == other.sum;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (sum ^ (sum >>> 32));
+    }
+
+    @Override
+    public String toString()
+    {
+        return count + " rows (checksum " + Long.toHexString(sum) + ")";
+    }
+}
@@ -80,7 +80,6 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -107,6 +106,9 @@ class RaplaSQL
     PreferenceStorage preferencesStorage;
     LockStorage lockStorage;
     private final ImportExportStorage importExportStorage;
+    private final ReservationStorage reservationStorage;
+    private final AppointmentStorage appointmentStorage;
+    private final ConflictStorage conflictStorage;
 
     RaplaSQL(RaplaXMLContext context) throws RaplaException
     {
@@ -120,11 +122,12 @@ class RaplaSQL
         stores.add(new AllocatableStorage(context));
         preferencesStorage = new PreferenceStorage(context);
         stores.add(preferencesStorage);
-        ReservationStorage reservationStorage = new ReservationStorage(context);
+        reservationStorage = new ReservationStorage(context);
         stores.add(reservationStorage);
-        AppointmentStorage appointmentStorage = new AppointmentStorage(context);
+        appointmentStorage = new AppointmentStorage(context);
         stores.add(appointmentStorage);
-        stores.add(new ConflictStorage(context));
+        conflictStorage = new ConflictStorage(context);
+        stores.add(conflictStorage);
         //stores.add(new DeleteStorage( context));
         history = new HistoryStorage(context);
         stores.add(history);
@@ -189,6 +192,72 @@ class RaplaSQL
         }
     }
 
+    /** inserts the reservations with their appointments and history entries. Used by the streaming import to write the reservations in batches.
+     * If replace is set, the rows of the reservations that were written by an interrupted import are deleted first. */
+    synchronized public void insertReservations(Connection con, Collection<Reservation> reservations, boolean replace) throws SQLException, RaplaException
+    {
+        Date connectionTimestamp = getDatabaseTimestamp(con);
+        reservationStorage.setConnection(con, connectionTimestamp);
+        history.setConnection(con, connectionTimestamp);
+        try
+        {
+            if (replace)
+            {
+                final Set<String> ids = new HashSet<String>();
+                for (Reservation reservation : reservations)
+                {
+                    ids.add(reservation.getId());
+                }
+                // deletes the appointments too
+                reservationStorage.deleteFromSubStores(ids);
+                reservationStorage.deleteIds(ids);
+                history.deleteIds(ids);
+            }
+            final Collection<Appointment> appointments = new ArrayList<Appointment>();
+            for (Reservation reservation : reservations)
+            {
+                appointments.addAll(Arrays.asList(reservation.getAppointments()));
+            }
+            reservationStorage.insert(reservations);
+            appointmentStorage.insert(appointments);
+            history.save(reservations);
+        }
+        finally
+        {
+            reservationStorage.removeConnection();
+            appointmentStorage.removeConnection();
+            history.removeConnection();
+        }
+    }
+
+    synchronized public void insertConflicts(Connection con, Collection<Conflict> conflicts) throws SQLException, RaplaException
+    {
+        Date connectionTimestamp = getDatabaseTimestamp(con);
+        conflictStorage.setConnection(con, connectionTimestamp);
+        try
+        {
+            conflictStorage.insert(conflicts);
+        }
+        finally
+        {
+            conflictStorage.removeConnection();
+        }
+    }
+
+    /** returns the number of rows and a checksum of the ids in the table */
+    public ImportChecksum getChecksum(Connection con, String tableName) throws SQLException
+    {
+        final ImportChecksum checksum = new ImportChecksum();
+        try (Statement stmt = con.createStatement(); ResultSet rset = stmt.executeQuery("SELECT ID FROM " + tableName))
+        {
+            while (rset.next())
+            {
+                checksum.add(rset.getString(1));
+            }
+        }
+        return checksum;
+    }
+
     synchronized public void removeAll(Connection con) throws SQLException, RaplaException
     {
         Date connectionTimestamp = getDatabaseTimestamp(con);
@@ -360,12 +429,13 @@ class RaplaSQL
         }
     }
 
-    public Collection<ReferenceInfo> update(Connection c, Date lastUpdated, Date connectionTimestamp) throws SQLException, RaplaException
+    /** reads the changes since lastUpdated without adding them to the history. Can be called without holding the write lock*/
+    public List<HistoryChange> readChanges(Connection c, Date lastUpdated, Date connectionTimestamp) throws SQLException, RaplaException
     {
         history.setConnection(c, connectionTimestamp);
         try
         {
-            return history.update(lastUpdated);
+            return history.readChanges(lastUpdated);
         }
         finally
         {
@@ -467,6 +537,25 @@ class RaplaSQL
         }
     }
 
+    /**
+     * requests the locks for the ids and fails if one of the checkedIds is locked by another transaction. If waitForActiveLocks is set,
+     * waits until all locks that were active when the locks were activated are released. This is used for dynamic type changes instead of the global lock:
+     * writers of classifiables check the lock of their type, so only transactions that write entities of the changed type are blocked.
+     */
+    public void requestLocks(Connection connection, Date connectionTimestamp, Collection<String> ids, Collection<String> checkedIds, boolean waitForActiveLocks)
+            throws SQLException, RaplaException
+    {
+        try
+        {
+            lockStorage.setConnection(connection, connectionTimestamp);
+            lockStorage.getLocks(ids, checkedIds, waitForActiveLocks, null, true);
+        }
+        finally
+        {
+            lockStorage.removeConnection();
+        }
+    }
+
     public void cleanupOldLocks(Connection c) throws SQLException, RaplaException
     {
         try
@@ -511,6 +600,8 @@ class RaplaSQL
 class LockStorage extends AbstractTableStorage
 {
     static final String GLOBAL_LOCK = "GLOBAL_LOCK";
+    /** maximum number of ids in one IN clause */
+    static final int MAX_IDS_PER_STATEMENT = 100;
     private final String countLocksSql = "SELECT COUNT(LOCKID) FROM WRITE_LOCK WHERE LOCKID <> '" + GLOBAL_LOCK + "' AND ACTIVE = 1";
     private final String cleanupSql = "UPDATE WRITE_LOCK SET ACTIVE = 2 WHERE VALID_UNTIL < CURRENT_TIMESTAMP and ACTIVE = 1";
     private final String activateSql = "UPDATE WRITE_LOCK SET ACTIVE = 1, LAST_CHANGED = CURRENT_TIMESTAMP, VALID_UNTIL = ? WHERE LOCKID = ? AND ACTIVE <> 1";
@@ -618,21 +709,60 @@ class LockStorage extends AbstractTableStorage
         return now;
     }
 
-    private void checkGlobalLockThrowException() throws RaplaException
+    /** throws an exception if the global lock or one of the checked ids is locked */
+    private void checkLocksThrowException(Collection<String> checkedIds) throws RaplaException
     {
-        try (final PreparedStatement stmt = con.prepareStatement(selectSql + " AND ACTIVE = 1"))
+        final List<String> ids = new ArrayList<String>();
+        ids.add(GLOBAL_LOCK);
+        ids.addAll(checkedIds);
+        final Set<String> activeIds;
+        try
         {
-            stmt.setString(1, GLOBAL_LOCK);
-            final ResultSet result = stmt.executeQuery();
-            if (result.next())
-            {
-                throw new RaplaException("Global lock set");
-            }
+            activeIds = selectLockIds(ids, " AND ACTIVE = 1");
         }
         catch (SQLException e)
         {
             throw new RaplaException("Global lock set", e);
         }
+        if (activeIds.contains(GLOBAL_LOCK))
+        {
+            throw new RaplaException("Global lock set");
+        }
+        if (!activeIds.isEmpty())
+        {
+            throw new RaplaException("Lock set for " + activeIds);
+        }
+    }
+
+    /** returns the ids that have an entry in the lock table. The ids are queried with IN clauses of up to {@link #MAX_IDS_PER_STATEMENT} ids */
+    private Set<String> selectLockIds(Collection<String> ids, String condition) throws SQLException
+    {
+        final Set<String> result = new HashSet<String>();
+        final List<String> idList = new ArrayList<String>(ids);
+        for (int start = 0; start < idList.size(); start += MAX_IDS_PER_STATEMENT)
+        {
+            final List<String> chunk = idList.subList(start, Math.min(idList.size(), start + MAX_IDS_PER_STATEMENT));
+            final StringBuilder sql = new StringBuilder("SELECT LOCKID FROM WRITE_LOCK WHERE LOCKID IN (");
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            sql.append(")").append(condition);
+            try (final PreparedStatement stmt = con.prepareStatement(sql.toString()))
+            {
+                int index = 1;
+                for (String id : chunk)
+                {
+                    stmt.setString(index++, id);
+                }
+                final ResultSet resultSet = stmt.executeQuery();
+                while (resultSet.next())
+                {
+                    result.add(resultSet.getString(1));
+                }
+            }
+        }
+        return result;
     }
 
     public Date readLastRequested(String id) throws RaplaException
@@ -656,30 +786,18 @@ class LockStorage extends AbstractTableStorage
     private void activateLocks(Collection<String> ids, Long validMilliseconds) throws RaplaException
     {
         try (final PreparedStatement insertStmt = con.prepareStatement(insertSql);
-                final PreparedStatement updateStatement = con.prepareStatement(activateSql);
-                final PreparedStatement containsStmt = con.prepareStatement("SELECT COUNT(LOCKID) FROM WRITE_LOCK WHERE LOCKID = ?"))
+                final PreparedStatement updateStatement = con.prepareStatement(activateSql))
         {
             final Date databaseTimestamp = getConnectionTimestamp();
-            BitSet existingIds = new BitSet(ids.size());
-            int index = 0;
-            for (String id : ids)
-            {// extract existing ids from DB
-                containsStmt.setString(1, id);
-                final ResultSet result = containsStmt.executeQuery();
-                if (result != null && result.next() && result.getInt(1) != 0)
-                {
-                    existingIds.set(index);
-                }
-                index++;
-            }
+            // extract existing ids from DB
+            final Set<String> existingIds = selectLockIds(ids, "");
             boolean executeUpdate = false;
             boolean executeInsert = false;
-            index = 0;
             for (String id : ids)
             {
                 final long validOffset = calcValidOffset(validMilliseconds, id);
                 final java.sql.Timestamp validUntil = new java.sql.Timestamp(databaseTimestamp.getTime() + validOffset);
-                if (existingIds.get(index))
+                if (existingIds.contains(id))
                 {//update
                     updateStatement.setTimestamp(1, validUntil);
                     updateStatement.setString(2, id);
@@ -694,7 +812,6 @@ class LockStorage extends AbstractTableStorage
                     insertStmt.addBatch();
                     executeInsert = true;
                 }
-                index++;
             }
             if (executeInsert)
             {
@@ -738,16 +855,26 @@ class LockStorage extends AbstractTableStorage
     }
 
     public void getLocks(Collection<String> ids, Long validMilliseconds, boolean deleteLocksOnFailure) throws RaplaException
+    {
+        getLocks(ids, Collections.<String>emptyList(), false, validMilliseconds, deleteLocksOnFailure);
+    }
+
+    public void getLocks(Collection<String> ids, Collection<String> checkedIds, boolean waitForActiveLocks, Long validMilliseconds,
+            boolean deleteLocksOnFailure) throws RaplaException
     {
         if (ids == null || ids.isEmpty())
         {
             return;
         }
-        checkGlobalLockThrowException();
+        checkLocksThrowException(checkedIds);
         activateLocks(ids, validMilliseconds);
         try
         {
-            checkGlobalLockThrowException();
+            checkLocksThrowException(checkedIds);
+            if (waitForActiveLocks)
+            {
+                waitForActiveLocks(ids);
+            }
         }
         catch (RaplaException e)
         {
@@ -767,6 +894,80 @@ class LockStorage extends AbstractTableStorage
         }
     }
 
+    /** waits until the other locks that were activated before our own locks are released. The locks are ordered by activation timestamp and id,
+     * so two transactions never wait for each other. Transactions that activate their locks later will see our locks in their check */
+    private void waitForActiveLocks(Collection<String> ownIds) throws RaplaException
+    {
+        final Map<String, java.sql.Timestamp> activeLocks = new HashMap<String, java.sql.Timestamp>();
+        try (PreparedStatement stmt = con.prepareStatement("SELECT LOCKID, LAST_CHANGED FROM WRITE_LOCK WHERE ACTIVE = 1"))
+        {
+            final ResultSet result = stmt.executeQuery();
+            while (result.next())
+            {
+                activeLocks.put(result.getString(1), result.getTimestamp(2));
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new RaplaException("Could not read active locks", e);
+        }
+        // the first of our own locks determines the position of this transaction
+        String firstOwnId = null;
+        java.sql.Timestamp firstOwnActivation = null;
+        for (String id : ownIds)
+        {
+            final java.sql.Timestamp activation = activeLocks.get(id);
+            if (activation != null && (firstOwnId == null || isActivatedBefore(id, activation, firstOwnId, firstOwnActivation)))
+            {
+                firstOwnId = id;
+                firstOwnActivation = activation;
+            }
+        }
+        final Set<String> activeIds = new HashSet<String>();
+        for (Map.Entry<String, java.sql.Timestamp> entry : activeLocks.entrySet())
+        {
+            final String id = entry.getKey();
+            if (!ownIds.contains(id) && (firstOwnId == null || isActivatedBefore(id, entry.getValue(), firstOwnId, firstOwnActivation)))
+            {
+                activeIds.add(id);
+            }
+        }
+        final long startWaitingTime = System.currentTimeMillis();
+        try
+        {
+            while (!activeIds.isEmpty())
+            {
+                activeIds.retainAll(selectLockIds(activeIds, " AND ACTIVE = 1"));
+                if (activeIds.isEmpty())
+                {
+                    break;
+                }
+                // wait for max 30 seconds
+                if ((System.currentTimeMillis() - startWaitingTime) > 30000l)
+                {
+                    throw new RaplaException("Lock timed out waiting for " + activeIds);
+                }
+                Thread.sleep(100);
+            }
+        }
+        catch (SQLException e)
+        {
+            throw new RaplaException("Could not read active locks", e);
+        }
+        catch (InterruptedException e)
+        {
+            throw new RaplaException("Interrupted while waiting for locks " + activeIds, e);
+        }
+    }
+
+    private static boolean isActivatedBefore(String id, java.sql.Timestamp activation, String otherId, java.sql.Timestamp otherActivation)
+    {
+        // LAST_CHANGED is set on each activation, so null only occurs in rows of old versions
+        final java.sql.Timestamp none = new java.sql.Timestamp(0);
+        final int compare = (activation != null ? activation : none).compareTo(otherActivation != null ? otherActivation : none);
+        return compare < 0 || (compare == 0 && id.compareTo(otherId) < 0);
+    }
+
     public Date getGlobalLock() throws RaplaException
     {
         final Date lastLocked = readLockTimestamp();
@@ -1304,16 +1505,103 @@ class ReservationStorage extends RaplaTypeStorage<Reservation>
         insert(cache.getReservations());
     }
 
+    /**
+     * The event row is always rewritten, because its last changed timestamp is checked for concurrent changes. The rows of attribute
+     * values, permissions and appointments are compared with the version in the cache and only the changed rows are rewritten.
+     */
     @Override
     public void save(Iterable<Reservation> entities) throws RaplaException, SQLException
     {
-        super.save(entities);
-        Collection<Appointment> appointments = new ArrayList<Appointment>();
+        final Collection<ReferenceInfo<Reservation>> references = new ArrayList<ReferenceInfo<Reservation>>();
+        final Set<String> ids = new HashSet<String>();
+        for (Reservation r : entities)
+        {
+            references.add(r.getReference());
+            ids.add(r.getId());
+        }
+        if (ids.isEmpty())
+        {
+            return;
+        }
+        // only events whose row was found can be compared, the rows of the other events are written completely
+        final Set<String> found = deleteRows(references, ids);
+        final List<Reservation> newEvents = new ArrayList<Reservation>();
+        final Map<Reservation, Reservation> previousVersions = new LinkedHashMap<Reservation, Reservation>();
         for (Reservation r : entities)
+        {
+            final Reservation previous = found.contains(r.getId()) ? cache.tryResolve(r.getReference()) : null;
+            if (previous == null || previous == r)
+            {
+                newEvents.add(r);
+            }
+            else
+            {
+                previousVersions.put(r, previous);
+            }
+            if (r instanceof ModifiableTimestamp)
+            {
+                updateTimestamp((ModifiableTimestamp) r);
+            }
+        }
+        for (SubStorage<Reservation> subStore : getSubStores())
+        {
+            final List<Reservation> toWrite = new ArrayList<Reservation>(newEvents);
+            for (Map.Entry<Reservation, Reservation> entry : previousVersions.entrySet())
+            {
+                if (!subStore.hasSameRows(entry.getKey(), entry.getValue()))
+                {
+                    toWrite.add(entry.getKey());
+                }
+            }
+            subStore.deleteIds(getIds(toWrite));
+            subStore.insert(toWrite);
+        }
+        appointmentStorage.deleteAppointments(getIds(newEvents));
+        final Collection<Appointment> appointments = new ArrayList<Appointment>();
+        for (Reservation r : newEvents)
         {
             appointments.addAll(Arrays.asList(r.getAppointments()));
         }
+        final Set<String> removedAppointments = new HashSet<String>();
+        for (Map.Entry<Reservation, Reservation> entry : previousVersions.entrySet())
+        {
+            final Map<String, Appointment> previousAppointments = new HashMap<String, Appointment>();
+            for (Appointment appointment : entry.getValue().getAppointments())
+            {
+                previousAppointments.put(appointment.getId(), appointment);
+            }
+            for (Appointment appointment : entry.getKey().getAppointments())
+            {
+                final Appointment previous = previousAppointments.remove(appointment.getId());
+                if (previous == null)
+                {
+                    appointments.add(appointment);
+                }
+                else if (!appointmentStorage.hasSameRowsWithSubStores(appointment, previous))
+                {
+                    removedAppointments.add(appointment.getId());
+                    appointments.add(appointment);
+                }
+            }
+            removedAppointments.addAll(previousAppointments.keySet());
+        }
+        appointmentStorage.deleteAppointmentIds(removedAppointments);
         appointmentStorage.insert(appointments);
+        insertRows(entities);
+        if (getLogger().isDebugEnabled())
+        {
+            getLogger().debug("Saved " + ids.size() + " events, " + previousVersions.size() + " compared, " + appointments.size() + " appointments written");
+        }
+    }
+
+    private Set<String> getIds(Collection<Reservation> reservations)
+    {
+        final Set<String> ids = new HashSet<String>();
+        for (Reservation r : reservations)
+        {
+            ids.add(r.getId());
+        }
+        return ids;
     }
 
     @Override
@@ -1419,6 +1707,7 @@ class AttributeValueStorage<T extends Entity<T>> extends EntityStorage<T> implem
         super(context, tablename,
                 new String[] { foreignKeyName + " VARCHAR(255) NOT NULL KEY", "ATTRIBUTE_KEY VARCHAR(255)", "ATTRIBUTE_VALUE VARCHAR(20000)" });
         this.foreignKeyName = foreignKeyName;
+        multiRowInsert = true;
         this.classificationMap = classificationMap;
         this.annotableMap = annotableMap;
         if (this.entityStore != null)
@@ -1559,6 +1848,7 @@ class PermissionStorage<T extends EntityPermissionContainer<T>> extends EntitySt
                         "MIN_ADVANCE INTEGER", "MAX_ADVANCE INTEGER", "START_DATE DATETIME", "END_DATE DATETIME" });
         this.referenceMap = idMap;
         this.parentStoreClass = parentStoreClass;
+        multiRowInsert = true;
     }
 
     protected int write(PreparedStatement stmt, EntityPermissionContainer container) throws SQLException, RaplaException
@@ -1625,6 +1915,7 @@ class AppointmentStorage extends RaplaTypeStorage<Appointment>
                         "APPOINTMENT_END DATETIME NOT NULL", "REPETITION_TYPE VARCHAR(255)", "REPETITION_NUMBER INTEGER", "REPETITION_END DATETIME",
                         "REPETITION_INTERVAL INTEGER" });
         setForeignId("EVENT_ID");
+        multiRowInsert = true;
         appointmentExceptionStorage = new AppointmentExceptionStorage(context);
         allocationStorage = new AllocationStorage(context);
         addSubStorage(appointmentExceptionStorage);
@@ -1666,6 +1957,53 @@ class AppointmentStorage extends RaplaTypeStorage<Appointment>
         deleteFromSubStores(ids);
     }
 
+    /** deletes the appointments with the passed ids and their exceptions and allocations */
+    void deleteAppointmentIds(Set<String> appointmentIds) throws SQLException, RaplaException
+    {
+        if (appointmentIds.isEmpty())
+        {
+            return;
+        }
+        try (final PreparedStatement stmt = con.prepareStatement("DELETE FROM APPOINTMENT WHERE ID=?"))
+        {
+            final int batchSize = getBatchSize();
+            int count = 0;
+            for (String id : appointmentIds)
+            {
+                setString(stmt, 1, id);
+                stmt.addBatch();
+                count++;
+                if (count >= batchSize)
+                {
+                    stmt.executeBatch();
+                    count = 0;
+                }
+            }
+            if (count > 0)
+            {
+                stmt.executeBatch();
+            }
+        }
+        deleteFromSubStores(appointmentIds);
+    }
+
+    /** returns true if the appointment row, the exceptions and the allocations of both versions are equal */
+    boolean hasSameRowsWithSubStores(Appointment appointment, Appointment previous) throws SQLException, RaplaException
+    {
+        if (!hasSameRows(appointment, previous))
+        {
+            return false;
+        }
+        for (SubStorage<Appointment> subStore : getSubStores())
+        {
+            if (!subStore.hasSameRows(appointment, previous))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     void insertAll() throws SQLException, RaplaException
     {
@@ -1811,6 +2149,7 @@ class AllocationStorage extends EntityStorage<Appointment> implements SubStorage
     public AllocationStorage(RaplaXMLContext context) throws RaplaException
     {
         super(context, "ALLOCATION", new String[] { "APPOINTMENT_ID VARCHAR(255) NOT NULL KEY", "RESOURCE_ID VARCHAR(255) NOT NULL", "PARENT_ORDER INTEGER","IS_RESTRICTION INTEGER" });
+        multiRowInsert = true;
     }
 
     @Override
@@ -1879,6 +2218,7 @@ class AppointmentExceptionStorage extends EntityStorage<Appointment> implements
     public AppointmentExceptionStorage(RaplaXMLContext context) throws RaplaException
     {
         super(context, "APPOINTMENT_EXCEPTION", new String[] { "APPOINTMENT_ID VARCHAR(255) NOT NULL KEY", "EXCEPTION_DATE DATETIME NOT NULL" });
+        multiRowInsert = true;
     }
 
     @Override
@@ -2741,7 +3081,7 @@ class HistoryStorage<T extends Entity<T>> extends RaplaTypeStorage<T>
         return 1;
     }
 
-    public Collection<ReferenceInfo> update(Date lastUpdated) throws SQLException, RaplaException
+    public List<HistoryChange> readChanges(Date lastUpdated) throws SQLException, RaplaException
     {
         try (final PreparedStatement stmt = con.prepareStatement(loadAllUpdatesSql))
         {
@@ -2751,16 +3091,18 @@ class HistoryStorage<T extends Entity<T>> extends RaplaTypeStorage<T>
             {
                 return Collections.emptyList();
             }
-            Collection<ReferenceInfo> ids = new HashSet<ReferenceInfo>();
+            final List<HistoryChange> changes = new ArrayList<HistoryChange>();
             while (result.next())
             {
-                load(result);
                 final String id = result.getString(1);
                 final String raplaTypeLocalName = result.getString(2);
                 final Class<? extends Entity> typeClass = RaplaType.find(raplaTypeLocalName);
-                ids.add(new ReferenceInfo(id, typeClass));
+                final String json = getText(result, 4);
+                final Date lastChanged = new Date(result.getTimestamp(5).getTime());
+                final Integer isDelete = getInt(result, 6);
+                changes.add(new HistoryChange(new ReferenceInfo(id, typeClass), json, lastChanged, isDelete != null && isDelete == 1));
             }
-            return ids;
+            return changes;
         }
     }
 
@@ -0,0 +1,263 @@
+package org.rapla.storage.dbsql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the rows that a storage writes into a prepared statement, instead of sending them to the database. The recorded rows are
+ * used to compare the rows of two versions of an entity and to write multiple rows with one insert statement.
+ */
+class RowRecorder implements InvocationHandler
+{
+    /** the size of a value that is not a string, including the separators */
+    private static final int PARAMETER_BYTES = 32;
+
+    private final PreparedStatement statement;
+    private final List<Row> rows = new ArrayList<Row>();
+    private Row current = new Row();
+    private long estimatedBytes;
+
+    /** parameters of one row, ordered by the parameter index */
+    static final class Row
+    {
+        private final Map<Integer, Parameter> parameters = new TreeMap<Integer, Parameter>();
+        private long estimatedBytes;
+
+        Row copy()
+        {
+            final Row copy = new Row();
+            copy.parameters.putAll(parameters);
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof Row && parameters.equals(((Row) obj).parameters);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return parameters.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return parameters.values().toString();
+        }
+    }
+
+    /** a setter call with the parameter index as first argument */
+    private static final class Parameter
+    {
+        private final Method method;
+        private final Object[] args;
+
+        Parameter(Method method, Object[] args)
+        {
+            this.method = method;
+            this.args = args;
+        }
+
+        void apply(PreparedStatement stmt, int offset) throws SQLException
+        {
+            final Object[] shifted = args.clone();
+            shifted[0] = (Integer) args[0] + offset;
+            try
+            {
+                method.invoke(stmt, shifted);
+            }
+            catch (InvocationTargetException ex)
+            {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof SQLException)
+                {
+                    throw (SQLException) cause;
+                }
+                throw new SQLException(cause);
+            }
+            catch (IllegalAccessException ex)
+            {
+                throw new SQLException(ex);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Parameter))
+            {
+                return false;
+            }
+            final Parameter other = (Parameter) obj;
+            return method.getName().equals(other.method.getName()) && Arrays.deepEquals(getValues(), other.getValues());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return method.getName().hashCode() * 31 + Arrays.deepHashCode(getValues());
+        }
+
+        // the calendar of setTimestamp only converts the value, so it is not compared
+        private Object[] getValues()
+        {
+            final Object[] values = args.clone();
+            for (int i = 0; i < values.length; i++)
+            {
+                if (values[i] instanceof Calendar)
+                {
+                    values[i] = Calendar.class;
+                }
+            }
+            return values;
+        }
+
+        /** the size of the value in a statement sent to the database. Characters are counted with the maximum of 4 bytes in utf-8 */
+        long estimateBytes()
+        {
+            final Object value = args.length > 1 ? args[1] : null;
+            if (value instanceof CharSequence)
+            {
+                return 4L * ((CharSequence) value).length() + PARAMETER_BYTES;
+            }
+            if (value instanceof byte[])
+            {
+                // sent as hex literal if the statement is not prepared on the server
+                return 2L * ((byte[]) value).length + PARAMETER_BYTES;
+            }
+            return PARAMETER_BYTES;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.valueOf(args.length > 1 ? args[1] : null);
+        }
+    }
+
+    RowRecorder()
+    {
+        statement = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class[] { PreparedStatement.class }, this);
+    }
+
+    /** the statement that is passed to the write method of the storage */
+    PreparedStatement getStatement()
+    {
+        return statement;
+    }
+
+    /** the rows that are added with addBatch and not yet replayed */
+    List<Row> getRows()
+    {
+        return rows;
+    }
+
+    int size()
+    {
+        return rows.size();
+    }
+
+    /** the estimated size of the values of the recorded rows in an insert statement */
+    long getEstimatedBytes()
+    {
+        return estimatedBytes;
+    }
+
+    /** the number of rows from the start whose estimated size fits into maxBytes, at least one if rows are recorded */
+    int getRowCountWithin(long maxBytes)
+    {
+        long bytes = 0;
+        int count = 0;
+        for (Row row : rows)
+        {
+            bytes += row.estimatedBytes;
+            if (bytes > maxBytes && count > 0)
+            {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /** sets the parameters of the first rowCount rows into the statement, each row shifted by the number of columns, and removes them */
+    void replay(PreparedStatement stmt, int rowCount, int columnCount) throws SQLException
+    {
+        final Iterator<Row> it = rows.iterator();
+        for (int i = 0; i < rowCount; i++)
+        {
+            final Row row = it.next();
+            for (Parameter parameter : row.parameters.values())
+            {
+                parameter.apply(stmt, i * columnCount);
+            }
+            estimatedBytes -= row.estimatedBytes;
+            it.remove();
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        final String name = method.getName();
+        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer)
+        {
+            current.parameters.put((Integer) args[0], new Parameter(method, args));
+            return null;
+        }
+        if (name.equals("addBatch") && (args == null || args.length == 0))
+        {
+            for (Parameter parameter : current.parameters.values())
+            {
+                current.estimatedBytes += parameter.estimateBytes();
+            }
+            estimatedBytes += current.estimatedBytes;
+            rows.add(current);
+            // like a prepared statement, the parameters are kept for the next row
+            current = current.copy();
+            return null;
+        }
+        if (name.equals("clearParameters"))
+        {
+            current = new Row();
+            return null;
+        }
+        if (name.equals("clearBatch"))
+        {
+            rows.clear();
+            estimatedBytes = 0;
+            return null;
+        }
+        if (name.equals("close"))
+        {
+            return null;
+        }
+        if (name.equals("equals"))
+        {
+            return proxy == args[0];
+        }
+        if (name.equals("hashCode"))
+        {
+            return System.identityHashCode(proxy);
+        }
+        if (name.equals("toString"))
+        {
+            return "RowRecorder " + rows.size() + " rows";
+        }
+        throw new UnsupportedOperationException(name + " is not supported while recording rows");
+    }
+}
@@ -0,0 +1,431 @@
+package org.rapla.storage.dbsql;
+
+import org.rapla.entities.Entity;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.User;
+import org.rapla.facade.Conflict;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.LocalCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Imports the reservations into the database while the source file is read. The reservations are written in batches by parallel writers,
+ * each with its own connection, and the number of queued batches is limited, so the memory does not grow with the number of reservations.
+ * All other entities are kept in memory and written with {@link #finish(LocalCache)} after the file is read.
+ * <p>
+ * The number of committed batches is stored in a checkpoint file. If an import is interrupted, the next import of the same file skips the
+ * committed batches. At the end the number of rows and a checksum of the ids are compared between source and database.
+ */
+public class StreamingImport implements Consumer<Entity>
+{
+    private static final String CHECKPOINT_SOURCE = "source";
+    private static final String CHECKPOINT_BATCH_SIZE = "batch_size";
+    private static final String CHECKPOINT_BATCHES = "committed_batches";
+    private static final String EVENT_TABLE = "EVENT";
+    private static final String APPOINTMENT_TABLE = "APPOINTMENT";
+
+    private final DBOperator operator;
+    private final Logger logger;
+    private final File checkpointFile;
+    private final String source;
+    private final int writerCount;
+    private int batchSize;
+
+    private final Map<String, ImportChecksum> expected = new LinkedHashMap<String, ImportChecksum>();
+    private final List<Conflict> conflicts = new ArrayList<Conflict>();
+    private List<Reservation> batch;
+    private int batchCount;
+    private int skippedBatches;
+    private boolean resumed;
+
+    private ExecutorService writers;
+    private BlockingQueue<Batch> queue;
+    private final Set<Integer> committedBatches = new HashSet<Integer>();
+    private int committedWatermark;
+    private volatile Throwable failure;
+
+    private static class Batch
+    {
+        static final Batch END = new Batch(-1, null);
+        final int number;
+        final List<Reservation> reservations;
+
+        Batch(int number, List<Reservation> reservations)
+        {
+            this.number = number;
+            this.reservations = reservations;
+        }
+    }
+
+    StreamingImport(DBOperator operator, Logger logger, String source, File checkpointFile, int writerCount, int batchSize)
+    {
+        this.operator = operator;
+        this.logger = logger;
+        this.source = source;
+        this.checkpointFile = checkpointFile;
+        this.writerCount = Math.max(1, writerCount);
+        this.batchSize = Math.max(1, batchSize);
+        expected.put(EVENT_TABLE, new ImportChecksum());
+        expected.put(APPOINTMENT_TABLE, new ImportChecksum());
+    }
+
+    /** creates the tables and removes the old data, unless an interrupted import of the same source is resumed. Starts the writers */
+    public void start() throws RaplaException
+    {
+        final Properties checkpoint = readCheckpoint();
+        if (checkpoint != null && source.equals(checkpoint.getProperty(CHECKPOINT_SOURCE)))
+        {
+            resumed = true;
+            batchSize = Integer.parseInt(checkpoint.getProperty(CHECKPOINT_BATCH_SIZE));
+            skippedBatches = Integer.parseInt(checkpoint.getProperty(CHECKPOINT_BATCHES));
+            logger.info("Resuming import of " + source + " after " + skippedBatches + " batches of " + batchSize + " events");
+        }
+        else
+        {
+            try (Connection connection = operator.createConnection())
+            {
+                operator.prepareImport(connection);
+            }
+            catch (SQLException ex)
+            {
+                throw new RaplaException(ex);
+            }
+        }
+        committedWatermark = skippedBatches;
+        batch = new ArrayList<Reservation>(batchSize);
+        queue = new ArrayBlockingQueue<Batch>(writerCount * 2);
+        writers = Executors.newFixedThreadPool(writerCount);
+        for (int i = 0; i < writerCount; i++)
+        {
+            writers.execute(this::write);
+        }
+    }
+
+    /**
+     * called while the source is read with the reservations and conflicts that passed the consistency checks. Reservations are queued for the
+     * writers, conflicts are written with {@link #finish(LocalCache)}
+     */
+    @Override
+    public void accept(Entity entity)
+    {
+        if (entity instanceof Conflict)
+        {
+            conflicts.add((Conflict) entity);
+            return;
+        }
+        if (!(entity instanceof Reservation))
+        {
+            return;
+        }
+        final Reservation reservation = (Reservation) entity;
+        addExpected(EVENT_TABLE, reservation);
+        for (Appointment appointment : reservation.getAppointments())
+        {
+            addExpected(APPOINTMENT_TABLE, appointment);
+        }
+        batch.add(reservation);
+        if (batch.size() >= batchSize)
+        {
+            flush();
+        }
+    }
+
+    private void addExpected(String table, Entity entity)
+    {
+        expected.get(table).add(entity.getId());
+    }
+
+    private void flush()
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+        final Batch toWrite = new Batch(batchCount++, batch);
+        batch = new ArrayList<Reservation>(batchSize);
+        // committed by the interrupted import
+        if (toWrite.number < skippedBatches)
+        {
+            return;
+        }
+        enqueue(toWrite);
+    }
+
+    private void enqueue(Batch toWrite)
+    {
+        try
+        {
+            while (!queue.offer(toWrite, 1, TimeUnit.SECONDS))
+            {
+                checkFailure();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(new RaplaException("Import interrupted"));
+        }
+        checkFailure();
+    }
+
+    private void checkFailure()
+    {
+        final Throwable failure = this.failure;
+        if (failure != null)
+        {
+            throw new IllegalStateException(new RaplaException("Import failed: " + failure.getMessage(), failure));
+        }
+    }
+
+    private void write()
+    {
+        try (Connection connection = operator.createConnection())
+        {
+            try
+            {
+                final RaplaSQL raplaSQL = operator.createRaplaSQL(null);
+                while (true)
+                {
+                    final Batch next = queue.take();
+                    if (next == Batch.END || failure != null)
+                    {
+                        return;
+                    }
+                    // rows of batches that were written after the checkpoint of an interrupted import are replaced
+                    raplaSQL.insertReservations(connection, next.reservations, resumed);
+                    connection.commit();
+                    committed(next.number);
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                // import aborted
+                connection.rollback();
+            }
+            catch (Throwable ex)
+            {
+                logger.error("Error writing events: " + ex.getMessage(), ex);
+                failure = ex;
+                connection.rollback();
+            }
+        }
+        catch (Throwable ex)
+        {
+            if (failure == null)
+            {
+                logger.error("Error writing events: " + ex.getMessage(), ex);
+                failure = ex;
+            }
+        }
+    }
+
+    /** advances the checkpoint over all batches that are committed without a gap */
+    private synchronized void committed(int number)
+    {
+        committedBatches.add(number);
+        int watermark = committedWatermark;
+        while (committedBatches.remove(watermark))
+        {
+            watermark++;
+        }
+        if (watermark != committedWatermark)
+        {
+            committedWatermark = watermark;
+            writeCheckpoint(watermark);
+        }
+    }
+
+    /**
+     * called after the last reservation of the source. Writes the remaining batch and waits for the writers, so the reservations are no
+     * longer accessed when the source resolves and freezes the entities they refer to.
+     */
+    public void awaitWriters()
+    {
+        if (writers == null)
+        {
+            return;
+        }
+        try
+        {
+            flush();
+            for (int i = 0; i < writerCount; i++)
+            {
+                enqueue(Batch.END);
+            }
+            writers.shutdown();
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(new RaplaException("Import interrupted"));
+        }
+        finally
+        {
+            close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * waits for the writers if the source contained no reservations and writes the entities of the cache, which contains everything except
+     * the reservations, and the disabled conflicts. Then the rows in the database are verified against the source.
+     */
+    public void finish(LocalCache cache) throws RaplaException
+    {
+        try
+        {
+            awaitWriters();
+        }
+        catch (IllegalStateException ex)
+        {
+            throw toRaplaException(ex);
+        }
+        try (Connection connection = operator.createConnection())
+        {
+            final RaplaSQL raplaSQL = operator.createRaplaSQL(cache);
+            // all entities except the reservations are written in one transaction, so they are complete if the interrupted import wrote the users
+            if (!resumed || raplaSQL.getChecksum(connection, "RAPLA_USER").getCount() == 0)
+            {
+                raplaSQL.createAll(connection);
+                raplaSQL.insertConflicts(connection, conflicts);
+                connection.commit();
+            }
+            verify(connection, raplaSQL, cache);
+        }
+        catch (SQLException ex)
+        {
+            throw new RaplaException(ex);
+        }
+        if (checkpointFile != null && checkpointFile.exists() && !checkpointFile.delete())
+        {
+            logger.warn("Could not delete import checkpoint " + checkpointFile);
+        }
+    }
+
+    /** stops the writers if the import is aborted. Batches that are not committed are written again when the import is resumed */
+    public void close()
+    {
+        if (writers != null)
+        {
+            writers.shutdownNow();
+            writers = null;
+        }
+    }
+
+    private RaplaException toRaplaException(IllegalStateException ex)
+    {
+        if (ex.getCause() instanceof RaplaException)
+        {
+            return (RaplaException) ex.getCause();
+        }
+        return new RaplaException(ex.getMessage(), ex);
+    }
+
+    private void verify(Connection connection, RaplaSQL raplaSQL, LocalCache cache) throws SQLException, RaplaException
+    {
+        final Map<String, ImportChecksum> expected = new LinkedHashMap<String, ImportChecksum>(this.expected);
+        final ImportChecksum resources = new ImportChecksum();
+        for (Allocatable allocatable : cache.getAllocatables())
+        {
+            resources.add(allocatable.getId());
+        }
+        expected.put("RAPLA_RESOURCE", resources);
+        final ImportChecksum users = new ImportChecksum();
+        for (User user : cache.getUsers())
+        {
+            users.add(user.getId());
+        }
+        expected.put("RAPLA_USER", users);
+        final StringBuilder mismatches = new StringBuilder();
+        for (Map.Entry<String, ImportChecksum> entry : expected.entrySet())
+        {
+            final String table = entry.getKey();
+            final ImportChecksum inDatabase = raplaSQL.getChecksum(connection, table);
+            if (inDatabase.equals(entry.getValue()))
+            {
+                logger.info("Verified " + table + ": " + inDatabase);
+            }
+            else
+            {
+                mismatches.append("\n").append(table).append(": expected ").append(entry.getValue()).append(" but found ").append(inDatabase);
+            }
+        }
+        if (mismatches.length() > 0)
+        {
+            throw new RaplaException("Imported data does not match the source:" + mismatches);
+        }
+    }
+
+    private Properties readCheckpoint()
+    {
+        if (checkpointFile == null || !checkpointFile.exists())
+        {
+            return null;
+        }
+        final Properties checkpoint = new Properties();
+        try (InputStream in = new FileInputStream(checkpointFile))
+        {
+            checkpoint.load(in);
+            Integer.parseInt(checkpoint.getProperty(CHECKPOINT_BATCH_SIZE));
+            Integer.parseInt(checkpoint.getProperty(CHECKPOINT_BATCHES));
+            return checkpoint;
+        }
+        catch (IOException | NumberFormatException ex)
+        {
+            logger.warn("Ignoring invalid import checkpoint " + checkpointFile + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCheckpoint(int batches)
+    {
+        if (checkpointFile == null)
+        {
+            return;
+        }
+        final Properties checkpoint = new Properties();
+        checkpoint.setProperty(CHECKPOINT_SOURCE, source);
+        checkpoint.setProperty(CHECKPOINT_BATCH_SIZE, String.valueOf(batchSize));
+        checkpoint.setProperty(CHECKPOINT_BATCHES, String.valueOf(batches));
+        final File newFile = new File(checkpointFile.getPath() + ".new");
+        try
+        {
+            try (OutputStream out = new FileOutputStream(newFile))
+            {
+                checkpoint.store(out, "Rapla import checkpoint");
+            }
+            Files.move(newFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex)
+        {
+            logger.warn("Could not write import checkpoint " + checkpointFile + ": " + ex.getMessage());
+        }
+    }
+}
@@ -10,4 +10,5 @@ public interface SubStorage<T extends Entity<T>> extends  Storage<T>
 {
     void updateWithForeignId(String foreignId) throws SQLException,RaplaException;
     void deleteIds(Collection<String> ids) throws SQLException,RaplaException;
+    boolean hasSameRows(T entity, T previous) throws SQLException,RaplaException;
 }
@@ -52,6 +52,7 @@ import org.rapla.logger.Logger;
 import org.rapla.scheduler.Promise;
 import org.rapla.scheduler.ResolvedPromise;
 import org.rapla.storage.LocalCache;
+import org.rapla.storage.NameFormatCache;
 import org.rapla.storage.PermissionController;
 import org.rapla.storage.PreferencePatch;
 import org.rapla.storage.StorageOperator;
@@ -118,6 +119,12 @@ public abstract class AbstractCachableOperator implements StorageOperator
         return permissionController;
     }
 
+    @Override
+    public NameFormatCache getNameFormatCache()
+    {
+        return cache.getNameFormatCache();
+    }
+
     public Logger getLogger()
     {
         return logger;
@@ -970,6 +977,8 @@ public abstract class AbstractCachableOperator implements StorageOperator
         setResolver(updatedEntities);
         updatePeriods(updatedEntities, toRemove);
         final UpdateResult updateResult = createUpdateResult(oldEntities, updatedEntities, toRemove, since, until);
+        cache.getNameFormatCache().invalidate(updateResult);
+        permissionController.invalidate(updateResult);
         setLastRefreshed(until);
         return updateResult;
     }
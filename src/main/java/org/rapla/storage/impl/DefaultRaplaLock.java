@@ -2,6 +2,9 @@ package org.rapla.storage.impl;
 
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaSynchronizationException;
+import org.rapla.framework.metrics.LatencyHistogram;
+import org.rapla.framework.metrics.RaplaMetrics;
+import org.rapla.framework.metrics.RequestTrace;
 import org.rapla.inject.DefaultImplementation;
 import org.rapla.inject.InjectionContext;
 import org.rapla.logger.Logger;
@@ -22,6 +25,10 @@ public class DefaultRaplaLock implements RaplaLock
     Stack<WriteLock> writeLocks = new Stack<WriteLock>();
     Stack<ReadLock> readLocks = new Stack<ReadLock>();
     Logger logger;
+    private LatencyHistogram readWait = new LatencyHistogram();
+    private LatencyHistogram writeWait = new LatencyHistogram();
+    private LatencyHistogram readHold = new LatencyHistogram();
+    private LatencyHistogram writeHold = new LatencyHistogram();
 
     @Inject
     public DefaultRaplaLock(Logger raplaLogger)
@@ -29,6 +36,17 @@ public class DefaultRaplaLock implements RaplaLock
         this.logger = raplaLogger;
     }
 
+    /** registers the wait and hold times of the lock with the lock name as label */
+    public void configureMetrics(RaplaMetrics metrics, String lockName)
+    {
+        final String waitHelp = "Time waited to acquire the lock";
+        final String holdHelp = "Time the lock was held";
+        readWait = metrics.register("rapla_lock_wait_seconds", waitHelp, readWait, "lock", lockName, "mode", "read");
+        writeWait = metrics.register("rapla_lock_wait_seconds", waitHelp, writeWait, "lock", lockName, "mode", "write");
+        readHold = metrics.register("rapla_lock_hold_seconds", holdHelp, readHold, "lock", lockName, "mode", "read");
+        writeHold = metrics.register("rapla_lock_hold_seconds", holdHelp, writeHold, "lock", lockName, "mode", "write");
+    }
+
     public WriteLock writeLock() throws RaplaException
     {
         return writeLock(DEFAULT_WRITELOCK_TIMEOUT_SECONDS);
@@ -39,9 +57,10 @@ public class DefaultRaplaLock implements RaplaLock
     {
         // Enabling the stack trace is a huge performance cost
         StackTraceElement[] stackTrace = logger.isTraceEnabled() ? getStackTrace() : new StackTraceElement[] {};
-        final long currentTime = System.currentTimeMillis();
+        final long waitStart = System.nanoTime();
         final Lock lock = lock(this.readWriteLock.readLock(), seconds, true);
-        final ReadLock readLock = new ReadLock(lock, stackTrace, currentTime);
+        readWait.recordSince(waitStart);
+        final ReadLock readLock = new ReadLock(lock, stackTrace, System.currentTimeMillis());
         readLocks.add(readLock);
         return readLock;
     }
@@ -62,26 +81,27 @@ public class DefaultRaplaLock implements RaplaLock
             {
                 return lock;
             }
-            if (lock.tryLock(seconds, TimeUnit.SECONDS))
+            // only contended locks are traced
+            try (RequestTrace.Span span = RequestTrace.span(isRead ? "lock.read.wait" : "lock.write.wait"))
             {
-                return lock;
+                if (lock.tryLock(seconds, TimeUnit.SECONDS))
+                {
+                    return lock;
+                }
+            }
+            if (logger != null)
+            {
+                int logThreshholdTime = 0;
+                logLongLocks(this.writeLocks, logThreshholdTime);
+                logLongLocks(this.readLocks, logThreshholdTime);
+            };
+            if ( isRead)
+            {
+                throw new RaplaSynchronizationException("Someone is currently writing. Please try again! Can't acquire read lock.");
             }
             else
             {
-                if (logger != null)
-                {
-                    int logThreshholdTime = 0;
-                    logLongLocks(this.writeLocks, logThreshholdTime);
-                    logLongLocks(this.readLocks, logThreshholdTime);
-                };
-                if ( isRead)
-                {
-                    throw new RaplaSynchronizationException("Someone is currently writing. Please try again! Can't acquire read lock.");
-                }
-                else
-                {
-                    throw new RaplaSynchronizationException("Someone is currently reading or writing. Please try again! Can't acquire write lock." + readLocks);
-                }
+                throw new RaplaSynchronizationException("Someone is currently reading or writing. Please try again! Can't acquire write lock." + readLocks);
             }
         }
         catch (InterruptedException ex)
@@ -112,10 +132,12 @@ public class DefaultRaplaLock implements RaplaLock
     {
         final WriteLock lock;
         StackTraceElement[] stackTrace = logger.isDebugEnabled() ? getStackTrace() : new StackTraceElement[] {};
-        final long currentTime = System.currentTimeMillis();
+        final long waitStart = System.nanoTime();
         if (seconds > 0)
         {
-            lock = new WriteLock(lock(this.readWriteLock.writeLock(), seconds, false), stackTrace, currentTime);
+            final Lock writeLock = lock(this.readWriteLock.writeLock(), seconds, false);
+            writeWait.recordSince(waitStart);
+            lock = new WriteLock(writeLock, stackTrace, System.currentTimeMillis());
         }
         else
         {
@@ -124,7 +146,8 @@ public class DefaultRaplaLock implements RaplaLock
             boolean tryLock = writeLock.tryLock();
             if (tryLock)
             {
-                lock = new WriteLock(writeLock, stackTrace, currentTime);
+                writeWait.recordSince(waitStart);
+                lock = new WriteLock(writeLock, stackTrace, System.currentTimeMillis());
             }
             else
             {
@@ -206,6 +229,7 @@ public class DefaultRaplaLock implements RaplaLock
         }
         ((Lock) lock.lock).unlock();
         readLocks.remove(lock);
+        readHold.record(System.currentTimeMillis() - lock.getLockTime(), TimeUnit.MILLISECONDS);
     }
 
     public void unlock(WriteLock lock)
@@ -216,6 +240,7 @@ public class DefaultRaplaLock implements RaplaLock
         }
         ((Lock) lock.lock).unlock();
         writeLocks.remove(lock);
+        writeHold.record(System.currentTimeMillis() - lock.getLockTime(), TimeUnit.MILLISECONDS);
     }
 
 }
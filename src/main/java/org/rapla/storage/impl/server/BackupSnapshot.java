@@ -0,0 +1,60 @@
+package org.rapla.storage.impl.server;
+
+import org.rapla.storage.LocalCache;
+
+import java.util.Collection;
+import java.util.Date;
+
+/** Copy of the cache at one point in time, see {@link LocalAbstractCachableOperator#createBackupSnapshot(Date)} */
+public class BackupSnapshot
+{
+    private final LocalCache cache;
+    private final LocalCache resolver;
+    private final Date timestamp;
+    private final Date since;
+    private final Collection<String> removedIds;
+
+    BackupSnapshot(LocalCache cache, LocalCache resolver, Date timestamp, Date since, Collection<String> removedIds)
+    {
+        this.cache = cache;
+        this.resolver = resolver;
+        this.timestamp = timestamp;
+        this.since = since;
+        this.removedIds = removedIds;
+    }
+
+    /** the entities to write. Use {@link LocalAbstractCachableOperator#runWithSnapshot(BackupSnapshot, org.rapla.storage.CachableStorageOperatorCommand)} to write them */
+    public LocalCache getCache()
+    {
+        return cache;
+    }
+
+    /** a copy of the complete cache, also for an incremental snapshot, that resolves the references of the entities */
+    LocalCache getResolver()
+    {
+        return resolver;
+    }
+
+    /** the time of the last refresh before the snapshot. An incremental backup after this snapshot contains the changes after that time */
+    public Date getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /** returns null for a full snapshot or the time since when resources and events are included */
+    public Date getSince()
+    {
+        return since;
+    }
+
+    public boolean isIncremental()
+    {
+        return since != null;
+    }
+
+    /** ids of the entities that were removed after since */
+    public Collection<String> getRemovedIds()
+    {
+        return removedIds;
+    }
+}
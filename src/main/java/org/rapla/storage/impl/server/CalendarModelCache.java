@@ -2,12 +2,14 @@ package org.rapla.storage.impl.server;
 
 import org.rapla.RaplaResources;
 import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.Category;
 import org.rapla.entities.Entity;
 import org.rapla.entities.User;
 import org.rapla.entities.configuration.CalendarModelConfiguration;
 import org.rapla.entities.configuration.Preferences;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.storage.ReferenceInfo;
 import org.rapla.facade.internal.CalendarModelImpl;
 import org.rapla.framework.RaplaException;
@@ -23,19 +25,17 @@ import org.rapla.storage.impl.RaplaLock;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 
 public class CalendarModelCache
 {
     RaplaLock lockManager;
 
-    private final Map<ReferenceInfo<User>, List<CalendarModelImpl>> calendarModels = new HashMap<ReferenceInfo<User>, List<CalendarModelImpl>>();
+    /** exported calendar models of the users, indexed by their allocatables and event types. Guarded by the lockManager */
+    private final CalendarModelIndex calendarModels = new CalendarModelIndex();
     final CachableStorageOperator operator;
     final RaplaResources i18n;
     final Logger logger;
@@ -135,17 +135,12 @@ public class CalendarModelCache
             }
         }
 
+        // the selection of the models is evaluated before the lock is acquired
+        final List<CalendarModelIndex.Subscription> subscriptions = CalendarModelIndex.createSubscriptions(userId, calendarModelList);
         final RaplaLock.WriteLock lock = lockManager.writeLock(60);
         try
         {
-            if (calendarModelList.size() > 0)
-            {
-                this.calendarModels.put(userId, calendarModelList);
-            }
-            else
-            {
-                this.calendarModels.remove(userId);
-            }
+            this.calendarModels.put(userId, subscriptions);
         }
         finally
         {
@@ -157,59 +152,30 @@ public class CalendarModelCache
     // checks all exports if appointment is still in on of the exported calendars (check eslected resources)
     public Collection<ReferenceInfo<User>> findMatchingUser(Appointment appointment) throws RaplaException
     {
-        Set<ReferenceInfo<User>> result = new HashSet<ReferenceInfo<User>>();
         RaplaLock.ReadLock readLock = lockManager.readLock();
         try
         {
-            for (ReferenceInfo<User> userId : calendarModels.keySet())
-            {
-                // TODO check wether the user can see the appointment or no
-                //
-                List<CalendarModelImpl> list = calendarModels.get(userId);
-                for (CalendarModelImpl conf : list)
-                {
-                    if (conf.isMatchingSelectionAndFilter(appointment))
-                    {
-                        result.add(userId);
-                        break;
-                    }
-                }
-            }
-
+            // TODO check wether the user can see the appointment or no
+            return calendarModels.findUsers(appointment);
         }
         finally
         {
             lockManager.unlock(readLock);
         }
-        return result;
     }
 
     // checks all exports if appointment is still in on of the exported calendars (check eslected resources)
     public Collection<ReferenceInfo<User>> findMatchingUsers(Allocatable allocatable) throws RaplaException
     {
-        Set<ReferenceInfo<User>> result = new HashSet<ReferenceInfo<User>>();
         RaplaLock.ReadLock lock = lockManager.readLock();
         try
         {
-            for (ReferenceInfo<User> userId : calendarModels.keySet())
-            {
-                List<CalendarModelImpl> list = calendarModels.get(userId);
-                for (CalendarModelImpl model : list)
-                {
-                    if (model.getAllAllocatables().contains(allocatable))
-                    {
-                        result.add(userId);
-                        break;
-                    }
-                }
-            }
-
+            return calendarModels.findUsers(allocatable);
         }
         finally
         {
             lockManager.unlock(lock);
         }
-        return result;
     }
 
     // TODO change to Promise
@@ -219,7 +185,7 @@ public class CalendarModelCache
         List<CalendarModelImpl> calendarModelList;
         try
         {
-            calendarModelList = calendarModels.get(userId);
+            calendarModelList = calendarModels.getModels(userId);
         }
         finally
         {
@@ -249,6 +215,8 @@ public class CalendarModelCache
 
     public  void synchronizeCalendars(UpdateResult evt) throws RaplaException
     {
+        final List<Allocatable> changedAllocatables = new ArrayList<Allocatable>();
+        boolean refreshAll = false;
         for (UpdateOperation operation : evt.getOperations())
         {
             final Class<? extends Entity> raplaType = operation.getType();
@@ -290,6 +258,37 @@ public class CalendarModelCache
                     removeCalendarModelFor(userId);
                 }
             }
+            // the selected allocatables of the exported calendars could have changed
+            else if (raplaType == Allocatable.class)
+            {
+                UpdateOperation<Allocatable> op = operation;
+                final Allocatable before = evt.getLastEntryBeforeUpdate(op.getReference());
+                if (before != null)
+                {
+                    changedAllocatables.add(before);
+                }
+                final Allocatable after = evt.getLastKnown(op.getReference());
+                if (after != null && after != before)
+                {
+                    changedAllocatables.add(after);
+                }
+            }
+            else if (raplaType == DynamicType.class || raplaType == Category.class)
+            {
+                refreshAll = true;
+            }
+        }
+        if (!changedAllocatables.isEmpty() || refreshAll)
+        {
+            final RaplaLock.WriteLock lock = lockManager.writeLock(60);
+            try
+            {
+                calendarModels.refresh(changedAllocatables, refreshAll);
+            }
+            finally
+            {
+                lockManager.unlock(lock);
+            }
         }
     }
 
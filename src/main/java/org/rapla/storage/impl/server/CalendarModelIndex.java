@@ -0,0 +1,335 @@
+package org.rapla.storage.impl.server;
+
+import org.rapla.entities.RaplaObject;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.storage.EntityReferencer;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.internal.CalendarModelImpl;
+import org.rapla.framework.RaplaException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Reverse index from allocatables and event types to the exported calendar models of the users.
+ * Matching an appointment only checks the reservation filters of the models that contain one of its allocatables
+ * and of the models without allocatable selection, instead of evaluating every model of every user.
+ * The index is not thread safe, the CalendarModelCache guards it with its lock.
+ */
+class CalendarModelIndex
+{
+    /** snapshot of the selection and the reservation filters of an exported calendar model */
+    static class Subscription
+    {
+        final ReferenceInfo<User> userId;
+        final CalendarModelImpl model;
+        final Set<ReferenceInfo<DynamicType>> selectedTypes = new HashSet<>();
+        final boolean allAllocatablesSelected;
+        Set<ReferenceInfo<Allocatable>> allocatables;
+        ClassificationFilter[] reservationFilter;
+
+        Subscription(ReferenceInfo<User> userId, CalendarModelImpl model) throws RaplaException
+        {
+            this.userId = userId;
+            this.model = model;
+            boolean allAllocatables = false;
+            for (RaplaObject selected : model.getSelectedObjects())
+            {
+                if (selected instanceof DynamicType)
+                {
+                    selectedTypes.add(((DynamicType) selected).getReference());
+                }
+                else if (selected == CalendarModelImpl.ALLOCATABLES_ROOT)
+                {
+                    allAllocatables = true;
+                }
+            }
+            allAllocatablesSelected = allAllocatables;
+            refresh();
+        }
+
+        /** recalculates the allocatables of the model, e.g. after resources or types have changed */
+        void refresh() throws RaplaException
+        {
+            final Set<ReferenceInfo<Allocatable>> refs = new HashSet<>();
+            for (Allocatable allocatable : model.getAllAllocatables())
+            {
+                refs.add(allocatable.getReference());
+            }
+            allocatables = refs;
+            reservationFilter = model.isDefaultEventTypes() ? null : model.getReservationFilter();
+        }
+
+        boolean isUnrestricted()
+        {
+            return allocatables.isEmpty();
+        }
+
+        boolean matchesFilter(Classification classification)
+        {
+            if (reservationFilter == null)
+            {
+                return true;
+            }
+            for (ClassificationFilter filter : reservationFilter)
+            {
+                if (filter.matches(classification))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** models that select whole types or all resources are only recalculated if an allocatable of a selected type changes,
+         * or if a changed allocatable is or references one of the allocatables in the model (e.g. with a belongs to attribute).
+         * Models with an explicit selection just follow the dependencies of the selected allocatables, which is cheap to recalculate. */
+        boolean isAffected(Set<ReferenceInfo<DynamicType>> changedTypes, Set<ReferenceInfo> touched)
+        {
+            if (selectedTypes.isEmpty() || allAllocatablesSelected)
+            {
+                return true;
+            }
+            for (ReferenceInfo<DynamicType> type : changedTypes)
+            {
+                if (selectedTypes.contains(type))
+                {
+                    return true;
+                }
+            }
+            for (ReferenceInfo ref : touched)
+            {
+                if (allocatables.contains(ref))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Map<ReferenceInfo<User>, List<Subscription>> subscriptions = new HashMap<>();
+    private final Map<ReferenceInfo<Allocatable>, Set<Subscription>> byAllocatable = new HashMap<>();
+    /** models without allocatables match the appointments of all allocatables. They are indexed by the event types of their reservation filter */
+    private final Map<ReferenceInfo<DynamicType>, Set<Subscription>> unrestrictedByEventType = new HashMap<>();
+    /** models without allocatables and with the default event types */
+    private final Set<Subscription> unrestrictedAllTypes = new LinkedHashSet<>();
+
+    static List<Subscription> createSubscriptions(ReferenceInfo<User> userId, Collection<CalendarModelImpl> models) throws RaplaException
+    {
+        final List<Subscription> result = new ArrayList<>();
+        for (CalendarModelImpl model : models)
+        {
+            result.add(new Subscription(userId, model));
+        }
+        return result;
+    }
+
+    /** replaces the models of the user */
+    void put(ReferenceInfo<User> userId, List<Subscription> userSubscriptions)
+    {
+        remove(userId);
+        if (userSubscriptions.isEmpty())
+        {
+            return;
+        }
+        subscriptions.put(userId, userSubscriptions);
+        for (Subscription subscription : userSubscriptions)
+        {
+            addToIndex(subscription);
+        }
+    }
+
+    void remove(ReferenceInfo<User> userId)
+    {
+        final List<Subscription> removed = subscriptions.remove(userId);
+        if (removed == null)
+        {
+            return;
+        }
+        for (Subscription subscription : removed)
+        {
+            removeFromIndex(subscription);
+        }
+    }
+
+    /** recalculates the models that can be affected by the passed changed or removed allocatables (old and new versions).
+     * If all is set, e.g. after changes of dynamic types or categories, every model is recalculated */
+    void refresh(Collection<Allocatable> changedAllocatables, boolean all) throws RaplaException
+    {
+        final Set<ReferenceInfo<DynamicType>> changedTypes = new HashSet<>();
+        final Set<ReferenceInfo> touched = new HashSet<>();
+        for (Allocatable allocatable : changedAllocatables)
+        {
+            changedTypes.add(allocatable.getClassification().getType().getReference());
+            touched.add(allocatable.getReference());
+            if (allocatable instanceof EntityReferencer)
+            {
+                for (ReferenceInfo ref : ((EntityReferencer) allocatable).getReferenceInfo())
+                {
+                    touched.add(ref);
+                }
+            }
+        }
+        for (List<Subscription> userSubscriptions : subscriptions.values())
+        {
+            for (Subscription subscription : userSubscriptions)
+            {
+                if (all || subscription.isAffected(changedTypes, touched))
+                {
+                    removeFromIndex(subscription);
+                    subscription.refresh();
+                    addToIndex(subscription);
+                }
+            }
+        }
+    }
+
+    List<CalendarModelImpl> getModels(ReferenceInfo<User> userId)
+    {
+        final List<Subscription> userSubscriptions = subscriptions.get(userId);
+        if (userSubscriptions == null)
+        {
+            return Collections.emptyList();
+        }
+        final List<CalendarModelImpl> result = new ArrayList<>(userSubscriptions.size());
+        for (Subscription subscription : userSubscriptions)
+        {
+            result.add(subscription.model);
+        }
+        return result;
+    }
+
+    Set<ReferenceInfo<User>> findUsers(Allocatable allocatable)
+    {
+        final Set<ReferenceInfo<User>> result = new HashSet<>();
+        final Set<Subscription> matching = byAllocatable.get(allocatable.getReference());
+        if (matching != null)
+        {
+            for (Subscription subscription : matching)
+            {
+                result.add(subscription.userId);
+            }
+        }
+        return result;
+    }
+
+    Set<ReferenceInfo<User>> findUsers(Appointment appointment)
+    {
+        final Set<ReferenceInfo<User>> result = new HashSet<>();
+        final Reservation reservation = appointment.getReservation();
+        if (reservation == null)
+        {
+            return result;
+        }
+        final Classification classification = reservation.getClassification();
+        for (Allocatable allocatable : reservation.getAllocatablesFor(appointment))
+        {
+            addMatching(result, byAllocatable.get(allocatable.getReference()), classification);
+        }
+        addMatching(result, unrestrictedAllTypes, classification);
+        addMatching(result, unrestrictedByEventType.get(classification.getType().getReference()), classification);
+        return result;
+    }
+
+    private void addMatching(Set<ReferenceInfo<User>> result, Set<Subscription> candidates, Classification classification)
+    {
+        if (candidates == null)
+        {
+            return;
+        }
+        for (Subscription subscription : candidates)
+        {
+            if (!result.contains(subscription.userId) && subscription.matchesFilter(classification))
+            {
+                result.add(subscription.userId);
+            }
+        }
+    }
+
+    private void addToIndex(Subscription subscription)
+    {
+        if (subscription.isUnrestricted())
+        {
+            if (subscription.reservationFilter == null)
+            {
+                unrestrictedAllTypes.add(subscription);
+            }
+            else
+            {
+                for (ReferenceInfo<DynamicType> type : getFilterTypes(subscription))
+                {
+                    unrestrictedByEventType.computeIfAbsent(type, (key) -> new LinkedHashSet<>()).add(subscription);
+                }
+            }
+            return;
+        }
+        for (ReferenceInfo<Allocatable> allocatable : subscription.allocatables)
+        {
+            byAllocatable.computeIfAbsent(allocatable, (key) -> new LinkedHashSet<>()).add(subscription);
+        }
+    }
+
+    private void removeFromIndex(Subscription subscription)
+    {
+        if (subscription.isUnrestricted())
+        {
+            if (subscription.reservationFilter == null)
+            {
+                unrestrictedAllTypes.remove(subscription);
+            }
+            else
+            {
+                for (ReferenceInfo<DynamicType> type : getFilterTypes(subscription))
+                {
+                    removeFrom(unrestrictedByEventType, type, subscription);
+                }
+            }
+            return;
+        }
+        for (ReferenceInfo<Allocatable> allocatable : subscription.allocatables)
+        {
+            removeFrom(byAllocatable, allocatable, subscription);
+        }
+    }
+
+    private static <T> void removeFrom(Map<T, Set<Subscription>> map, T key, Subscription subscription)
+    {
+        final Set<Subscription> set = map.get(key);
+        if (set != null)
+        {
+            set.remove(subscription);
+            if (set.isEmpty())
+            {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static Set<ReferenceInfo<DynamicType>> getFilterTypes(Subscription subscription)
+    {
+        final Set<ReferenceInfo<DynamicType>> types = new HashSet<>();
+        for (ClassificationFilter filter : subscription.reservationFilter)
+        {
+            types.add(filter.getType().getReference());
+        }
+        return types;
+    }
+
+    int size()
+    {
+        return subscriptions.size();
+    }
+}
@@ -53,10 +53,23 @@ class ConflictFinder {
     Logger logger;
     EntityResolver resolver;
     private final PermissionController permissionController;
+    /** conflicts are materialized from today up to the horizon. Conflicts beyond are calculated on demand*/
+    static final int DEFAULT_HORIZON_MONTHS = 60;
+    private final int horizonMonths;
+    private volatile Date horizon;
+    /** allocatables with changed allocations whose conflicts are not calculated yet, null if the conflicts are calculated with each change */
+    private Set<ReferenceInfo<Allocatable>> deferredAllocatables;
+
     public ConflictFinder( AllocationMap  allocationMap, Date today, Logger logger, EntityResolver resolver,  PermissionController permissionController)  {
+        this(allocationMap, today, logger, resolver, permissionController, DEFAULT_HORIZON_MONTHS);
+    }
+
+    public ConflictFinder( AllocationMap  allocationMap, Date today, Logger logger, EntityResolver resolver,  PermissionController permissionController, int horizonMonths)  {
     	this.logger = logger;
     	this.allocationMap = allocationMap;
         this.permissionController = permissionController;
+        this.horizonMonths = horizonMonths;
+        this.horizon = calculateHorizon(today);
     	conflictMap = new HashMap<ReferenceInfo<Allocatable>, Map<ReferenceInfo<Conflict>,Conflict>>();
     	long startTime = System.currentTimeMillis();
     	int conflictSize = 0;
@@ -66,9 +79,19 @@ class ConflictFinder {
         	conflictMap.put( allocatable.getReference(), newConflicts);
         	conflictSize+= newConflicts.size();
 		}
-        logger.info("Conflict initialization found " + conflictSize + " conflicts and took " + (System.currentTimeMillis()- startTime) + "ms. " ); 
+        logger.info("Conflict initialization found " + conflictSize + " conflicts until " + horizon + " and took " + (System.currentTimeMillis()- startTime) + "ms. " );
         this.resolver = resolver;
 	}
+
+    private Date calculateHorizon(Date today)
+    {
+        return DateTools.addMonths(today, horizonMonths);
+    }
+
+    public Date getHorizon()
+    {
+        return horizon;
+    }
     
     public Conflict findConflict(ReferenceInfo<Conflict> ref)
     {
@@ -95,6 +118,17 @@ class ConflictFinder {
         }
     }
 
+    /** returns the number of stored conflicts */
+    public int getConflictCount()
+    {
+        int count = 0;
+        for (Map<ReferenceInfo<Conflict>, Conflict> conflicts : conflictMap.values())
+        {
+            count += conflicts.size();
+        }
+        return count;
+    }
+
     private Map<ReferenceInfo<Conflict>,Conflict> calculateConflicts(Allocatable allocatable,Date today )
     {
         if ( isConflictIgnored(allocatable))
@@ -232,7 +266,7 @@ class ConflictFinder {
     
     private  Map<ReferenceInfo<Conflict>,Conflict>  updateConflicts(Allocatable allocatable, Date today, Set<Appointment> allAppointments) {
         Collection<AppointmentBlock> allAppointmentBlocks =new LinkedList<AppointmentBlock>(); 
-        createBlocks(today,allAppointments,allAppointmentBlocks);
+        createBlocks(today, horizon, allAppointments,allAppointmentBlocks);
 //        Collection<AppointmentBlock> appointmentBlocks =  new LinkedList<AppointmentBlock>();
 //        createBlocks(today,changedAppointments,appointmentBlocks, null);
 //        long startTime = 0;
@@ -413,23 +447,19 @@ class ConflictFinder {
 //        return( idList.contains( appointment1) || idList.contains( appointment2));
 //	}
 	
-    private void createBlocks(Date today, Collection<Appointment> appointmentSet,  Collection<AppointmentBlock> allAppointmentBlocks) {
-        // overlaps will be checked  260 weeks (5 years) from now on
-		long maxCheck = System.currentTimeMillis() + DateTools.MILLISECONDS_PER_WEEK * 260;
-		//Appointment last = appointmentSet.last();
-		
+    /** creates the blocks of the appointments between from and until*/
+    private void createBlocks(Date from, Date until, Collection<Appointment> appointmentSet,  Collection<AppointmentBlock> allAppointmentBlocks) {
 		// Get all time blocks of all appointments
 		for (Appointment appointment:appointmentSet)
 		{
 			// Get the end date of the appointment (if repeating, end date of last occurence)
 			Date maxEnd = appointment.getMaxEnd();
-		       // Check if the appointment is repeating forever
-            if ( maxEnd == null || maxEnd.getTime() > maxCheck)
+		       // Check if the appointment is repeating forever or beyond the checked range
+            if ( maxEnd == null || maxEnd.after( until))
             {
-                // If the repeating has no end, set the end to the start of the last appointment in the set + 100 weeks (~2 years)
-                maxEnd = new Date(maxCheck); 
+                maxEnd = until;
             }
-            if ( maxEnd.before( today))
+            if ( maxEnd.before( from) || !appointment.getStart().before( until))
             {
                 continue;
             }
@@ -452,9 +482,9 @@ class ConflictFinder {
 			 * itself.
 			 */
 			Date start = appointment.getStart();
-			if ( start.before( today))
+			if ( start.before( from))
 			{
-			    start = today;
+			    start = from;
 			}
             ((AppointmentImpl)appointment).createBlocks(start, DateTools.fillDate(maxEnd), allAppointmentBlocks);
 		}
@@ -564,6 +594,151 @@ class ConflictFinder {
         }
     }
 
+    /** recalculates the conflicts of the allocatable and adds the added and removed conflicts to conflictChanges*/
+    private void recalculateConflicts(ReferenceInfo<Allocatable> allocatableId, Date today, Collection<ConflictChangeOperation> conflictChanges)
+    {
+        Map<ReferenceInfo<Conflict>,Conflict> conflictListBefore =  conflictMap.get(allocatableId);
+        if ( conflictListBefore == null)
+        {
+            conflictListBefore = new LinkedHashMap<ReferenceInfo<Conflict>,Conflict>();
+        }
+        Allocatable allocatable = resolver.tryResolve( allocatableId);
+        Map<ReferenceInfo<Conflict>,Conflict> conflictListAfter;
+        if  (allocatable != null)
+         conflictListAfter = calculateConflicts( allocatable , today);
+        else
+         conflictListAfter= Collections.emptyMap();
+        conflictMap.put( allocatableId, conflictListAfter);
+
+        for ( ReferenceInfo<Conflict> conflictId: conflictListBefore.keySet())
+        {
+            boolean isRemoved = !conflictListAfter.containsKey(conflictId);
+            if  ( isRemoved )
+            {
+                final UpdateResult.Remove operation = new UpdateResult.Remove(conflictId);
+                Conflict oldConflict = conflictListBefore.get(conflictId);
+                Conflict newConflict = null;
+                conflictChanges.add(new ConflictChangeOperation(operation, oldConflict, newConflict));
+            }
+        }
+        for ( Conflict conflict: conflictListAfter.values())
+        {
+            final ReferenceInfo<Conflict> conflictId = conflict.getReference();
+            boolean isNew = !conflictListBefore.containsKey(conflictId);
+            if  ( isNew )
+            {
+                final UpdateResult.Add operation = new UpdateResult.Add(conflictId);
+                Conflict oldConflict = null;
+                Conflict newConflict = conflictListAfter.get(conflictId);
+                conflictChanges.add(new ConflictChangeOperation(operation, oldConflict, newConflict));
+            }
+        }
+    }
+
+    /** defers the conflict calculation for changed allocations until {@link #updateDeferredConflicts(Date)} is called,
+     * so that a resource changed in several updates is only recalculated once*/
+    public void deferConflictUpdates()
+    {
+        if ( deferredAllocatables == null)
+        {
+            deferredAllocatables = new LinkedHashSet<ReferenceInfo<Allocatable>>();
+        }
+    }
+
+    /** recalculates the conflicts of the allocatables changed since {@link #deferConflictUpdates()} and calculates the conflicts
+     * with each change again. Returns the added and removed conflicts*/
+    public Collection<ConflictChangeOperation> updateDeferredConflicts(Date today)
+    {
+        Collection<ConflictChangeOperation> conflictChanges = new ArrayList<ConflictChangeOperation>();
+        if ( deferredAllocatables == null)
+        {
+            return conflictChanges;
+        }
+        final Set<ReferenceInfo<Allocatable>> deferred = deferredAllocatables;
+        deferredAllocatables = null;
+        for (ReferenceInfo<Allocatable> allocatableId:deferred)
+        {
+            recalculateConflicts(allocatableId, today, conflictChanges);
+        }
+        return conflictChanges;
+    }
+
+    /** moves the horizon to today plus the horizon months and recalculates the conflicts of all resources with appointments
+     * that reach beyond the old horizon. Returns the added and removed conflicts*/
+    public Collection<ConflictChangeOperation> advanceHorizon(Date today)
+    {
+        final Date newHorizon = calculateHorizon(today);
+        if (!newHorizon.after(horizon))
+        {
+            return Collections.emptyList();
+        }
+        final Date oldHorizon = horizon;
+        horizon = newHorizon;
+        Collection<ConflictChangeOperation> conflictChanges = new ArrayList<ConflictChangeOperation>();
+        for (Allocatable allocatable:allocationMap.getAllocatables())
+        {
+            if ( isConflictIgnored(allocatable) || !reachesBeyond(allocationMap.getAppointments(allocatable), oldHorizon))
+            {
+                continue;
+            }
+            recalculateConflicts(allocatable.getReference(), today, conflictChanges);
+        }
+        return conflictChanges;
+    }
+
+    private boolean reachesBeyond(Collection<Appointment> appointments, Date date)
+    {
+        int count = 0;
+        for (Appointment appointment:appointments)
+        {
+            final Date maxEnd = appointment.getMaxEnd();
+            if ( maxEnd == null || maxEnd.after( date))
+            {
+                count++;
+                // a conflict needs two appointments
+                if (count > 1)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the conflicts between start and end that lie beyond the horizon. The conflicts are not stored.
+     * If end is null, the conflicts up to horizon months after the start are calculated.
+     * If user is passed then only returns conflicts the user can modify
+     */
+    public Collection<Conflict> getConflictsBeyondHorizon(User user, Date start, Date end, Date today)
+    {
+        final Date from = start == null || start.before( horizon) ? horizon : start;
+        final Date until = end != null ? end : DateTools.addMonths(from, horizonMonths);
+        if ( !until.after( from))
+        {
+            return Collections.emptyList();
+        }
+        Collection<Conflict> conflictList = new HashSet<Conflict>();
+        for (Allocatable allocatable:allocationMap.getAllocatables())
+        {
+            final Set<Appointment> appointments = allocationMap.getAppointments(allocatable);
+            if ( isConflictIgnored(allocatable) || !reachesBeyond(appointments, from))
+            {
+                continue;
+            }
+            Collection<AppointmentBlock> blocks = new LinkedList<AppointmentBlock>();
+            createBlocks(from, until, appointments, blocks);
+            for (Conflict conflict:sweepLine(allocatable, today, blocks).values())
+            {
+                if (user == null || permissionController.canModify(conflict,user))
+                {
+                    conflictList.add(conflict);
+                }
+            }
+        }
+        return conflictList;
+    }
+
 	public Collection<ConflictChangeOperation> updateConflicts(LocalAbstractCachableOperator.UpdateBindingsResult bindingsResult,UpdateResult currentUpdateResult, Date today)
 	{
         Collection<ConflictChangeOperation> conflictChanges = new ArrayList<ConflictChangeOperation>();
@@ -594,7 +769,6 @@ class ConflictFinder {
 		}
 		
 
-    	Set<Conflict> added = new HashSet<Conflict>();
     	// this will recalculate the conflicts for that resource and the chan;ged appointments
     	for ( Map.Entry<ReferenceInfo<Allocatable>, AllocationChange> entry:toUpdate.entrySet())
     	{
@@ -605,45 +779,12 @@ class ConflictFinder {
 			{
 				conflictMap.remove( allocatableId);
 			}
-			
-    		Map<ReferenceInfo<Conflict>,Conflict> conflictListBefore =  conflictMap.get(allocatableId);
-    		if ( conflictListBefore == null)
-    		{
-    			conflictListBefore = new LinkedHashMap<ReferenceInfo<Conflict>,Conflict>();
-    		}
-            Allocatable allocatable = resolver.tryResolve( allocatableId);
-			Map<ReferenceInfo<Conflict>,Conflict> conflictListAfter;
-            if  (allocatable != null)
-             conflictListAfter = calculateConflicts( allocatable , today);
-            else
-             conflictListAfter= Collections.emptyMap();
-			conflictMap.put( allocatableId, conflictListAfter);
-			//User user = evt.getUserFromRequest();
-		
-			for ( ReferenceInfo<Conflict> conflictId: conflictListBefore.keySet())
-			{
-				boolean isRemoved = !conflictListAfter.containsKey(conflictId);
-				if  ( isRemoved )
-				{
-                    final UpdateResult.Remove operation = new UpdateResult.Remove(conflictId);
-                    Conflict oldConflict = conflictListBefore.get(conflictId);
-                    Conflict newConflict = null;
-                    conflictChanges.add(new ConflictChangeOperation(operation, oldConflict, newConflict));
-				}
-			}
-			for ( Conflict conflict: conflictListAfter.values())
-			{
-                final ReferenceInfo<Conflict> conflictId = conflict.getReference();
-                boolean isNew = !conflictListBefore.containsKey(conflictId);
-				if  ( isNew )
-				{
-                    final UpdateResult.Add operation = new UpdateResult.Add(conflictId);
-                    Conflict oldConflict = null;
-                    Conflict newConflict = conflictListAfter.get(conflictId);
-                    conflictChanges.add(new ConflictChangeOperation(operation, oldConflict, newConflict));
-					added.add( conflict);
-				}
-			}
+            if ( deferredAllocatables != null)
+            {
+                deferredAllocatables.add( allocatableId);
+                continue;
+            }
+            recalculateConflicts(allocatableId, today, conflictChanges);
     	}
     	
     	// so now we have the new conflicts, but what if a reservation or appointment changed without affecting the allocation but still 
@@ -705,6 +846,11 @@ class ConflictFinder {
     	}
         for ( ReferenceInfo<Allocatable> alloc: removedAllocatables)
         {
+            if ( deferredAllocatables != null && deferredAllocatables.remove( alloc))
+            {
+                // the conflicts of the removed resource must be removed now, because they can't be found later
+                recalculateConflicts(alloc, today, conflictChanges);
+            }
             Map<ReferenceInfo<Conflict>,Conflict> sortedSet = conflictMap.get( alloc);
             if ( sortedSet != null && !sortedSet.isEmpty())
             {
@@ -17,19 +17,42 @@ import org.rapla.facade.internal.ConflictImpl;
 import org.rapla.framework.RaplaException;
 import org.rapla.rest.JsonParserWrapper;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+/**
+ * Keeps the json of the entity versions that are needed to compute the changes since a client's last sync.
+ * Only the latest version of an entity is kept as plain json. Older versions are stored as delta (common prefix and suffix) against
+ * the previous version and deflated. Every {@link #KEYFRAME_INTERVAL}th version is stored without delta, so restoring a version
+ * inflates a bounded number of entries.
+ * The compressed versions can be spilled to a memory mapped segment file when the heap budget is exceeded and the oldest versions are evicted
+ * when the total size budget is exceeded. Eviction moves {@link #getValidStart()} forward, history requests before that date can not be answered.
+ */
 public class EntityHistory
 {
+    /** every n-th version of an entity is stored without delta*/
+    static final int KEYFRAME_INTERVAL = 16;
+    /** payloads shorter than that are not deflated*/
+    static final int MIN_DEFLATE_LENGTH = 64;
+    /** the segment file is rewritten when the garbage exceeds the live data and this size*/
+    static final long MIN_SEGMENT_GARBAGE = 1024 * 1024;
+
     public Collection<ReferenceInfo> getAllIds()
     {
         return map.keySet();
@@ -45,9 +68,25 @@ public class EntityHistory
     {
         private long timestamp;
         ReferenceInfo ref;
-        private String json;
         private boolean isDelete;
 
+        /** true if the json is stored uncompressed in the json field. Only the latest version of an entity is plain*/
+        private boolean plain;
+        private String json;
+
+        /** the version the delta is computed against. null for keyframes*/
+        private HistoryEntry base;
+        private int chainLength;
+        private int prefixLength;
+        private int suffixLength;
+        private boolean nullJson;
+        private boolean deflated;
+        private int rawLength;
+        /** the compressed middle part. null if the entry is spilled to the segment file*/
+        private byte[] data;
+        private long segmentOffset = -1;
+        private int segmentLength;
+
         private HistoryEntry()
         {
         }
@@ -59,6 +98,7 @@ public class EntityHistory
             this.isDelete = isDelete;
             this.timestamp = timestamp;
             this.json = json;
+            this.plain = true;
         }
 
         public ReferenceInfo getId()
@@ -76,6 +116,21 @@ public class EntityHistory
             return isDelete;
         }
 
+        boolean isSpilled()
+        {
+            return !plain && data == null && segmentOffset >= 0;
+        }
+
+        /** the number of bytes the entry occupies in heap*/
+        long getHeapSize()
+        {
+            if (plain)
+            {
+                return json != null ? 2L * json.length() : 0;
+            }
+            return data != null ? data.length : 0;
+        }
+
         @Override public String toString()
         {
             return "HistoryEntry [timestamp=" + timestamp + ", id=" + ref + "]";
@@ -84,12 +139,56 @@ public class EntityHistory
 
     private final Map<ReferenceInfo, List<EntityHistory.HistoryEntry>> map = new LinkedHashMap<ReferenceInfo, List<EntityHistory.HistoryEntry>>();
     private final JsonParserWrapper.JsonParser gson;
+    private long heapBytes;
+    private long maxHeapBytes = Long.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private long validStart;
+    private File spillFile;
+    private int segmentGeneration;
+    private HistorySegmentFile segment;
 
     public EntityHistory()
     {
         gson = JsonParserWrapper.defaultJson().get();
     }
 
+    /** compressed versions are moved to a memory mapped segment file when the heap size of the history exceeds maxHeapBytes.
+     * Pass null to keep all versions in heap */
+    public void setSpillFile(File spillFile, long maxHeapBytes) throws IOException
+    {
+        closeSegment();
+        this.spillFile = spillFile;
+        this.maxHeapBytes = spillFile != null ? maxHeapBytes : Long.MAX_VALUE;
+        if (spillFile != null)
+        {
+            segment = new HistorySegmentFile(getSegmentFile());
+            spillIfNeeded();
+        }
+    }
+
+    /** the oldest versions are evicted when heap and spilled size exceeds maxBytes*/
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        evictIfNeeded();
+    }
+
+    /** returns the date from which on the history is complete. History before that date has been evicted because of the size budget*/
+    public Date getValidStart()
+    {
+        return new Date(validStart);
+    }
+
+    public long getHeapBytes()
+    {
+        return heapBytes;
+    }
+
+    public long getSpilledBytes()
+    {
+        return segment != null ? segment.getLiveBytes() : 0;
+    }
+
     public HistoryEntry getLatest(ReferenceInfo id) throws RaplaException
     {
         final List<HistoryEntry> historyEntries = map.get(id);
@@ -116,13 +215,7 @@ public class EntityHistory
         }
         final EntityHistory.HistoryEntry emptyEntryWithTimestamp = new EntityHistory.HistoryEntry();
         emptyEntryWithTimestamp.timestamp = since.getTime();
-        int index = Collections.binarySearch(historyEntries, emptyEntryWithTimestamp, new Comparator<EntityHistory.HistoryEntry>()
-        {
-            @Override public int compare(EntityHistory.HistoryEntry o1, EntityHistory.HistoryEntry o2)
-            {
-                return (int) (o1.timestamp - o2.timestamp);
-            }
-        });
+        int index = Collections.binarySearch(historyEntries, emptyEntryWithTimestamp, TIMESTAMP_COMPARATOR);
         /*
         * possible results:
         * we get an index >= 0 -> We found an entry, which has the timestamp of the last update from the client. We need to get this one
@@ -140,6 +233,14 @@ public class EntityHistory
         return getEntity(entry);
     }
 
+    private static final Comparator<HistoryEntry> TIMESTAMP_COMPARATOR = new Comparator<EntityHistory.HistoryEntry>()
+    {
+        @Override public int compare(EntityHistory.HistoryEntry o1, EntityHistory.HistoryEntry o2)
+        {
+            return Long.compare(o1.timestamp, o2.timestamp);
+        }
+    };
+
     Map<Class<? extends Entity>, Class<? extends Entity>> typeImpl = new HashMap<Class<? extends Entity>, Class<? extends Entity>>();
 
     {
@@ -160,13 +261,188 @@ public class EntityHistory
 
     public Entity getEntity(HistoryEntry entry)
     {
-        String json = entry.json;
-        final Class typeClass = entry.getId().getType();
+        String json = getJson(entry);
+        return decode(entry.getId(), json);
+    }
+
+    /** creates the entity from its json. Does not access the history, so it can be called without holding the lock of the operator*/
+    public Entity decode(ReferenceInfo id, String json)
+    {
+        final Class typeClass = id.getType();
         final Class<? extends Entity> implementingClass = typeImpl.get(typeClass);
         final Entity entity = gson.fromJson(json, implementingClass);
         return entity;
     }
 
+    /** restores the json of the entry by applying the deltas from the last keyframe*/
+    String getJson(HistoryEntry entry)
+    {
+        if (entry.plain)
+        {
+            return entry.json;
+        }
+        final List<HistoryEntry> chain = new ArrayList<HistoryEntry>();
+        HistoryEntry current = entry;
+        while (current.base != null && !current.plain)
+        {
+            chain.add(current);
+            current = current.base;
+        }
+        String json;
+        if (current.plain)
+        {
+            json = current.json;
+        }
+        else
+        {
+            json = current.nullJson ? null : readMiddle(current);
+        }
+        for (int i = chain.size() - 1; i >= 0; i--)
+        {
+            final HistoryEntry delta = chain.get(i);
+            if (delta.nullJson)
+            {
+                json = null;
+                continue;
+            }
+            final String baseJson = json != null ? json : "";
+            final String middle = readMiddle(delta);
+            StringBuilder buf = new StringBuilder(delta.prefixLength + middle.length() + delta.suffixLength);
+            buf.append(baseJson, 0, delta.prefixLength);
+            buf.append(middle);
+            buf.append(baseJson, baseJson.length() - delta.suffixLength, baseJson.length());
+            json = buf.toString();
+        }
+        return json;
+    }
+
+    private String readMiddle(HistoryEntry entry)
+    {
+        byte[] bytes = entry.data;
+        if (bytes == null)
+        {
+            try
+            {
+                bytes = segment.read(entry.segmentOffset, entry.segmentLength);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Could not read history of " + entry.ref + " from " + spillFile + ": " + e.getMessage(), e);
+            }
+        }
+        if (entry.deflated)
+        {
+            bytes = inflate(bytes, entry.rawLength);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** replaces the plain json of the entry with a delta against the passed version or a keyframe if previous is null or the delta chain is too long*/
+    private void compact(HistoryEntry entry, HistoryEntry previous)
+    {
+        final String json = getJson(entry);
+        final long oldSize = entry.getHeapSize();
+        final String middle;
+        if (previous == null || previous.chainLength + 1 >= KEYFRAME_INTERVAL)
+        {
+            entry.base = null;
+            entry.chainLength = 0;
+            entry.prefixLength = 0;
+            entry.suffixLength = 0;
+            middle = json != null ? json : "";
+        }
+        else
+        {
+            final String previousJson = getJson(previous);
+            final String baseJson = previousJson != null ? previousJson : "";
+            final String newJson = json != null ? json : "";
+            final int maxLength = Math.min(baseJson.length(), newJson.length());
+            int prefix = 0;
+            while (prefix < maxLength && baseJson.charAt(prefix) == newJson.charAt(prefix))
+            {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < maxLength - prefix && baseJson.charAt(baseJson.length() - 1 - suffix) == newJson.charAt(newJson.length() - 1 - suffix))
+            {
+                suffix++;
+            }
+            entry.base = previous;
+            entry.chainLength = previous.chainLength + 1;
+            entry.prefixLength = prefix;
+            entry.suffixLength = suffix;
+            middle = newJson.substring(prefix, newJson.length() - suffix);
+        }
+        entry.nullJson = json == null;
+        byte[] bytes = middle.getBytes(StandardCharsets.UTF_8);
+        entry.rawLength = bytes.length;
+        entry.deflated = bytes.length >= MIN_DEFLATE_LENGTH;
+        if (entry.deflated)
+        {
+            bytes = deflate(bytes);
+        }
+        releaseSpilled(entry);
+        entry.data = bytes;
+        entry.plain = false;
+        entry.json = null;
+        heapBytes += entry.getHeapSize() - oldSize;
+    }
+
+    private static byte[] deflate(byte[] bytes)
+    {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(16, bytes.length / 4));
+            final byte[] buffer = new byte[4096];
+            while (!deflater.finished())
+            {
+                final int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int rawLength)
+    {
+        final Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(bytes);
+            final byte[] result = new byte[rawLength];
+            int offset = 0;
+            while (offset < rawLength && !inflater.finished())
+            {
+                final int count = inflater.inflate(result, offset, rawLength - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    break;
+                }
+                offset += count;
+            }
+            if (offset != rawLength)
+            {
+                throw new IllegalStateException("Corrupt history entry. Expected " + rawLength + " bytes but got " + offset);
+            }
+            return result;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IllegalStateException("Corrupt history entry: " + e.getMessage(), e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
     public EntityHistory.HistoryEntry addHistoryEntry(ReferenceInfo id, String json, Date timestamp, boolean isDelete)
     {
         List<EntityHistory.HistoryEntry> historyEntries = map.get(id);
@@ -176,33 +452,49 @@ public class EntityHistory
             map.put(id, historyEntries);
         }
         final EntityHistory.HistoryEntry newEntry = new EntityHistory.HistoryEntry(id, timestamp.getTime(), json, isDelete);
-        int index = historyEntries.size();
-        insert(historyEntries, newEntry, index);
+        if (insert(historyEntries, newEntry))
+        {
+            spillIfNeeded();
+            evictIfNeeded();
+        }
         return newEntry;
     }
 
-    private void insert(List<EntityHistory.HistoryEntry> historyEntries, EntityHistory.HistoryEntry newEntry, int index)
+    /** inserts the entry sorted by timestamp. Returns false if an entry with the same timestamp already exists*/
+    private boolean insert(List<EntityHistory.HistoryEntry> historyEntries, EntityHistory.HistoryEntry newEntry)
     {
-        if (index == 0)
-        {
-            historyEntries.add(0, newEntry);
-        }
-        else
+        final int size = historyEntries.size();
+        // in most cases the new entry is the latest version
+        int index = size;
+        if (size > 0 && historyEntries.get(size - 1).timestamp >= newEntry.timestamp)
         {
-            final long timestamp = historyEntries.get(index - 1).timestamp;
-            if (timestamp > newEntry.timestamp)
-            {
-                insert(historyEntries, newEntry, index - 1);
-            }
-            else if (timestamp == newEntry.timestamp)
+            index = Collections.binarySearch(historyEntries, newEntry, TIMESTAMP_COMPARATOR);
+            if (index >= 0)
             {
                 // Do nothing as already inserted... maybe check it
+                return false;
             }
-            else
+            index = -index - 1;
+        }
+        final HistoryEntry previous = index > 0 ? historyEntries.get(index - 1) : null;
+        if (index == size)
+        {
+            // the former latest version gets compressed
+            if (previous != null)
             {
-                historyEntries.add(index, newEntry);
+                final HistoryEntry beforePrevious = index > 1 ? historyEntries.get(index - 2) : null;
+                compact(previous, beforePrevious);
             }
+            historyEntries.add(newEntry);
+            heapBytes += newEntry.getHeapSize();
+        }
+        else
+        {
+            heapBytes += newEntry.getHeapSize();
+            compact(newEntry, previous);
+            historyEntries.add(index, newEntry);
         }
+        return true;
     }
 
     public EntityHistory.HistoryEntry addHistoryEntry(Entity entity, Date timestamp, boolean isDelete)
@@ -222,6 +514,19 @@ public class EntityHistory
     public void clear()
     {
         map.clear();
+        heapBytes = 0;
+        validStart = 0;
+        if (segment != null)
+        {
+            try
+            {
+                segment.reset();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Could not reset history segment " + segment.getFile() + ": " + e.getMessage(), e);
+            }
+        }
     }
 
     List<HistoryEntry> getHistoryList(ReferenceInfo key)
@@ -236,11 +541,203 @@ public class EntityHistory
         for (ReferenceInfo key : keySet)
         {
             final List<HistoryEntry> list = map.get(key);
-            while (list.size() >= 2 && list.get(1).timestamp < time)
+            int count = 0;
+            while (list.size() - count >= 2 && list.get(count + 1).timestamp < time)
+            {
+                count++;
+            }
+            removeHead(list, count);
+        }
+        compactSegmentIfNeeded();
+    }
+
+    /** removes the first count entries of the list. Entries that are stored as delta against a removed entry are converted to keyframes*/
+    private void removeHead(List<HistoryEntry> list, int count)
+    {
+        if (count <= 0)
+        {
+            return;
+        }
+        final List<HistoryEntry> head = list.subList(0, count);
+        final Set<HistoryEntry> removed = Collections.newSetFromMap(new IdentityHashMap<HistoryEntry, Boolean>());
+        removed.addAll(head);
+        for (int i = count; i < list.size(); i++)
+        {
+            final HistoryEntry entry = list.get(i);
+            if (!entry.plain && entry.base != null && removed.contains(entry.base))
+            {
+                compact(entry, null);
+            }
+        }
+        for (HistoryEntry entry : head)
+        {
+            heapBytes -= entry.getHeapSize();
+            releaseSpilled(entry);
+        }
+        head.clear();
+    }
+
+    private void releaseSpilled(HistoryEntry entry)
+    {
+        if (entry.isSpilled() && segment != null)
+        {
+            segment.release(entry.segmentLength);
+        }
+        entry.segmentOffset = -1;
+    }
+
+    private void spillIfNeeded()
+    {
+        if (segment == null || heapBytes <= maxHeapBytes)
+        {
+            return;
+        }
+        final long target = maxHeapBytes / 4 * 3;
+        try
+        {
+            for (List<HistoryEntry> list : map.values())
+            {
+                // the latest version is not spilled
+                for (int i = 0; i < list.size() - 1 && heapBytes > target; i++)
+                {
+                    final HistoryEntry entry = list.get(i);
+                    if (entry.plain || entry.data == null)
+                    {
+                        continue;
+                    }
+                    final byte[] data = entry.data;
+                    entry.segmentOffset = segment.append(data);
+                    entry.segmentLength = data.length;
+                    entry.data = null;
+                    heapBytes -= data.length;
+                }
+                if (heapBytes <= target)
+                {
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not spill history to " + segment.getFile() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** rewrites the live payloads into a new segment file if the garbage of removed versions exceeds the live data*/
+    private void compactSegmentIfNeeded()
+    {
+        if (segment == null)
+        {
+            return;
+        }
+        final long garbage = segment.getGarbage();
+        if (garbage < MIN_SEGMENT_GARBAGE || garbage < segment.getLiveBytes())
+        {
+            return;
+        }
+        final HistorySegmentFile oldSegment = segment;
+        try
+        {
+            segmentGeneration++;
+            final HistorySegmentFile newSegment = new HistorySegmentFile(getSegmentFile());
+            for (List<HistoryEntry> list : map.values())
+            {
+                for (HistoryEntry entry : list)
+                {
+                    if (entry.isSpilled())
+                    {
+                        final byte[] data = oldSegment.read(entry.segmentOffset, entry.segmentLength);
+                        entry.segmentOffset = newSegment.append(data);
+                    }
+                }
+            }
+            segment = newSegment;
+            oldSegment.close();
+            oldSegment.getFile().delete();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not compact history segment " + oldSegment.getFile() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private File getSegmentFile()
+    {
+        return new File(spillFile.getPath() + "." + segmentGeneration);
+    }
+
+    private void closeSegment() throws IOException
+    {
+        if (segment == null)
+        {
+            return;
+        }
+        // spilled versions are moved back to the heap
+        for (List<HistoryEntry> list : map.values())
+        {
+            for (HistoryEntry entry : list)
+            {
+                if (entry.isSpilled())
+                {
+                    entry.data = segment.read(entry.segmentOffset, entry.segmentLength);
+                    entry.segmentOffset = -1;
+                    heapBytes += entry.data.length;
+                }
+            }
+        }
+        segment.close();
+        segment.getFile().delete();
+        segment = null;
+    }
+
+    /** evicts the oldest versions until the heap and spilled size is below the budget and moves the valid start of the history forward*/
+    private void evictIfNeeded()
+    {
+        // converting the new first versions to keyframes can increase the size again, so we repeat until the budget is met
+        while (heapBytes + getSpilledBytes() > maxBytes)
+        {
+            final long cutoff = getEvictionCutoff(heapBytes + getSpilledBytes() - maxBytes / 10 * 9);
+            if (cutoff <= validStart)
+            {
+                return;
+            }
+            validStart = cutoff;
+            removeUnneeded(new Date(cutoff));
+        }
+    }
+
+    private long getEvictionCutoff(long toFree)
+    {
+        // an entry is removed by removeUnneeded(date) if its successor is older than the date, so we sort the entries by the timestamp of the successor
+        final List<long[]> candidates = new ArrayList<long[]>();
+        for (List<HistoryEntry> list : map.values())
+        {
+            for (int i = 0; i < list.size() - 1; i++)
+            {
+                final HistoryEntry entry = list.get(i);
+                final long size = entry.isSpilled() ? entry.segmentLength : entry.getHeapSize();
+                candidates.add(new long[] { list.get(i + 1).timestamp, size });
+            }
+        }
+        Collections.sort(candidates, new Comparator<long[]>()
+        {
+            @Override public int compare(long[] o1, long[] o2)
+            {
+                return Long.compare(o1[0], o2[0]);
+            }
+        });
+        long freed = 0;
+        long cutoff = validStart;
+        for (long[] candidate : candidates)
+        {
+            if (freed >= toFree)
             {
-                list.remove(0);
+                break;
             }
+            freed += candidate[1];
+            cutoff = candidate[0] + 1;
         }
+        return cutoff;
     }
 
     /**
@@ -263,4 +760,4 @@ public class EntityHistory
         }
         return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package org.rapla.storage.impl.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Append only file that stores the spilled payloads of the {@link EntityHistory}. Payloads are read through a memory mapped window of the file,
+ * which is moved when a payload outside of the window is requested. Removed payloads are only counted as garbage, the history rewrites the live payloads into
+ * a fresh segment when the garbage exceeds the live data.
+ */
+class HistorySegmentFile
+{
+    /** maximum size of the mapped window*/
+    static final long MAX_MAPPED_BYTES = 256 * 1024 * 1024;
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long mappedStart;
+    private long size;
+    private long garbage;
+
+    HistorySegmentFile(File file) throws IOException
+    {
+        this.file = file;
+        open();
+    }
+
+    private void open() throws IOException
+    {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists())
+        {
+            parent.mkdirs();
+        }
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        channel.truncate(0);
+        size = 0;
+        garbage = 0;
+        mapped = null;
+    }
+
+    /** appends the payload and returns its offset in the file*/
+    synchronized long append(byte[] data) throws IOException
+    {
+        final long offset = size;
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = offset;
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+        size = position;
+        return offset;
+    }
+
+    synchronized byte[] read(long offset, int length) throws IOException
+    {
+        if (offset + length > size)
+        {
+            throw new IOException("Segment " + file + " has no data at " + offset + " with length " + length);
+        }
+        if (mapped == null || offset < mappedStart || offset + length > mappedStart + mapped.capacity())
+        {
+            mappedStart = offset;
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(length, Math.min(size - offset, MAX_MAPPED_BYTES)));
+        }
+        final byte[] result = new byte[length];
+        final ByteBuffer view = mapped.duplicate();
+        view.position((int) (offset - mappedStart));
+        view.get(result);
+        return result;
+    }
+
+    synchronized void release(int length)
+    {
+        garbage += length;
+    }
+
+    synchronized long getSize()
+    {
+        return size;
+    }
+
+    synchronized long getLiveBytes()
+    {
+        return size - garbage;
+    }
+
+    synchronized long getGarbage()
+    {
+        return garbage;
+    }
+
+    /** removes all payloads. The file is truncated and kept open for new payloads*/
+    synchronized void reset() throws IOException
+    {
+        close();
+        open();
+    }
+
+    synchronized void close() throws IOException
+    {
+        mapped = null;
+        if (channel != null)
+        {
+            channel.close();
+            channel = null;
+        }
+        if (randomAccessFile != null)
+        {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+}
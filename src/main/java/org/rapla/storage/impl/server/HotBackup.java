@@ -0,0 +1,186 @@
+package org.rapla.storage.impl.server;
+
+import org.rapla.components.util.DateTools;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.CachableStorageOperatorCommand;
+import org.rapla.storage.LocalCache;
+import org.rapla.storage.dbfile.FileOperator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes compressed backups from a snapshot of the cache, so writers are only blocked while the cache is copied. A backup is a zip file
+ * with the rapla xml in data.xml and the snapshot information in backup.properties. A full backup is written if the last full backup is
+ * older than the full interval or the history does not reach back to the last backup. Otherwise the backup is incremental: data.xml
+ * contains all categories, types, users and preferences but only the resources and events changed since the last backup, and removed.txt
+ * lists the ids of the removed entities.
+ */
+public class HotBackup
+{
+    static final String STATE_FILE = "last-backup.properties";
+    static final String DATA_ENTRY = "data.xml";
+    static final String INFO_ENTRY = "backup.properties";
+    static final String REMOVED_ENTRY = "removed.txt";
+    private static final String LAST_TIMESTAMP = "last_timestamp";
+    private static final String LAST_FULL = "last_full";
+    private static final String LAST_FILE = "last_file";
+
+    private final Logger logger;
+    private final File directory;
+    private final long fullIntervalMillis;
+
+    public HotBackup(Logger logger, File directory, long fullIntervalMillis)
+    {
+        this.logger = logger;
+        this.directory = directory;
+        this.fullIntervalMillis = fullIntervalMillis;
+    }
+
+    /** writes a full or incremental backup of the source and returns the backup file */
+    public synchronized File backup(LocalAbstractCachableOperator source, FileOperator xmlWriter) throws RaplaException
+    {
+        final long start = System.currentTimeMillis();
+        final Properties state = readState();
+        Date since = null;
+        String base = null;
+        if (state != null && start - Long.parseLong(state.getProperty(LAST_FULL)) < fullIntervalMillis)
+        {
+            since = new Date(Long.parseLong(state.getProperty(LAST_TIMESTAMP)));
+            base = state.getProperty(LAST_FILE);
+        }
+        final BackupSnapshot snapshot = source.createBackupSnapshot(since);
+        final String type = snapshot.isIncremental() ? "incremental" : "full";
+        final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final File file = new File(directory, "rapla-" + format.format(new Date(start)) + "-" + type + ".zip");
+        final File newFile = new File(directory, file.getName() + ".new");
+        try
+        {
+            if (!directory.exists() && !directory.mkdirs())
+            {
+                throw new IOException("Could not create backup directory " + directory);
+            }
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(newFile)))
+            {
+                final Properties info = new Properties();
+                info.setProperty("type", type);
+                info.setProperty("timestamp", String.valueOf(snapshot.getTimestamp().getTime()));
+                if (snapshot.isIncremental())
+                {
+                    info.setProperty("since", String.valueOf(snapshot.getSince().getTime()));
+                    info.setProperty("base", base);
+                }
+                out.putNextEntry(new ZipEntry(INFO_ENTRY));
+                info.store(out, "Rapla backup");
+                out.closeEntry();
+                out.putNextEntry(new ZipEntry(DATA_ENTRY));
+                final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, "utf-8"));
+                source.runWithSnapshot(snapshot, new CachableStorageOperatorCommand()
+                {
+                    public void execute(LocalCache cache) throws RaplaException
+                    {
+                        try
+                        {
+                            xmlWriter.writeData(cache, writer);
+                            writer.flush();
+                        }
+                        catch (IOException ex)
+                        {
+                            throw new RaplaException("Could not write backup " + file + ": " + ex.getMessage(), ex);
+                        }
+                    }
+                });
+                out.closeEntry();
+                if (snapshot.isIncremental())
+                {
+                    out.putNextEntry(new ZipEntry(REMOVED_ENTRY));
+                    final BufferedWriter removedWriter = new BufferedWriter(new OutputStreamWriter(out, "utf-8"));
+                    for (String id : snapshot.getRemovedIds())
+                    {
+                        removedWriter.write(id);
+                        removedWriter.newLine();
+                    }
+                    removedWriter.flush();
+                    out.closeEntry();
+                }
+            }
+            Files.move(newFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            final Properties newState = new Properties();
+            newState.setProperty(LAST_TIMESTAMP, String.valueOf(snapshot.getTimestamp().getTime()));
+            newState.setProperty(LAST_FULL, snapshot.isIncremental() ? state.getProperty(LAST_FULL) : String.valueOf(start));
+            newState.setProperty(LAST_FILE, file.getName());
+            writeState(newState);
+        }
+        catch (IOException ex)
+        {
+            newFile.delete();
+            throw new RaplaException("Could not write backup " + file + ": " + ex.getMessage(), ex);
+        }
+        catch (RaplaException ex)
+        {
+            newFile.delete();
+            throw ex;
+        }
+        logger.info("Written " + type + " backup " + file + " in " + (System.currentTimeMillis() - start) + " ms" + (snapshot.isIncremental() ? ", "
+                + snapshot.getCache().getReservations().size() + " changed events, " + snapshot.getRemovedIds().size() + " removed entities" : ""));
+        return file;
+    }
+
+    private Properties readState()
+    {
+        final File stateFile = new File(directory, STATE_FILE);
+        if (!stateFile.exists())
+        {
+            return null;
+        }
+        final Properties state = new Properties();
+        try (InputStream in = new FileInputStream(stateFile))
+        {
+            state.load(in);
+            Long.parseLong(state.getProperty(LAST_TIMESTAMP));
+            Long.parseLong(state.getProperty(LAST_FULL));
+            if (state.getProperty(LAST_FILE) == null)
+            {
+                return null;
+            }
+            return state;
+        }
+        catch (IOException | NumberFormatException ex)
+        {
+            logger.warn("Ignoring invalid backup state " + stateFile + ". Writing a full backup. " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private void writeState(Properties state) throws IOException
+    {
+        final File stateFile = new File(directory, STATE_FILE);
+        final File newFile = new File(directory, STATE_FILE + ".new");
+        try (OutputStream out = new FileOutputStream(newFile))
+        {
+            state.store(out, "Last Rapla backup");
+        }
+        Files.move(newFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static long getDefaultFullIntervalMillis()
+    {
+        return DateTools.MILLISECONDS_PER_DAY;
+    }
+}
@@ -30,6 +30,11 @@ public class ImportExportManagerDefaultImpl implements ImportExportManager
         importExportManager.doExport();
     }
 
+    @Override public void doBackup() throws RaplaException
+    {
+        importExportManager.doBackup();
+    }
+
     @Override public CachableStorageOperator getSource() throws RaplaException
     {
         return importExportManager.getSource();
@@ -19,6 +19,9 @@ import org.rapla.storage.ImportExportManager;
 import org.rapla.storage.LocalCache;
 import org.rapla.storage.dbfile.FileOperator;
 import org.rapla.storage.dbsql.DBOperator;
+import org.rapla.storage.dbsql.StreamingImport;
+
+import java.io.File;
 /**  Imports the content of on store into another.
  Export does an import with source and destination exchanged.
 */
@@ -26,6 +29,12 @@ public class ImportExportManagerImpl implements ImportExportManager {
     CachableStorageOperator source;
     CachableStorageOperator dest;
     Logger logger;
+    private final FileOperator fileOperator;
+    private final DBOperator dbOperator;
+    private int importWriters;
+    private int importBatchSize;
+    private File importCheckpointFile;
+    private HotBackup hotBackup;
 
 
     public ImportExportManagerImpl(Logger logger,FileOperator source,DBOperator dest)
@@ -33,8 +42,25 @@ public class ImportExportManagerImpl implements ImportExportManager {
         this.logger =  logger;
         this.source = source;
         this.dest = dest;
+        this.fileOperator = source;
+        this.dbOperator = dest;
         
     }
+
+    /** if writers is greater than 0, the import writes the events with this number of connections while the file is read.
+     * The checkpoint file stores the progress, so that an interrupted import can be resumed */
+    public void configureStreamingImport(int writers, int batchSize, File checkpointFile)
+    {
+        this.importWriters = writers;
+        this.importBatchSize = batchSize;
+        this.importCheckpointFile = checkpointFile;
+    }
+    
+    /** backups are written as compressed files into the directory, incremental backups between full backups once a day */
+    public void configureBackup(File directory)
+    {
+        this.hotBackup = directory != null ? new HotBackup(getLogger(), directory, HotBackup.getDefaultFullIntervalMillis()) : null;
+    }
     
     protected Logger getLogger() {
         return logger.getChildLogger("importexport");
@@ -46,11 +72,59 @@ public class ImportExportManagerImpl implements ImportExportManager {
 		CachableStorageOperator source = getSource();
         CachableStorageOperator destination = getDestination();
         logger.info("Import from " + source.toString() + " into " + dest.toString());
-        source.connect();
-		doConvert(source,destination);
+        if (importWriters > 0)
+        {
+            doStreamingImport();
+        }
+        else
+        {
+            source.connect();
+            doConvert(source, destination);
+        }
         logger.info("Import completed");
     }
 
+    private void doStreamingImport() throws RaplaException
+    {
+        if (source.isConnected())
+        {
+            source.disconnect();
+        }
+        final StreamingImport streamingImport = dbOperator.createStreamingImport(getSourceVersion(), importCheckpointFile, importWriters, importBatchSize);
+        try
+        {
+            streamingImport.start();
+            fileOperator.connect(streamingImport, streamingImport::awaitWriters);
+            source.runWithReadLock(new CachableStorageOperatorCommand() {
+
+                public void execute(LocalCache cache) throws RaplaException {
+                    streamingImport.finish(cache);
+                }
+            });
+        }
+        finally
+        {
+            streamingImport.close();
+            // the cache does not contain the events
+            source.disconnect();
+        }
+    }
+
+    /** identifies the content of the source, so that only an interrupted import of the same file is resumed */
+    private String getSourceVersion()
+    {
+        final String url = fileOperator.getURL();
+        try
+        {
+            final File file = new File(new java.net.URI(url));
+            return url + " " + file.length() + " " + file.lastModified();
+        }
+        catch (Exception ex)
+        {
+            return url;
+        }
+    }
+
     /* Export the dest into source.   */
     public void doExport() throws RaplaException {
         Logger logger = getLogger();
@@ -58,10 +132,27 @@ public class ImportExportManagerImpl implements ImportExportManager {
         CachableStorageOperator destination = getDestination();
         logger.info("Export from " +  dest.toString() + " into " + source.toString());
         destination.connect();
-		doConvert(destination,source);
+        // the snapshot is written outside of the lock, so writers are not blocked while the file is written
+        final BackupSnapshot snapshot = dbOperator.createBackupSnapshot(null);
+        dbOperator.runWithSnapshot(snapshot, new CachableStorageOperatorCommand() {
+
+            public void execute(LocalCache cache) throws RaplaException {
+                source.saveData(cache, null);
+            }
+        });
         logger.info("Export completed");
     }
 
+    public void doBackup() throws RaplaException {
+        if (hotBackup == null)
+        {
+            doExport();
+            return;
+        }
+        getDestination().connect();
+        hotBackup.backup(dbOperator, fileOperator);
+    }
+
     private void doConvert(final CachableStorageOperator cachableStorageOperator1,final CachableStorageOperator cachableStorageOperator2) throws RaplaException {
     	cachableStorageOperator1.runWithReadLock( new CachableStorageOperatorCommand() {
 			
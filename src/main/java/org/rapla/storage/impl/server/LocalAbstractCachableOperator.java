@@ -89,6 +89,9 @@ import org.rapla.facade.RaplaComponent;
 import org.rapla.framework.Disposable;
 import org.rapla.framework.RaplaException;
 import org.rapla.framework.RaplaLocale;
+import org.rapla.framework.metrics.LatencyHistogram;
+import org.rapla.framework.metrics.RaplaMetrics;
+import org.rapla.framework.metrics.RequestTrace;
 import org.rapla.logger.Logger;
 import org.rapla.rest.JsonParserWrapper;
 import org.rapla.scheduler.CommandScheduler;
@@ -116,6 +119,8 @@ import org.rapla.storage.impl.DefaultRaplaLock;
 import org.rapla.storage.impl.EntityStore;
 import org.rapla.storage.impl.RaplaLock;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -178,6 +183,19 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     private Date connectStart;
     private final DefaultRaplaLock disconnectLock;
     private final PromiseWait promiseWait;
+    private int conflictHorizonMonths = DEFAULT_CONFLICT_HORIZON_MONTHS;
+    protected LatencyHistogram dispatchLatency = new LatencyHistogram();
+    private LatencyHistogram refreshLatency = new LatencyHistogram();
+    private LatencyHistogram conflictInitLatency = new LatencyHistogram();
+    private LatencyHistogram conflictUpdateLatency = new LatencyHistogram();
+    private LatencyHistogram conflictHorizonLatency = new LatencyHistogram();
+    // number of callers that deferred the conflict calculation, guarded by the write lock
+    private int conflictUpdatesDeferred;
+    // while a snapshot is written, its entities resolve their references through the snapshot on the writing thread
+    private final ThreadLocal<LocalCache> snapshotResolver = new ThreadLocal<LocalCache>();
+
+    /** default number of months in which conflicts are stored */
+    public static final int DEFAULT_CONFLICT_HORIZON_MONTHS = ConflictFinder.DEFAULT_HORIZON_MONTHS;
 
     public LocalAbstractCachableOperator(Logger logger, PromiseWait promiseWait, RaplaResources i18n, RaplaLocale raplaLocale, CommandScheduler scheduler,
             Map<String, FunctionFactory> functionFactoryMap, Set<PermissionExtension> permissionExtensions)
@@ -192,6 +210,49 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         calendarModelCache = new CalendarModelCache(this, i18n, logger, scheduler);
     }
 
+    /** sets the size budget of the entity history. If spillFile is not null, older versions are moved to that file when the history
+     * exceeds maxHeapBytes in heap. The oldest versions are evicted when the history exceeds maxBytes*/
+    public void configureHistory(File spillFile, long maxHeapBytes, long maxBytes) throws RaplaException
+    {
+        try
+        {
+            history.setSpillFile(spillFile, maxHeapBytes);
+        }
+        catch (IOException e)
+        {
+            throw new RaplaException(e.getMessage(), e);
+        }
+        history.setMaxBytes(maxBytes);
+    }
+
+    /** conflicts are stored for the next horizonMonths and calculated on demand beyond. Must be called before connect*/
+    public void configureConflictHorizon(int horizonMonths)
+    {
+        this.conflictHorizonMonths = Math.max(1, horizonMonths);
+    }
+
+    /** registers the storage metrics and the metrics of the storage lock. Only the active operator should register, because the metrics have no operator label */
+    public void configureMetrics(RaplaMetrics metrics)
+    {
+        if (lockManager instanceof DefaultRaplaLock)
+        {
+            ((DefaultRaplaLock) lockManager).configureMetrics(metrics, "storage");
+        }
+        dispatchLatency = metrics.register("rapla_storage_dispatch_seconds", "Time to store a change including lock wait and write", dispatchLatency);
+        refreshLatency = metrics.register("rapla_storage_refresh_seconds", "Time to apply changes to the cache, the indizes and the conflicts", refreshLatency);
+        final String conflictHelp = "Time to calculate conflicts";
+        conflictInitLatency = metrics.register("rapla_conflict_calculation_seconds", conflictHelp, conflictInitLatency, "operation", "initialize");
+        conflictUpdateLatency = metrics.register("rapla_conflict_calculation_seconds", conflictHelp, conflictUpdateLatency, "operation", "update");
+        conflictHorizonLatency = metrics.register("rapla_conflict_calculation_seconds", conflictHelp, conflictHorizonLatency, "operation", "advance_horizon");
+        final String cacheHelp = "Number of entities in the cache";
+        metrics.gauge("rapla_cache_entities", cacheHelp, () -> cache.getEntityCount(), "type", "all");
+        metrics.gauge("rapla_cache_entities", cacheHelp, () -> cache.getReservations().size(), "type", "reservation");
+        metrics.gauge("rapla_cache_entities", cacheHelp, () -> cache.getAllocatables().size(), "type", "allocatable");
+        metrics.gauge("rapla_cache_entities", cacheHelp, () -> cache.getUsers().size(), "type", "user");
+        metrics.gauge("rapla_cache_entities", cacheHelp, () -> cache.getDynamicTypes().size(), "type", "dynamictype");
+        metrics.gauge("rapla_conflicts", "Number of stored conflicts", () -> conflictFinder != null ? conflictFinder.getConflictCount() : null);
+    }
+
     @Override
     final public boolean isConnected()
     {
@@ -513,63 +574,162 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         }
     }
 
+    /**
+     * Copies the cache for a backup. The read lock is only held while the cache is copied, the backup is written from the copy. If since is
+     * not null and covered by the history, only the resources and events changed after since are copied, together with the ids of the
+     * removed entities. Otherwise the snapshot is complete.
+     */
+    public BackupSnapshot createBackupSnapshot(Date since) throws RaplaException
+    {
+        checkConnected();
+        final LocalCache resolver;
+        final Date timestamp;
+        final Set<String> changed = new HashSet<String>();
+        final List<String> removed = new ArrayList<String>();
+        final boolean incremental;
+        RaplaLock.ReadLock readLock = lockManager.readLock();
+        try
+        {
+            timestamp = getLastRefreshed();
+            // the written entities resolve their references through a copy of the whole cache, also for an incremental backup
+            resolver = cache.createSnapshot(null);
+            incremental = since != null && !since.before(getHistoryValidStart());
+            if (incremental)
+            {
+                for (ReferenceInfo reference : getEntities(null, since, false))
+                {
+                    if (reference.getType() == Reservation.class || reference.getType() == Allocatable.class)
+                    {
+                        changed.add(reference.getId());
+                    }
+                }
+                for (ReferenceInfo reference : getEntities(null, since, true))
+                {
+                    if (reference.getType() != Conflict.class)
+                    {
+                        removed.add(reference.getId());
+                    }
+                }
+            }
+        }
+        finally
+        {
+            lockManager.unlock(readLock);
+        }
+        if (!incremental)
+        {
+            return new BackupSnapshot(resolver, resolver, timestamp, null, Collections.<String>emptyList());
+        }
+        return new BackupSnapshot(resolver.createSnapshot(changed), resolver, timestamp, since, removed);
+    }
+
+    /**
+     * executes the command with the cache of the snapshot. The entities of the snapshot are shared with the cache and resolve their
+     * references through the operator. While the command runs, they resolve through the snapshot on the current thread, so types,
+     * categories and resources changed after the snapshot are not mixed into the written data.
+     */
+    public void runWithSnapshot(BackupSnapshot snapshot, CachableStorageOperatorCommand command) throws RaplaException
+    {
+        final LocalCache previous = snapshotResolver.get();
+        snapshotResolver.set(snapshot.getResolver());
+        try
+        {
+            command.execute(snapshot.getCache());
+        }
+        finally
+        {
+            if (previous != null)
+            {
+                snapshotResolver.set(previous);
+            }
+            else
+            {
+                snapshotResolver.remove();
+            }
+        }
+    }
+
+    @Override public <T extends Entity> T tryResolve(String id, Class<T> entityClass)
+    {
+        final LocalCache snapshot = snapshotResolver.get();
+        if (snapshot != null)
+        {
+            return tryResolve(snapshot, id, entityClass);
+        }
+        return super.tryResolve(id, entityClass);
+    }
+
+    @Override public <T extends Entity> T resolve(String id, Class<T> entityClass) throws EntityNotFoundException
+    {
+        final LocalCache snapshot = snapshotResolver.get();
+        if (snapshot != null)
+        {
+            return resolve(snapshot, id, entityClass);
+        }
+        return super.resolve(id, entityClass);
+    }
+
     /**
      * @param user the owner of the reservation or null for reservations from all users
      */
     public Promise<Map<Allocatable, Collection<Appointment>>> queryAppointments(final User user, final Collection<Allocatable> allocatables, final Date start,
             final Date end, final ClassificationFilter[] filters, final Map<String, String> annotationQuery)
     {
-
         final Promise<Map<Allocatable, Collection<Appointment>>> promise = scheduler.supply(() ->
+                queryAppointmentsSync(user, allocatables, start, end, filters, annotationQuery));
+        return promise;
+    }
+
+    @Override
+    public Map<Allocatable, Collection<Appointment>> queryAppointmentsSync(final User user, final Collection<Allocatable> allocatables, final Date start,
+            final Date end, final ClassificationFilter[] filters, final Map<String, String> annotationQuery) throws RaplaException
+    {
+        boolean excludeExceptions = false;
+        final Collection<Allocatable> allocs = (allocatables == null || allocatables.size() == 0) ? getAllocatables(null) : allocatables;
+        Map<Allocatable, Collection<Appointment>> result = new LinkedHashMap<Allocatable, Collection<Appointment>>();
+        boolean isResourceTemplate = containsResourceTemplate(allocs);
+        for (Allocatable allocatable : allocs)
         {
-            boolean excludeExceptions = false;
-            final Collection<Allocatable> allocs = (allocatables == null || allocatables.size() == 0) ? getAllocatables(null) : allocatables;
-            Map<Allocatable, Collection<Appointment>> result = new LinkedHashMap<Allocatable, Collection<Appointment>>();
-            boolean isResourceTemplate = containsResourceTemplate(allocs);
-            for (Allocatable allocatable : allocs)
+            RaplaLock.ReadLock readLock = lockManager.readLock();
+            SortedSet<Appointment> appointments;
+            try
             {
-                RaplaLock.ReadLock readLock = lockManager.readLock();
-                SortedSet<Appointment> appointments;
-                try
+                appointments = getAppointments(allocatable);
+            }
+            finally
+            {
+                lockManager.unlock(readLock);
+            }
+            SortedSet<Appointment> appointmentSet = AppointmentImpl.getAppointments(appointments, user, start, end, excludeExceptions);
+            for (Appointment appointment : appointmentSet)
+            {
+                Reservation reservation = appointment.getReservation();
+                if (!match(reservation, annotationQuery))
                 {
-                    appointments = getAppointments(allocatable);
+                    continue;
                 }
-                finally
+                // Ignore Templates if not explicitly requested
+
+                final boolean isTemplate = RaplaComponent.isTemplate(reservation);
+                if ((isTemplate != isResourceTemplate) )
                 {
-                    lockManager.unlock(readLock);
+                    // FIXME this special case should be refactored, so one can get all reservations in one method
+                    continue;
                 }
-                SortedSet<Appointment> appointmentSet = AppointmentImpl.getAppointments(appointments, user, start, end, excludeExceptions);
-                for (Appointment appointment : appointmentSet)
+                if (filters != null && !ClassificationFilter.Util.matches(filters, reservation))
                 {
-                    Reservation reservation = appointment.getReservation();
-                    if (!match(reservation, annotationQuery))
-                    {
-                        continue;
-                    }
-                    // Ignore Templates if not explicitly requested
-
-                    final boolean isTemplate = RaplaComponent.isTemplate(reservation);
-                    if ((isTemplate != isResourceTemplate) )
-                    {
-                        // FIXME this special case should be refactored, so one can get all reservations in one method
-                        continue;
-                    }
-                    if (filters != null && !ClassificationFilter.Util.matches(filters, reservation))
-                    {
-                        continue;
-                    }
-                    Collection<Appointment> appointmentCollection = result.get(allocatable);
-                    if (appointmentCollection == null)
-                    {
-                        appointmentCollection = new LinkedHashSet<>();
-                        result.put(allocatable, appointmentCollection);
-                    }
-                    appointmentCollection.add(appointment);
+                    continue;
                 }
+                Collection<Appointment> appointmentCollection = result.get(allocatable);
+                if (appointmentCollection == null)
+                {
+                    appointmentCollection = new LinkedHashSet<>();
+                    result.put(allocatable, appointmentCollection);
+                }
+                appointmentCollection.add(appointment);
             }
-            return result;
-        });
-        return promise;
+        }
+        return result;
     }
 
     private boolean containsResourceTemplate(Collection<Allocatable> allocs) {
@@ -939,22 +1099,63 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
      */
     public Promise<Collection<Conflict>> getConflicts(User user)
     {
-        return scheduler.supply(()-> {
-            checkConnected();
-            RaplaLock.ReadLock readLock = lockManager.readLock();
-            try {
-                Collection<Conflict> conflictList = new HashSet<Conflict>();
-                final Collection<Conflict> conflicts = conflictFinder.getConflicts(user);
-                for (Conflict conflict : conflicts) {
-                    // conflict is filled with disable/enable status from cache
-                    Conflict conflictClone = cache.fillConflictDisableInformation(user, conflict);
-                    conflictList.add(conflictClone);
-                }
-                return conflictList;
-            } finally {
-                lockManager.unlock(readLock);
-            }
-        });
+        return scheduler.supply(()-> getConflictsSync(user));
+    }
+
+    @Override
+    public Collection<Conflict> getConflictsSync(User user) throws RaplaException
+    {
+        checkConnected();
+        RaplaLock.ReadLock readLock = lockManager.readLock();
+        try {
+            Collection<Conflict> conflictList = new HashSet<Conflict>();
+            final Collection<Conflict> conflicts = conflictFinder.getConflicts(user);
+            for (Conflict conflict : conflicts) {
+                // conflict is filled with disable/enable status from cache
+                Conflict conflictClone = cache.fillConflictDisableInformation(user, conflict);
+                conflictList.add(conflictClone);
+            }
+            return conflictList;
+        } finally {
+            lockManager.unlock(readLock);
+        }
+    }
+
+    /**
+     * Determines all conflicts the user can modify and the conflicts between start and end beyond the conflict horizon, which are calculated on demand.
+     * if no user is passed all conflicts are returned
+     */
+    public Promise<Collection<Conflict>> getConflicts(User user, Date start, Date end)
+    {
+        return scheduler.supply(() -> getConflictsSync(user, start, end));
+    }
+
+    @Override
+    public Collection<Conflict> getConflictsSync(User user, Date start, Date end) throws RaplaException
+    {
+        final Collection<Conflict> conflictList = getConflictsSync(user);
+        final Collection<Conflict> beyondHorizon;
+        RaplaLock.ReadLock readLock = lockManager.readLock();
+        try
+        {
+            beyondHorizon = conflictFinder.getConflictsBeyondHorizon(user, start, end, today());
+        }
+        finally
+        {
+            lockManager.unlock(readLock);
+        }
+        for (Conflict conflict : beyondHorizon)
+        {
+            conflictList.add(cache.fillConflictDisableInformation(user, conflict));
+        }
+        return conflictList;
+    }
+
+    @Override
+    public Date getConflictHorizon()
+    {
+        final ConflictFinder conflictFinder = this.conflictFinder;
+        return conflictFinder != null ? conflictFinder.getHorizon() : null;
     }
 
     boolean disposing;
@@ -1022,9 +1223,15 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         Set<Entity> storeObjects = new HashSet<Entity>(evt.getStoreObjects());
         //Set<Entity> removeObjects = new HashSet<Entity>(evt.getRemoveObjects());
         setResolverAndCheckReferences(evt, store);
-        checkConsistency(evt, store);
+        try (RequestTrace.Span span = RequestTrace.span("checkConsistency"))
+        {
+            checkConsistency(evt, store);
+        }
         checkUnique(evt, store);
-        checkNoDependencies(evt, store);
+        try (RequestTrace.Span span = RequestTrace.span("checkNoDependencies"))
+        {
+            checkNoDependencies(evt, store);
+        }
         checkVersions(storeObjects);
     }
 
@@ -1084,13 +1291,20 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         };
         // The conflict map
         Logger logger = getLogger();
-        conflictFinder = new ConflictFinder(allocationMap, today2, logger, this, permissionController);
+        final long conflictStart = System.nanoTime();
+        conflictFinder = new ConflictFinder(allocationMap, today2, logger, this, permissionController, conflictHorizonMonths);
+        if (conflictUpdatesDeferred > 0)
+        {
+            conflictFinder.deferConflictUpdates();
+        }
+        conflictInitLatency.recordSince(conflictStart);
 
         // if a client request changes before the start date return refresh conflict flag
         final long delay = 0;//DateTools.MILLISECONDS_PER_HOUR;
         Action cleanUpConflicts = ()->
             {
                 removeOldConflicts();
+                advanceConflictHorizon();
                 removeOldHistory();
             };
         //removeOldConflicts();
@@ -1131,18 +1345,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             {
                 try
                 {
-                    final RaplaLock.WriteLock writeLock = lockManager.writeLockIfAvaliable();
-                    if (writeLock != null)
-                    {
-                        try
-                        {
-                            refreshWithoutLock();
-                        }
-                        finally
-                        {
-                            lockManager.unlock(writeLock);
-                        }
-                    }
+                    refreshScheduled();
                 }
                 catch (Throwable t)
                 {
@@ -1152,6 +1355,23 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
 
     }
 
+    /** called periodically to load the changes of other servers. Refreshes under the write lock if the lock is available*/
+    protected void refreshScheduled()
+    {
+        final RaplaLock.WriteLock writeLock = lockManager.writeLockIfAvaliable();
+        if (writeLock != null)
+        {
+            try
+            {
+                refreshWithoutLock();
+            }
+            finally
+            {
+                lockManager.unlock(writeLock);
+            }
+        }
+    }
+
     @Override
     public void refresh() throws RaplaException
     {
@@ -1324,7 +1544,13 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         */
         Date today = today();
         // processes the conflicts and adds the changes to the result
-        final Collection<ConflictFinder.ConflictChangeOperation> calculatedConflictChanges = conflictFinder.updateConflicts(bindingResult, result, today);
+        final long conflictStart = System.nanoTime();
+        final Collection<ConflictFinder.ConflictChangeOperation> calculatedConflictChanges;
+        try (RequestTrace.Span span = RequestTrace.span("updateConflicts"))
+        {
+            calculatedConflictChanges = conflictFinder.updateConflicts(bindingResult, result, today);
+        }
+        conflictUpdateLatency.recordSince(conflictStart);
         for (ConflictFinder.ConflictChangeOperation updateOperation : calculatedConflictChanges)
         {
             final UpdateOperation operation = updateOperation.getOperation();
@@ -2150,17 +2376,105 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
     protected UpdateResult refresh(Date since, Date until, Collection<Entity> storeObjects, Collection<PreferencePatch> preferencePatches,
             Collection<ReferenceInfo> removedIds) throws RaplaException
     {
-
-        UpdateResult update = super.update(since, until, storeObjects, preferencePatches, removedIds);
-        final Collection<ConflictFinder.ConflictChangeOperation> updateOperations = updateIndizes(update);
+        final long start = System.nanoTime();
+        final UpdateResult update;
+        try (RequestTrace.Span span = RequestTrace.span("updateCache"))
+        {
+            update = super.update(since, until, storeObjects, preferencePatches, removedIds);
+        }
+        final Collection<ConflictFinder.ConflictChangeOperation> updateOperations;
+        try (RequestTrace.Span span = RequestTrace.span("updateIndizes"))
+        {
+            updateOperations = updateIndizes(update);
+        }
         for (ConflictFinder.ConflictChangeOperation op : updateOperations)
         {
             // conflicts
             update.addOperation(op.getNewConflict(), op.getOldConflict(), op.getOperation());
         }
+        refreshLatency.recordSince(start);
         return update;
     }
 
+    /** moves the conflict horizon with the current day and publishes the conflicts that are now inside of the stored window*/
+    private void advanceConflictHorizon() throws RaplaException
+    {
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded();
+        try
+        {
+            final long conflictStart = System.nanoTime();
+            final Collection<ConflictFinder.ConflictChangeOperation> changes = conflictFinder.advanceHorizon(today());
+            conflictHorizonLatency.recordSince(conflictStart);
+            if (changes.isEmpty())
+            {
+                return;
+            }
+            // the conflicts can have an older last changed date, so we use the current time to send them to the clients
+            final Date timestamp = getCurrentTimestamp();
+            for (ConflictFinder.ConflictChangeOperation change : changes)
+            {
+                final Conflict conflict = change.getNewConflict();
+                addToDeleteUpdate(change.getOperation().getReference(), timestamp, conflict == null, conflict);
+            }
+            getLogger().info("Conflict horizon moved to " + conflictFinder.getHorizon() + ". " + changes.size() + " conflicts changed.");
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+    }
+
+    /**
+     * defers the conflict calculation of stored events until {@link #updateDeferredConflicts()} is called, so that an import that stores its events
+     * in several transactions calculates the conflicts of each resource only once. Calls can be nested, the conflicts are calculated when the last
+     * caller finishes. Until then the stored conflicts of changed resources are not updated, also for changes of other users.
+     */
+    public void deferConflictUpdates() throws RaplaException
+    {
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded();
+        try
+        {
+            conflictUpdatesDeferred++;
+            conflictFinder.deferConflictUpdates();
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+    }
+
+    /** calculates the conflicts deferred by {@link #deferConflictUpdates()} and publishes the changed conflicts, if no other caller still defers them */
+    public void updateDeferredConflicts() throws RaplaException
+    {
+        final RaplaLock.WriteLock writeLock = writeLockIfLoaded();
+        try
+        {
+            if (conflictUpdatesDeferred == 0 || --conflictUpdatesDeferred > 0)
+            {
+                return;
+            }
+            final long conflictStart = System.nanoTime();
+            final Collection<ConflictFinder.ConflictChangeOperation> changes = conflictFinder.updateDeferredConflicts(today());
+            conflictUpdateLatency.recordSince(conflictStart);
+            final Date timestamp = getCurrentTimestamp();
+            final Collection<UpdateOperation> operations = new ArrayList<UpdateOperation>();
+            for (ConflictFinder.ConflictChangeOperation change : changes)
+            {
+                final Conflict conflict = change.getNewConflict();
+                addToDeleteUpdate(change.getOperation().getReference(), timestamp, conflict == null, conflict);
+                operations.add(change.getOperation());
+            }
+            final Set<ReferenceInfo<Conflict>> conflictsToDelete = getConflictsToDelete(operations);
+            removeConflictsFromDatabase(conflictsToDelete);
+            removeConflictsFromCache(conflictsToDelete);
+            getLogger().info("Deferred conflict calculation finished. " + changes.size() + " conflicts changed.");
+        }
+        finally
+        {
+            lockManager.unlock(writeLock);
+        }
+    }
+
     private void removeOldHistory() throws RaplaException
     {
         final RaplaLock.WriteLock writeLock = writeLockIfLoaded();
@@ -2298,9 +2612,15 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         //            ((EntityReferencer)entity).setResolver( store);
         //        }
         // add transitve changes to event
-        addClosure(evt, store);
+        try (RequestTrace.Span span = RequestTrace.span("addClosure"))
+        {
+            addClosure(evt, store);
+        }
         // check event for inconsistencies
-        check(evt, store);
+        try (RequestTrace.Span span = RequestTrace.span("check"))
+        {
+            check(evt, store);
+        }
     }
 
     /**
@@ -3508,44 +3828,50 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
             final Integer rowsPerHour)
     {
         Promise<Date> promise = scheduler.supply(() ->
+                getNextAllocatableDateSync(allocatables, appointment, ignoreList, worktimeStartMinutes, worktimeEndMinutes, excludedDays, rowsPerHour));
+        return promise;
+    }
+
+    @Override
+    public Date getNextAllocatableDateSync(final Collection<Allocatable> allocatables, final Appointment appointment,
+            final Collection<Reservation> ignoreList, final Integer worktimeStartMinutes, final Integer worktimeEndMinutes, final Integer[] excludedDays,
+            final Integer rowsPerHour) throws RaplaException
+    {
+        RaplaLock.ReadLock readLock = lockManager.readLock();
+        try
         {
-            RaplaLock.ReadLock readLock = lockManager.readLock();
-            try
-            {
-                Appointment newState = appointment;
-                Date firstStart = appointment.getStart();
-                boolean startDateExcluded = isExcluded(excludedDays, firstStart);
-                boolean wholeDay = appointment.isWholeDaysSet();
-                boolean inWorktime = inWorktime(appointment, worktimeStartMinutes, worktimeEndMinutes);
-                final int rowsPerHourInt = (rowsPerHour == null || rowsPerHour <= 1) ? 1 : rowsPerHour;
-                for (int i = 0; i < 366 * 24 * rowsPerHourInt; i++)
-                {
-                    newState = ((AppointmentImpl) newState).clone();
-                    Date start = newState.getStart();
-                    long millisToAdd = wholeDay ? DateTools.MILLISECONDS_PER_DAY : (DateTools.MILLISECONDS_PER_HOUR / rowsPerHourInt);
-                    Date newStart = new Date(start.getTime() + millisToAdd);
-                    if (!startDateExcluded && isExcluded(excludedDays, newStart))
-                    {
-                        continue;
-                    }
-                    newState.moveTo(newStart);
-                    if (!wholeDay && inWorktime && !inWorktime(newState, worktimeStartMinutes, worktimeEndMinutes))
-                    {
-                        continue;
-                    }
-                    if (!isAllocated(allocatables, newState, ignoreList))
-                    {
-                        return newStart;
-                    }
+            Appointment newState = appointment;
+            Date firstStart = appointment.getStart();
+            boolean startDateExcluded = isExcluded(excludedDays, firstStart);
+            boolean wholeDay = appointment.isWholeDaysSet();
+            boolean inWorktime = inWorktime(appointment, worktimeStartMinutes, worktimeEndMinutes);
+            final int rowsPerHourInt = (rowsPerHour == null || rowsPerHour <= 1) ? 1 : rowsPerHour;
+            for (int i = 0; i < 366 * 24 * rowsPerHourInt; i++)
+            {
+                newState = ((AppointmentImpl) newState).clone();
+                Date start = newState.getStart();
+                long millisToAdd = wholeDay ? DateTools.MILLISECONDS_PER_DAY : (DateTools.MILLISECONDS_PER_HOUR / rowsPerHourInt);
+                Date newStart = new Date(start.getTime() + millisToAdd);
+                if (!startDateExcluded && isExcluded(excludedDays, newStart))
+                {
+                    continue;
+                }
+                newState.moveTo(newStart);
+                if (!wholeDay && inWorktime && !inWorktime(newState, worktimeStartMinutes, worktimeEndMinutes))
+                {
+                    continue;
+                }
+                if (!isAllocated(allocatables, newState, ignoreList))
+                {
+                    return newStart;
                 }
-                return null;
-            }
-            finally
-            {
-                lockManager.unlock(readLock);
             }
-        });
-        return promise;
+            return null;
+        }
+        finally
+        {
+            lockManager.unlock(readLock);
+        }
     }
 
     private boolean inWorktime(Appointment appointment, Integer worktimeStartMinutes, Integer worktimeEndMinutes)
@@ -3575,7 +3901,7 @@ public abstract class LocalAbstractCachableOperator extends AbstractCachableOper
         return false;
     }
 
-    private boolean isAllocated(Collection<Allocatable> allocatables, Appointment appointment, Collection<Reservation> ignoreList) throws Exception
+    private boolean isAllocated(Collection<Allocatable> allocatables, Appointment appointment, Collection<Reservation> ignoreList) throws RaplaException
     {
         Map<Allocatable, Collection<Appointment>> firstAllocatableBindings = getFirstAllocatableBindingsMap(allocatables, Collections.singleton(appointment),
                 ignoreList);
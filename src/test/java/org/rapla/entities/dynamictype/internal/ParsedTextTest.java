@@ -386,4 +386,22 @@ public class ParsedTextTest
     }
     
    
+    @Test
+    public void testCompiledConstants() throws IllegalAnnotationException
+    {
+        final String annoName = "myanno";
+        final String annotationContent = "Room {concat(\"A\",\"-\",12)}: {name(a1,\"de\")}\\n{\"end\"}";
+        type.setAnnotation(annoName, annotationContent);
+        type.setReadOnly();
+        Locale locale = Locale.GERMANY;
+        Classification classification = type.newClassification();
+        classification.setValueForAttribute(attribute, c2);
+        final EvalContext evalContext = new EvalContext(locale,  annoName,permissionController, user, Collections.singletonList(classification));
+        final ParsedText parsedAnnotation = type.getParsedAnnotation(annoName);
+        final String formatName = parsedAnnotation.formatName(evalContext);
+        Assert.assertEquals("Room A-12: Welt\nend", formatName);
+        Assert.assertEquals(parsedAnnotation.interpret(evalContext), formatName);
+        Assert.assertEquals(annotationContent, type.getAnnotation(annoName));
+    }
+
 }
@@ -0,0 +1,107 @@
+package org.rapla.facade.internal;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class AppointmentWindowCacheTest
+{
+    Reservation reservation;
+    Allocatable allocatable;
+    Date start;
+    Date end;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        RaplaFacade facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        final Collection<Reservation> reservations = RaplaTestCase.waitForWithRaplaException(facade.getReservations(null, null, null, null), 10000);
+        for (Reservation reservation : reservations)
+        {
+            if (reservation.getMaxEnd() != null && reservation.getAllocatables().length > 0)
+            {
+                this.reservation = reservation;
+                break;
+            }
+        }
+        Assert.assertNotNull(reservation);
+        allocatable = reservation.getAllocatables()[0];
+        start = DateTools.cutDate(reservation.getFirstDate());
+        end = DateTools.addDays(DateTools.cutDate(reservation.getMaxEnd()), 1);
+    }
+
+    private Map<Allocatable, Collection<Appointment>> createResult()
+    {
+        final Map<Allocatable, Collection<Appointment>> result = new LinkedHashMap<Allocatable, Collection<Appointment>>();
+        result.put(allocatable, Arrays.asList(reservation.getAppointments()));
+        return result;
+    }
+
+    @Test
+    public void testGetAndInvalidate()
+    {
+        final AppointmentWindowCache cache = new AppointmentWindowCache();
+        Assert.assertNull(cache.get("selection", start, end));
+        cache.put("selection", start, end, createResult(), cache.getGeneration());
+        Assert.assertTrue(cache.isCovered("selection", start, end));
+        Assert.assertFalse(cache.isCovered("other", start, end));
+        final Map<Allocatable, Collection<Appointment>> cached = cache.get("selection", start, end);
+        Assert.assertEquals(reservation.getAppointments().length, cached.get(allocatable).size());
+
+        // a modification outside of the window keeps it
+        final Date before = DateTools.addDays(start, -7);
+        cache.invalidate(new TimeInterval(before, DateTools.addDays(before, 1)));
+        Assert.assertTrue(cache.isCovered("selection", start, end));
+
+        // a modification inside of the window removes it
+        cache.invalidate(new TimeInterval(start, DateTools.addDays(start, 1)));
+        Assert.assertFalse(cache.isCovered("selection", start, end));
+        Assert.assertNull(cache.get("selection", start, end));
+    }
+
+    @Test
+    public void testDropResultsOfQueriesStartedBeforeInvalidation()
+    {
+        final AppointmentWindowCache cache = new AppointmentWindowCache();
+        final int generation = cache.getGeneration();
+        cache.invalidate(new TimeInterval(null, null));
+        cache.put("selection", start, end, createResult(), generation);
+        Assert.assertFalse(cache.isCovered("selection", start, end));
+
+        cache.put("selection", start, end, createResult(), cache.getGeneration());
+        Assert.assertTrue(cache.isCovered("selection", start, end));
+        cache.clear();
+        Assert.assertFalse(cache.isCovered("selection", start, end));
+    }
+
+    @Test
+    public void testMergeAdjacentWindows()
+    {
+        final AppointmentWindowCache cache = new AppointmentWindowCache();
+        final Date middle = DateTools.addDays(end, 7);
+        final Date last = DateTools.addDays(middle, 7);
+        cache.put("selection", start, middle, createResult(), cache.getGeneration());
+        cache.put("selection", middle, last, Collections.<Allocatable, Collection<Appointment>>emptyMap(), cache.getGeneration());
+        Assert.assertTrue(cache.isCovered("selection", start, last));
+        Assert.assertEquals(reservation.getAppointments().length, cache.get("selection", start, last).get(allocatable).size());
+    }
+}
@@ -375,6 +375,37 @@ public class ClientFacadeTest  {
         Assert.assertTrue(set.containsAll(new HashSet<Conflict>(conflicts)));
     }
 
+    @Test
+    public void testConflictsBeyondHorizon() throws Exception {
+        Collection<Conflict> conflicts= RaplaTestCase.waitForWithRaplaException(facade.getConflicts( ), 5000);
+        Date farFuture = DateTools.addYears(new Date(), 10);
+        Date start = DateTools.toDateTime(farFuture, new Date(DateTools.toTime(10, 0, 0)));
+        Date end = DateTools.toDateTime( start,new Date(DateTools.toTime(  12,0,0)));
+        Reservation orig =  facade.newReservationDeprecated();
+        orig.getClassification().setValue("name","far future");
+        orig.addAppointment( facade.newAppointmentDeprecated( start, end));
+        orig.addAllocatable( facade.getAllocatables()[0]);
+        facade.store(orig);
+        facade.store(facade.clone(orig, clientFacade.getUser()));
+
+        // conflicts beyond the horizon are not stored
+        Collection<Conflict> conflictsAfter = RaplaTestCase.waitForWithRaplaException(facade.getConflicts( ), 5000);
+        Assert.assertEquals(conflicts.size(), conflictsAfter.size());
+        // but calculated on request
+        final StorageOperator operator = facade.getOperator();
+        Date rangeStart = DateTools.cutDate(farFuture);
+        Date rangeEnd = DateTools.addDay(rangeStart);
+        Collection<Conflict> conflictsInRange = RaplaTestCase.waitForWithRaplaException(operator.getConflicts( clientFacade.getUser(), rangeStart, rangeEnd), 5000);
+        Assert.assertEquals(1, conflictsInRange.size() - conflicts.size());
+        // the facade only calculates conflicts for ranges that reach beyond the horizon
+        Assert.assertTrue(rangeStart.after(operator.getConflictHorizon()));
+        Collection<Conflict> facadeConflictsInRange = RaplaTestCase.waitForWithRaplaException(facade.getConflicts( rangeStart, rangeEnd), 5000);
+        Assert.assertEquals(conflictsInRange.size(), facadeConflictsInRange.size());
+        Date today = facade.today();
+        Collection<Conflict> facadeConflictsWithinHorizon = RaplaTestCase.waitForWithRaplaException(facade.getConflicts( today, DateTools.addDay(today)), 5000);
+        Assert.assertEquals(conflicts.size(), facadeConflictsWithinHorizon.size());
+    }
+
 
     @Test
     public void testClone() throws Exception {
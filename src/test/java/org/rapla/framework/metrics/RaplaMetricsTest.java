@@ -0,0 +1,90 @@
+package org.rapla.framework.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class RaplaMetricsTest
+{
+    @Test
+    public void testBucketBounds()
+    {
+        long previousUpperBound = 0;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++)
+        {
+            final long lowerBound = LatencyHistogram.getLowerBoundMicros(bucket);
+            final long upperBound = LatencyHistogram.getUpperBoundMicros(bucket);
+            // buckets are contiguous
+            Assert.assertEquals(previousUpperBound, lowerBound);
+            Assert.assertEquals(bucket, LatencyHistogram.getBucket(lowerBound));
+            Assert.assertEquals(bucket, LatencyHistogram.getBucket(upperBound - 1));
+            // relative error of at most one sub bucket
+            Assert.assertTrue(upperBound - lowerBound <= Math.max(1, lowerBound / (LatencyHistogram.SUB_BUCKETS - 1)));
+            previousUpperBound = upperBound;
+        }
+        Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+        {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5.05, histogram.getSumSeconds(), 0.0001);
+        final double median = histogram.getPercentile(50);
+        Assert.assertTrue("" + median, median >= 0.050 && median <= 0.050 * 1.125);
+        final double p99 = histogram.getPercentile(99);
+        Assert.assertTrue("" + p99, p99 >= 0.099 && p99 <= 0.099 * 1.125);
+        Assert.assertEquals(0, new LatencyHistogram().getPercentile(99), 0);
+    }
+
+    @Test
+    public void testTextFormat()
+    {
+        final RaplaMetrics metrics = new RaplaMetrics();
+        final RaplaMetrics.Counter counter = metrics.counter("rapla_test_total", "Test counter", "path", "storage/\"refresh\"");
+        counter.inc();
+        counter.add(2);
+        // registering again returns the same counter
+        Assert.assertSame(counter, metrics.counter("rapla_test_total", "Test counter", "path", "storage/\"refresh\""));
+        metrics.gauge("rapla_test_size", "Test gauge", () -> 42);
+        metrics.gauge("rapla_test_failing", "Failing gauge", () ->
+        {
+            throw new IllegalStateException("disconnected");
+        });
+        final LatencyHistogram histogram = metrics.histogram("rapla_test_seconds", "Test histogram", "operation", "store");
+        histogram.record(2, TimeUnit.MILLISECONDS);
+        histogram.record(20, TimeUnit.SECONDS);
+
+        final String text = metrics.write();
+        Assert.assertTrue(text, text.contains("# TYPE rapla_test_total counter\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_total{path=\"storage/\\\"refresh\\\"\"} 3\n"));
+        Assert.assertTrue(text, text.contains("# HELP rapla_test_size Test gauge\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_size 42\n"));
+        Assert.assertFalse(text, text.contains("\nrapla_test_failing "));
+        Assert.assertTrue(text, text.contains("# TYPE rapla_test_seconds histogram\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_seconds_bucket{operation=\"store\",le=\"0.0005\"} 0\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_seconds_bucket{operation=\"store\",le=\"0.001\"} 0\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_seconds_bucket{operation=\"store\",le=\"0.0025\"} 1\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_seconds_bucket{operation=\"store\",le=\"10\"} 1\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_seconds_bucket{operation=\"store\",le=\"+Inf\"} 2\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_seconds_count{operation=\"store\"} 2\n"));
+        Assert.assertTrue(text, text.contains("rapla_test_seconds_sum{operation=\"store\"} 20.002\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeMismatch()
+    {
+        final RaplaMetrics metrics = new RaplaMetrics();
+        metrics.counter("rapla_test", "Test");
+        metrics.histogram("rapla_test", "Test");
+    }
+}
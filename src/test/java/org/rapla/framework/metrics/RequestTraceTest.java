@@ -0,0 +1,78 @@
+package org.rapla.framework.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RequestTraceTest
+{
+    @Test
+    public void testNoTrace()
+    {
+        Assert.assertFalse(RequestTrace.isActive());
+        try (RequestTrace.Span span = RequestTrace.span("dispatch"))
+        {
+            Assert.assertSame(RequestTrace.NO_SPAN, span);
+        }
+    }
+
+    @Test
+    public void testSpanTree()
+    {
+        final RequestTrace trace = RequestTrace.begin("42", "POST storage/dispatch");
+        try
+        {
+            try (RequestTrace.Span dispatch = RequestTrace.span("dispatch"))
+            {
+                try (RequestTrace.Span lock = RequestTrace.span("lock.write.wait"))
+                {
+                }
+                try (RequestTrace.Span check = RequestTrace.span("checkConsistency"))
+                {
+                    // not closed, will be closed with its parent
+                    RequestTrace.span("updateConflicts");
+                }
+            }
+            try (RequestTrace.Span update = RequestTrace.span("createUpdateEvent"))
+            {
+            }
+        }
+        finally
+        {
+            trace.end();
+        }
+        Assert.assertFalse(RequestTrace.isActive());
+        Assert.assertTrue(trace.getDurationNanos() >= 0);
+        final String[] lines = trace.dump().split("\n");
+        Assert.assertEquals(7, lines.length);
+        Assert.assertEquals("Request 42", lines[0]);
+        Assert.assertTrue(lines[1], lines[1].matches("  [0-9.]+ ms POST storage/dispatch \\(self [0-9.-]+ ms\\)"));
+        Assert.assertTrue(lines[2], lines[2].matches("    [0-9.]+ ms dispatch \\(self [0-9.-]+ ms\\)"));
+        Assert.assertTrue(lines[3], lines[3].matches("      [0-9.]+ ms lock.write.wait"));
+        Assert.assertTrue(lines[4], lines[4].matches("      [0-9.]+ ms checkConsistency \\(self [0-9.-]+ ms\\)"));
+        Assert.assertTrue(lines[5], lines[5].matches("        [0-9.]+ ms updateConflicts"));
+        Assert.assertTrue(lines[6], lines[6].matches("    [0-9.]+ ms createUpdateEvent"));
+    }
+
+    @Test
+    public void testMaxSpans()
+    {
+        final RequestTrace trace = RequestTrace.begin("43", "GET storage/resources");
+        try
+        {
+            for (int i = 0; i < RequestTrace.MAX_SPANS * 2; i++)
+            {
+                try (RequestTrace.Span span = RequestTrace.span("lock.read.wait"))
+                {
+                }
+            }
+        }
+        finally
+        {
+            trace.end();
+        }
+        Assert.assertEquals(RequestTrace.MAX_SPANS + 1, trace.dump().split("\n").length);
+    }
+}
@@ -0,0 +1,96 @@
+package org.rapla.plugin.archiver.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ReservationArchiveTest
+{
+    RaplaFacade facade;
+    Logger logger;
+    File directory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+        facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        directory = Files.createTempDirectory("archive").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        final File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testArchiveAndQuery() throws Exception
+    {
+        final Collection<Reservation> reservations = RaplaTestCase.waitForWithRaplaException(facade.getReservations(null, null, null, null), 10000);
+        final List<Reservation> toArchive = new ArrayList<Reservation>();
+        for (Reservation reservation : reservations)
+        {
+            if (reservation.getMaxEnd() != null)
+            {
+                toArchive.add(reservation);
+            }
+        }
+        Assert.assertFalse(toArchive.isEmpty());
+        final Reservation first = toArchive.get(0);
+        final String typeKey = first.getClassification().getType().getKey();
+
+        final ReservationArchive archive = new ReservationArchive(facade, logger, directory);
+        Assert.assertEquals(toArchive.size(), archive.archive(toArchive));
+        Assert.assertEquals(toArchive.size(), archive.size());
+        Assert.assertNull(facade.tryResolve(first.getReference()));
+
+        // a new instance reads the index from the file
+        final ReservationArchive reopened = new ReservationArchive(facade, logger, directory);
+        Assert.assertEquals(toArchive.size(), reopened.size());
+        final Collection<Reservation> all = reopened.getReservations(null, null);
+        Assert.assertEquals(toArchive.size(), all.size());
+
+        final Date start = first.getFirstDate();
+        final Date end = new Date(start.getTime() + DateTools.MILLISECONDS_PER_MINUTE);
+        final Collection<Reservation> inRange = reopened.getReservations(start, end);
+        Reservation found = null;
+        for (Reservation reservation : inRange)
+        {
+            if (reservation.getId().equals(first.getId()))
+            {
+                found = reservation;
+            }
+        }
+        Assert.assertNotNull(found);
+        Assert.assertEquals(typeKey, found.getClassification().getType().getKey());
+        Assert.assertEquals(first.getAppointments().length, found.getAppointments().length);
+
+        final Date beforeAll = new Date(0);
+        Assert.assertTrue(reopened.getReservations(null, beforeAll).isEmpty());
+    }
+}
@@ -0,0 +1,142 @@
+package org.rapla.plugin.exchangeconnector.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.exchangeconnector.SyncError;
+import org.rapla.plugin.exchangeconnector.SynchronizeResult;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class SynchronizationExecutorTest
+{
+    Logger logger;
+
+    @Before
+    public void setUp()
+    {
+        logger = RaplaTestCase.initLoger();
+    }
+
+    private List<SynchronizationTask> createTasks(int users, int tasksPerUser)
+    {
+        final List<SynchronizationTask> tasks = new ArrayList<>();
+        for (int i = 0; i < tasksPerUser; i++)
+        {
+            for (int u = 0; u < users; u++)
+            {
+                final ReferenceInfo<Appointment> appointmentId = new ReferenceInfo<>("appointment_" + u + "_" + i, Appointment.class);
+                final ReferenceInfo<User> userId = new ReferenceInfo<>("user_" + u, User.class);
+                tasks.add(new SynchronizationTask(appointmentId, userId, 0, null, null));
+            }
+        }
+        return tasks;
+    }
+
+    @Test
+    public void testPartitionByUser()
+    {
+        final Map<String, List<SynchronizationTask>> partitions = SynchronizationExecutor.partition(createTasks(3, 4));
+        Assert.assertEquals(3, partitions.size());
+        for (Map.Entry<String, List<SynchronizationTask>> entry : partitions.entrySet())
+        {
+            Assert.assertEquals(4, entry.getValue().size());
+            for (SynchronizationTask task : entry.getValue())
+            {
+                Assert.assertEquals(entry.getKey(), task.getUserId());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelismIsBounded() throws RaplaException
+    {
+        final int parallelism = 2;
+        final SynchronizationExecutor executor = new SynchronizationExecutor(logger, parallelism);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Set<String> processedUsers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        // simulates a slow exchange server
+        final SynchronizationExecutor.PartitionProcessor fakeExchange = (userTasks) ->
+        {
+            final int current = running.incrementAndGet();
+            maxRunning.accumulateAndGet(current, Math::max);
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                throw new RaplaException(e);
+            }
+            finally
+            {
+                running.decrementAndGet();
+            }
+            Assert.assertTrue(processedUsers.add(userTasks.get(0).getUserId()));
+            final SynchronizeResult result = new SynchronizeResult();
+            result.changed = userTasks.size();
+            return result;
+        };
+        final SynchronizeResult result = executor.execute(createTasks(6, 3), fakeExchange, Long.MAX_VALUE);
+        Assert.assertEquals(18, result.changed);
+        Assert.assertEquals(6, processedUsers.size());
+        Assert.assertTrue(maxRunning.get() <= parallelism);
+        final SynchronizationExecutor.Statistics statistics = executor.getLastStatistics();
+        Assert.assertEquals(6, statistics.users);
+        Assert.assertEquals(18, statistics.processedTasks);
+        Assert.assertEquals(0, statistics.deferredTasks);
+    }
+
+    @Test
+    public void testDeadlineDefersRemainingUsers() throws RaplaException
+    {
+        final SynchronizationExecutor executor = new SynchronizationExecutor(logger, 4);
+        final AtomicInteger calls = new AtomicInteger();
+        final SynchronizationExecutor.PartitionProcessor fakeExchange = (userTasks) ->
+        {
+            calls.incrementAndGet();
+            return new SynchronizeResult();
+        };
+        final long deadline = System.currentTimeMillis() - 1;
+        executor.execute(createTasks(3, 2), fakeExchange, deadline);
+        Assert.assertEquals(0, calls.get());
+        Assert.assertEquals(6, executor.getLastStatistics().deferredTasks);
+    }
+
+    @Test
+    public void testFailedUserDoesNotStopOthers() throws RaplaException
+    {
+        final SynchronizationExecutor executor = new SynchronizationExecutor(logger, 2);
+        final SynchronizationExecutor.PartitionProcessor fakeExchange = (userTasks) ->
+        {
+            if (userTasks.get(0).getUserId().equals("user_1"))
+            {
+                throw new RaplaException("Exchange not reachable");
+            }
+            final SynchronizeResult result = new SynchronizeResult();
+            result.open = 1;
+            result.errorMessages.add(new SyncError(userTasks.get(0).getAppointmentId(), "error"));
+            return result;
+        };
+        final SynchronizeResult result = executor.execute(createTasks(3, 1), fakeExchange, Long.MAX_VALUE);
+        Assert.assertEquals(2, result.open);
+        Assert.assertEquals(2, result.errorMessages.size());
+        Assert.assertEquals(1, executor.getLastStatistics().failedUsers);
+    }
+}
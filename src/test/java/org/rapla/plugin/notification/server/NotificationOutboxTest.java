@@ -0,0 +1,66 @@
+package org.rapla.plugin.notification.server;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.MockMailer;
+import org.rapla.entities.storage.ImportExportDirections;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.internal.DefaultScheduler;
+import org.rapla.logger.Logger;
+import org.rapla.plugin.mail.server.MailToUserImpl;
+import org.rapla.plugin.notification.server.NotificationService.AllocationMail;
+import org.rapla.storage.CachableStorageOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class NotificationOutboxTest
+{
+    RaplaFacade facade;
+    Logger logger;
+    MockMailer mailMock;
+    NotificationStorage storage;
+    NotificationOutbox outbox;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+        facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        mailMock = new MockMailer();
+        storage = new NotificationStorage(facade);
+        final MailToUserImpl mailToUser = new MailToUserImpl(mailMock, facade, logger);
+        outbox = new NotificationOutbox(storage, () -> mailToUser, new DefaultScheduler(logger), logger);
+    }
+
+    @Test
+    public void testDeliver() throws Exception
+    {
+        final List<AllocationMail> mails = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            final AllocationMail mail = new AllocationMail();
+            mail.recipient = "homer";
+            mail.subject = "Subject " + i;
+            mail.body = "Body " + i;
+            mails.add(mail);
+        }
+        storage.store(mails);
+        outbox.enqueue(mails);
+        for (int i = 0; i < 100 && !outbox.isIdle(); i++)
+        {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(outbox.isIdle());
+        Assert.assertEquals(3, mailMock.getCallCount());
+        Assert.assertEquals("homer@rapla.dummy.rapla", mailMock.getRecipient());
+        // sent mails are removed from the storage
+        final CachableStorageOperator operator = (CachableStorageOperator) facade.getOperator();
+        Assert.assertTrue(operator.getImportExportEntities(NotificationService.NOTIFICATION_LOCK_ID, ImportExportDirections.EXPORT).isEmpty());
+    }
+}
@@ -12,6 +12,7 @@ import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.domain.Appointment;
 import org.rapla.entities.domain.Reservation;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
+import org.rapla.facade.Conflict;
 import org.rapla.facade.client.ClientFacade;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.logger.Logger;
@@ -24,6 +25,9 @@ import org.rapla.test.util.RaplaTestCase;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -120,4 +124,51 @@ public class ICalImportTest {
         Assert.assertEquals(DateTools.toDateTime(date, time), start);
         
 	}
+
+    @Test
+    public void testImportInChunks() throws Exception
+    {
+        TimeZoneConverterImpl converter = new TimeZoneConverterImpl();
+        converter.setImportExportTimeZone(TimeZone.getTimeZone("GMT"));
+        RemoteSession session = new RemoteSessionImpl(logger, user);
+        RaplaICalImport importer = new RaplaICalImport(converter, session, facade, logger, null);
+        // one event per day, only the first two events overlap
+        final int eventCount = 501;
+        final Date firstDay = DateTools.addDays(DateTools.cutDate(facade.today()), 30);
+        final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        StringBuilder content = new StringBuilder("BEGIN:VCALENDAR\nVERSION:2.0\nPRODID:-//Rapla//Test//EN\n");
+        for (int i = 0; i < eventCount; i++)
+        {
+            final String day = format.format(DateTools.addDays(firstDay, Math.max(0, i - 1)));
+            content.append("BEGIN:VEVENT\nUID:chunk-test-").append(i).append("\nDTSTART:").append(day).append("T100000Z\nDTEND:").append(day)
+                    .append("T110000Z\nSUMMARY:event ").append(i).append("\nEND:VEVENT\n");
+        }
+        content.append("END:VCALENDAR\n");
+        Allocatable newResource = facade.newResourceDeprecated();
+        newResource.getClassification().setValue("name", "icalchunktest");
+        facade.store(newResource);
+        List<Allocatable> allocatables = Collections.singletonList(newResource);
+        String eventTypeKey = facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].getKey();
+        final List<Integer> progress = new ArrayList<Integer>();
+        final Integer[] count = RaplaTestCase.waitForWithRaplaException(
+                importer.importCalendar(content.toString(), false, allocatables, user, eventTypeKey, "name", (stored, total) ->
+                {
+                    Assert.assertEquals(eventCount, total);
+                    progress.add(stored);
+                }), 30000);
+        Assert.assertEquals(eventCount, count[1].intValue());
+        Assert.assertEquals(Arrays.asList(500, eventCount), progress);
+
+        // the conflicts are calculated after the last chunk
+        int conflictsForResource = 0;
+        for (Conflict conflict : RaplaTestCase.waitForWithRaplaException(facade.getConflicts(), 10000))
+        {
+            if (conflict.getAllocatableId().equals(newResource.getReference()))
+            {
+                conflictsForResource++;
+            }
+        }
+        Assert.assertEquals(1, conflictsForResource);
+    }
 }
@@ -0,0 +1,108 @@
+package org.rapla.server.internal;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.components.util.TimeInterval;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.Collection;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class UpdateEventCacheTest
+{
+    RaplaFacade facade;
+    Reservation reservation;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        final Collection<Reservation> reservations = RaplaTestCase.waitForWithRaplaException(facade.getReservations(null, null, null, null), 10000);
+        for (Reservation reservation : reservations)
+        {
+            if (reservation.getAppointments().length > 0 && reservation.getMaxEnd() != null && reservation.getLastChanged() != null)
+            {
+                this.reservation = reservation;
+                break;
+            }
+        }
+        Assert.assertNotNull(reservation);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        RaplaTestCase.dispose(facade);
+    }
+
+    @Test
+    public void testSameVersionSharesExtent()
+    {
+        final UpdateEventCache cache = new UpdateEventCache();
+        // two clients polling the same version of the reservation
+        final long[] first = cache.getExtent(reservation);
+        final long[] second = cache.getExtent(reservation);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(reservation.getFirstDate().getTime(), first[0]);
+        Assert.assertEquals(reservation.getMaxEnd().getTime(), first[1]);
+    }
+
+    @Test
+    public void testChangedVersionRecalculatesInterval() throws Exception
+    {
+        final UpdateEventCache cache = new UpdateEventCache();
+        final long[] before = cache.getExtent(reservation);
+
+        final Reservation edited = facade.edit(reservation);
+        final Date start = DateTools.addDays(DateTools.cutDate(reservation.getMaxEnd()), 7);
+        final Date end = new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR);
+        edited.addAppointment(facade.newAppointmentDeprecated(start, end));
+        facade.store(edited);
+        final Reservation changed = facade.getPersistant(edited);
+        Assert.assertNotEquals(reservation.getLastChanged(), changed.getLastChanged());
+
+        final long[] after = cache.getExtent(changed);
+        Assert.assertNotSame(before, after);
+        Assert.assertEquals(before[0], after[0]);
+        Assert.assertEquals(end.getTime(), after[1]);
+
+        final UpdateDataManagerImpl.InvalidateInterval interval = new UpdateDataManagerImpl.InvalidateInterval();
+        Assert.assertNull(interval.toTimeInterval());
+        interval.add(after);
+        Assert.assertEquals(new TimeInterval(new Date(after[0]), end), interval.toTimeInterval());
+        interval.add(UpdateEventCache.NO_EXTENT);
+        Assert.assertEquals(new TimeInterval(new Date(after[0]), end), interval.toTimeInterval());
+        interval.addUnbounded();
+        Assert.assertEquals(new TimeInterval(null, null), interval.toTimeInterval());
+    }
+
+    @Test
+    public void testClearWhenFull()
+    {
+        final UpdateEventCache cache = new UpdateEventCache();
+        final long[] cached = cache.getExtent(reservation);
+        final Date lastChanged = new Date();
+        for (int i = 0; i < UpdateEventCache.MAX_ENTRIES; i++)
+        {
+            final ReservationImpl filler = new ReservationImpl(lastChanged, lastChanged);
+            filler.setId("filler" + i);
+            Assert.assertSame(UpdateEventCache.NO_EXTENT, cache.getExtent(filler));
+        }
+        // the cache was cleared when it was full, so the extent is calculated again
+        final long[] recalculated = cache.getExtent(reservation);
+        Assert.assertNotSame(cached, recalculated);
+        Assert.assertArrayEquals(cached, recalculated);
+    }
+}
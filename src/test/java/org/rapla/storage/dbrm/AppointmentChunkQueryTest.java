@@ -0,0 +1,131 @@
+package org.rapla.storage.dbrm;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.domain.internal.ReservationImpl;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.logger.Logger;
+import org.rapla.scheduler.ResolvedPromise;
+import org.rapla.storage.StorageOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class AppointmentChunkQueryTest
+{
+    RaplaFacade facade;
+    Allocatable first;
+    Allocatable second;
+    Reservation reservation;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Logger logger = RaplaTestCase.initLoger();
+        facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        final Allocatable[] allocatables = facade.getAllocatables();
+        first = allocatables[0];
+        second = allocatables[1];
+        final Date start = DateTools.toDateTime(DateTools.addDays(facade.today(), 1), new Date(DateTools.toTime(10, 0, 0)));
+        final Reservation newReservation = facade.newReservationDeprecated();
+        newReservation.getClassification().setValue("name", "spans two chunks");
+        final Date nextDay = DateTools.addDays(start, 1);
+        final Appointment firstAppointment = facade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR));
+        final Appointment secondAppointment = facade.newAppointmentDeprecated(nextDay, new Date(nextDay.getTime() + DateTools.MILLISECONDS_PER_HOUR));
+        newReservation.addAppointment(firstAppointment);
+        newReservation.addAppointment(secondAppointment);
+        newReservation.addAllocatable(first);
+        newReservation.addAllocatable(second);
+        newReservation.setRestriction(first, new Appointment[] { firstAppointment });
+        newReservation.setRestriction(second, new Appointment[] { secondAppointment });
+        facade.store(newReservation);
+        reservation = facade.getPersistant(newReservation);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        RaplaTestCase.dispose(facade);
+    }
+
+    /** each chunk contains its own copy of the reservation, like a deserialized response */
+    private AppointmentMap createChunk(Allocatable allocatable, int appointmentIndex)
+    {
+        final ReservationImpl copy = ((ReservationImpl) reservation).clone();
+        final Map<Allocatable, Collection<Appointment>> map = new LinkedHashMap<Allocatable, Collection<Appointment>>();
+        map.put(allocatable, Collections.singletonList(copy.getAppointments()[appointmentIndex]));
+        return new AppointmentMap(map);
+    }
+
+    @Test
+    public void testReservationInTwoChunks() throws Exception
+    {
+        final Map<String, AppointmentMap> chunkResults = new LinkedHashMap<String, AppointmentMap>();
+        chunkResults.put(first.getId(), createChunk(first, 0));
+        chunkResults.put(second.getId(), createChunk(second, 1));
+        final List<String[]> requested = new ArrayList<String[]>();
+        final RemoteStorage remoteStorage = (RemoteStorage) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { RemoteStorage.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        Assert.assertEquals("queryAppointments", method.getName());
+                        final String[] resources = ((RemoteStorage.QueryAppointments) args[0]).getResources();
+                        requested.add(resources);
+                        return new ResolvedPromise<AppointmentMap>(chunkResults.get(resources[0]));
+                    }
+                });
+        final List<String[]> chunks = Arrays.asList(new String[] { first.getId() }, new String[] { second.getId() });
+
+        final AppointmentMap merged = RaplaTestCase.waitForWithRaplaException(
+                RemoteOperator.queryAppointmentChunks(remoteStorage, chunks, 0, new AppointmentMap(), null, null, null), 10000);
+        Assert.assertEquals(2, requested.size());
+        final StorageOperator operator = facade.getOperator();
+        merged.init(operator);
+        final Map<Allocatable, Collection<Appointment>> result = merged.getResult(null);
+
+        Assert.assertEquals(1, result.get(first).size());
+        Assert.assertEquals(1, result.get(second).size());
+        final Appointment firstAppointment = result.get(first).iterator().next();
+        final Appointment secondAppointment = result.get(second).iterator().next();
+        // the reservation is contained only once, with all of its appointments
+        final Reservation firstReservation = firstAppointment.getReservation();
+        Assert.assertSame(firstReservation, secondAppointment.getReservation());
+        Assert.assertEquals(reservation.getId(), firstReservation.getId());
+        final Set<Appointment> appointments = new HashSet<Appointment>(Arrays.asList(firstReservation.getAppointments()));
+        Assert.assertEquals(2, appointments.size());
+        Assert.assertTrue(appointments.contains(firstAppointment));
+        Assert.assertTrue(appointments.contains(secondAppointment));
+        final Set<Entity> reservations = new HashSet<Entity>();
+        for (Collection<Appointment> list : result.values())
+        {
+            for (Appointment appointment : list)
+            {
+                reservations.add(appointment.getReservation());
+            }
+        }
+        Assert.assertEquals(1, reservations.size());
+    }
+}
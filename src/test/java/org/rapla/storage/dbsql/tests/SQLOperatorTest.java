@@ -39,19 +39,28 @@ import org.rapla.entities.dynamictype.Classification;
 import org.rapla.entities.dynamictype.DynamicType;
 import org.rapla.entities.dynamictype.DynamicTypeAnnotations;
 import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.Conflict;
 import org.rapla.facade.RaplaFacade;
 import org.rapla.framework.RaplaException;
 import org.rapla.logger.Logger;
 import org.rapla.storage.CachableStorageOperator;
+import org.rapla.storage.CachableStorageOperatorCommand;
 import org.rapla.storage.ImportExportManager;
+import org.rapla.storage.LocalCache;
 import org.rapla.storage.UpdateResult;
 import org.rapla.storage.UpdateResult.Add;
 import org.rapla.storage.UpdateResult.Change;
 import org.rapla.storage.UpdateResult.Remove;
+import org.rapla.storage.dbfile.FileOperator;
 import org.rapla.storage.dbsql.DBOperator;
+import org.rapla.storage.dbsql.StreamingImport;
+import org.rapla.storage.impl.server.ImportExportManagerImpl;
 import org.rapla.storage.tests.AbstractOperatorTest;
 import org.rapla.test.util.RaplaTestCase;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -64,11 +73,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 @RunWith(JUnit4.class)
 public class SQLOperatorTest extends AbstractOperatorTest
@@ -686,6 +699,92 @@ public class SQLOperatorTest extends AbstractOperatorTest
         }
     }
 
+    @Test
+    public void testSaveChangedAppointments() throws Exception
+    {
+        final DBOperator operator = (DBOperator) facade.getOperator();
+        final User user = facade.getUser("homer");
+        Reservation reservation = facade.newReservation(facade.getDynamicTypes(DynamicTypeAnnotations.VALUE_CLASSIFICATION_TYPE_RESERVATION)[0].newClassification(), user);
+        reservation.getClassification().setValue("name", "appointments");
+        final Date start = DateTools.cutDate(new Date());
+        final Appointment[] appointments = new Appointment[3];
+        for (int i = 0; i < appointments.length; i++)
+        {
+            final Date appointmentStart = new Date(start.getTime() + i * DateTools.MILLISECONDS_PER_HOUR);
+            appointments[i] = facade.newAppointmentWithUser(appointmentStart, new Date(appointmentStart.getTime() + DateTools.MILLISECONDS_PER_HOUR / 2), user);
+            reservation.addAppointment(appointments[i]);
+        }
+        appointments[0].setRepeatingEnabled(true);
+        appointments[0].getRepeating().setType(RepeatingType.DAILY);
+        appointments[0].getRepeating().setNumber(5);
+        appointments[0].getRepeating().addException(new Date(start.getTime() + DateTools.MILLISECONDS_PER_DAY));
+        reservation.addAllocatable(facade.getAllocatables()[0]);
+        reservation.addAllocatable(facade.getAllocatables()[1]);
+        facade.storeAndRemove(new Entity[] { reservation }, Entity.ENTITY_ARRAY, user);
+
+        // change the end of the second appointment, remove the third and add a new one
+        Reservation editable = facade.edit(reservation);
+        final Appointment changed = editable.findAppointment(appointments[1]);
+        changed.move(changed.getStart(), new Date(changed.getEnd().getTime() + DateTools.MILLISECONDS_PER_HOUR));
+        editable.removeAppointment(editable.findAppointment(appointments[2]));
+        final Appointment added = facade.newAppointmentWithUser(new Date(start.getTime() + 4 * DateTools.MILLISECONDS_PER_HOUR),
+                new Date(start.getTime() + 5 * DateTools.MILLISECONDS_PER_HOUR), user);
+        editable.addAppointment(added);
+        facade.storeAndRemove(new Entity[] { editable }, Entity.ENTITY_ARRAY, user);
+        assertAppointmentRows(operator, reservation.getId(), appointments[0].getId(), appointments[1].getId(), added.getId());
+
+        // only the name changes, the appointments are kept
+        editable = facade.edit(facade.resolve(reservation.getReference()));
+        editable.getClassification().setValue("name", "renamed");
+        facade.storeAndRemove(new Entity[] { editable }, Entity.ENTITY_ARRAY, user);
+        assertAppointmentRows(operator, reservation.getId(), appointments[0].getId(), appointments[1].getId(), added.getId());
+        try (final Connection connection = operator.createConnection();
+             final PreparedStatement stmt = connection.prepareStatement("SELECT ATTRIBUTE_VALUE FROM EVENT_ATTRIBUTE_VALUE WHERE EVENT_ID = ? AND ATTRIBUTE_KEY = 'name'"))
+        {
+            stmt.setString(1, reservation.getId());
+            final ResultSet result = stmt.executeQuery();
+            Assert.assertTrue(result.next());
+            Assert.assertEquals("renamed", result.getString(1));
+            Assert.assertFalse(result.next());
+        }
+    }
+
+    private void assertAppointmentRows(DBOperator operator, String eventId, String... appointmentIds) throws Exception
+    {
+        try (final Connection connection = operator.createConnection())
+        {
+            final Set<String> ids = new HashSet<String>();
+            try (final PreparedStatement stmt = connection.prepareStatement("SELECT ID FROM APPOINTMENT WHERE EVENT_ID = ?"))
+            {
+                stmt.setString(1, eventId);
+                final ResultSet result = stmt.executeQuery();
+                while (result.next())
+                {
+                    ids.add(result.getString(1));
+                }
+            }
+            Assert.assertEquals(new HashSet<String>(Arrays.asList(appointmentIds)), ids);
+            for (String appointmentId : appointmentIds)
+            {
+                Assert.assertEquals(2, count(connection, "SELECT COUNT(*) FROM ALLOCATION WHERE APPOINTMENT_ID = ?", appointmentId));
+                // only the first appointment has an exception
+                final int exceptions = appointmentId.equals(appointmentIds[0]) ? 1 : 0;
+                Assert.assertEquals(exceptions, count(connection, "SELECT COUNT(*) FROM APPOINTMENT_EXCEPTION WHERE APPOINTMENT_ID = ?", appointmentId));
+            }
+        }
+    }
+
+    private int count(Connection connection, String sql, String id) throws SQLException
+    {
+        try (final PreparedStatement stmt = connection.prepareStatement(sql))
+        {
+            stmt.setString(1, id);
+            final ResultSet result = stmt.executeQuery();
+            Assert.assertTrue(result.next());
+            return result.getInt(1);
+        }
+    }
+
     @Test
     public void testInsertAndDelete() throws Exception
     {
@@ -701,6 +800,132 @@ public class SQLOperatorTest extends AbstractOperatorTest
         facade.storeAndRemove(new Entity[]{reservation}, Entity.ENTITY_ARRAY, user);
         facade.storeAndRemove(Entity.ENTITY_ARRAY, new Entity[]{reservation} , user);
     }
+    @Test
+    public void testStreamingImport() throws Exception
+    {
+        final DBOperator operator = (DBOperator) getOperator();
+        final Map<String, String> expected = describeEntities(operator);
+        final File checkpointFile = new File("target/test/import-checkpoint");
+        checkpointFile.delete();
+        final ImportExportManagerImpl manager = (ImportExportManagerImpl) operator.getImportExportManager();
+        manager.configureStreamingImport(2, 2, checkpointFile);
+        manager.doImport();
+        Assert.assertFalse(checkpointFile.exists());
+        operator.disconnect();
+        operator.connect();
+        Assert.assertEquals(expected, describeEntities(operator));
+    }
+
+    @Test
+    public void testResumeStreamingImport() throws Exception
+    {
+        final DBOperator operator = (DBOperator) getOperator();
+        final Map<String, String> expected = describeEntities(operator);
+        final File checkpointFile = new File("target/test/import-checkpoint");
+        checkpointFile.delete();
+        final ImportExportManagerImpl manager = (ImportExportManagerImpl) operator.getImportExportManager();
+        final FileOperator source = (FileOperator) manager.getSource();
+        source.disconnect();
+        {// interrupted after the first two batches are committed
+            final StreamingImport interrupted = operator.createStreamingImport("testdefault", checkpointFile, 1, 2);
+            interrupted.start();
+            final int[] count = new int[1];
+            try
+            {
+                source.connect((entity) -> {
+                    if (entity instanceof Reservation && ++count[0] > 4)
+                    {
+                        interrupted.awaitWriters();
+                        throw new IllegalStateException(new RaplaException("interrupted"));
+                    }
+                    interrupted.accept(entity);
+                }, interrupted::awaitWriters);
+                Assert.fail("Import should be interrupted");
+            }
+            catch (RaplaException ex)
+            {
+                Assert.assertEquals("interrupted", ex.getMessage());
+            }
+            finally
+            {
+                interrupted.close();
+                source.disconnect();
+            }
+            final Properties checkpoint = new Properties();
+            try (InputStream in = new FileInputStream(checkpointFile))
+            {
+                checkpoint.load(in);
+            }
+            Assert.assertEquals("2", checkpoint.getProperty("committed_batches"));
+        }
+        {// resumed import with more writers skips the committed batches and writes the rest
+            final StreamingImport resumed = operator.createStreamingImport("testdefault", checkpointFile, 2, 2);
+            resumed.start();
+            try
+            {
+                source.connect(resumed, resumed::awaitWriters);
+                source.runWithReadLock(new CachableStorageOperatorCommand()
+                {
+                    public void execute(LocalCache cache) throws RaplaException
+                    {
+                        resumed.finish(cache);
+                    }
+                });
+            }
+            finally
+            {
+                resumed.close();
+                source.disconnect();
+            }
+        }
+        Assert.assertFalse(checkpointFile.exists());
+        operator.disconnect();
+        operator.connect();
+        Assert.assertEquals(expected, describeEntities(operator));
+    }
+
+    /** describes the reservations with their appointments and resources and the ids of the other imported entities */
+    private Map<String, String> describeEntities(CachableStorageOperator operator) throws RaplaException
+    {
+        final Map<String, String> result = new TreeMap<String, String>();
+        operator.runWithReadLock(new CachableStorageOperatorCommand()
+        {
+            public void execute(LocalCache cache) throws RaplaException
+            {
+                for (Reservation reservation : cache.getReservations())
+                {
+                    final StringBuilder description = new StringBuilder(reservation.getClassification().getType().getKey());
+                    description.append(" ").append(reservation.getClassification().getValue("name"));
+                    final Set<String> allocatableIds = new TreeSet<String>();
+                    for (Allocatable allocatable : reservation.getAllocatables())
+                    {
+                        allocatableIds.add(allocatable.getId());
+                    }
+                    description.append(" ").append(allocatableIds);
+                    for (Appointment appointment : reservation.getSortedAppointments())
+                    {
+                        description.append(" ").append(appointment.getId()).append(" ").append(appointment.getStart().getTime()).append("-")
+                                .append(appointment.getEnd().getTime());
+                    }
+                    result.put(reservation.getId(), description.toString());
+                }
+                for (Allocatable allocatable : cache.getAllocatables())
+                {
+                    result.put(allocatable.getId(), "resource");
+                }
+                for (User user : cache.getUsers())
+                {
+                    result.put(user.getId(), "user " + user.getUsername());
+                }
+                for (Conflict conflict : cache.getDisabledConflicts())
+                {
+                    result.put(conflict.getId(), "conflict");
+                }
+            }
+        });
+        return result;
+    }
+
     @Test
     @Ignore
     public void testChangesAddChangeDelete() throws Exception
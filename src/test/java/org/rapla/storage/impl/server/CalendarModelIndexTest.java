@@ -0,0 +1,229 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.DateTools;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Appointment;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.entities.dynamictype.Classification;
+import org.rapla.entities.dynamictype.ClassificationFilter;
+import org.rapla.entities.dynamictype.DynamicType;
+import org.rapla.entities.storage.ReferenceInfo;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.facade.internal.CalendarModelImpl;
+import org.rapla.logger.Logger;
+import org.rapla.storage.StorageOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/** compares the reverse index with the linear scan over all calendar models that it replaces */
+@RunWith(JUnit4.class)
+public class CalendarModelIndexTest
+{
+    Logger logger;
+    RaplaFacade facade;
+    StorageOperator operator;
+    User user;
+    DynamicType roomType;
+    DynamicType eventType;
+    final Map<ReferenceInfo<User>, List<CalendarModelImpl>> models = new LinkedHashMap<>();
+    final CalendarModelIndex index = new CalendarModelIndex();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+        facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        operator = facade.getOperator();
+        user = facade.getUser("homer");
+        roomType = facade.getDynamicType("room");
+        eventType = facade.getDynamicType("event");
+        final Allocatable[] allocatables = facade.getAllocatables();
+
+        final CalendarModelImpl explicit = createModel();
+        explicit.setSelectedObjects(Arrays.asList(allocatables[0], allocatables[1]));
+        final CalendarModelImpl rooms = createModel();
+        rooms.setSelectedObjects(Collections.singleton(roomType));
+        final CalendarModelImpl filteredRooms = createModel();
+        filteredRooms.setSelectedObjects(Collections.singleton(roomType));
+        final ClassificationFilter roomFilter = roomType.newClassificationFilter();
+        roomFilter.addEqualsRule("name", "indexed room");
+        filteredRooms.setAllocatableFilter(new ClassificationFilter[] { roomFilter });
+        final CalendarModelImpl allWithEventFilter = createModel();
+        allWithEventFilter.setSelectedObjects(Collections.singleton(CalendarModelImpl.ALLOCATABLES_ROOT));
+        final ClassificationFilter eventFilter = eventType.newClassificationFilter();
+        eventFilter.addEqualsRule("name", "indexed event");
+        allWithEventFilter.setReservationFilter(new ClassificationFilter[] { eventFilter });
+        final CalendarModelImpl nothingSelected = createModel();
+
+        addUser("explicit", explicit);
+        addUser("rooms", rooms);
+        addUser("filteredRooms", filteredRooms);
+        addUser("allWithEventFilter", allWithEventFilter);
+        addUser("nothingSelected", nothingSelected);
+        addUser("explicitAndRooms", explicit, rooms);
+        Assert.assertEquals(models.size(), index.size());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        RaplaTestCase.dispose(facade);
+    }
+
+    private CalendarModelImpl createModel() throws Exception
+    {
+        return new CalendarModelImpl(Locale.getDefault(), user, operator, logger);
+    }
+
+    private void addUser(String id, CalendarModelImpl... userModels) throws Exception
+    {
+        final ReferenceInfo<User> userId = new ReferenceInfo<User>(id, User.class);
+        final List<CalendarModelImpl> list = Arrays.asList(userModels);
+        models.put(userId, list);
+        index.put(userId, CalendarModelIndex.createSubscriptions(userId, list));
+    }
+
+    private void removeUser(ReferenceInfo<User> userId)
+    {
+        models.remove(userId);
+        index.remove(userId);
+    }
+
+    private Set<ReferenceInfo<User>> scan(Appointment appointment) throws Exception
+    {
+        final Set<ReferenceInfo<User>> result = new HashSet<>();
+        for (Map.Entry<ReferenceInfo<User>, List<CalendarModelImpl>> entry : models.entrySet())
+        {
+            for (CalendarModelImpl model : entry.getValue())
+            {
+                if (model.isMatchingSelectionAndFilter(appointment))
+                {
+                    result.add(entry.getKey());
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<ReferenceInfo<User>> scan(Allocatable allocatable) throws Exception
+    {
+        final Set<ReferenceInfo<User>> result = new HashSet<>();
+        for (Map.Entry<ReferenceInfo<User>, List<CalendarModelImpl>> entry : models.entrySet())
+        {
+            for (CalendarModelImpl model : entry.getValue())
+            {
+                if (model.getAllAllocatables().contains(allocatable))
+                {
+                    result.add(entry.getKey());
+                }
+            }
+        }
+        return result;
+    }
+
+    private void assertMatchesLinearScan() throws Exception
+    {
+        for (Allocatable allocatable : facade.getAllocatables())
+        {
+            Assert.assertEquals(allocatable.toString(), scan(allocatable), index.findUsers(allocatable));
+        }
+        final Collection<Reservation> reservations = RaplaTestCase.waitForWithRaplaException(facade.getReservations(null, null, null, null), 10000);
+        for (Reservation reservation : reservations)
+        {
+            for (Appointment appointment : reservation.getAppointments())
+            {
+                Assert.assertEquals(appointment.toString(), scan(appointment), index.findUsers(appointment));
+            }
+        }
+    }
+
+    private Reservation storeReservation(String name, Allocatable... allocatables) throws Exception
+    {
+        final Reservation reservation = facade.newReservationDeprecated();
+        final Classification classification = eventType.newClassification();
+        classification.setValue("name", name);
+        reservation.setClassification(classification);
+        final Date start = DateTools.toDateTime(DateTools.addDays(facade.today(), 1), new Date(DateTools.toTime(10, 0, 0)));
+        reservation.addAppointment(facade.newAppointmentDeprecated(start, new Date(start.getTime() + DateTools.MILLISECONDS_PER_HOUR)));
+        for (Allocatable allocatable : allocatables)
+        {
+            reservation.addAllocatable(allocatable);
+        }
+        facade.store(reservation);
+        return facade.getPersistant(reservation);
+    }
+
+    @Test
+    public void testInitialIndex() throws Exception
+    {
+        assertMatchesLinearScan();
+    }
+
+    @Test
+    public void testAddChangeAndRemove() throws Exception
+    {
+        // add a room and events that use it
+        final Classification classification = roomType.newClassification();
+        classification.setValue("name", "new room");
+        final Allocatable newRoom = facade.newAllocatable(classification, user);
+        facade.store(newRoom);
+        final Allocatable room = facade.getPersistant(newRoom);
+        index.refresh(Collections.singleton(room), false);
+        final Reservation unfiltered = storeReservation("new event", room);
+        final Reservation filtered = storeReservation("indexed event", room, facade.getAllocatables()[0]);
+        assertMatchesLinearScan();
+        Assert.assertFalse(index.findUsers(room).isEmpty());
+
+        // rename the room so that it matches the allocatable filter
+        final Allocatable editedRoom = facade.edit(room);
+        editedRoom.getClassification().setValue("name", "indexed room");
+        facade.store(editedRoom);
+        final Allocatable renamedRoom = facade.getPersistant(editedRoom);
+        final List<Allocatable> changed = new ArrayList<>();
+        changed.add(room);
+        changed.add(renamedRoom);
+        index.refresh(changed, false);
+        assertMatchesLinearScan();
+
+        // change the event type filter match and the allocations of an event
+        final Reservation editedEvent = facade.edit(unfiltered);
+        editedEvent.getClassification().setValue("name", "indexed event");
+        editedEvent.removeAllocatable(renamedRoom);
+        editedEvent.addAllocatable(facade.getAllocatables()[1]);
+        facade.store(editedEvent);
+        assertMatchesLinearScan();
+
+        // remove the events and the room
+        facade.storeAndRemove(Entity.ENTITY_ARRAY, new Entity[] { facade.getPersistant(editedEvent), filtered, renamedRoom }, user);
+        index.refresh(Collections.singleton(renamedRoom), false);
+        assertMatchesLinearScan();
+        Assert.assertTrue(index.findUsers(renamedRoom).isEmpty());
+
+        // remove a user with all of its models
+        final ReferenceInfo<User> removed = models.keySet().iterator().next();
+        Assert.assertTrue(index.findUsers(facade.getAllocatables()[0]).contains(removed));
+        removeUser(removed);
+        Assert.assertEquals(models.size(), index.size());
+        Assert.assertFalse(index.findUsers(facade.getAllocatables()[0]).contains(removed));
+        assertMatchesLinearScan();
+    }
+}
@@ -0,0 +1,195 @@
+package org.rapla.storage.impl.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.rapla.components.util.IOUtil;
+import org.rapla.entities.Entity;
+import org.rapla.entities.User;
+import org.rapla.entities.domain.Allocatable;
+import org.rapla.entities.domain.Reservation;
+import org.rapla.facade.RaplaFacade;
+import org.rapla.framework.RaplaException;
+import org.rapla.logger.Logger;
+import org.rapla.storage.CachableStorageOperatorCommand;
+import org.rapla.storage.LocalCache;
+import org.rapla.storage.dbfile.FileOperator;
+import org.rapla.test.util.RaplaTestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+@RunWith(JUnit4.class)
+public class HotBackupTest
+{
+    Logger logger;
+    RaplaFacade facade;
+    FileOperator operator;
+    File directory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        logger = RaplaTestCase.initLoger();
+        facade = RaplaTestCase.createFacadeWithFile(logger, "/testdefault.xml");
+        operator = (FileOperator) facade.getOperator();
+        directory = new File("target/test/backup");
+        final File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        RaplaTestCase.dispose(facade);
+    }
+
+    @Test
+    public void testFullAndIncrementalBackup() throws Exception
+    {
+        final HotBackup hotBackup = new HotBackup(logger, directory, HotBackup.getDefaultFullIntervalMillis());
+        final List<Reservation> reservations = new ArrayList<Reservation>(
+                RaplaTestCase.waitForWithRaplaException(facade.getReservations(null, null, null, null), 10000));
+        final Reservation changed = reservations.get(0);
+        final Reservation removed = reservations.get(1);
+        final Reservation unchanged = reservations.get(2);
+
+        final File full = hotBackup.backup(operator, operator);
+        Assert.assertTrue(full.getName(), full.getName().endsWith("-full.zip"));
+        Assert.assertEquals("full", readInfo(full).getProperty("type"));
+        final String fullData = readEntry(full, HotBackup.DATA_ENTRY);
+        Assert.assertTrue(fullData.contains(changed.getId()));
+        Assert.assertTrue(fullData.contains(unchanged.getId()));
+        Assert.assertNull(readEntry(full, HotBackup.REMOVED_ENTRY));
+        final Properties fullState = readState();
+        Assert.assertEquals(full.getName(), fullState.getProperty("last_file"));
+
+        final User user = facade.getUser("homer");
+        final Reservation edited = facade.edit(changed);
+        edited.getClassification().setValue("name", "changed after backup");
+        facade.storeAndRemove(new Entity[] { edited }, new Entity[] { removed }, user);
+
+        final File incremental = hotBackup.backup(operator, operator);
+        Assert.assertTrue(incremental.getName(), incremental.getName().endsWith("-incremental.zip"));
+        final Properties info = readInfo(incremental);
+        Assert.assertEquals("incremental", info.getProperty("type"));
+        Assert.assertEquals(full.getName(), info.getProperty("base"));
+        Assert.assertEquals(fullState.getProperty("last_timestamp"), info.getProperty("since"));
+        final String incrementalData = readEntry(incremental, HotBackup.DATA_ENTRY);
+        Assert.assertTrue(incrementalData.contains("changed after backup"));
+        Assert.assertFalse(incrementalData.contains(unchanged.getId()));
+        // types and users are always included
+        Assert.assertTrue(incrementalData.contains(user.getId()));
+        final String removedIds = readEntry(incremental, HotBackup.REMOVED_ENTRY);
+        Assert.assertNotNull(removedIds);
+        Assert.assertTrue(removedIds.contains(removed.getId()));
+        Assert.assertFalse(removedIds.contains(changed.getId()));
+
+        final Properties incrementalState = readState();
+        Assert.assertEquals(incremental.getName(), incrementalState.getProperty("last_file"));
+        Assert.assertEquals(info.getProperty("timestamp"), incrementalState.getProperty("last_timestamp"));
+        Assert.assertEquals(fullState.getProperty("last_full"), incrementalState.getProperty("last_full"));
+    }
+
+    @Test
+    public void testFullBackupAfterInterval() throws Exception
+    {
+        final HotBackup hotBackup = new HotBackup(logger, directory, 0);
+        final File first = hotBackup.backup(operator, operator);
+        final File second = hotBackup.backup(operator, operator);
+        Assert.assertEquals("full", readInfo(first).getProperty("type"));
+        Assert.assertEquals("full", readInfo(second).getProperty("type"));
+        Assert.assertEquals(second.getName(), readState().getProperty("last_file"));
+    }
+
+    @Test
+    public void testFullBackupWithInvalidState() throws Exception
+    {
+        Assert.assertTrue(directory.exists() || directory.mkdirs());
+        try (OutputStream out = new FileOutputStream(new File(directory, HotBackup.STATE_FILE)))
+        {
+            out.write("last_timestamp=invalid\n".getBytes("utf-8"));
+        }
+        final HotBackup hotBackup = new HotBackup(logger, directory, HotBackup.getDefaultFullIntervalMillis());
+        final File backup = hotBackup.backup(operator, operator);
+        Assert.assertEquals("full", readInfo(backup).getProperty("type"));
+        Assert.assertEquals(backup.getName(), readState().getProperty("last_file"));
+    }
+
+    @Test
+    public void testSnapshotResolvesVersionOfSnapshot() throws Exception
+    {
+        final Allocatable allocatable = facade.getAllocatables()[0];
+        final BackupSnapshot snapshot = operator.createBackupSnapshot(null);
+        final Allocatable inSnapshot = snapshot.getCache().tryResolve(allocatable.getId(), Allocatable.class);
+        Assert.assertNotNull(inSnapshot);
+
+        final Allocatable edited = facade.edit(allocatable);
+        edited.getClassification().setValue("name", "changed after snapshot");
+        facade.storeAndRemove(new Entity[] { edited }, Entity.ENTITY_ARRAY, facade.getUser("homer"));
+        Assert.assertNotSame(inSnapshot, operator.tryResolve(allocatable.getId(), Allocatable.class));
+
+        operator.runWithSnapshot(snapshot, new CachableStorageOperatorCommand()
+        {
+            public void execute(LocalCache cache) throws RaplaException
+            {
+                Assert.assertSame(inSnapshot, operator.tryResolve(allocatable.getId(), Allocatable.class));
+            }
+        });
+        Assert.assertNotSame(inSnapshot, operator.tryResolve(allocatable.getId(), Allocatable.class));
+    }
+
+    private Properties readInfo(File backup) throws IOException
+    {
+        final Properties info = new Properties();
+        try (ZipFile zip = new ZipFile(backup); InputStream in = zip.getInputStream(zip.getEntry(HotBackup.INFO_ENTRY)))
+        {
+            info.load(in);
+        }
+        return info;
+    }
+
+    private String readEntry(File backup, String name) throws IOException
+    {
+        try (ZipFile zip = new ZipFile(backup))
+        {
+            final ZipEntry entry = zip.getEntry(name);
+            if (entry == null)
+            {
+                return null;
+            }
+            try (InputStream in = zip.getInputStream(entry))
+            {
+                return new String(IOUtil.readBytes(in), "utf-8");
+            }
+        }
+    }
+
+    private Properties readState() throws IOException
+    {
+        final Properties state = new Properties();
+        try (InputStream in = new FileInputStream(new File(directory, HotBackup.STATE_FILE)))
+        {
+            state.load(in);
+        }
+        return state;
+    }
+}
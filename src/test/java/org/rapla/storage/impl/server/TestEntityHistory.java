@@ -8,7 +8,9 @@ import org.junit.runners.JUnit4;
 import org.rapla.entities.domain.Allocatable;
 import org.rapla.entities.storage.ReferenceInfo;
 
+import java.io.File;
 import java.util.Date;
+import java.util.List;
 
 @RunWith(JUnit4.class)
 public class TestEntityHistory
@@ -54,4 +56,70 @@ public class TestEntityHistory
         entityHistory.addHistoryEntry(ref,json, timestamp, false);
         Assert.assertEquals(entityHistory.getHistoryList(ref)+"", 1, entityHistory.getHistoryList(ref).size());
     }
+
+    @Test
+    public void compressedVersions() throws Exception
+    {
+        final Date timestamp = new Date();
+        ReferenceInfo<Allocatable> ref = new ReferenceInfo<Allocatable>("compressed", Allocatable.class);
+        final int count = EntityHistory.KEYFRAME_INTERVAL * 3;
+        for (int i = 0; i < count; i++)
+        {
+            entityHistory.addHistoryEntry(ref, createJson(i), new Date(timestamp.getTime() + i * 2), false);
+        }
+        // insert a version between two existing ones
+        entityHistory.addHistoryEntry(ref, createJson(1000), new Date(timestamp.getTime() + 5), false);
+        final List<EntityHistory.HistoryEntry> list = entityHistory.getHistoryList(ref);
+        Assert.assertEquals(count + 1, list.size());
+        for (EntityHistory.HistoryEntry entry : list)
+        {
+            final long offset = entry.getTimestamp() - timestamp.getTime();
+            final String expected = offset == 5 ? createJson(1000) : createJson((int) offset / 2);
+            Assert.assertEquals(expected, entityHistory.getJson(entry));
+        }
+        entityHistory.removeUnneeded(new Date(timestamp.getTime() + count));
+        final EntityHistory.HistoryEntry first = entityHistory.getHistoryList(ref).get(0);
+        Assert.assertEquals(createJson((int) (first.getTimestamp() - timestamp.getTime()) / 2), entityHistory.getJson(first));
+        Assert.assertEquals(createJson(count - 1), entityHistory.getJson(entityHistory.getLatest(ref)));
+    }
+
+    @Test
+    public void spillAndEvict() throws Exception
+    {
+        final File spillFile = File.createTempFile("history", ".segment");
+        try
+        {
+            entityHistory.setSpillFile(spillFile, 1024);
+            final Date timestamp = new Date();
+            ReferenceInfo<Allocatable> ref = new ReferenceInfo<Allocatable>("spilled", Allocatable.class);
+            for (int i = 0; i < 200; i++)
+            {
+                entityHistory.addHistoryEntry(ref, createJson(i), new Date(timestamp.getTime() + i), false);
+            }
+            Assert.assertTrue(entityHistory.getSpilledBytes() > 0);
+            for (EntityHistory.HistoryEntry entry : entityHistory.getHistoryList(ref))
+            {
+                Assert.assertEquals(createJson((int) (entry.getTimestamp() - timestamp.getTime())), entityHistory.getJson(entry));
+            }
+            final long size = entityHistory.getHeapBytes() + entityHistory.getSpilledBytes();
+            entityHistory.setMaxBytes(size / 2);
+            Assert.assertTrue(entityHistory.getHeapBytes() + entityHistory.getSpilledBytes() <= size / 2);
+            final Date validStart = entityHistory.getValidStart();
+            Assert.assertTrue(validStart.after(timestamp));
+            final EntityHistory.HistoryEntry first = entityHistory.getHistoryList(ref).get(0);
+            Assert.assertFalse(first.getTimestamp() >= validStart.getTime());
+            Assert.assertEquals(createJson((int) (first.getTimestamp() - timestamp.getTime())), entityHistory.getJson(first));
+            Assert.assertEquals(createJson(199), entityHistory.getJson(entityHistory.getLatest(ref)));
+        }
+        finally
+        {
+            entityHistory.setSpillFile(null, 0);
+            spillFile.delete();
+        }
+    }
+
+    private static String createJson(int version)
+    {
+        return "{\"id\":\"resource\",\"name\":\"Room " + version + "\",\"description\":\"a room with a long description that stays the same in all versions\"}";
+    }
 }